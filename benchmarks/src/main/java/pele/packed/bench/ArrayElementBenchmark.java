@@ -0,0 +1,80 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import org.openjdk.jmh.annotations.*;
+import pele.packed.PackedArray;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code OfObject.getView}/{@code getCopy}/{@code copyFrom} versus
+ * element access, copying and replacement in a {@code Line[]}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArrayElementBenchmark {
+
+    @Param({"1024"})
+    int length;
+
+    PackedArray.OfObject<Line> packed;
+    Pojos.PLine[] pojo;
+    Line packedLine;
+    Pojos.PLine pojoLine;
+    int index;
+
+    @Setup
+    public void setup() {
+        packed = new PackedArray.OfObject<>(Line.class, length);
+        pojo = new Pojos.PLine[length];
+        for (int i = 0; i < length; i++) {
+            packed.set(i, new Line(new Point(i, i), new Point(-i, -i)));
+            pojo[i] = new Pojos.PLine(new Pojos.PPoint(i, i), new Pojos.PPoint(-i, -i));
+        }
+        packedLine = new Line(new Point(1, 2), new Point(3, 4));
+        pojoLine = new Pojos.PLine(new Pojos.PPoint(1, 2), new Pojos.PPoint(3, 4));
+    }
+
+    private int nextIndex() {
+        int i = index + 1;
+        if (i == length) i = 0;
+        return index = i;
+    }
+
+    @Benchmark
+    public Line packedGetView() {
+        return packed.getView(nextIndex());
+    }
+
+    @Benchmark
+    public Pojos.PLine pojoGet() {
+        return pojo[nextIndex()];
+    }
+
+    @Benchmark
+    public Line packedGetCopy() {
+        return packed.getCopy(nextIndex());
+    }
+
+    @Benchmark
+    public Pojos.PLine pojoGetCopy() {
+        return pojo[nextIndex()].copy();
+    }
+
+    @Benchmark
+    public void packedCopyFrom() {
+        packed.copyFrom(nextIndex(), packedLine);
+    }
+
+    @Benchmark
+    public void pojoSetCopy() {
+        pojo[nextIndex()] = pojoLine.copy();
+    }
+}
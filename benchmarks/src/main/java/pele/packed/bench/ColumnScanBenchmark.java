@@ -0,0 +1,75 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import org.openjdk.jmh.annotations.*;
+import pele.packed.PackedArray;
+import pele.packed.PackedColumnArray;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans of a single field over a packed array of samples with row layout
+ * ({@link PackedArray.OfObject}) versus columnar layout ({@link PackedColumnArray}),
+ * both through cursors and (for columnar layout) through a column view.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColumnScanBenchmark {
+
+    @Param({"1000000"})
+    int length;
+
+    PackedArray.OfObject<Sample> rows;
+    PackedColumnArray<Sample> columns;
+    PackedArray.OfDouble valueColumn;
+
+    @Setup
+    public void setup() {
+        rows = new PackedArray.OfObject<>(Sample.class, length);
+        columns = new PackedColumnArray<>(Sample.class, length);
+        for (int i = 0; i < length; i++) {
+            Sample s = rows.getView(i);
+            Sample.id.setInt(s, i);
+            Sample.timestamp.setLong(s, i * 1000L);
+            Sample.value.setDouble(s, i * 0.5);
+            columns.set(i, s);
+        }
+        valueColumn = columns.column(Sample.value);
+    }
+
+    @Benchmark
+    public double rowCursor() {
+        double sum = 0;
+        PackedArray.OfObject.Cursor<Sample> c = rows.cursor();
+        while (c.next()) {
+            sum += Sample.value.getDouble(c.get());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double columnCursor() {
+        double sum = 0;
+        PackedColumnArray.Cursor<Sample> c = columns.cursor();
+        while (c.next()) {
+            sum += Sample.value.getDouble(c.get());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double columnView() {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += valueColumn.getDouble(i);
+        }
+        return sum;
+    }
+}
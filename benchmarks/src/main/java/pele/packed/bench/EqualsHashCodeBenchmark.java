@@ -0,0 +1,90 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import org.openjdk.jmh.annotations.*;
+import pele.packed.PackedArray;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Packed.equals}/{@code hashCode} of packed objects and arrays
+ * versus hand-written POJO methods and {@code Arrays.equals/hashCode}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EqualsHashCodeBenchmark {
+
+    @Param({"1024"})
+    int arrayLength;
+
+    Line packedLine1, packedLine2;
+    Pojos.PLine pojoLine1, pojoLine2;
+    PackedArray.OfInt packedInts1, packedInts2;
+    int[] ints1, ints2;
+
+    @Setup
+    public void setup() {
+        packedLine1 = new Line(new Point(1, 2), new Point(3, 4));
+        packedLine2 = new Line(new Point(1, 2), new Point(3, 4));
+        pojoLine1 = new Pojos.PLine(new Pojos.PPoint(1, 2), new Pojos.PPoint(3, 4));
+        pojoLine2 = new Pojos.PLine(new Pojos.PPoint(1, 2), new Pojos.PPoint(3, 4));
+        packedInts1 = new PackedArray.OfInt(arrayLength);
+        packedInts2 = new PackedArray.OfInt(arrayLength);
+        ints1 = new int[arrayLength];
+        ints2 = new int[arrayLength];
+        for (int i = 0; i < arrayLength; i++) {
+            packedInts1.setInt(i, i);
+            packedInts2.setInt(i, i);
+            ints1[i] = i;
+            ints2[i] = i;
+        }
+    }
+
+    @Benchmark
+    public boolean packedObjectEquals() {
+        return packedLine1.equals(packedLine2);
+    }
+
+    @Benchmark
+    public boolean pojoObjectEquals() {
+        return pojoLine1.equals(pojoLine2);
+    }
+
+    @Benchmark
+    public int packedObjectHashCode() {
+        return packedLine1.hashCode();
+    }
+
+    @Benchmark
+    public int pojoObjectHashCode() {
+        return pojoLine1.hashCode();
+    }
+
+    @Benchmark
+    public boolean packedArrayEquals() {
+        return packedInts1.equals(packedInts2);
+    }
+
+    @Benchmark
+    public boolean plainArrayEquals() {
+        return Arrays.equals(ints1, ints2);
+    }
+
+    @Benchmark
+    public int packedArrayHashCode() {
+        return packedInts1.hashCode();
+    }
+
+    @Benchmark
+    public int plainArrayHashCode() {
+        return Arrays.hashCode(ints1);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Field get/set through {@code pfInt}/{@code pfLong}/{@code pfDouble}
+ * versus plain Java fields.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldAccessBenchmark {
+
+    Sample packed;
+    Pojos.PSample pojo;
+    int i = 42;
+    long l = 42L;
+    double d = 42d;
+
+    @Setup
+    public void setup() {
+        packed = new Sample();
+        pojo = new Pojos.PSample();
+    }
+
+    @Benchmark
+    public int packedGetInt() {
+        return Sample.id.getInt(packed);
+    }
+
+    @Benchmark
+    public int pojoGetInt() {
+        return pojo.id;
+    }
+
+    @Benchmark
+    public void packedSetInt() {
+        Sample.id.setInt(packed, i);
+    }
+
+    @Benchmark
+    public void pojoSetInt() {
+        pojo.id = i;
+    }
+
+    @Benchmark
+    public long packedGetLong() {
+        return Sample.timestamp.getLong(packed);
+    }
+
+    @Benchmark
+    public long pojoGetLong() {
+        return pojo.timestamp;
+    }
+
+    @Benchmark
+    public void packedSetLong() {
+        Sample.timestamp.setLong(packed, l);
+    }
+
+    @Benchmark
+    public void pojoSetLong() {
+        pojo.timestamp = l;
+    }
+
+    @Benchmark
+    public double packedGetDouble() {
+        return Sample.value.getDouble(packed);
+    }
+
+    @Benchmark
+    public double pojoGetDouble() {
+        return pojo.value;
+    }
+
+    @Benchmark
+    public void packedSetDouble() {
+        Sample.value.setDouble(packed, d);
+    }
+
+    @Benchmark
+    public void pojoSetDouble() {
+        pojo.value = d;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import pele.packed.PackedField.pfObject;
+import pele.packed.PackedObject;
+
+/**
+ * Packed line used by benchmarks.
+ */
+public class Line extends PackedObject {
+    static final pfObject<Point, Line> p1 = new pfObject<>(Point.class, Line.class);
+    static final pfObject<Point, Line> p2 = new pfObject<>(Point.class, Line.class);
+
+    public Line(Point _p1, Point _p2) {
+        p1.copyFrom(this, _p1);
+        p2.copyFrom(this, _p2);
+    }
+
+    public Point getP1View() {
+        return p1.getView(this);
+    }
+
+    public Point getP2View() {
+        return p2.getView(this);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedObject;
+
+/**
+ * Packed point used by benchmarks.
+ */
+public class Point extends PackedObject {
+    static final pfInt<Point> x = new pfInt<>(Point.class);
+    static final pfInt<Point> y = new pfInt<>(Point.class);
+
+    public Point(int _x, int _y) {
+        x.setInt(this, _x);
+        y.setInt(this, _y);
+    }
+
+    public int getX() {
+        return x.getInt(this);
+    }
+
+    public void setX(int _x) {
+        x.setInt(this, _x);
+    }
+
+    public int getY() {
+        return y.getInt(this);
+    }
+
+    public void setY(int _y) {
+        y.setInt(this, _y);
+    }
+}
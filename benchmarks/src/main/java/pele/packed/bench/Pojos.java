@@ -0,0 +1,73 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import java.util.Objects;
+
+/**
+ * Plain Java object equivalents of the packed objects used as a baseline
+ * in benchmarks.
+ */
+final class Pojos {
+    private Pojos() {}
+
+    static final class PPoint {
+        int x, y;
+
+        PPoint(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        PPoint copy() {
+            return new PPoint(x, y);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PPoint p = (PPoint) o;
+            return x == p.x && y == p.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+
+    static final class PLine {
+        final PPoint p1, p2;
+
+        PLine(PPoint p1, PPoint p2) {
+            this.p1 = p1;
+            this.p2 = p2;
+        }
+
+        PLine copy() {
+            return new PLine(p1.copy(), p2.copy());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PLine l = (PLine) o;
+            return p1.equals(l.p1) && p2.equals(l.p2);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(p1, p2);
+        }
+    }
+
+    static final class PSample {
+        int id;
+        long timestamp;
+        double value;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import org.openjdk.jmh.annotations.*;
+import pele.packed.PackedArray;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code viewOfRange}/{@code copyOfRange} versus shallow and deep copies
+ * of {@code Point[]} ranges.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RangeBenchmark {
+
+    @Param({"16", "1024"})
+    int rangeLength;
+
+    PackedArray.OfObject<Point> packed;
+    Pojos.PPoint[] pojo;
+
+    @Setup
+    public void setup() {
+        int length = rangeLength * 2;
+        packed = new PackedArray.OfObject<>(Point.class, length);
+        pojo = new Pojos.PPoint[length];
+        for (int i = 0; i < length; i++) {
+            packed.set(i, new Point(i, -i));
+            pojo[i] = new Pojos.PPoint(i, -i);
+        }
+    }
+
+    @Benchmark
+    public PackedArray.OfObject<Point> packedViewOfRange() {
+        return packed.viewOfRange(rangeLength / 2, rangeLength / 2 + rangeLength);
+    }
+
+    @Benchmark
+    public PackedArray.OfObject<Point> packedCopyOfRange() {
+        return packed.copyOfRange(rangeLength / 2, rangeLength / 2 + rangeLength);
+    }
+
+    @Benchmark
+    public Pojos.PPoint[] pojoShallowCopyOfRange() {
+        return Arrays.copyOfRange(pojo, rangeLength / 2, rangeLength / 2 + rangeLength);
+    }
+
+    @Benchmark
+    public Pojos.PPoint[] pojoDeepCopyOfRange() {
+        Pojos.PPoint[] copy = new Pojos.PPoint[rangeLength];
+        for (int i = 0; i < rangeLength; i++) {
+            copy[i] = pojo[rangeLength / 2 + i].copy();
+        }
+        return copy;
+    }
+}
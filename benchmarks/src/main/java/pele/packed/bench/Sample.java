@@ -0,0 +1,19 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import pele.packed.PackedField.pfDouble;
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedField.pfLong;
+import pele.packed.PackedObject;
+
+/**
+ * Packed record with int, long and double fields used by benchmarks.
+ */
+public class Sample extends PackedObject {
+    static final pfInt<Sample> id = new pfInt<>(Sample.class);
+    static final pfLong<Sample> timestamp = new pfLong<>(Sample.class);
+    static final pfDouble<Sample> value = new pfDouble<>(Sample.class);
+}
@@ -0,0 +1,112 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.bench;
+
+import org.openjdk.jmh.annotations.*;
+import pele.packed.PackedArray;
+import pele.packed.PackedCursor;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential and random scans over a packed array of lines (through views
+ * and through cursors) versus scans over a {@code Line[]}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScanBenchmark {
+
+    @Param({"100000"})
+    int length;
+
+    PackedArray.OfObject<Line> packed;
+    Pojos.PLine[] pojo;
+    int[] randomIndexes;
+
+    @Setup
+    public void setup() {
+        packed = new PackedArray.OfObject<>(Line.class, length);
+        pojo = new Pojos.PLine[length];
+        for (int i = 0; i < length; i++) {
+            packed.set(i, new Line(new Point(i, i), new Point(-i, -i)));
+            pojo[i] = new Pojos.PLine(new Pojos.PPoint(i, i), new Pojos.PPoint(-i, -i));
+        }
+        Random rnd = new Random(42);
+        randomIndexes = new int[length];
+        for (int i = 0; i < length; i++) {
+            randomIndexes[i] = rnd.nextInt(length);
+        }
+    }
+
+    @Benchmark
+    public long packedSequentialViews() {
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            Line line = packed.getView(i);
+            sum += line.getP1View().getX() + line.getP2View().getY();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long packedSequentialCursor() {
+        long sum = 0;
+        PackedArray.OfObject.Cursor<Line> c = packed.cursor();
+        PackedCursor<Point> p1 = Line.p1.cursor(c);
+        PackedCursor<Point> p2 = Line.p2.cursor(c);
+        while (c.next()) {
+            sum += p1.get().getX() + p2.get().getY();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long pojoSequential() {
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            Pojos.PLine line = pojo[i];
+            sum += line.p1.x + line.p2.y;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long packedRandomViews() {
+        long sum = 0;
+        for (int i : randomIndexes) {
+            Line line = packed.getView(i);
+            sum += line.getP1View().getX() + line.getP2View().getY();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long packedRandomCursor() {
+        long sum = 0;
+        PackedArray.OfObject.Cursor<Line> c = packed.cursor();
+        PackedCursor<Point> p1 = Line.p1.cursor(c);
+        PackedCursor<Point> p2 = Line.p2.cursor(c);
+        for (int i : randomIndexes) {
+            c.moveTo(i);
+            sum += p1.get().getX() + p2.get().getY();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long pojoRandom() {
+        long sum = 0;
+        for (int i : randomIndexes) {
+            Pojos.PLine line = pojo[i];
+            sum += line.p1.x + line.p2.y;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed.processor;
+
+import pele.packed.PackedLayout;
+import pele.packed.PackedType;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An annotation processor that generates {@code PackedObject} subclasses for
+ * types annotated with {@link PackedType}. The layout of packed fields is
+ * computed at compile time with the same rules as the runtime uses for the
+ * {@link PackedLayout} policy of the annotated type: each field is aligned to
+ * its alignment (the size of primitives, the maximum alignment of fields of
+ * embedded objects, the component alignment of arrays or 1 when unaligned)
+ * and packed objects have no tail padding. The generated class constructs its
+ * fields at the precomputed offsets and declares them with
+ * {@code PackedClass.declare}, so no reflection runs when it is initialized.
+ */
+@SupportedAnnotationTypes({"pele.packed.PackedType", "pele.packed.PackedType.Length", "pele.packed.PackedLayout"})
+public final class PackedTypeProcessor extends AbstractProcessor {
+
+    private static final String PACKED_OBJECT = "pele.packed.PackedObject";
+    private static final String PACKED_CLASS = "pele.packed.PackedClass";
+    private static final String PACKED_FIELD = "pele.packed.PackedField";
+    private static final String PACKED_ARRAY = "pele.packed.PackedArray";
+    private static final String PACKED_LAYOUT = "pele.packed.PackedLayout";
+
+    // layouts of specification types by their qualified names
+    private final Map<String, Layout> layouts = new HashMap<>();
+    // qualified names of specification types being laid out (to detect cycles)
+    private final Set<String> inProgress = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(PackedType.class)) {
+            try {
+                generate(layoutOf((TypeElement) element));
+            } catch (SpecException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Can't write generated class: " + e, element);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The layout of a generated packed object class.
+     */
+    private static final class Layout {
+        final TypeElement spec;
+        final String packageName, simpleName;
+        final List<Property> properties = new ArrayList<>();
+        PackedLayout.Policy policy;
+        int size, alignment = 1;
+
+        Layout(TypeElement spec, String packageName, String simpleName) {
+            this.spec = spec;
+            this.packageName = packageName;
+            this.simpleName = simpleName;
+        }
+
+        String qualifiedName() {
+            return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        }
+    }
+
+    /**
+     * A property (packed field) of a generated packed object class.
+     */
+    private static final class Property {
+        final String name;
+        ExecutableElement getter, setter;
+        TypeMirror type;
+        // primitive type of the field or the component type of an array field
+        TypeKind primitive;
+        // the length of an array field or -1 for non-array fields
+        int length = -1;
+        // the layout of an embedded object field
+        Layout embedded;
+        int offset, size, alignment;
+
+        Property(String name) {
+            this.name = name;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class SpecException extends Exception {
+        final Element element;
+
+        SpecException(String message, Element element) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    private Layout layoutOf(TypeElement spec) throws SpecException {
+        String specName = spec.getQualifiedName().toString();
+        Layout layout = layouts.get(specName);
+        if (layout != null) {
+            return layout;
+        }
+        if (!inProgress.add(specName)) {
+            throw new SpecException("Packed type embeds itself: " + specName, spec);
+        }
+        try {
+            layout = computeLayout(spec);
+        } finally {
+            inProgress.remove(specName);
+        }
+        layouts.put(specName, layout);
+        return layout;
+    }
+
+    private Layout computeLayout(TypeElement spec) throws SpecException {
+        validateSpec(spec);
+        PackedType packedType = spec.getAnnotation(PackedType.class);
+        String simpleName = packedType.name().isEmpty()
+            ? "Packed" + spec.getSimpleName()
+            : packedType.name();
+        String packageName = processingEnv.getElementUtils().getPackageOf(spec).getQualifiedName().toString();
+        Layout layout = new Layout(spec, packageName, simpleName);
+        PackedLayout packedLayout = spec.getAnnotation(PackedLayout.class);
+        layout.policy = (packedLayout == null) ? PackedLayout.Policy.DECLARED : packedLayout.value();
+
+        // collect properties in the order of their first declaration
+        Map<String, Property> properties = new LinkedHashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(spec.getEnclosedElements())) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+            String name = method.getSimpleName().toString();
+            if (method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID &&
+                (isAccessor(name, "get") ||
+                    isAccessor(name, "is") && method.getReturnType().getKind() == TypeKind.BOOLEAN)) {
+                Property p = properties.computeIfAbsent(propertyName(name), Property::new);
+                if (p.getter != null) {
+                    throw new SpecException("Duplicate getter for property: " + p.name, method);
+                }
+                p.getter = method;
+            } else if (method.getParameters().size() == 1 && method.getReturnType().getKind() == TypeKind.VOID &&
+                isAccessor(name, "set")) {
+                Property p = properties.computeIfAbsent(propertyName(name), Property::new);
+                if (p.setter != null) {
+                    throw new SpecException("Duplicate setter for property: " + p.name, method);
+                }
+                p.setter = method;
+            } else {
+                throw new SpecException(
+                    "Abstract method is neither a getter nor a setter of a packed property", method);
+            }
+        }
+
+        for (Property p : properties.values()) {
+            resolveType(p);
+            if (layout.policy == PackedLayout.Policy.UNALIGNED) {
+                p.alignment = 1;
+            }
+            layout.alignment = Math.max(layout.alignment, p.alignment);
+            layout.properties.add(p);
+        }
+        if (layout.policy == PackedLayout.Policy.COMPACT) {
+            layOutCompact(layout);
+        } else {
+            for (Property p : layout.properties) {
+                p.offset = align(layout.size, p.alignment);
+                layout.size = p.offset + p.size;
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Lays out properties in order of descending alignment, each at the
+     * lowest aligned offset not overlapping already placed properties
+     * (the same as the runtime does for {@code PackedLayout.Policy.COMPACT}).
+     */
+    private static void layOutCompact(Layout layout) {
+        List<Property> properties = new ArrayList<>(layout.properties);
+        // stable sort keeps declaration order of properties with same alignment
+        properties.sort(Comparator.comparingInt((Property p) -> p.alignment).reversed());
+        // the free gaps [from, to) between placed properties
+        List<int[]> gaps = new ArrayList<>();
+        for (Property p : properties) {
+            p.offset = -1;
+            for (int i = 0; i < gaps.size(); i++) {
+                int[] gap = gaps.get(i);
+                int offset = align(gap[0], p.alignment);
+                if (offset + p.size <= gap[1]) {
+                    gaps.remove(i);
+                    if (offset + p.size < gap[1]) {
+                        gaps.add(i, new int[]{offset + p.size, gap[1]});
+                    }
+                    if (gap[0] < offset) {
+                        gaps.add(i, new int[]{gap[0], offset});
+                    }
+                    p.offset = offset;
+                    break;
+                }
+            }
+            if (p.offset < 0) {
+                p.offset = align(layout.size, p.alignment);
+                if (layout.size < p.offset) {
+                    gaps.add(new int[]{layout.size, p.offset});
+                }
+                layout.size = p.offset + p.size;
+            }
+        }
+        // packed objects have no tail padding
+        for (Property p : layout.properties) {
+            layout.size = Math.max(layout.size, p.offset + p.size);
+        }
+    }
+
+    private void validateSpec(TypeElement spec) throws SpecException {
+        boolean nested = (spec.getNestingKind() == NestingKind.MEMBER)
+            // member interfaces are implicitly static
+            ? spec.getKind() == ElementKind.CLASS && !spec.getModifiers().contains(Modifier.STATIC)
+            : spec.getNestingKind() != NestingKind.TOP_LEVEL;
+        if (nested) {
+            throw new SpecException("Packed type must be a top level or static member type", spec);
+        }
+        if (!spec.getTypeParameters().isEmpty()) {
+            throw new SpecException("Packed type can't be generic", spec);
+        }
+        if (spec.getKind() == ElementKind.CLASS) {
+            if (!spec.getModifiers().contains(Modifier.ABSTRACT)) {
+                throw new SpecException("Packed type must be an interface or an abstract class", spec);
+            }
+            TypeMirror superclass = spec.getSuperclass();
+            if (superclass.getKind() != TypeKind.DECLARED ||
+                !((TypeElement) ((DeclaredType) superclass).asElement()).getQualifiedName().contentEquals(PACKED_OBJECT)) {
+                throw new SpecException("Abstract class packed type must directly extend " + PACKED_OBJECT, spec);
+            }
+            TypeMirror packedField = processingEnv.getTypeUtils().erasure(
+                processingEnv.getElementUtils().getTypeElement(PACKED_FIELD).asType());
+            for (VariableElement field : ElementFilter.fieldsIn(spec.getEnclosedElements())) {
+                if (processingEnv.getTypeUtils().isAssignable(
+                    processingEnv.getTypeUtils().erasure(field.asType()), packedField)) {
+                    throw new SpecException("Abstract class packed type can't declare packed fields", field);
+                }
+            }
+        } else if (spec.getKind() != ElementKind.INTERFACE) {
+            throw new SpecException("Packed type must be an interface or an abstract class", spec);
+        }
+        // properties are only collected from methods declared by the packed type itself
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(spec))) {
+            if (method.getModifiers().contains(Modifier.ABSTRACT) && !method.getEnclosingElement().equals(spec)) {
+                throw new SpecException(
+                    "Packed type can't inherit abstract method: " + method.getEnclosingElement() + "." + method, spec);
+            }
+        }
+    }
+
+    private void resolveType(Property p) throws SpecException {
+        ExecutableElement method = (p.getter != null) ? p.getter : p.setter;
+        p.type = (p.getter != null) ? p.getter.getReturnType() : p.setter.getParameters().get(0).asType();
+        if (p.getter != null && p.setter != null &&
+            !processingEnv.getTypeUtils().isSameType(p.type, p.setter.getParameters().get(0).asType())) {
+            throw new SpecException("Setter parameter type differs from getter return type", p.setter);
+        }
+        if (p.type.getKind().isPrimitive()) {
+            p.primitive = p.type.getKind();
+            p.size = p.alignment = primitiveSize(p.primitive);
+            return;
+        }
+        if (p.type.getKind() == TypeKind.DECLARED) {
+            TypeElement type = (TypeElement) ((DeclaredType) p.type).asElement();
+            TypeKind component = arrayComponent(type);
+            if (component != null) {
+                PackedType.Length length = method.getAnnotation(PackedType.Length.class);
+                if (length == null && p.setter != null) {
+                    length = p.setter.getAnnotation(PackedType.Length.class);
+                }
+                if (length == null || length.value() < 0) {
+                    throw new SpecException("Packed array property must be annotated with a non-negative " +
+                        "@" + PackedType.class.getSimpleName() + "." + PackedType.Length.class.getSimpleName(), method);
+                }
+                p.primitive = component;
+                p.length = length.value();
+                p.alignment = primitiveSize(component);
+                p.size = p.length * p.alignment;
+                return;
+            }
+            if (type.getAnnotation(PackedType.class) != null) {
+                p.embedded = layoutOf(type);
+                p.size = p.embedded.size;
+                p.alignment = p.embedded.alignment;
+                return;
+            }
+        }
+        throw new SpecException("Unsupported packed property type: " + p.type +
+            " (should be a primitive, a primitive packed array or a @" +
+            PackedType.class.getSimpleName() + " type)", method);
+    }
+
+    /**
+     * @return the primitive component type if given type is a primitive
+     * packed array class or null if it is not
+     */
+    private static TypeKind arrayComponent(TypeElement type) {
+        Element enclosing = type.getEnclosingElement();
+        if (!(enclosing instanceof TypeElement) ||
+            !((TypeElement) enclosing).getQualifiedName().contentEquals(PACKED_ARRAY)) {
+            return null;
+        }
+        String name = type.getSimpleName().toString();
+        for (TypeKind kind : TypeKind.values()) {
+            if (kind.isPrimitive() && name.equals("Of" + capitalize(kind))) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    private void generate(Layout layout) throws IOException {
+        TypeElement spec = layout.spec;
+        String name = layout.simpleName;
+        try (PrintWriter out = new PrintWriter(
+            processingEnv.getFiler().createSourceFile(layout.qualifiedName(), spec).openWriter())) {
+            if (!layout.packageName.isEmpty()) {
+                out.println("package " + layout.packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * Packed implementation of {@link " + spec.getQualifiedName() + "}");
+            out.println(" * generated by {@code " + PackedTypeProcessor.class.getName() + "}.");
+            out.println(" * Layout: size = " + layout.size + ", alignment = " + layout.alignment + ".");
+            out.println(" */");
+            if (layout.policy != PackedLayout.Policy.DECLARED) {
+                // the runtime needs the policy to validate the alignment of fields
+                out.println("@" + PACKED_LAYOUT + "(" + PACKED_LAYOUT + ".Policy." + layout.policy + ")");
+            }
+            out.print("public final class " + name);
+            if (spec.getKind() == ElementKind.INTERFACE) {
+                out.println(" extends " + PACKED_OBJECT + " implements " + spec.getQualifiedName() + " {");
+            } else {
+                out.println(" extends " + spec.getQualifiedName() + " {");
+            }
+
+            // the fields at precomputed offsets
+            for (Property p : layout.properties) {
+                out.println();
+                out.println("    // offset = " + p.offset + ", size = " + p.size + ", alignment = " + p.alignment);
+                out.println("    public static final " + fieldType(p, name) + " " + p.name + " =");
+                out.println("        new " + fieldInit(p, name) + ";");
+            }
+
+            // the layout table
+            out.println();
+            out.println("    static {");
+            out.print("        " + PACKED_CLASS + ".declare(" + name + ".class, new String[]{");
+            for (int i = 0; i < layout.properties.size(); i++) {
+                out.print((i == 0 ? "" : ", ") + "\"" + layout.properties.get(i).name + "\"");
+            }
+            out.print("}");
+            for (Property p : layout.properties) {
+                out.print(", " + p.name);
+            }
+            out.println(");");
+            out.println("    }");
+
+            // the accessors
+            for (Property p : layout.properties) {
+                if (p.getter != null) {
+                    out.println();
+                    out.println("    @Override");
+                    out.println("    public " + p.type + " " + p.getter.getSimpleName() + "() {");
+                    if (p.primitive != null && p.length < 0) {
+                        out.println("        return " + p.name + ".get" + capitalize(p.primitive) + "(this);");
+                    } else {
+                        out.println("        return " + p.name + ".getView(this);");
+                    }
+                    out.println("    }");
+                }
+                if (p.setter != null) {
+                    out.println();
+                    out.println("    @Override");
+                    out.println("    public void " + p.setter.getSimpleName() + "(" + p.type + " value) {");
+                    if (p.primitive != null && p.length < 0) {
+                        out.println("        " + p.name + ".set" + capitalize(p.primitive) + "(this, value);");
+                    } else if (p.embedded != null) {
+                        out.println("        " + p.name + ".copyFrom(this, (" + p.embedded.qualifiedName() + ") value);");
+                    } else {
+                        out.println("        " + p.name + ".copyFrom(this, value);");
+                    }
+                    out.println("    }");
+                }
+            }
+            out.println("}");
+        }
+    }
+
+    private static String fieldType(Property p, String home) {
+        if (p.embedded != null) {
+            return PACKED_FIELD + ".pfObject<" + p.embedded.qualifiedName() + ", " + home + ">";
+        } else if (p.length >= 0) {
+            return PACKED_FIELD + ".pfArray<" + PACKED_ARRAY + ".Of" + capitalize(p.primitive) + ", " + home + ">";
+        } else {
+            return PACKED_FIELD + ".pf" + capitalize(p.primitive) + "<" + home + ">";
+        }
+    }
+
+    private static String fieldInit(Property p, String home) {
+        if (p.embedded != null) {
+            return PACKED_FIELD + ".pfObject<>(" + p.embedded.qualifiedName() + ".class, " +
+                home + ".class, " + p.offset + ")";
+        } else if (p.length >= 0) {
+            return PACKED_FIELD + ".pfArray<>(" + PACKED_ARRAY + ".Of" + capitalize(p.primitive) + ".TYPE, " +
+                p.length + ", " + home + ".class, " + p.offset + ")";
+        } else {
+            return PACKED_FIELD + ".pf" + capitalize(p.primitive) + "<>(" + home + ".class, " + p.offset + ")";
+        }
+    }
+
+    private static int primitiveSize(TypeKind kind) {
+        switch (kind) {
+            case BOOLEAN:
+            case BYTE:
+                return 1;
+            case CHAR:
+            case SHORT:
+                return 2;
+            case INT:
+            case FLOAT:
+                return 4;
+            case LONG:
+            case DOUBLE:
+                return 8;
+            default:
+                throw new IllegalArgumentException("Not a primitive: " + kind);
+        }
+    }
+
+    private static int align(int offset, int alignment) {
+        return (offset + alignment - 1) & ~(alignment - 1);
+    }
+
+    private static boolean isAccessor(String name, String prefix) {
+        return name.length() > prefix.length() &&
+            name.startsWith(prefix) &&
+            Character.isUpperCase(name.charAt(prefix.length()));
+    }
+
+    /**
+     * @return the property name of given accessor method name
+     * (decapitalized as by {@code java.beans.Introspector})
+     */
+    private static String propertyName(String accessor) {
+        String name = accessor.substring(accessor.startsWith("is") ? 2 : 3);
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String capitalize(TypeKind kind) {
+        String name = kind.name();
+        return name.charAt(0) + name.substring(1).toLowerCase();
+    }
+}
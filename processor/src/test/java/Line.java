@@ -0,0 +1,15 @@
+import pele.packed.PackedType;
+
+/**
+ * Example of a packed object type embedding other packed object types
+ */
+@PackedType
+public interface Line {
+    Point getP1();
+
+    void setP1(Point p1);
+
+    Point getP2();
+
+    void setP2(Point p2);
+}
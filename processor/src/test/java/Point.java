@@ -0,0 +1,15 @@
+import pele.packed.PackedType;
+
+/**
+ * Example of a packed object type specified by an interface
+ */
+@PackedType
+public interface Point {
+    int getX();
+
+    void setX(int x);
+
+    int getY();
+
+    void setY(int y);
+}
@@ -0,0 +1,34 @@
+import pele.packed.PackedArray;
+import pele.packed.PackedObject;
+import pele.packed.PackedType;
+
+/**
+ * Example of a packed object type specified by an abstract class with
+ * differently aligned fields and an embedded array
+ */
+@PackedType
+public abstract class Sample extends PackedObject {
+    public abstract byte getFlags();
+
+    public abstract void setFlags(byte flags);
+
+    @PackedType.Length(3)
+    public abstract PackedArray.OfDouble getValues();
+
+    public abstract boolean isValid();
+
+    public abstract void setValid(boolean valid);
+
+    public abstract long getTimestamp();
+
+    public abstract void setTimestamp(long timestamp);
+
+    public double sum() {
+        PackedArray.OfDouble values = getValues();
+        double sum = 0d;
+        for (int i = 0; i < values.length(); i++) {
+            sum += values.getDouble(i);
+        }
+        return sum;
+    }
+}
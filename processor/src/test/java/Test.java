@@ -0,0 +1,75 @@
+import pele.packed.PackedClass;
+import pele.packed.PackedField;
+
+import java.util.stream.Collectors;
+
+/**
+ * Tests of packed object classes generated by the annotation processor.
+ */
+public class Test {
+
+    public static void main(String[] args) {
+
+        boolean ok = true;
+
+        PackedLine line = new PackedLine();
+        PackedPoint p = new PackedPoint();
+        p.setX(1);
+        p.setY(2);
+        line.setP1(p);
+        line.getP2().setX(3);
+        line.getP2().setY(4);
+        ok &= testEquals(1, line.toString(),
+            "PackedLine{p1=PackedPoint{x=1, y=2}, p2=PackedPoint{x=3, y=4}}");
+
+        ok &= testEquals(2, layout(PackedClass.forClass(PackedLine.class)),
+            "PackedClass<PackedLine, ?>{size=16, alignment=4, indexScale=16} [p1@0, p2@8]");
+
+        PackedSample sample = new PackedSample();
+        sample.setFlags((byte) 3);
+        sample.getValues().setDouble(0, 1.5);
+        sample.getValues().setDouble(2, 2.5);
+        sample.setValid(true);
+        sample.setTimestamp(42L);
+        ok &= testEquals(3, sample + " sum=" + sample.sum(),
+            "PackedSample{flags=3, values=[1.5, 0.0, 2.5], valid=true, timestamp=42} sum=4.0");
+
+        ok &= testEquals(4, layout(PackedClass.forClass(PackedSample.class)),
+            "PackedClass<PackedSample, ?>{size=48, alignment=8, indexScale=48} [flags@0, values@8, valid@32, timestamp@40]");
+
+        ok &= testEquals(5, String.valueOf(PackedSample.timestamp.getLong(sample)), "42");
+
+        PackedTick tick = new PackedTick();
+        tick.setSide((byte) 1);
+        tick.setTime(2L);
+        tick.setQuantity((short) 3);
+        tick.setPrice(4.5);
+        ok &= testEquals(6, layout(PackedClass.forClass(PackedTick.class)) + " " + tick,
+            "PackedClass<PackedTick, ?>{size=19, alignment=8, indexScale=24} [time@0, price@8, quantity@16, side@18] " +
+                "PackedTick{time=2, price=4.5, quantity=3, side=1}");
+
+        if (ok) {
+            System.out.println("All tests OK.");
+        } else {
+            throw new AssertionError("Some tests failed!");
+        }
+    }
+
+    static String layout(PackedClass<?> type) {
+        return type + " " + type.getFields().stream()
+            .map(f -> f.getName() + "@" + f.getOffset())
+            .collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    static boolean testEquals(int testIndex, String result, String expected) {
+        if (result.equals(expected)) {
+            System.out.println("test#" + testIndex + " OK");
+            return true;
+        } else {
+            System.out.println("test#" + testIndex +
+                "\n  EXPECTED: " + expected +
+                "\n       GOT: " + result);
+            return false;
+        }
+    }
+}
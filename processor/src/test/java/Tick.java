@@ -0,0 +1,25 @@
+import pele.packed.PackedLayout;
+import pele.packed.PackedType;
+
+/**
+ * Example of a packed object type with fields reordered to minimize padding
+ */
+@PackedType
+@PackedLayout(PackedLayout.Policy.COMPACT)
+public interface Tick {
+    byte getSide();
+
+    void setSide(byte side);
+
+    long getTime();
+
+    void setTime(long time);
+
+    short getQuantity();
+
+    void setQuantity(short quantity);
+
+    double getPrice();
+
+    void setPrice(double price);
+}
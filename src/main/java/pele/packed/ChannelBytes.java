@@ -0,0 +1,192 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Transfer engine between channels and ranges of bytes exposed as
+ * {@link ByteBuffer}s wrapping the storage of packed objects and arrays.
+ * Buffers are transferred in chunks of at most {@link #CHUNK_SIZE} bytes
+ * since channels copy heap buffers through temporary direct buffers as large
+ * as the transferred chunk. For the same reason, gathering and scattering
+ * transfers only combine direct chunks, while heap chunks are transferred
+ * one at a time.
+ */
+final class ChannelBytes {
+    private ChannelBytes() {}
+
+    static final int CHUNK_SIZE = 1 << 24;
+    // max. number of chunks transferred concurrently with an AsynchronousFileChannel
+    private static final int MAX_PENDING = 16;
+
+    /**
+     * Adds given {@code buffer} split into chunks to given {@code chunks}.
+     */
+    static void chunk(ByteBuffer buffer, List<ByteBuffer> chunks) {
+        for (int from = buffer.position(); from < buffer.limit(); from += CHUNK_SIZE) {
+            ByteBuffer chunk = buffer.duplicate();
+            chunk.limit(Math.min(buffer.limit(), from + CHUNK_SIZE));
+            chunk.position(from);
+            chunks.add(chunk.slice());
+        }
+    }
+
+    /**
+     * Writes all remaining bytes of given {@code chunks} to given {@code channel}
+     * (with gathering writes of direct chunks if it is a {@link GatheringByteChannel}).
+     */
+    static void write(WritableByteChannel channel, List<ByteBuffer> chunks) throws IOException {
+        ByteBuffer[] buffers = chunks.toArray(new ByteBuffer[0]);
+        for (int i = 0; i < buffers.length; ) {
+            int count;
+            if (!buffers[i].hasRemaining()) {
+                i++;
+            } else if (channel instanceof GatheringByteChannel && (count = directRun(buffers, i)) > 1) {
+                ((GatheringByteChannel) channel).write(buffers, i, count);
+            } else {
+                channel.write(buffers[i]);
+            }
+        }
+    }
+
+    /**
+     * Fills given {@code chunks} from given {@code channel} (with scattering
+     * reads into direct chunks if it is a {@link ScatteringByteChannel}).
+     *
+     * @throws EOFException if the channel reaches end-of-stream before the chunks are filled
+     */
+    static void read(ReadableByteChannel channel, List<ByteBuffer> chunks) throws IOException {
+        ByteBuffer[] buffers = chunks.toArray(new ByteBuffer[0]);
+        for (int i = 0; i < buffers.length; ) {
+            long n;
+            int count;
+            if (!buffers[i].hasRemaining()) {
+                i++;
+                continue;
+            } else if (channel instanceof ScatteringByteChannel && (count = directRun(buffers, i)) > 1) {
+                n = ((ScatteringByteChannel) channel).read(buffers, i, count);
+            } else {
+                n = channel.read(buffers[i]);
+            }
+            if (n < 0) {
+                throw new EOFException("Channel reached end-of-stream before packed data was read");
+            }
+        }
+    }
+
+    /**
+     * @return the number of consecutive direct buffers starting at given
+     * index (up to {@link #MAX_PENDING}), which can be transferred with one
+     * gathering or scattering call without temporary direct buffers
+     */
+    private static int directRun(ByteBuffer[] buffers, int from) {
+        int to = from;
+        while (to < buffers.length && to - from < MAX_PENDING && buffers[to].isDirect()) {
+            to++;
+        }
+        return to - from;
+    }
+
+    /**
+     * Writes (or reads when {@code write} is false) given {@code chunks} to
+     * (from) consecutive positions of given {@code channel} starting at
+     * {@code position} with up to {@link #MAX_PENDING} chunks in flight
+     * concurrently. Transfers in flight when it fails are awaited before
+     * the failure is thrown, so the chunks are no longer in use when it
+     * returns.
+     *
+     * @throws EOFException if the file ends before the chunks are read
+     */
+    static void transfer(AsynchronousFileChannel channel, long position, List<ByteBuffer> chunks, boolean write)
+        throws IOException {
+        int n = chunks.size();
+        long[] positions = new long[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = position;
+            position += chunks.get(i).remaining();
+        }
+        List<Future<Integer>> futures = new ArrayList<>(Collections.nCopies(n, null));
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        try {
+            int next = 0;
+            while (next < n || !pending.isEmpty()) {
+                while (next < n && pending.size() < MAX_PENDING) {
+                    futures.set(next, start(channel, chunks.get(next), positions[next], write));
+                    pending.add(next++);
+                }
+                int i = pending.peek();
+                int transferred = await(futures.get(i));
+                pending.remove();
+                if (transferred < 0) {
+                    throw new EOFException("File ended before packed data was read");
+                }
+                ByteBuffer chunk = chunks.get(i);
+                if (chunk.hasRemaining()) {
+                    // partial transfer - continue where it ended
+                    futures.set(i, start(channel, chunk, positions[i] + chunk.position(), write));
+                    pending.add(i);
+                }
+            }
+        } finally {
+            for (int i : pending) {
+                awaitQuietly(futures.get(i));
+            }
+        }
+    }
+
+    private static Future<Integer> start(AsynchronousFileChannel channel, ByteBuffer chunk, long position, boolean write) {
+        return write ? channel.write(chunk, position) : channel.read(chunk, position);
+    }
+
+    /**
+     * Waits for given transfer to complete, ignoring its outcome.
+     */
+    private static void awaitQuietly(Future<Integer> future) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int await(Future<Integer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while transferring packed data");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedPackedArray is a {@link PackedArray} (of primitives or PackedObject(s))
+ * backed by a memory-mapped file. Elements of the {@link #array() array} read
+ * and write the mapped pages directly, so the contents persist in the file and
+ * can be re-mapped after restart without rebuilding.
+ * <p>
+ * The file starts with a header recording the array length, the native byte
+ * order and the layout of the component type (class name, size, alignment
+ * and index scale). {@link #open} validates the header against the requested
+ * array type so that files written with a different layout are detected.
+ * The array data follows the header and is aligned to 64 bytes.
+ *
+ * @param <PA> the type of mapped packed array
+ */
+public final class MappedPackedArray<PA extends PackedArray<?>> {
+
+    private static final long MAGIC = 0x5041434b45444152L; // "PACKEDAR"
+    private static final int VERSION = 1;
+    // magic, version, headerSize, byteOrder, length, size, alignment, indexScale, nameLength
+    private static final int FIXED_HEADER_SIZE = 8 + 4 * 8;
+    private static final int HEADER_ALIGNMENT = 64;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final PA array;
+
+    private MappedPackedArray(Path file, MappedByteBuffer buffer, PA array) {
+        this.file = file;
+        this.buffer = buffer;
+        this.array = array;
+    }
+
+    /**
+     * Creates (or truncates an existing) file and maps it as a "zero" packed
+     * array of given {@code arrayType} and {@code length}.
+     *
+     * @param file      the file to create
+     * @param arrayType the type of packed array (including component type)
+     * @param length    the length of packed array
+     * @return a MappedPackedArray for the created file
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException if {@code length} is negative or the
+     *                                  file would be larger than 2 GB
+     */
+    public static <PA extends PackedArray<?>> MappedPackedArray<PA> create(
+        Path file, PackedClass<PA> arrayType, int length) throws IOException {
+        PackedClass<?> componentType = componentType(arrayType);
+        byte[] name = componentType.asClass().getName().getBytes(StandardCharsets.UTF_8);
+        int headerSize = PackedField.align(FIXED_HEADER_SIZE + name.length, HEADER_ALIGNMENT);
+        long fileSize = fileSize(headerSize, arrayType.arraySize(PackedArray.checkLength(length)));
+
+        try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            ByteBuffer header = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            header.putLong(MAGIC)
+                .putInt(VERSION)
+                .putInt(headerSize)
+                .putInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 0 : 1)
+                .putInt(length)
+                .putInt(componentType.getSize())
+                .putInt(componentType.getAlignment())
+                .putInt(componentType.getIndexScale())
+                .putInt(name.length)
+                .put(name);
+            return new MappedPackedArray<>(file, buffer,
+                Packed.newArrayViewU(arrayType, buffer, headerSize, length));
+        }
+    }
+
+    /**
+     * Maps an existing file created by {@link #create} as a packed array of
+     * given {@code arrayType}. The length is taken from the file's header.
+     *
+     * @param file      the file to map
+     * @param arrayType the expected type of packed array (including component type)
+     * @param mode      either {@link FileChannel.MapMode#READ_WRITE} to persist
+     *                  modifications to the file or {@link FileChannel.MapMode#PRIVATE}
+     *                  to keep them private (copy-on-write)
+     * @return a MappedPackedArray for the file
+     * @throws IOException              if an I/O error occurs or the file's header
+     *                                  is corrupted or does not match given
+     *                                  {@code arrayType}
+     * @throws IllegalArgumentException if {@code mode} is
+     *                                  {@link FileChannel.MapMode#READ_ONLY} as
+     *                                  packed arrays are always writable
+     */
+    public static <PA extends PackedArray<?>> MappedPackedArray<PA> open(
+        Path file, PackedClass<PA> arrayType, FileChannel.MapMode mode) throws IOException {
+        if (mode == FileChannel.MapMode.READ_ONLY) {
+            throw new IllegalArgumentException("Packed arrays can't be mapped read-only");
+        }
+        PackedClass<?> componentType = componentType(arrayType);
+
+        try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated header in: " + file);
+                }
+            }
+            header.flip();
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Not a packed array file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported packed array file version: " + version + " in: " + file);
+            }
+            int headerSize = header.getInt();
+            boolean bigEndian = header.getInt() == 0;
+            int length = header.getInt();
+            int size = header.getInt();
+            int alignment = header.getInt();
+            int indexScale = header.getInt();
+            int nameLength = header.getInt();
+            if (bigEndian != (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN)) {
+                throw new IOException("Byte order mismatch in: " + file);
+            }
+            if (length < 0 || nameLength < 0 ||
+                (long) FIXED_HEADER_SIZE + nameLength > headerSize ||
+                headerSize % HEADER_ALIGNMENT != 0 || headerSize > channel.size()) {
+                throw new IOException("Corrupted header in: " + file);
+            }
+            ByteBuffer nameBuffer = ByteBuffer.allocate(nameLength);
+            while (nameBuffer.hasRemaining()) {
+                if (channel.read(nameBuffer, FIXED_HEADER_SIZE + nameBuffer.position()) < 0) {
+                    throw new IOException("Truncated header in: " + file);
+                }
+            }
+            String name = new String(nameBuffer.array(), StandardCharsets.UTF_8);
+            if (!name.equals(componentType.asClass().getName()) ||
+                size != componentType.getSize() ||
+                alignment != componentType.getAlignment() ||
+                indexScale != componentType.getIndexScale()) {
+                throw new IOException(
+                    "Layout mismatch in: " + file + " - file component type: " + name +
+                        "{size=" + size + ", alignment=" + alignment + ", indexScale=" + indexScale +
+                        "}, expected component type: " + componentType);
+            }
+            // computed here as arraySize(length) would throw IAE for a length
+            // that overflows the data size
+            long fileSize = headerSize + ((length == 0) ? 0 : (long) (length - 1) * indexScale + size);
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Corrupted header in: " + file);
+            }
+            if (channel.size() < fileSize) {
+                throw new IOException("Truncated data in: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(mode, 0, fileSize);
+            return new MappedPackedArray<>(file, buffer,
+                Packed.newArrayViewU(arrayType, buffer, headerSize, length));
+        }
+    }
+
+    /**
+     * @return the mapped file
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return the packed array reading and writing the mapped file's pages
+     * directly. Views of it are also backed by the mapped file.
+     */
+    public PA array() {
+        return array;
+    }
+
+    /**
+     * Forces any changes made to the array to be written to the storage
+     * device containing the mapped file.
+     *
+     * @see MappedByteBuffer#force()
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Loads the mapped file's content into physical memory.
+     *
+     * @see MappedByteBuffer#load()
+     */
+    public void load() {
+        buffer.load();
+    }
+
+    /**
+     * @return {@code true} if the mapped file's content is likely to be resident
+     * in physical memory
+     * @see MappedByteBuffer#isLoaded()
+     */
+    public boolean isLoaded() {
+        return buffer.isLoaded();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedPackedArray{file=" + file + ", type=" + array.type() +
+            ", length=" + array.length() + "}";
+    }
+
+    private static PackedClass<?> componentType(PackedClass<?> arrayType) {
+        PackedClass<?> componentType = arrayType.getComponentType();
+        if (!arrayType.isArray() || componentType == null) {
+            throw new IllegalArgumentException("Not an array type with a component type: " + arrayType);
+        }
+        return componentType;
+    }
+
+    private static long fileSize(int headerSize, int arraySize) {
+        long fileSize = (long) headerSize + arraySize;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Mapped packed arrays are limited to 2 GB");
+        }
+        return fileSize;
+    }
+}
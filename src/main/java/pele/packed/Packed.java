@@ -6,33 +6,75 @@ package pele.packed;
 
 import sun.misc.Unsafe;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
-import java.util.Arrays;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Abstract base for PackedObject(s) and PackedArray(s).
  */
 abstract class Packed {
+    // the heap storage or null for off-heap (direct) storage
     private final byte[] target;
-    private final int offset;
+    // Unsafe offset of the 1st byte: relative to target object if target != null
+    // or an absolute address if target == null
+    private final long offset;
     private final int size;
+    // the direct ByteBuffer owning the off-heap memory (if any), which
+    // is shared with views and so kept reachable as long as they are reachable
+    private final Object memory;
+    // the address of a primitive field of size sz at offset off is:
+    // offset + off * stride + row * sz. For contiguous storage, stride == 1
+    // and row == 0. Views of PackedColumnArray elements have stride equal to
+    // the array length and row equal to the element index, so each field is
+    // stored in its own column
+    private final long stride;
+    private final long row;
 
     /**
      * Constructor for "zero" PackedObject(s).
      */
     Packed() {
         this.size = PackedClass.forClass((Class) getClass()).getSize();
-        this.target = (size == 0) ? null : new byte[size];
-        this.offset = 0;
+        this.target = (size == 0) ? null : newHeapStorage(size);
+        this.offset = HEAP_BASE_OFFSET;
+        this.memory = null;
+        this.stride = 1;
+        this.row = 0;
     }
 
     /**
      * Constructor for "zero" PackedArray(s).
      */
     Packed(int size) {
+        this(size, false);
+    }
+
+    /**
+     * Constructor for "zero" PackedArray(s) allocated on heap or off-heap
+     * (when {@code direct} is {@code true}).
+     */
+    Packed(int size, boolean direct) {
         this.size = size;
-        this.target = (size == 0) ? null : new byte[size];
-        this.offset = 0;
+        if (direct) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+            this.target = null;
+            this.offset = addressOf(buffer);
+            this.memory = buffer;
+        } else {
+            this.target = (size == 0) ? null : newHeapStorage(size);
+            this.offset = HEAP_BASE_OFFSET;
+            this.memory = null;
+        }
+        this.stride = 1;
+        this.row = 0;
     }
 
     /**
@@ -40,10 +82,25 @@ abstract class Packed {
      */
     public abstract PackedClass<? extends Packed> type();
 
+    /**
+     * Returns {@code true} if this packed object or array (or the packed
+     * object or array this is a view of) is stored in off-heap memory.
+     * Off-heap memory is not scanned or moved by GC. It is freed when this
+     * and all views of it become unreachable. Copies are always allocated
+     * on heap.
+     *
+     * @return {@code true} if this packed object or array is stored off-heap
+     */
+    public final boolean isDirect() {
+        return memory != null;
+    }
+
     /**
      * Returns {@code true} if and only if given {@code object} is of the same
      * runtime {@link #getClass() class} as this object and the value of this packed
      * object or array is bit-by-bit-equal to the value of given {@code object}.
+     * Hidden version stamps of {@link PackedVersioned} objects are not part of
+     * the value.
      *
      * @param object the object with which to compare
      * @return {@code true} if this and given object are equal-by-type-and-value.
@@ -56,14 +113,22 @@ abstract class Packed {
             return false;
         Packed that = (Packed) object;
         if (this.size != that.size) return false;
+        if (this.stride != 1 || that.stride != 1) {
+            return this.contiguous().equals(that.contiguous());
+        }
         if (this.target == that.target &&
             this.offset == that.offset) return true;
-        for (int i = 0; i < this.size; i++) {
-            if (this.target[this.offset + i] != that.target[that.offset + i]) {
-                return false;
+        if (type().hasVersionStamps()) {
+            int[] leaves = type().leaves(size);
+            for (int i = 0; i < leaves.length; i += 2) {
+                if (!UnsafeBytes.equals(this.target, this.offset + leaves[i],
+                                        that.target, that.offset + leaves[i], leaves[i + 1])) {
+                    return false;
+                }
             }
+            return true;
         }
-        return true;
+        return UnsafeBytes.equals(this.target, this.offset, that.target, that.offset, size);
     }
 
     /**
@@ -72,14 +137,196 @@ abstract class Packed {
      *
      * @return a hash code value for this packed object or array.
      * @see #equals(Object)
+     * @see #hash64()
      */
     @Override
     public int hashCode() {
-        int h = getClass().getName().hashCode();
-        for (int i = 0; i < size; i++) {
-            h += (31 * h) + target[offset + i];
+        long h = hash64();
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns a 64-bit hash code value for this packed object or array. The hash
+     * code is calculated using xxHash64 algorithm from all the bits of the packed
+     * object's or array's value and the name of its runtime class, so it is
+     * consistent with {@link #equals(Object)}.
+     *
+     * @return a 64-bit hash code value for this packed object or array.
+     */
+    public final long hash64() {
+        if (stride != 1) {
+            return contiguous().hash64();
+        }
+        long h = getClass().getName().hashCode();
+        if (type().hasVersionStamps()) {
+            int[] leaves = type().leaves(size);
+            for (int i = 0; i < leaves.length; i += 2) {
+                h = UnsafeBytes.hash64(target, offset + leaves[i], leaves[i + 1], h);
+            }
+            return h;
+        }
+        return UnsafeBytes.hash64(target, offset, size, h);
+    }
+
+    /**
+     * @return true if the value of this packed object or array is bit-by-bit
+     * equal to the bytes of given contiguous {@code container} at given offset
+     */
+    final boolean equalsAtU(Packed container, long offset) {
+        if (stride != 1) {
+            return contiguous().equalsAtU(container, offset);
+        }
+        if (type().hasVersionStamps()) {
+            int[] leaves = type().leaves(size);
+            for (int i = 0; i < leaves.length; i += 2) {
+                if (!UnsafeBytes.equals(this.target, this.offset + leaves[i],
+                                        container.target, container.unsafeOffset(offset + leaves[i]), leaves[i + 1])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return UnsafeBytes.equals(this.target, this.offset, container.target, container.unsafeOffset(offset), size);
+    }
+
+    /**
+     * Finds and returns the index of the 1st byte that differs between the value
+     * of this and given {@code other} packed object or array. If one value is
+     * a proper prefix of the other, the returned index is the size of the
+     * smaller value.
+     *
+     * @param other the packed object or array to compare the value with
+     * @return the index of the 1st mismatching byte or {@code -1} if there is
+     * no mismatch
+     */
+    public final int mismatch(Packed other) {
+        if (this.stride != 1 || other.stride != 1) {
+            return this.contiguous().mismatch(other.contiguous());
+        }
+        int size = Math.min(this.size, other.size);
+        int i = (int) UnsafeBytes.mismatch(this.target, this.offset, other.target, other.offset, size);
+        return (i < 0 && this.size != other.size) ? size : i;
+    }
+
+    /**
+     * Compares the value of this and given {@code other} packed object or array
+     * lexicographically as sequences of unsigned bytes. If one value is a proper
+     * prefix of the other, it is considered smaller. The runtime classes are not
+     * compared.
+     *
+     * @param other the packed object or array to compare the value with
+     * @return a negative number, zero or a positive number if the value of this
+     * packed object or array is less than, equal to or greater than the value of
+     * given {@code other} packed object or array
+     */
+    public final int compareBytes(Packed other) {
+        if (this.stride != 1 || other.stride != 1) {
+            return this.contiguous().compareBytes(other.contiguous());
         }
-        return h;
+        return UnsafeBytes.compare(this.target, this.offset, this.size, other.target, other.offset, other.size);
+    }
+
+    /**
+     * Writes the bytes of this packed object or array to given {@code channel}
+     * from its storage without encoding the fields. Off-heap storage is
+     * transferred directly, while heap storage is copied by the channel
+     * through a temporary direct buffer of at most 16 MB at a time. Primitive
+     * values are written in native byte order. Blocks until all bytes are
+     * written.
+     *
+     * @param channel the channel to write to
+     * @throws IOException                   if an I/O error occurs
+     * @throws UnsupportedOperationException if this is a view of a
+     *                                       {@link PackedColumnArray} element
+     */
+    public final void writeTo(WritableByteChannel channel) throws IOException {
+        ChannelBytes.write(channel, chunksU());
+    }
+
+    /**
+     * Reads the bytes of this packed object or array from given {@code channel}
+     * into its storage (through a temporary direct buffer for heap storage),
+     * replacing its value. This is the inverse of
+     * {@link #writeTo(WritableByteChannel)}. Blocks until all bytes are read.
+     *
+     * @param channel the channel to read from
+     * @throws java.io.EOFException          if the channel reaches end-of-stream
+     *                                       before all bytes are read
+     * @throws IOException                   if an I/O error occurs
+     * @throws UnsupportedOperationException if this is a view of a
+     *                                       {@link PackedColumnArray} element
+     */
+    public final void readFrom(ReadableByteChannel channel) throws IOException {
+        ChannelBytes.read(channel, chunksU());
+    }
+
+    /**
+     * Writes the bytes of this packed object or array to given {@code channel}
+     * at given file {@code position} in chunks which are written concurrently.
+     *
+     * @see #writeTo(WritableByteChannel)
+     */
+    public final void writeTo(AsynchronousFileChannel channel, long position) throws IOException {
+        ChannelBytes.transfer(channel, position, chunksU(), true);
+    }
+
+    /**
+     * Reads the bytes of this packed object or array from given {@code channel}
+     * at given file {@code position} in chunks which are read concurrently.
+     *
+     * @see #readFrom(ReadableByteChannel)
+     */
+    public final void readFrom(AsynchronousFileChannel channel, long position) throws IOException {
+        ChannelBytes.transfer(channel, position, chunksU(), false);
+    }
+
+    /**
+     * Returns a ByteBuffer sharing the storage of this packed object or array
+     * (heap or off-heap) without copying, with position 0, limit and capacity
+     * of its size and native byte order (the order of primitive fields).
+     * Changes to the buffer's content are visible through this packed object
+     * or array and vice versa.
+     *
+     * @return a ByteBuffer view of this packed object's or array's bytes
+     * @throws UnsupportedOperationException if this is a view of a
+     *                                       {@link PackedColumnArray} element
+     */
+    public final ByteBuffer asByteBuffer() {
+        return byteBufferU().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @return the storage of this packed object or array as a ByteBuffer
+     * (a wrapper of the heap byte[] or a slice of the direct buffer) with
+     * position 0 and limit of its size
+     */
+    final ByteBuffer byteBufferU() {
+        checkContiguous();
+        if (memory == null) {
+            return (target == null)
+                ? ByteBuffer.allocate(0)
+                : ByteBuffer.wrap(target, (int) (offset - Unsafe.ARRAY_BYTE_BASE_OFFSET), size).slice();
+        }
+        ByteBuffer buffer = ((ByteBuffer) memory).duplicate();
+        int position = (int) (offset - addressOf((ByteBuffer) memory));
+        buffer.limit(position + size);
+        buffer.position(position);
+        return buffer.slice();
+    }
+
+    private List<ByteBuffer> chunksU() {
+        List<ByteBuffer> chunks = new ArrayList<>();
+        ChannelBytes.chunk(byteBufferU(), chunks);
+        return chunks;
+    }
+
+    /**
+     * @return this instance if it is stored in a contiguous range of bytes or
+     * else a contiguous heap copy of it (of the same class) for comparing and
+     * hashing the value
+     */
+    private Packed contiguous() {
+        return (stride == 1) ? this : getCopyU(getClass(), type().leaves(size), 0, size);
     }
 
     // low-level operations - unsafe and unchecked
@@ -92,12 +339,69 @@ abstract class Packed {
     }
 
     final <P extends Packed> P getViewU(Class<P> clazz, long offset, long size) {
+        return newViewU(clazz, this.target, this.offset + offset * this.stride, size, this.memory,
+            this.stride, this.row);
+    }
+
+    /**
+     * Factory for views of PackedColumnArray elements stored in this storage.
+     *
+     * @param length the length of the columnar array
+     * @param row    the index of the element
+     */
+    final <P extends Packed> P getColumnarViewU(Class<P> clazz, long size, long length, long row) {
+        return newViewU(clazz, this.target, this.offset, size, this.memory, length, row);
+    }
+
+    /**
+     * Re-binds this view to the storage of given {@code container} at given
+     * {@code offset} relative to the container. Used by cursors to move their
+     * reusable views without allocation.
+     */
+    final void rebindU(Packed container, long offset) {
+        U.putObject(this, TARGET, container.target);
+        U.putLong(this, OFFSET, container.offset + offset * container.stride);
+        U.putObject(this, MEMORY, container.memory);
+        U.putLong(this, STRIDE, container.stride);
+        U.putLong(this, ROW, container.row);
+    }
+
+    /**
+     * Re-binds this view to the element at given {@code row} of a
+     * PackedColumnArray of given {@code length} stored in given {@code storage}.
+     */
+    final void rebindColumnarU(Packed storage, long length, long row) {
+        U.putObject(this, TARGET, storage.target);
+        U.putLong(this, OFFSET, storage.offset);
+        U.putObject(this, MEMORY, storage.memory);
+        U.putLong(this, STRIDE, length);
+        U.putLong(this, ROW, row);
+    }
+
+    /**
+     * Factory for views of Packed instances over given storage.
+     *
+     * @param target the heap storage or null for off-heap storage
+     * @param offset the Unsafe offset of the view's 1st byte in target or
+     *               an absolute address if target is null
+     * @param memory the object owning the off-heap storage or null for heap
+     *               storage
+     */
+    static <P extends Packed> P newViewU(Class<P> clazz, byte[] target, long offset, long size, Object memory) {
+        return newViewU(clazz, target, offset, size, memory, 1, 0);
+    }
+
+    private static <P extends Packed> P newViewU(Class<P> clazz, byte[] target, long offset, long size, Object memory,
+                                                 long stride, long row) {
         try {
             @SuppressWarnings("unchecked")
             P instance = (P) U.allocateInstance(clazz);
-            U.putOrderedObject(instance, TARGET, this.target);
-            U.putOrderedInt(instance, OFFSET, this.offset + (int) offset);
+            U.putOrderedObject(instance, TARGET, target);
+            U.putOrderedLong(instance, OFFSET, offset);
             U.putOrderedInt(instance, SIZE, (int) size);
+            U.putOrderedObject(instance, MEMORY, memory);
+            U.putOrderedLong(instance, STRIDE, stride);
+            U.putOrderedLong(instance, ROW, row);
             return instance;
         } catch (InstantiationException e) {
             throw new RuntimeException(e);
@@ -108,18 +412,37 @@ abstract class Packed {
      * Factory for copies of Packed instances.
      */
     final <P extends Packed> P getCopyU(PackedClass<P> type, long offset, long size) {
-        return getCopyU(type.asClass(), offset, size);
+        return getCopyU(type.asClass(), (stride == 1) ? null : type.leaves(size), offset, size);
     }
 
     final <P extends Packed> P getCopyU(Class<P> clazz, long offset, long size) {
+        return getCopyU(clazz, (stride == 1) ? null : PackedClass.forClass(clazz).leaves(size), offset, size);
+    }
+
+    /**
+     * @param leaves the layout of leaf fields to copy one by one or null to
+     *               copy a contiguous range of bytes
+     */
+    private <P extends Packed> P getCopyU(Class<P> clazz, int[] leaves, long offset, long size) {
         try {
             @SuppressWarnings("unchecked")
             P instance = (P) U.allocateInstance(clazz);
-            U.putOrderedObject(instance, TARGET,
-                Arrays.copyOfRange(target, this.offset + (int) offset, this.offset + (int) (offset + size)));
-            // offset is by default 0
-            // U.putOrderedInt(instance, OFFSET, 0);
+            byte[] copy = null;
+            if (size > 0) {
+                copy = newHeapStorage(size);
+                if (leaves == null) {
+                    U.copyMemory(this.target, this.offset + offset,
+                        copy, HEAP_BASE_OFFSET, size);
+                }
+            }
+            // copies are always on heap and contiguous (memory is by default null)
+            U.putOrderedObject(instance, TARGET, copy);
+            U.putOrderedLong(instance, OFFSET, HEAP_BASE_OFFSET);
             U.putOrderedInt(instance, SIZE, (int) size);
+            U.putOrderedLong(instance, STRIDE, 1);
+            if (copy != null && leaves != null) {
+                instance.copyLeavesU(this, offset, 0, leaves, size);
+            }
             return instance;
         } catch (InstantiationException e) {
             throw new RuntimeException(e);
@@ -139,6 +462,54 @@ abstract class Packed {
         return array;
     }
 
+    /**
+     * Factory for views of Packed instances of given {@code size} over given
+     * external {@code buf} starting at given {@code offset} (not validated).
+     */
+    static <P extends Packed> P wrapU(Class<P> clazz, byte[] buf, int offset, int size) {
+        return newViewU(clazz, buf, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, size, null);
+    }
+
+    /**
+     * Factory for views of Packed instances of given {@code size} over given
+     * external heap or direct {@code buffer} starting at given absolute
+     * {@code index} (not validated). Views of a direct buffer keep it reachable.
+     */
+    static <P extends Packed> P wrapU(Class<P> clazz, ByteBuffer buffer, int index, int size) {
+        return buffer.isDirect()
+            ? newViewU(clazz, null, addressOf(buffer) + index, size, buffer)
+            : wrapU(clazz, buffer.array(), buffer.arrayOffset() + index, size);
+    }
+
+    /**
+     * Factory for PackedArray views over given direct {@code buffer} starting
+     * at given {@code position}.
+     */
+    static <PA extends PackedArray<?>> PA newArrayViewU(PackedClass<PA> arrayType, ByteBuffer buffer, int position, int length) {
+        PA array = newViewU(arrayType.asClass(), null, addressOf(buffer) + position,
+            arrayType.arraySize(length), buffer);
+        array.initLengthAndType(length, arrayType);
+        return array;
+    }
+
+    /**
+     * Factory for "zero" PackedArray(s) of any type allocated on heap or
+     * off-heap (when {@code direct} is {@code true}).
+     */
+    static <PA extends PackedArray<?>> PA newArrayU(PackedClass<PA> arrayType, int length, boolean direct) {
+        int size = arrayType.arraySize(PackedArray.checkLength(length));
+        PA array;
+        if (direct) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+            array = newViewU(arrayType.asClass(), null, addressOf(buffer), size, buffer);
+        } else {
+            array = newViewU(arrayType.asClass(), (size == 0) ? null : newHeapStorage(size),
+                HEAP_BASE_OFFSET, size, null);
+        }
+        array.initLengthAndType(length, arrayType);
+        return array;
+    }
+
     /**
      * Factory for PackedArray copies.
      */
@@ -154,89 +525,308 @@ abstract class Packed {
 
     // low-level operations - unsafe and unchecked
 
+    private long unsafeOffset(long offset, int size) {
+        // keep the contiguous case a plain addition so that field access
+        // doesn't pay for the columnar address computation
+        return (stride == 1) ? this.offset + offset : columnarOffset(offset, size);
+    }
+
+    private long columnarOffset(long offset, int size) {
+        return this.offset + offset * stride + row * size;
+    }
+
+    // for bulk operations over contiguous storage only
     private long unsafeOffset(long offset) {
-        return Unsafe.ARRAY_BYTE_BASE_OFFSET + this.offset + offset;
+        return this.offset + offset;
     }
 
     private long unsafeOffset() {
-        return Unsafe.ARRAY_BYTE_BASE_OFFSET + this.offset;
+        return this.offset;
+    }
+
+    /**
+     * @return true if this and given {@code other} share the same storage
+     */
+    final boolean sameStorage(Packed other) {
+        return (target != null)
+            ? target == other.target
+            : memory != null && memory == other.memory;
+    }
+
+    private void checkContiguous() {
+        if (stride != 1) {
+            throw new UnsupportedOperationException(
+                "Bulk operation on a view of " + PackedColumnArray.class.getSimpleName() + " element");
+        }
+    }
+
+    /**
+     * Atomically sets an int at given offset if it is {@code expected}.
+     *
+     * @throws IllegalStateException if the int is not aligned
+     */
+    final boolean compareAndSwapIntU(long offset, int expected, int i) {
+        long o = checkAligned(unsafeOffset(offset, 4), 4);
+        return U.compareAndSwapInt(target, o, expected, i);
+    }
+
+    /**
+     * Atomically sets a long at given offset if it is {@code expected}.
+     *
+     * @throws IllegalStateException if the long is not aligned
+     */
+    final boolean compareAndSwapLongU(long offset, long expected, long l) {
+        long o = checkAligned(unsafeOffset(offset, 8), 8);
+        return U.compareAndSwapLong(target, o, expected, l);
+    }
+
+    /**
+     * Reads an int at given offset with volatile semantics.
+     *
+     * @throws IllegalStateException if the int is not aligned
+     */
+    final int getIntVolatileU(long offset) {
+        long o = checkAligned(unsafeOffset(offset, 4), 4);
+        return U.getIntVolatile(target, o);
+    }
+
+    /**
+     * Writes an int at given offset with release semantics (an ordered store).
+     *
+     * @throws IllegalStateException if the int is not aligned
+     */
+    final void putIntReleaseU(long offset, int i) {
+        long o = checkAligned(unsafeOffset(offset, 4), 4);
+        U.putOrderedInt(target, o, i);
+    }
+
+    /**
+     * Atomically adds {@code delta} to an int at given offset.
+     *
+     * @return the previous value
+     * @throws IllegalStateException if the int is not aligned
+     */
+    final int getAndAddIntU(long offset, int delta) {
+        long o = checkAligned(unsafeOffset(offset, 4), 4);
+        return U.getAndAddInt(target, o, delta);
+    }
+
+    /**
+     * Atomically sets an int at given offset.
+     *
+     * @return the previous value
+     * @throws IllegalStateException if the int is not aligned
+     */
+    final int getAndSetIntU(long offset, int i) {
+        long o = checkAligned(unsafeOffset(offset, 4), 4);
+        return U.getAndSetInt(target, o, i);
+    }
+
+    /**
+     * Reads a long at given offset with volatile semantics.
+     *
+     * @throws IllegalStateException if the long is not aligned
+     */
+    final long getLongVolatileU(long offset) {
+        long o = checkAligned(unsafeOffset(offset, 8), 8);
+        return U.getLongVolatile(target, o);
+    }
+
+    /**
+     * Writes a long at given offset with release semantics (an ordered store).
+     *
+     * @throws IllegalStateException if the long is not aligned
+     */
+    final void putLongReleaseU(long offset, long l) {
+        long o = checkAligned(unsafeOffset(offset, 8), 8);
+        U.putOrderedLong(target, o, l);
+    }
+
+    /**
+     * Atomically adds {@code delta} to a long at given offset.
+     *
+     * @return the previous value
+     * @throws IllegalStateException if the long is not aligned
+     */
+    final long getAndAddLongU(long offset, long delta) {
+        long o = checkAligned(unsafeOffset(offset, 8), 8);
+        return U.getAndAddLong(target, o, delta);
+    }
+
+    /**
+     * Atomically sets a long at given offset.
+     *
+     * @return the previous value
+     * @throws IllegalStateException if the long is not aligned
+     */
+    final long getAndSetLongU(long offset, long l) {
+        long o = checkAligned(unsafeOffset(offset, 8), 8);
+        return U.getAndSetLong(target, o, l);
+    }
+
+    // heap storage is allocated 8-byte aligned just like off-heap memory (see
+    // HEAP_PADDING), but wrapped external bytes may be unaligned
+    private static long checkAligned(long unsafeOffset, int size) {
+        if ((unsafeOffset & (size - 1)) != 0) {
+            throw new IllegalStateException("Atomic access to unaligned memory");
+        }
+        return unsafeOffset;
     }
 
     final boolean getBooleanU(long offset) {
-        return U.getBoolean(target, unsafeOffset(offset));
+        return U.getBoolean(target, unsafeOffset(offset, 1));
     }
 
     final void putBooleanU(long offset, boolean b) {
-        U.putBoolean(target, unsafeOffset(offset), b);
+        U.putBoolean(target, unsafeOffset(offset, 1), b);
     }
 
     final byte getByteU(long offset) {
-        return U.getByte(target, unsafeOffset(offset));
+        return U.getByte(target, unsafeOffset(offset, 1));
     }
 
     final void putByteU(long offset, byte b) {
-        U.putByte(target, unsafeOffset(offset), b);
+        U.putByte(target, unsafeOffset(offset, 1), b);
     }
 
     final char getCharU(long offset) {
-        return U.getChar(target, unsafeOffset(offset));
+        return U.getChar(target, unsafeOffset(offset, 2));
     }
 
     final void putCharU(long offset, char c) {
-        U.putChar(target, unsafeOffset(offset), c);
+        U.putChar(target, unsafeOffset(offset, 2), c);
     }
 
     final short getShortU(long offset) {
-        return U.getShort(target, unsafeOffset(offset));
+        return U.getShort(target, unsafeOffset(offset, 2));
     }
 
     final void putShortU(long offset, short i) {
-        U.putShort(target, unsafeOffset(offset), i);
+        U.putShort(target, unsafeOffset(offset, 2), i);
     }
 
     final int getIntU(long offset) {
-        return U.getInt(target, unsafeOffset(offset));
+        return U.getInt(target, unsafeOffset(offset, 4));
     }
 
     final void putIntU(long offset, int i) {
-        U.putInt(target, unsafeOffset(offset), i);
+        U.putInt(target, unsafeOffset(offset, 4), i);
     }
 
     final long getLongU(long offset) {
-        return U.getLong(target, unsafeOffset(offset));
+        return U.getLong(target, unsafeOffset(offset, 8));
     }
 
     final void putLongU(long offset, long l) {
-        U.putLong(target, unsafeOffset(offset), l);
+        U.putLong(target, unsafeOffset(offset, 8), l);
     }
 
     final float getFloatU(long offset) {
-        return U.getFloat(target, unsafeOffset(offset));
+        return U.getFloat(target, unsafeOffset(offset, 4));
     }
 
     final void putFloatU(long offset, float v) {
-        U.putFloat(target, unsafeOffset(offset), v);
+        U.putFloat(target, unsafeOffset(offset, 4), v);
     }
 
     final double getDoubleU(long offset) {
-        return U.getDouble(target, unsafeOffset(offset));
+        return U.getDouble(target, unsafeOffset(offset, 8));
     }
 
     final void putDoubleU(long offset, double v) {
-        U.putDouble(target, unsafeOffset(offset), v);
+        U.putDouble(target, unsafeOffset(offset, 8), v);
     }
 
     // copyFrom support
 
     final void copyFromU(Packed source, long targetOffset, long targetSize) {
-        U.copyMemory(source.target, source.unsafeOffset(),
-            this.target, this.unsafeOffset(targetOffset), targetSize);
+        if (this.stride == 1 && source.stride == 1) {
+            U.copyMemory(source.target, source.unsafeOffset(),
+                this.target, this.unsafeOffset(targetOffset), targetSize);
+        } else {
+            copyLeavesU(source, 0, targetOffset, source.type().leaves(source.size), targetSize);
+        }
+    }
+
+    /**
+     * Copies leaf fields of given layout (up to given {@code size}) from given
+     * {@code source} at {@code sourceOffset} to this at {@code targetOffset}
+     * one by one, so either of them can be a view of a columnar array element.
+     */
+    final void copyLeavesU(Packed source, long sourceOffset, long targetOffset, int[] leaves, long size) {
+        for (int i = 0; i < leaves.length && leaves[i] < size; i += 2) {
+            int offset = leaves[i], leafSize = leaves[i + 1];
+            U.copyMemory(source.target, source.unsafeOffset(sourceOffset + offset, leafSize),
+                this.target, this.unsafeOffset(targetOffset + offset, leafSize), leafSize);
+        }
+    }
+
+    // bulk transfer support (Unsafe.copyMemory handles overlapping ranges like memmove)
+
+    final void copyFromU(Packed source, long sourceOffset, long targetOffset, long size) {
+        this.checkContiguous();
+        source.checkContiguous();
+        U.copyMemory(source.target, source.unsafeOffset(sourceOffset),
+            this.target, this.unsafeOffset(targetOffset), size);
+    }
+
+    final void copyFromArrayU(Object array, long arrayOffset, long targetOffset, long size) {
+        checkContiguous();
+        U.copyMemory(array, arrayOffset, this.target, this.unsafeOffset(targetOffset), size);
+    }
+
+    final void copyToArrayU(long sourceOffset, Object array, long arrayOffset, long size) {
+        checkContiguous();
+        U.copyMemory(this.target, this.unsafeOffset(sourceOffset), array, arrayOffset, size);
+    }
+
+    final void setMemoryU(long offset, long size, byte value) {
+        checkContiguous();
+        U.setMemory(this.target, this.unsafeOffset(offset), size, value);
+    }
+
+    /**
+     * Replicates the {@code elementSize} bytes at given {@code offset} to fill
+     * the whole range of {@code size} bytes starting at the same offset
+     * by doubling the copied region in each step.
+     */
+    final void replicateU(long offset, long elementSize, long size) {
+        checkContiguous();
+        for (long filled = elementSize; filled < size; filled <<= 1) {
+            U.copyMemory(this.target, this.unsafeOffset(offset),
+                this.target, this.unsafeOffset(offset + filled), Math.min(filled, size - filled));
+        }
     }
 
     // Unsafe machinery
 
+    /**
+     * @return the absolute address of the 1st byte of given direct {@code buffer}
+     */
+    static long addressOf(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Not a direct buffer");
+        }
+        return U.getLong(buffer, BUFFER_ADDRESS);
+    }
+
+    /**
+     * @return a new byte[] for heap storage of given {@code size} starting at
+     * {@link #HEAP_BASE_OFFSET}
+     */
+    static byte[] newHeapStorage(long size) {
+        return new byte[HEAP_PADDING + (int) size];
+    }
+
+    // byte[] objects are 8-byte aligned, but the base offset of their elements
+    // need not be (e.g. with compact object headers or without compressed
+    // class pointers). Heap storage starts after padding that aligns it to 8
+    // bytes, so that atomic access to aligned fields works as off-heap
+    static final int HEAP_PADDING = -Unsafe.ARRAY_BYTE_BASE_OFFSET & 7;
+    static final long HEAP_BASE_OFFSET = Unsafe.ARRAY_BYTE_BASE_OFFSET + HEAP_PADDING;
+
     static final Unsafe U;
-    private static final long TARGET, OFFSET, SIZE;
+    private static final long TARGET, OFFSET, SIZE, MEMORY, STRIDE, ROW, BUFFER_ADDRESS;
 
     static {
         try {
@@ -249,6 +839,14 @@ abstract class Packed {
                 Packed.class.getDeclaredField("offset"));
             SIZE = U.objectFieldOffset(
                 Packed.class.getDeclaredField("size"));
+            MEMORY = U.objectFieldOffset(
+                Packed.class.getDeclaredField("memory"));
+            STRIDE = U.objectFieldOffset(
+                Packed.class.getDeclaredField("stride"));
+            ROW = U.objectFieldOffset(
+                Packed.class.getDeclaredField("row"));
+            BUFFER_ADDRESS = U.objectFieldOffset(
+                Buffer.class.getDeclaredField("address"));
         } catch (Exception e) {
             throw new InternalError(e);
         }
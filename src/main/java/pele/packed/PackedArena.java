@@ -0,0 +1,235 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import sun.misc.Unsafe;
+
+import java.util.ArrayList;
+
+/**
+ * PackedArena allocates "zero" PackedObject(s) and PackedArray(s) out of
+ * large shared heap slabs by bumping a pointer, so short-lived packed
+ * temporaries don't each allocate their own {@code byte[]}. Only the view
+ * object itself is allocated per instance (and may be eliminated by escape
+ * analysis).
+ * <p>
+ * Allocations are released in bulk. A {@link Scope} opened with
+ * {@link #openScope()} rewinds the arena to the point where it was opened
+ * when it is closed, which takes constant time regardless of the number of
+ * allocations, and {@link #reset()} rewinds the whole arena. Slabs are kept
+ * for reuse by later allocations until the arena is {@link #close() closed}.
+ * Instances allocated after a rewind reuse the storage of instances
+ * allocated before it, so such instances must not be used after they are
+ * released. Since slabs are ordinary heap arrays, doing so is memory-safe,
+ * but the stale instances alias newer ones.
+ * <p>
+ * Arenas are not thread-safe. {@link #scratch()} returns an arena confined
+ * to the current thread:
+ * <pre>{@code
+ * PackedArena arena = PackedArena.scratch();
+ * try (PackedArena.Scope scope = arena.openScope()) {
+ *     Point p = arena.allocate(Point.class);
+ *     ...
+ * }
+ * }</pre>
+ */
+public final class PackedArena implements AutoCloseable {
+
+    /**
+     * The size of slabs of arenas when it is not explicitly specified.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 1 << 16;
+
+    private static final ThreadLocal<PackedArena> SCRATCH = ThreadLocal.withInitial(PackedArena::new);
+
+    /**
+     * @return the scratch arena of the current thread
+     */
+    public static PackedArena scratch() {
+        return SCRATCH.get();
+    }
+
+    private final int slabSize;
+    private final ArrayList<byte[]> slabs = new ArrayList<>();
+    // the allocation pointer: the index of the current slab and the position
+    // of the next free byte in it. Initially there is no current slab and no
+    // free space, so the 1st allocation takes slab 0
+    private int slabIndex = -1;
+    private int position;
+
+    /**
+     * Constructs an arena with slabs of {@link #DEFAULT_SLAB_SIZE} bytes.
+     */
+    public PackedArena() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Constructs an arena with slabs of given size. Instances larger than
+     * the slab size are allocated separately.
+     *
+     * @param slabSize the size of slabs in bytes
+     */
+    public PackedArena(int slabSize) {
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("Slab size must be positive: " + slabSize);
+        }
+        this.slabSize = slabSize;
+        this.position = slabSize;
+    }
+
+    /**
+     * @return the size of slabs of this arena in bytes
+     */
+    public int slabSize() {
+        return slabSize;
+    }
+
+    /**
+     * Allocates a "zero" packed object of given class in this arena.
+     *
+     * @param clazz the class of the packed object
+     * @return a new zero packed object
+     * @throws IllegalArgumentException if {@code clazz} is abstract
+     */
+    public <T extends PackedObject> T allocate(Class<T> clazz) {
+        PackedClass<T> type = PackedClass.forClass(clazz);
+        type.checkInstantiable(false);
+        return allocateU(clazz, type.getSize(), type.getAlignment());
+    }
+
+    /**
+     * Allocates a copy of given packed object in this arena.
+     *
+     * @param source the packed object to copy
+     * @return a new packed object of the same class and content as {@code source}
+     */
+    public <T extends PackedObject> T allocateCopy(T source) {
+        @SuppressWarnings("unchecked")
+        PackedClass<T> type = (PackedClass<T>) source.type();
+        T copy = allocateU(type.asClass(), type.getSize(), type.getAlignment());
+        copy.copyFromU(source, 0, type.getSize());
+        return copy;
+    }
+
+    /**
+     * Allocates a "zero" packed array of given type and length in this arena.
+     *
+     * @param arrayType the type of the packed array with component type
+     * @param length    the length of the packed array
+     * @return a new zero packed array
+     * @throws IllegalArgumentException if {@code arrayType} doesn't have a
+     *                                  component type or {@code length} is negative
+     */
+    public <PA extends PackedArray<?>> PA allocateArray(PackedClass<PA> arrayType, int length) {
+        arrayType.checkInstantiable(true);
+        PA array = allocateU(arrayType.asClass(),
+            arrayType.arraySize(PackedArray.checkLength(length)), arrayType.getAlignment());
+        array.initLengthAndType(length, arrayType);
+        return array;
+    }
+
+    /**
+     * Allocates a "zero" packed array of packed objects of given component
+     * class and length in this arena.
+     *
+     * @param componentClass the class of elements
+     * @param length         the length of the packed array
+     * @return a new zero packed array
+     */
+    public <CT extends PackedObject> PackedArray.OfObject<CT> allocateArray(Class<CT> componentClass, int length) {
+        return allocateArray(PackedArray.OfObject.typeWithComponent(componentClass), length);
+    }
+
+    /**
+     * Opens a scope that releases everything allocated in this arena after
+     * it was opened when it is closed. Scopes can be nested and must be
+     * closed in reverse order of opening.
+     *
+     * @return a new scope
+     */
+    public Scope openScope() {
+        return new Scope(this, slabIndex, position);
+    }
+
+    /**
+     * Releases all instances allocated in this arena. The slabs are kept
+     * for reuse.
+     */
+    public void reset() {
+        slabIndex = -1;
+        position = slabSize;
+    }
+
+    /**
+     * Releases all instances allocated in this arena together with its
+     * slabs. The arena can still be used afterwards and allocates new slabs
+     * when needed.
+     */
+    @Override
+    public void close() {
+        reset();
+        slabs.clear();
+        slabs.trimToSize();
+    }
+
+    private <P extends Packed> P allocateU(Class<P> clazz, int size, int alignment) {
+        if (size > slabSize) {
+            return Packed.wrapU(clazz, Packed.newHeapStorage(size), Packed.HEAP_PADDING, size);
+        }
+        int pos = PackedField.align(position, alignment);
+        if (slabIndex < 0 || pos > slabSize - size) {
+            if (++slabIndex == slabs.size()) {
+                slabs.add(Packed.newHeapStorage(slabSize));
+            }
+            pos = 0;
+        }
+        byte[] slab = slabs.get(slabIndex);
+        position = pos + size;
+        // slabs are reused after rewinding, so allocations must be cleared
+        U.setMemory(slab, Packed.HEAP_BASE_OFFSET + pos, size, (byte) 0);
+        return Packed.wrapU(clazz, slab, Packed.HEAP_PADDING + pos, size);
+    }
+
+    /**
+     * A scope of allocations in a {@link PackedArena}, which releases them
+     * when it is closed.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final PackedArena arena;
+        private final int slabIndex;
+        private final int position;
+        private boolean closed;
+
+        Scope(PackedArena arena, int slabIndex, int position) {
+            this.arena = arena;
+            this.slabIndex = slabIndex;
+            this.position = position;
+        }
+
+        /**
+         * Rewinds the arena to the point where this scope was opened.
+         * Closing a scope more than once has no effect.
+         *
+         * @throws IllegalStateException if an enclosing scope has already
+         *                               been closed or the arena was reset
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (slabIndex > arena.slabIndex ||
+                (slabIndex == arena.slabIndex && position > arena.position)) {
+                throw new IllegalStateException("Scope closed after the arena was rewound past it");
+            }
+            arena.slabIndex = slabIndex;
+            arena.position = position;
+        }
+    }
+
+    private static final Unsafe U = Packed.U;
+}
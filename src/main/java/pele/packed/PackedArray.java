@@ -4,10 +4,29 @@
  */
 package pele.packed;
 
+import pele.packed.PackedField.pfDouble;
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedField.pfLong;
+import sun.misc.Unsafe;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * PackedArray is an array of primitives or PackedObject(s).
  */
-public abstract class PackedArray<CT> extends Packed {
+public abstract class PackedArray<CT> extends Packed implements Iterable<CT> {
 
     private final int length;
 
@@ -15,7 +34,14 @@ public abstract class PackedArray<CT> extends Packed {
      * Constructor for "zero" PackedArray(s)
      */
     PackedArray(PackedClass<? extends PackedArray<CT>> arrayType, int length) {
-        super(arrayType.arraySize(checkLength(length)));
+        this(arrayType, length, false);
+    }
+
+    /**
+     * Constructor for "zero" PackedArray(s) allocated on heap or off-heap
+     */
+    PackedArray(PackedClass<? extends PackedArray<CT>> arrayType, int length, boolean direct) {
+        super(arrayType.arraySize(checkLength(length)), direct);
         this.length = length;
     }
 
@@ -122,6 +148,95 @@ public abstract class PackedArray<CT> extends Packed {
         return getArrayCopyU(type(), indexScale * from, to - from);
     }
 
+    /**
+     * Copies a range of elements from given {@code src} packed array of the
+     * same type to this packed array with a single range check and a bulk
+     * memory copy. The ranges may overlap if {@code src} is this array or
+     * a view of the same storage, in which case the copy is performed as if
+     * through a temporary buffer.
+     *
+     * @param src      the source packed array
+     * @param srcIndex the index of the 1st element in the source array
+     * @param dstIndex the index of the 1st element in this array
+     * @param length   the number of elements to copy
+     * @throws ClassCastException             if {@code src} is not of the same
+     *                                        type as this array
+     * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+     */
+    public void copyFrom(PackedArray<CT> src, int srcIndex, int dstIndex, int length) {
+        if (src.type() != type()) {
+            throw new ClassCastException(
+                "Can't copy from array of different type - target type: " +
+                    type() + ", source type: " + src.type());
+        }
+        src.checkRange(srcIndex, length);
+        checkRange(dstIndex, length);
+        int indexScale = type().getComponentType().getIndexScale();
+        copyFromU(src, (long) srcIndex * indexScale, (long) dstIndex * indexScale,
+            type().arraySize(length));
+    }
+
+    /**
+     * Copies a range of elements of this packed array to another position
+     * within this packed array (memmove-style). The ranges may overlap.
+     *
+     * @param srcIndex the index of the 1st element to copy
+     * @param dstIndex the index of the 1st element to copy to
+     * @param length   the number of elements to copy
+     * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+     */
+    public void copyWithin(int srcIndex, int dstIndex, int length) {
+        copyFrom(this, srcIndex, dstIndex, length);
+    }
+
+    /**
+     * Returns an iterator over elements of this array as returned by
+     * {@link #get(int)}.
+     *
+     * @return an iterator over elements of this array
+     */
+    @Override
+    public Iterator<CT> iterator() {
+        return new Iterator<CT>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < length;
+            }
+
+            @Override
+            public CT next() {
+                if (index >= length) {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+        };
+    }
+
+    /**
+     * Returns a spliterator over elements of this array as returned by
+     * {@link #get(int)}. The spliterator splits the range of indexes in halves
+     * and reports {@link Spliterator#SIZED} and {@link Spliterator#SUBSIZED}
+     * characteristics.
+     *
+     * @return a spliterator over elements of this array
+     */
+    @Override
+    public Spliterator<CT> spliterator() {
+        return new PackedSpliterators.OfElements<>(this, 0, length);
+    }
+
+    /**
+     * @return a sequential stream of elements of this array as returned by
+     * {@link #get(int)}. Use {@link Stream#parallel()} to obtain a parallel
+     * stream.
+     */
+    public Stream<CT> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
     /**
      * Returns a {@code String} representation of the contents of the array.
      * The format is equivalent to what is returned by
@@ -163,6 +278,17 @@ public abstract class PackedArray<CT> extends Packed {
         return index;
     }
 
+    void checkRange(int index, int length) {
+        checkRange(this.length, index, length);
+    }
+
+    static void checkRange(int arrayLength, int index, int length) {
+        if (index < 0 || length < 0 || index > arrayLength - length) {
+            throw new ArrayIndexOutOfBoundsException(
+                "Range [" + index + ", " + index + " + " + length + ") out of bounds for length " + arrayLength);
+        }
+    }
+
     void checkRangeIndexes(int from, int to) {
         if (from < 0 || from > length()) {
             throw new ArrayIndexOutOfBoundsException("'from' index out of range: " + from);
@@ -176,8 +302,8 @@ public abstract class PackedArray<CT> extends Packed {
     }
 
     static abstract class OfPrimitive<CT> extends PackedArray<CT> {
-        OfPrimitive(PackedClass<? extends OfPrimitive<CT>> arrayType, int length) {
-            super(arrayType, length);
+        OfPrimitive(PackedClass<? extends OfPrimitive<CT>> arrayType, int length, boolean direct) {
+            super(arrayType, length, direct);
         }
     }
 
@@ -186,7 +312,20 @@ public abstract class PackedArray<CT> extends Packed {
             = PackedClass.forClass(OfBoolean.class).withComponent(boolean.class);
 
         public OfBoolean(int length) {
-            super(TYPE, length);
+            super(TYPE, length, false);
+        }
+
+        private OfBoolean(int length, boolean direct) {
+            super(TYPE, length, direct);
+        }
+
+        /**
+         * Allocates a "zero" packed array of given {@code length} in off-heap memory.
+         *
+         * @see #isDirect()
+         */
+        public static OfBoolean allocateDirect(int length) {
+            return new OfBoolean(length, true);
         }
 
         public boolean getBoolean(int index) {
@@ -198,6 +337,45 @@ public abstract class PackedArray<CT> extends Packed {
             return value;
         }
 
+        /**
+         * Copies {@code length} elements from given {@code src} array starting
+         * at {@code srcPos} to this packed array starting at {@code dstIndex}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyFrom(boolean[] src, int srcPos, int dstIndex, int length) {
+            checkRange(src.length, srcPos, length);
+            checkRange(dstIndex, length);
+            copyFromArrayU(src, Unsafe.ARRAY_BOOLEAN_BASE_OFFSET + ((long) srcPos),
+                (long) dstIndex, (long) length);
+        }
+
+        /**
+         * Copies {@code length} elements from this packed array starting at
+         * {@code srcIndex} to given {@code dst} array starting at {@code dstPos}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyTo(int srcIndex, boolean[] dst, int dstPos, int length) {
+            checkRange(srcIndex, length);
+            checkRange(dst.length, dstPos, length);
+            copyToArrayU((long) srcIndex, dst, Unsafe.ARRAY_BOOLEAN_BASE_OFFSET + ((long) dstPos),
+                (long) length);
+        }
+
+        /**
+         * Sets elements in range {@code [from, to)} to given {@code value}.
+         *
+         * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+         * @throws IllegalArgumentException       if {@code from > to}
+         */
+        public void fill(int from, int to, boolean value) {
+            checkRangeIndexes(from, to);
+            setMemoryU(from, to - from, (byte) (value ? 1 : 0));
+        }
+
         @Override
         public PackedClass<OfBoolean> type() {
             return TYPE;
@@ -229,7 +407,20 @@ public abstract class PackedArray<CT> extends Packed {
             = PackedClass.forClass(OfByte.class).withComponent(byte.class);
 
         public OfByte(int length) {
-            super(TYPE, length);
+            super(TYPE, length, false);
+        }
+
+        private OfByte(int length, boolean direct) {
+            super(TYPE, length, direct);
+        }
+
+        /**
+         * Allocates a "zero" packed array of given {@code length} in off-heap memory.
+         *
+         * @see #isDirect()
+         */
+        public static OfByte allocateDirect(int length) {
+            return new OfByte(length, true);
         }
 
         public byte getByte(int index) {
@@ -241,6 +432,45 @@ public abstract class PackedArray<CT> extends Packed {
             return value;
         }
 
+        /**
+         * Copies {@code length} elements from given {@code src} array starting
+         * at {@code srcPos} to this packed array starting at {@code dstIndex}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyFrom(byte[] src, int srcPos, int dstIndex, int length) {
+            checkRange(src.length, srcPos, length);
+            checkRange(dstIndex, length);
+            copyFromArrayU(src, Unsafe.ARRAY_BYTE_BASE_OFFSET + ((long) srcPos),
+                (long) dstIndex, (long) length);
+        }
+
+        /**
+         * Copies {@code length} elements from this packed array starting at
+         * {@code srcIndex} to given {@code dst} array starting at {@code dstPos}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyTo(int srcIndex, byte[] dst, int dstPos, int length) {
+            checkRange(srcIndex, length);
+            checkRange(dst.length, dstPos, length);
+            copyToArrayU((long) srcIndex, dst, Unsafe.ARRAY_BYTE_BASE_OFFSET + ((long) dstPos),
+                (long) length);
+        }
+
+        /**
+         * Sets elements in range {@code [from, to)} to given {@code value}.
+         *
+         * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+         * @throws IllegalArgumentException       if {@code from > to}
+         */
+        public void fill(int from, int to, byte value) {
+            checkRangeIndexes(from, to);
+            setMemoryU(from, to - from, value);
+        }
+
         @Override
         public PackedClass<OfByte> type() {
             return TYPE;
@@ -272,7 +502,20 @@ public abstract class PackedArray<CT> extends Packed {
             = PackedClass.forClass(OfChar.class).withComponent(char.class);
 
         public OfChar(int length) {
-            super(TYPE, length);
+            super(TYPE, length, false);
+        }
+
+        private OfChar(int length, boolean direct) {
+            super(TYPE, length, direct);
+        }
+
+        /**
+         * Allocates a "zero" packed array of given {@code length} in off-heap memory.
+         *
+         * @see #isDirect()
+         */
+        public static OfChar allocateDirect(int length) {
+            return new OfChar(length, true);
         }
 
         public char getChar(int index) {
@@ -284,6 +527,48 @@ public abstract class PackedArray<CT> extends Packed {
             return value;
         }
 
+        /**
+         * Copies {@code length} elements from given {@code src} array starting
+         * at {@code srcPos} to this packed array starting at {@code dstIndex}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyFrom(char[] src, int srcPos, int dstIndex, int length) {
+            checkRange(src.length, srcPos, length);
+            checkRange(dstIndex, length);
+            copyFromArrayU(src, Unsafe.ARRAY_CHAR_BASE_OFFSET + ((long) srcPos << 1),
+                (long) dstIndex << 1, (long) length << 1);
+        }
+
+        /**
+         * Copies {@code length} elements from this packed array starting at
+         * {@code srcIndex} to given {@code dst} array starting at {@code dstPos}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyTo(int srcIndex, char[] dst, int dstPos, int length) {
+            checkRange(srcIndex, length);
+            checkRange(dst.length, dstPos, length);
+            copyToArrayU((long) srcIndex << 1, dst, Unsafe.ARRAY_CHAR_BASE_OFFSET + ((long) dstPos << 1),
+                (long) length << 1);
+        }
+
+        /**
+         * Sets elements in range {@code [from, to)} to given {@code value}.
+         *
+         * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+         * @throws IllegalArgumentException       if {@code from > to}
+         */
+        public void fill(int from, int to, char value) {
+            checkRangeIndexes(from, to);
+            if (from < to) {
+                putCharU((long) from << 1, value);
+                replicateU((long) from << 1, 2, (long) (to - from) << 1);
+            }
+        }
+
         @Override
         public PackedClass<OfChar> type() {
             return TYPE;
@@ -315,7 +600,20 @@ public abstract class PackedArray<CT> extends Packed {
             = PackedClass.forClass(OfShort.class).withComponent(short.class);
 
         public OfShort(int length) {
-            super(TYPE, length);
+            super(TYPE, length, false);
+        }
+
+        private OfShort(int length, boolean direct) {
+            super(TYPE, length, direct);
+        }
+
+        /**
+         * Allocates a "zero" packed array of given {@code length} in off-heap memory.
+         *
+         * @see #isDirect()
+         */
+        public static OfShort allocateDirect(int length) {
+            return new OfShort(length, true);
         }
 
         public short getShort(int index) {
@@ -327,6 +625,48 @@ public abstract class PackedArray<CT> extends Packed {
             return value;
         }
 
+        /**
+         * Copies {@code length} elements from given {@code src} array starting
+         * at {@code srcPos} to this packed array starting at {@code dstIndex}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyFrom(short[] src, int srcPos, int dstIndex, int length) {
+            checkRange(src.length, srcPos, length);
+            checkRange(dstIndex, length);
+            copyFromArrayU(src, Unsafe.ARRAY_SHORT_BASE_OFFSET + ((long) srcPos << 1),
+                (long) dstIndex << 1, (long) length << 1);
+        }
+
+        /**
+         * Copies {@code length} elements from this packed array starting at
+         * {@code srcIndex} to given {@code dst} array starting at {@code dstPos}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyTo(int srcIndex, short[] dst, int dstPos, int length) {
+            checkRange(srcIndex, length);
+            checkRange(dst.length, dstPos, length);
+            copyToArrayU((long) srcIndex << 1, dst, Unsafe.ARRAY_SHORT_BASE_OFFSET + ((long) dstPos << 1),
+                (long) length << 1);
+        }
+
+        /**
+         * Sets elements in range {@code [from, to)} to given {@code value}.
+         *
+         * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+         * @throws IllegalArgumentException       if {@code from > to}
+         */
+        public void fill(int from, int to, short value) {
+            checkRangeIndexes(from, to);
+            if (from < to) {
+                putShortU((long) from << 1, value);
+                replicateU((long) from << 1, 2, (long) (to - from) << 1);
+            }
+        }
+
         @Override
         public PackedClass<OfShort> type() {
             return TYPE;
@@ -358,7 +698,20 @@ public abstract class PackedArray<CT> extends Packed {
             = PackedClass.forClass(OfInt.class).withComponent(int.class);
 
         public OfInt(int length) {
-            super(TYPE, length);
+            super(TYPE, length, false);
+        }
+
+        private OfInt(int length, boolean direct) {
+            super(TYPE, length, direct);
+        }
+
+        /**
+         * Allocates a "zero" packed array of given {@code length} in off-heap memory.
+         *
+         * @see #isDirect()
+         */
+        public static OfInt allocateDirect(int length) {
+            return new OfInt(length, true);
         }
 
         public int getInt(int index) {
@@ -370,6 +723,191 @@ public abstract class PackedArray<CT> extends Packed {
             return value;
         }
 
+        /**
+         * Reads the element at given {@code index} with volatile semantics.
+         *
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public int getIntVolatile(int index) {
+            return getIntVolatileU(checkIndex(index) << 2);
+        }
+
+        /**
+         * Sets the element at given {@code index} with release semantics, so
+         * writes that precede it are visible to threads reading it with
+         * {@link #getIntVolatile}.
+         *
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public int setIntRelease(int index, int value) {
+            putIntReleaseU(checkIndex(index) << 2, value);
+            return value;
+        }
+
+        /**
+         * Atomically sets the element at given {@code index} to {@code value}
+         * if it is {@code expected}.
+         *
+         * @return {@code true} if successful
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public boolean compareAndSetInt(int index, int expected, int value) {
+            return compareAndSwapIntU(checkIndex(index) << 2, expected, value);
+        }
+
+        /**
+         * Atomically adds {@code delta} to the element at given {@code index}.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public int getAndAddInt(int index, int delta) {
+            return getAndAddIntU(checkIndex(index) << 2, delta);
+        }
+
+        /**
+         * Atomically sets the element at given {@code index} to {@code value}.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public int getAndSetInt(int index, int value) {
+            return getAndSetIntU(checkIndex(index) << 2, value);
+        }
+
+        /**
+         * Copies {@code length} elements from given {@code src} array starting
+         * at {@code srcPos} to this packed array starting at {@code dstIndex}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyFrom(int[] src, int srcPos, int dstIndex, int length) {
+            checkRange(src.length, srcPos, length);
+            checkRange(dstIndex, length);
+            copyFromArrayU(src, Unsafe.ARRAY_INT_BASE_OFFSET + ((long) srcPos << 2),
+                (long) dstIndex << 2, (long) length << 2);
+        }
+
+        /**
+         * Copies {@code length} elements from this packed array starting at
+         * {@code srcIndex} to given {@code dst} array starting at {@code dstPos}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyTo(int srcIndex, int[] dst, int dstPos, int length) {
+            checkRange(srcIndex, length);
+            checkRange(dst.length, dstPos, length);
+            copyToArrayU((long) srcIndex << 2, dst, Unsafe.ARRAY_INT_BASE_OFFSET + ((long) dstPos << 2),
+                (long) length << 2);
+        }
+
+        /**
+         * Sets elements in range {@code [from, to)} to given {@code value}.
+         *
+         * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+         * @throws IllegalArgumentException       if {@code from > to}
+         */
+        public void fill(int from, int to, int value) {
+            checkRangeIndexes(from, to);
+            if (from < to) {
+                putIntU((long) from << 2, value);
+                replicateU((long) from << 2, 4, (long) (to - from) << 2);
+            }
+        }
+
+        /**
+         * Sets all elements using given {@code generator} function to compute
+         * each element from its index.
+         *
+         * @see java.util.Arrays#setAll(int[], IntUnaryOperator)
+         */
+        public void setAll(IntUnaryOperator generator) {
+            for (int i = 0; i < length(); i++) {
+                putIntU((long) i << 2, generator.applyAsInt(i));
+            }
+        }
+
+        /**
+         * Sorts this array into ascending numerical order in place using
+         * radix sort.
+         */
+        public void sort() {
+            if (length() > 1) {
+                PackedSort.radixSort(PackedSort.intKeys(this, 0), length());
+            }
+        }
+
+        /**
+         * Sorts this array into ascending numerical order in place using
+         * parallel quicksort.
+         */
+        public void parallelSort() {
+            if (length() > 1) {
+                PackedSort.parallelQuickSort(PackedSort.intKeys(this, 0), 0, length());
+            }
+        }
+
+        /**
+         * Searches this array, which must be sorted into ascending numerical order,
+         * for given {@code key} using binary search.
+         *
+         * @return the index of the 1st element equal to {@code key} or
+         * {@code (-(insertion point) - 1)} if there is none, where the
+         * insertion point is {@link #lowerBound(int)}
+         * @see java.util.Arrays#binarySearch(int[], int)
+         */
+        public int binarySearch(int key) {
+            return PackedSearch.binarySearch(this, length(), 4, 0, PackedSearch.INT, key);
+        }
+
+        /**
+         * @return the index of the 1st element of this sorted array that is not
+         * less than given {@code key} or {@link #length()} if there is none
+         */
+        public int lowerBound(int key) {
+            return PackedSearch.bound(this, length(), 4, 0, PackedSearch.INT, key, false);
+        }
+
+        /**
+         * @return the index of the 1st element of this sorted array that is
+         * greater than given {@code key} or {@link #length()} if there is none
+         */
+        public int upperBound(int key) {
+            return PackedSearch.bound(this, length(), 4, 0, PackedSearch.INT, key, true);
+        }
+
+        /**
+         * Returns a view of the range of elements of this sorted array that
+         * are not less than {@code fromKey} and less than {@code toKey}.
+         *
+         * @param fromKey the lowest key of the range, inclusive
+         * @param toKey   the highest key of the range, exclusive
+         * @return a view of the range, which is empty if {@code toKey <= fromKey}
+         */
+        public OfInt viewOfKeyRange(int fromKey, int toKey) {
+            int from = lowerBound(fromKey);
+            return viewOfRange(from, Math.max(from, lowerBound(toKey)));
+        }
+
+        /**
+         * @return a spliterator over elements of this array without boxing
+         * @see PackedArray#spliterator()
+         */
+        @Override
+        public Spliterator.OfInt spliterator() {
+            return new PackedSpliterators.OfInts(this, 0, length());
+        }
+
+        /**
+         * @return a sequential {@link IntStream} of elements of this array.
+         * Use {@link IntStream#parallel()} to obtain a parallel stream.
+         */
+        public IntStream intStream() {
+            return StreamSupport.intStream(spliterator(), false);
+        }
+
         @Override
         public PackedClass<OfInt> type() {
             return TYPE;
@@ -401,7 +939,20 @@ public abstract class PackedArray<CT> extends Packed {
             = PackedClass.forClass(OfLong.class).withComponent(long.class);
 
         public OfLong(int length) {
-            super(TYPE, length);
+            super(TYPE, length, false);
+        }
+
+        private OfLong(int length, boolean direct) {
+            super(TYPE, length, direct);
+        }
+
+        /**
+         * Allocates a "zero" packed array of given {@code length} in off-heap memory.
+         *
+         * @see #isDirect()
+         */
+        public static OfLong allocateDirect(int length) {
+            return new OfLong(length, true);
         }
 
         public long getLong(int index) {
@@ -413,6 +964,191 @@ public abstract class PackedArray<CT> extends Packed {
             return value;
         }
 
+        /**
+         * Reads the element at given {@code index} with volatile semantics.
+         *
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public long getLongVolatile(int index) {
+            return getLongVolatileU(checkIndex(index) << 3);
+        }
+
+        /**
+         * Sets the element at given {@code index} with release semantics, so
+         * writes that precede it are visible to threads reading it with
+         * {@link #getLongVolatile}.
+         *
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public long setLongRelease(int index, long value) {
+            putLongReleaseU(checkIndex(index) << 3, value);
+            return value;
+        }
+
+        /**
+         * Atomically sets the element at given {@code index} to {@code value}
+         * if it is {@code expected}.
+         *
+         * @return {@code true} if successful
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public boolean compareAndSetLong(int index, long expected, long value) {
+            return compareAndSwapLongU(checkIndex(index) << 3, expected, value);
+        }
+
+        /**
+         * Atomically adds {@code delta} to the element at given {@code index}.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public long getAndAddLong(int index, long delta) {
+            return getAndAddLongU(checkIndex(index) << 3, delta);
+        }
+
+        /**
+         * Atomically sets the element at given {@code index} to {@code value}.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the element is not aligned
+         */
+        public long getAndSetLong(int index, long value) {
+            return getAndSetLongU(checkIndex(index) << 3, value);
+        }
+
+        /**
+         * Copies {@code length} elements from given {@code src} array starting
+         * at {@code srcPos} to this packed array starting at {@code dstIndex}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyFrom(long[] src, int srcPos, int dstIndex, int length) {
+            checkRange(src.length, srcPos, length);
+            checkRange(dstIndex, length);
+            copyFromArrayU(src, Unsafe.ARRAY_LONG_BASE_OFFSET + ((long) srcPos << 3),
+                (long) dstIndex << 3, (long) length << 3);
+        }
+
+        /**
+         * Copies {@code length} elements from this packed array starting at
+         * {@code srcIndex} to given {@code dst} array starting at {@code dstPos}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyTo(int srcIndex, long[] dst, int dstPos, int length) {
+            checkRange(srcIndex, length);
+            checkRange(dst.length, dstPos, length);
+            copyToArrayU((long) srcIndex << 3, dst, Unsafe.ARRAY_LONG_BASE_OFFSET + ((long) dstPos << 3),
+                (long) length << 3);
+        }
+
+        /**
+         * Sets elements in range {@code [from, to)} to given {@code value}.
+         *
+         * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+         * @throws IllegalArgumentException       if {@code from > to}
+         */
+        public void fill(int from, int to, long value) {
+            checkRangeIndexes(from, to);
+            if (from < to) {
+                putLongU((long) from << 3, value);
+                replicateU((long) from << 3, 8, (long) (to - from) << 3);
+            }
+        }
+
+        /**
+         * Sets all elements using given {@code generator} function to compute
+         * each element from its index.
+         *
+         * @see java.util.Arrays#setAll(long[], IntToLongFunction)
+         */
+        public void setAll(IntToLongFunction generator) {
+            for (int i = 0; i < length(); i++) {
+                putLongU((long) i << 3, generator.applyAsLong(i));
+            }
+        }
+
+        /**
+         * Sorts this array into ascending numerical order in place using
+         * radix sort.
+         */
+        public void sort() {
+            if (length() > 1) {
+                PackedSort.radixSort(PackedSort.longKeys(this, 0), length());
+            }
+        }
+
+        /**
+         * Sorts this array into ascending numerical order in place using
+         * parallel quicksort.
+         */
+        public void parallelSort() {
+            if (length() > 1) {
+                PackedSort.parallelQuickSort(PackedSort.longKeys(this, 0), 0, length());
+            }
+        }
+
+        /**
+         * Searches this array, which must be sorted into ascending numerical order,
+         * for given {@code key} using binary search.
+         *
+         * @return the index of the 1st element equal to {@code key} or
+         * {@code (-(insertion point) - 1)} if there is none, where the
+         * insertion point is {@link #lowerBound(long)}
+         * @see java.util.Arrays#binarySearch(long[], long)
+         */
+        public int binarySearch(long key) {
+            return PackedSearch.binarySearch(this, length(), 8, 0, PackedSearch.LONG, key);
+        }
+
+        /**
+         * @return the index of the 1st element of this sorted array that is not
+         * less than given {@code key} or {@link #length()} if there is none
+         */
+        public int lowerBound(long key) {
+            return PackedSearch.bound(this, length(), 8, 0, PackedSearch.LONG, key, false);
+        }
+
+        /**
+         * @return the index of the 1st element of this sorted array that is
+         * greater than given {@code key} or {@link #length()} if there is none
+         */
+        public int upperBound(long key) {
+            return PackedSearch.bound(this, length(), 8, 0, PackedSearch.LONG, key, true);
+        }
+
+        /**
+         * Returns a view of the range of elements of this sorted array that
+         * are not less than {@code fromKey} and less than {@code toKey}.
+         *
+         * @param fromKey the lowest key of the range, inclusive
+         * @param toKey   the highest key of the range, exclusive
+         * @return a view of the range, which is empty if {@code toKey <= fromKey}
+         */
+        public OfLong viewOfKeyRange(long fromKey, long toKey) {
+            int from = lowerBound(fromKey);
+            return viewOfRange(from, Math.max(from, lowerBound(toKey)));
+        }
+
+        /**
+         * @return a spliterator over elements of this array without boxing
+         * @see PackedArray#spliterator()
+         */
+        @Override
+        public Spliterator.OfLong spliterator() {
+            return new PackedSpliterators.OfLongs(this, 0, length());
+        }
+
+        /**
+         * @return a sequential {@link LongStream} of elements of this array.
+         * Use {@link LongStream#parallel()} to obtain a parallel stream.
+         */
+        public LongStream longStream() {
+            return StreamSupport.longStream(spliterator(), false);
+        }
+
         @Override
         public PackedClass<OfLong> type() {
             return TYPE;
@@ -444,7 +1180,20 @@ public abstract class PackedArray<CT> extends Packed {
             = PackedClass.forClass(OfFloat.class).withComponent(float.class);
 
         public OfFloat(int length) {
-            super(TYPE, length);
+            super(TYPE, length, false);
+        }
+
+        private OfFloat(int length, boolean direct) {
+            super(TYPE, length, direct);
+        }
+
+        /**
+         * Allocates a "zero" packed array of given {@code length} in off-heap memory.
+         *
+         * @see #isDirect()
+         */
+        public static OfFloat allocateDirect(int length) {
+            return new OfFloat(length, true);
         }
 
         public float getFloat(int index) {
@@ -456,6 +1205,48 @@ public abstract class PackedArray<CT> extends Packed {
             return value;
         }
 
+        /**
+         * Copies {@code length} elements from given {@code src} array starting
+         * at {@code srcPos} to this packed array starting at {@code dstIndex}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyFrom(float[] src, int srcPos, int dstIndex, int length) {
+            checkRange(src.length, srcPos, length);
+            checkRange(dstIndex, length);
+            copyFromArrayU(src, Unsafe.ARRAY_FLOAT_BASE_OFFSET + ((long) srcPos << 2),
+                (long) dstIndex << 2, (long) length << 2);
+        }
+
+        /**
+         * Copies {@code length} elements from this packed array starting at
+         * {@code srcIndex} to given {@code dst} array starting at {@code dstPos}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyTo(int srcIndex, float[] dst, int dstPos, int length) {
+            checkRange(srcIndex, length);
+            checkRange(dst.length, dstPos, length);
+            copyToArrayU((long) srcIndex << 2, dst, Unsafe.ARRAY_FLOAT_BASE_OFFSET + ((long) dstPos << 2),
+                (long) length << 2);
+        }
+
+        /**
+         * Sets elements in range {@code [from, to)} to given {@code value}.
+         *
+         * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+         * @throws IllegalArgumentException       if {@code from > to}
+         */
+        public void fill(int from, int to, float value) {
+            checkRangeIndexes(from, to);
+            if (from < to) {
+                putFloatU((long) from << 2, value);
+                replicateU((long) from << 2, 4, (long) (to - from) << 2);
+            }
+        }
+
         @Override
         public PackedClass<OfFloat> type() {
             return TYPE;
@@ -487,7 +1278,20 @@ public abstract class PackedArray<CT> extends Packed {
             = PackedClass.forClass(OfDouble.class).withComponent(double.class);
 
         public OfDouble(int length) {
-            super(TYPE, length);
+            super(TYPE, length, false);
+        }
+
+        private OfDouble(int length, boolean direct) {
+            super(TYPE, length, direct);
+        }
+
+        /**
+         * Allocates a "zero" packed array of given {@code length} in off-heap memory.
+         *
+         * @see #isDirect()
+         */
+        public static OfDouble allocateDirect(int length) {
+            return new OfDouble(length, true);
         }
 
         public double getDouble(int index) {
@@ -499,6 +1303,141 @@ public abstract class PackedArray<CT> extends Packed {
             return value;
         }
 
+        /**
+         * Copies {@code length} elements from given {@code src} array starting
+         * at {@code srcPos} to this packed array starting at {@code dstIndex}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyFrom(double[] src, int srcPos, int dstIndex, int length) {
+            checkRange(src.length, srcPos, length);
+            checkRange(dstIndex, length);
+            copyFromArrayU(src, Unsafe.ARRAY_DOUBLE_BASE_OFFSET + ((long) srcPos << 3),
+                (long) dstIndex << 3, (long) length << 3);
+        }
+
+        /**
+         * Copies {@code length} elements from this packed array starting at
+         * {@code srcIndex} to given {@code dst} array starting at {@code dstPos}
+         * with a single range check and a bulk memory copy.
+         *
+         * @throws ArrayIndexOutOfBoundsException if any of the ranges is out of bounds
+         */
+        public void copyTo(int srcIndex, double[] dst, int dstPos, int length) {
+            checkRange(srcIndex, length);
+            checkRange(dst.length, dstPos, length);
+            copyToArrayU((long) srcIndex << 3, dst, Unsafe.ARRAY_DOUBLE_BASE_OFFSET + ((long) dstPos << 3),
+                (long) length << 3);
+        }
+
+        /**
+         * Sets elements in range {@code [from, to)} to given {@code value}.
+         *
+         * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+         * @throws IllegalArgumentException       if {@code from > to}
+         */
+        public void fill(int from, int to, double value) {
+            checkRangeIndexes(from, to);
+            if (from < to) {
+                putDoubleU((long) from << 3, value);
+                replicateU((long) from << 3, 8, (long) (to - from) << 3);
+            }
+        }
+
+        /**
+         * Sets all elements using given {@code generator} function to compute
+         * each element from its index.
+         *
+         * @see java.util.Arrays#setAll(double[], IntToDoubleFunction)
+         */
+        public void setAll(IntToDoubleFunction generator) {
+            for (int i = 0; i < length(); i++) {
+                putDoubleU((long) i << 3, generator.applyAsDouble(i));
+            }
+        }
+
+        /**
+         * Sorts this array into ascending numerical order in place using
+         * radix sort. Values are ordered as by
+         * {@link Double#compare(double, double)}.
+         */
+        public void sort() {
+            if (length() > 1) {
+                PackedSort.radixSort(PackedSort.doubleKeys(this, 0), length());
+            }
+        }
+
+        /**
+         * Sorts this array into ascending numerical order in place using
+         * parallel quicksort. Values are ordered as by
+         * {@link Double#compare(double, double)}.
+         */
+        public void parallelSort() {
+            if (length() > 1) {
+                PackedSort.parallelQuickSort(PackedSort.doubleKeys(this, 0), 0, length());
+            }
+        }
+
+        /**
+         * Searches this array, which must be sorted into ascending order,
+         * for given {@code key} using binary search.
+         *
+         * @return the index of the 1st element equal to {@code key} or
+         * {@code (-(insertion point) - 1)} if there is none, where the
+         * insertion point is {@link #lowerBound(double)}
+         * @see java.util.Arrays#binarySearch(double[], double)
+         */
+        public int binarySearch(double key) {
+            return PackedSearch.binarySearch(this, length(), 8, 0, PackedSearch.DOUBLE, PackedSearch.sortable(key));
+        }
+
+        /**
+         * @return the index of the 1st element of this sorted array that is not
+         * less than given {@code key} or {@link #length()} if there is none
+         */
+        public int lowerBound(double key) {
+            return PackedSearch.bound(this, length(), 8, 0, PackedSearch.DOUBLE, PackedSearch.sortable(key), false);
+        }
+
+        /**
+         * @return the index of the 1st element of this sorted array that is
+         * greater than given {@code key} or {@link #length()} if there is none
+         */
+        public int upperBound(double key) {
+            return PackedSearch.bound(this, length(), 8, 0, PackedSearch.DOUBLE, PackedSearch.sortable(key), true);
+        }
+
+        /**
+         * Returns a view of the range of elements of this sorted array that
+         * are not less than {@code fromKey} and less than {@code toKey}.
+         *
+         * @param fromKey the lowest key of the range, inclusive
+         * @param toKey   the highest key of the range, exclusive
+         * @return a view of the range, which is empty if {@code toKey <= fromKey}
+         */
+        public OfDouble viewOfKeyRange(double fromKey, double toKey) {
+            int from = lowerBound(fromKey);
+            return viewOfRange(from, Math.max(from, lowerBound(toKey)));
+        }
+
+        /**
+         * @return a spliterator over elements of this array without boxing
+         * @see PackedArray#spliterator()
+         */
+        @Override
+        public Spliterator.OfDouble spliterator() {
+            return new PackedSpliterators.OfDoubles(this, 0, length());
+        }
+
+        /**
+         * @return a sequential {@link DoubleStream} of elements of this array.
+         * Use {@link DoubleStream#parallel()} to obtain a parallel stream.
+         */
+        public DoubleStream doubleStream() {
+            return StreamSupport.doubleStream(spliterator(), false);
+        }
+
         @Override
         public PackedClass<OfDouble> type() {
             return TYPE;
@@ -536,14 +1475,24 @@ public abstract class PackedArray<CT> extends Packed {
         private final PackedClass<OfObject<CT>> type;
 
         public OfObject(Class<CT> componentClass, int length) {
-            this(typeWithComponent(componentClass), length);
+            this(typeWithComponent(componentClass), length, false);
         }
 
-        private OfObject(PackedClass<OfObject<CT>> type, int length) {
-            super(type, length);
+        private OfObject(PackedClass<OfObject<CT>> type, int length, boolean direct) {
+            super(type, length, direct);
             this.type = type;
         }
 
+        /**
+         * Allocates a "zero" packed array of given {@code length} with elements
+         * of given {@code componentClass} in off-heap memory.
+         *
+         * @see #isDirect()
+         */
+        public static <CT2 extends PackedObject> OfObject<CT2> allocateDirect(Class<CT2> componentClass, int length) {
+            return new OfObject<>(typeWithComponent(componentClass), length, true);
+        }
+
         public CT getView(int index) {
             @SuppressWarnings("unchecked")
             PackedClass<CT> componentType = (PackedClass) type.getComponentType();
@@ -562,6 +1511,307 @@ public abstract class PackedArray<CT> extends Packed {
             return source;
         }
 
+        /**
+         * Sets elements in range {@code [from, to)} to copies of given {@code value}.
+         *
+         * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+         * @throws IllegalArgumentException       if {@code from > to}
+         */
+        public void fill(int from, int to, CT value) {
+            checkRangeIndexes(from, to);
+            if (from < to) {
+                PackedClass<?> componentType = type.getComponentType();
+                copyFrom(from, value);
+                replicateU((long) from * componentType.getIndexScale(), componentType.getIndexScale(),
+                    type.arraySize(to - from));
+            }
+        }
+
+        /**
+         * Sorts this array in place according to the order induced by given
+         * {@code comparator}. The comparator is passed reusable views of elements
+         * which must not be retained. The sort is not stable.
+         *
+         * @param comparator the comparator of elements
+         */
+        public void sort(Comparator<? super CT> comparator) {
+            if (length() > 1) {
+                PackedSort.quickSort(PackedSort.comparing(this, comparator), 0, length());
+            }
+        }
+
+        /**
+         * Sorts this array in place into ascending order of given int
+         * {@code key} field of elements using radix sort. The sort is stable.
+         *
+         * @param key the field of the component type (or its superclass) to
+         *            sort by
+         */
+        public void sort(pfInt<? super CT> key) {
+            if (length() > 1) {
+                PackedSort.radixSort(PackedSort.intKeys(this, key.offsetIn(type.getComponentType())), length());
+            }
+        }
+
+        /**
+         * Sorts this array in place into ascending order of given long
+         * {@code key} field of elements using radix sort. The sort is stable.
+         *
+         * @param key the field of the component type (or its superclass) to
+         *            sort by
+         */
+        public void sort(pfLong<? super CT> key) {
+            if (length() > 1) {
+                PackedSort.radixSort(PackedSort.longKeys(this, key.offsetIn(type.getComponentType())), length());
+            }
+        }
+
+        /**
+         * Sorts this array in place into ascending order of given double
+         * {@code key} field of elements (as ordered by {@link Double#compare})
+         * using radix sort. The sort is stable.
+         *
+         * @param key the field of the component type (or its superclass) to
+         *            sort by
+         */
+        public void sort(pfDouble<? super CT> key) {
+            if (length() > 1) {
+                PackedSort.radixSort(PackedSort.doubleKeys(this, key.offsetIn(type.getComponentType())), length());
+            }
+        }
+
+        /**
+         * Sorts this array in place like {@link #sort(Comparator)} but using
+         * parallel quicksort.
+         */
+        public void parallelSort(Comparator<? super CT> comparator) {
+            if (length() > 1) {
+                PackedSort.parallelQuickSort(PackedSort.comparing(this, comparator), 0, length());
+            }
+        }
+
+        /**
+         * Sorts this array in place like {@link #sort(pfInt)} but using
+         * parallel quicksort which is not stable.
+         */
+        public void parallelSort(pfInt<? super CT> key) {
+            if (length() > 1) {
+                PackedSort.parallelQuickSort(PackedSort.intKeys(this, key.offsetIn(type.getComponentType())), 0, length());
+            }
+        }
+
+        /**
+         * Sorts this array in place like {@link #sort(pfLong)} but using
+         * parallel quicksort which is not stable.
+         */
+        public void parallelSort(pfLong<? super CT> key) {
+            if (length() > 1) {
+                PackedSort.parallelQuickSort(PackedSort.longKeys(this, key.offsetIn(type.getComponentType())), 0, length());
+            }
+        }
+
+        /**
+         * Sorts this array in place like {@link #sort(pfDouble)} but using
+         * parallel quicksort which is not stable.
+         */
+        public void parallelSort(pfDouble<? super CT> key) {
+            if (length() > 1) {
+                PackedSort.parallelQuickSort(PackedSort.doubleKeys(this, key.offsetIn(type.getComponentType())), 0, length());
+            }
+        }
+
+        /**
+         * Searches this array, which must be sorted into ascending order of
+         * given int {@code key} field of elements, for an element with given
+         * key {@code value} using binary search.
+         *
+         * @return the index of the 1st element with given key value or
+         * {@code (-(insertion point) - 1)} if there is none, where the insertion
+         * point is {@link #lowerBound(pfInt, int)}
+         */
+        public int binarySearch(pfInt<? super CT> key, int value) {
+            PackedClass<?> componentType = type.getComponentType();
+            return PackedSearch.binarySearch(this, length(), componentType.getIndexScale(),
+                key.offsetIn(componentType), PackedSearch.INT, value);
+        }
+
+        /**
+         * @return the index of the 1st element of this array sorted by given
+         * int {@code key} field whose key is not less than given {@code value}
+         * or {@link #length()} if there is none
+         */
+        public int lowerBound(pfInt<? super CT> key, int value) {
+            PackedClass<?> componentType = type.getComponentType();
+            return PackedSearch.bound(this, length(), componentType.getIndexScale(),
+                key.offsetIn(componentType), PackedSearch.INT, value, false);
+        }
+
+        /**
+         * @return the index of the 1st element of this array sorted by given
+         * int {@code key} field whose key is greater than given {@code value}
+         * or {@link #length()} if there is none
+         */
+        public int upperBound(pfInt<? super CT> key, int value) {
+            PackedClass<?> componentType = type.getComponentType();
+            return PackedSearch.bound(this, length(), componentType.getIndexScale(),
+                key.offsetIn(componentType), PackedSearch.INT, value, true);
+        }
+
+        /**
+         * Returns a view of the range of elements of this array sorted by given
+         * int {@code key} field whose keys are not less than {@code fromValue}
+         * and less than {@code toValue}.
+         *
+         * @return a view of the range, which is empty if {@code toValue <= fromValue}
+         * @see PackedSortedIndex for ranges of arrays that are not sorted by the key
+         */
+        public OfObject<CT> viewOfKeyRange(pfInt<? super CT> key, int fromValue, int toValue) {
+            int from = lowerBound(key, fromValue);
+            return viewOfRange(from, Math.max(from, lowerBound(key, toValue)));
+        }
+
+        /**
+         * Searches this array, which must be sorted into ascending order of
+         * given long {@code key} field of elements, for an element with given
+         * key {@code value} using binary search.
+         *
+         * @return the index of the 1st element with given key value or
+         * {@code (-(insertion point) - 1)} if there is none, where the insertion
+         * point is {@link #lowerBound(pfLong, long)}
+         */
+        public int binarySearch(pfLong<? super CT> key, long value) {
+            PackedClass<?> componentType = type.getComponentType();
+            return PackedSearch.binarySearch(this, length(), componentType.getIndexScale(),
+                key.offsetIn(componentType), PackedSearch.LONG, value);
+        }
+
+        /**
+         * @return the index of the 1st element of this array sorted by given
+         * long {@code key} field whose key is not less than given {@code value}
+         * or {@link #length()} if there is none
+         */
+        public int lowerBound(pfLong<? super CT> key, long value) {
+            PackedClass<?> componentType = type.getComponentType();
+            return PackedSearch.bound(this, length(), componentType.getIndexScale(),
+                key.offsetIn(componentType), PackedSearch.LONG, value, false);
+        }
+
+        /**
+         * @return the index of the 1st element of this array sorted by given
+         * long {@code key} field whose key is greater than given {@code value}
+         * or {@link #length()} if there is none
+         */
+        public int upperBound(pfLong<? super CT> key, long value) {
+            PackedClass<?> componentType = type.getComponentType();
+            return PackedSearch.bound(this, length(), componentType.getIndexScale(),
+                key.offsetIn(componentType), PackedSearch.LONG, value, true);
+        }
+
+        /**
+         * Returns a view of the range of elements of this array sorted by given
+         * long {@code key} field whose keys are not less than {@code fromValue}
+         * and less than {@code toValue}.
+         *
+         * @return a view of the range, which is empty if {@code toValue <= fromValue}
+         * @see PackedSortedIndex for ranges of arrays that are not sorted by the key
+         */
+        public OfObject<CT> viewOfKeyRange(pfLong<? super CT> key, long fromValue, long toValue) {
+            int from = lowerBound(key, fromValue);
+            return viewOfRange(from, Math.max(from, lowerBound(key, toValue)));
+        }
+
+        /**
+         * Searches this array, which must be sorted into ascending order of
+         * given double {@code key} field of elements, for an element with given
+         * key {@code value} using binary search.
+         *
+         * @return the index of the 1st element with given key value or
+         * {@code (-(insertion point) - 1)} if there is none, where the insertion
+         * point is {@link #lowerBound(pfDouble, double)}
+         */
+        public int binarySearch(pfDouble<? super CT> key, double value) {
+            PackedClass<?> componentType = type.getComponentType();
+            return PackedSearch.binarySearch(this, length(), componentType.getIndexScale(),
+                key.offsetIn(componentType), PackedSearch.DOUBLE, PackedSearch.sortable(value));
+        }
+
+        /**
+         * @return the index of the 1st element of this array sorted by given
+         * double {@code key} field whose key is not less than given {@code value}
+         * or {@link #length()} if there is none
+         */
+        public int lowerBound(pfDouble<? super CT> key, double value) {
+            PackedClass<?> componentType = type.getComponentType();
+            return PackedSearch.bound(this, length(), componentType.getIndexScale(),
+                key.offsetIn(componentType), PackedSearch.DOUBLE, PackedSearch.sortable(value), false);
+        }
+
+        /**
+         * @return the index of the 1st element of this array sorted by given
+         * double {@code key} field whose key is greater than given {@code value}
+         * or {@link #length()} if there is none
+         */
+        public int upperBound(pfDouble<? super CT> key, double value) {
+            PackedClass<?> componentType = type.getComponentType();
+            return PackedSearch.bound(this, length(), componentType.getIndexScale(),
+                key.offsetIn(componentType), PackedSearch.DOUBLE, PackedSearch.sortable(value), true);
+        }
+
+        /**
+         * Returns a view of the range of elements of this array sorted by given
+         * double {@code key} field whose keys are not less than {@code fromValue}
+         * and less than {@code toValue}.
+         *
+         * @return a view of the range, which is empty if {@code toValue <= fromValue}
+         * @see PackedSortedIndex for ranges of arrays that are not sorted by the key
+         */
+        public OfObject<CT> viewOfKeyRange(pfDouble<? super CT> key, double fromValue, double toValue) {
+            int from = lowerBound(key, fromValue);
+            return viewOfRange(from, Math.max(from, lowerBound(key, toValue)));
+        }
+
+        /**
+         * Returns a sequential stream of reusable views of elements of this array.
+         * Each split of the stream (when {@link Stream#parallel() parallel}) has
+         * its own view which is re-bound to elements as they are traversed, so
+         * traversal doesn't allocate per element. Elements passed to stream
+         * operations are only valid until the next element is traversed and must
+         * not be retained (collected), but they can be mapped to values, for
+         * example: {@code lines.flyweightStream().parallel().mapToInt(Line::getX).sum()}.
+         *
+         * @return a sequential stream of reusable views of elements of this array
+         * @see #stream()
+         */
+        public Stream<CT> flyweightStream() {
+            return StreamSupport.stream(new PackedSpliterators.OfViews<>(this, 0, length()), false);
+        }
+
+        /**
+         * Performs given {@code action} for each element of this array, passing
+         * it a single reusable view which is re-bound to each element in turn.
+         * The view must not be retained by the action.
+         *
+         * @param action the action to perform for each element
+         * @see #flyweightStream()
+         */
+        public void forEachFlyweight(Consumer<? super CT> action) {
+            new PackedSpliterators.OfViews<>(this, 0, length()).forEachRemaining(action);
+        }
+
+        /**
+         * Returns a new cursor over the elements of this array positioned before
+         * the 1st element. The cursor re-binds a single reusable view to
+         * elements as it moves, so iteration is allocation-free.
+         *
+         * @return a new cursor over the elements of this array
+         * @see PackedCursor
+         */
+        public Cursor<CT> cursor() {
+            @SuppressWarnings("unchecked")
+            PackedClass<CT> componentType = (PackedClass) type.getComponentType();
+            return new Cursor<>(this, getViewU(componentType, 0, componentType.getSize()));
+        }
+
         @Override
         public PackedClass<OfObject<CT>> type() {
             return type;
@@ -587,6 +1837,73 @@ public abstract class PackedArray<CT> extends Packed {
             return (OfObject<CT>) super.copyOfRange(from, to);
         }
 
+        /**
+         * A {@link PackedCursor} over the elements of a packed array of
+         * PackedObject(s).
+         *
+         * @see #cursor()
+         */
+        public static final class Cursor<CT extends PackedObject> extends PackedCursor<CT> {
+            private final OfObject<CT> array;
+            private final int indexScale;
+            private int index = -1;
+
+            Cursor(OfObject<CT> array, CT view) {
+                super(view);
+                this.array = array;
+                this.indexScale = array.type.getComponentType().getIndexScale();
+            }
+
+            /**
+             * @return the index of the element the cursor is positioned at,
+             * {@code -1} if it is positioned before the 1st element or
+             * {@link #length()} if it moved past the last element.
+             */
+            public int index() {
+                return index;
+            }
+
+            /**
+             * Moves the cursor to the element at given {@code index}.
+             *
+             * @param index the index of the element to move to
+             * @return the reusable view of the element at given {@code index}
+             * @throws ArrayIndexOutOfBoundsException if given {@code index} is not:
+             *                                        {@code 0 <= index < }{@link #length()}
+             */
+            public CT moveTo(int index) {
+                view.rebindU(array, array.checkIndex(index) * indexScale);
+                this.index = index;
+                return view;
+            }
+
+            /**
+             * Moves the cursor to the next element if there is one.
+             *
+             * @return {@code true} if the cursor moved to the next element or
+             * {@code false} if it moved past the last element.
+             */
+            public boolean next() {
+                int next = index + 1;
+                if (next < array.length()) {
+                    view.rebindU(array, next * indexScale);
+                    index = next;
+                    return true;
+                } else {
+                    index = array.length();
+                    return false;
+                }
+            }
+
+            @Override
+            public CT get() {
+                if (index < 0 || index >= array.length()) {
+                    throw new IllegalStateException("Cursor is not positioned at an element: " + index);
+                }
+                return view;
+            }
+        }
+
         // Unsafe machinery
 
         @Override
@@ -0,0 +1,746 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PackedBigArray is a long-indexed array of primitives or PackedObject(s)
+ * that can be larger than the 2 GB limit of a single {@link PackedArray}.
+ * It is split into segments - packed arrays of equal power-of-two length
+ * (except the last one, which may be shorter) allocated either on heap or
+ * off-heap. Elements never straddle segments.
+ *
+ * @param <CT> the component type
+ * @param <PA> the type of packed arrays used as segments
+ */
+public abstract class PackedBigArray<CT, PA extends PackedArray<CT>> {
+
+    /**
+     * The max. size of a segment in bytes when it is not explicitly specified.
+     */
+    static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    final PackedClass<PA> segmentType;
+    final PA[] segments;
+    final int shift;
+    final long mask;
+    // the index of the 1st element in segments and the length of this array
+    // (a range view shares segments with the array it views)
+    final long start, length;
+
+    /**
+     * Constructor for "zero" PackedBigArray(s)
+     */
+    PackedBigArray(PackedClass<PA> segmentType, long length, int segmentLength, boolean direct) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative array length.");
+        }
+        if (segmentLength <= 0 || (segmentLength & (segmentLength - 1)) != 0) {
+            throw new IllegalArgumentException("Segment length is not a positive power of two: " + segmentLength);
+        }
+        PackedClass<?> componentType = segmentType.getComponentType();
+        if ((long) (segmentLength - 1) * componentType.getIndexScale() + componentType.getSize() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment length too large: " + segmentLength);
+        }
+        long segmentCount = (length + segmentLength - 1) / segmentLength;
+        if (segmentCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Array length too large: " + length);
+        }
+        @SuppressWarnings("unchecked")
+        PA[] segments = (PA[]) new PackedArray<?>[(int) segmentCount];
+        for (int i = 0; i < segments.length; i++) {
+            long remaining = length - (long) i * segmentLength;
+            segments[i] = Packed.newArrayU(segmentType, (int) Math.min(remaining, segmentLength), direct);
+        }
+        this.segmentType = segmentType;
+        this.segments = segments;
+        this.shift = Integer.numberOfTrailingZeros(segmentLength);
+        this.mask = segmentLength - 1;
+        this.start = 0;
+        this.length = length;
+    }
+
+    /**
+     * Constructor for range views
+     */
+    PackedBigArray(PackedBigArray<CT, PA> array, long from, long to) {
+        array.checkRangeIndexes(from, to);
+        this.segmentType = array.segmentType;
+        this.segments = array.segments;
+        this.shift = array.shift;
+        this.mask = array.mask;
+        this.start = array.start + from;
+        this.length = to - from;
+    }
+
+    /**
+     * @return the length of the packed big array.
+     */
+    public final long length() {
+        return length;
+    }
+
+    /**
+     * @return the type of packed arrays used as segments of this big array.
+     */
+    public final PackedClass<PA> segmentType() {
+        return segmentType;
+    }
+
+    /**
+     * @return the number of segments spanned by this big array (or range view).
+     */
+    public final int segmentCount() {
+        return (length == 0)
+            ? 0
+            : (int) ((start + length - 1) >>> shift) - (int) (start >>> shift) + 1;
+    }
+
+    /**
+     * Returns a view of the part of this big array stored in the segment
+     * with given index. All but the first and the last segment of a range
+     * view have the same length. Segment views allow bulk int-indexed access
+     * and processing of segments in parallel.
+     *
+     * @param segmentIndex the index of the segment, {@code 0 <= segmentIndex < }
+     *                     {@link #segmentCount()}
+     * @return a packed array view of the segment with given index
+     * @throws ArrayIndexOutOfBoundsException if given {@code segmentIndex} is out of range
+     */
+    public PA segment(int segmentIndex) {
+        if (segmentIndex < 0 || segmentIndex >= segmentCount()) {
+            throw new ArrayIndexOutOfBoundsException(segmentIndex);
+        }
+        int firstSegment = (int) (start >>> shift);
+        long segmentStart = (long) (firstSegment + segmentIndex) << shift;
+        long from = Math.max(start, segmentStart);
+        long to = Math.min(start + length, segmentStart + mask + 1);
+        @SuppressWarnings("unchecked")
+        PA segment = (PA) segments[firstSegment + segmentIndex]
+            .viewOfRange((int) (from - segmentStart), (int) (to - segmentStart));
+        return segment;
+    }
+
+    /**
+     * Grabs and returns the element at given {@code index}.
+     *
+     * @see PackedArray#get(int)
+     */
+    public abstract CT get(long index);
+
+    /**
+     * Sets the element at given {@code index} to given {@code value}.
+     *
+     * @see PackedArray#set(int, Object)
+     */
+    public abstract void set(long index, CT value);
+
+    /**
+     * Returns a view of this packed big array's range which may span
+     * several segments.
+     *
+     * @param from the initial index of the range, inclusive
+     * @param to   the final index of the range, exclusive.
+     * @return a packed big array representing the view of the specified range
+     * of this packed big array
+     * @throws ArrayIndexOutOfBoundsException if {@code from} or {@code to} is
+     *                                        not between 0 and {@link #length()}
+     * @throws IllegalArgumentException       if {@code from > to}
+     * @see PackedArray#viewOfRange(int, int)
+     */
+    public abstract PackedBigArray<CT, PA> viewOfRange(long from, long to);
+
+    /**
+     * Writes the bytes of this packed big array to given {@code channel}
+     * from the storage of its segments, with gathering writes of off-heap
+     * segments if the channel supports them. The bytes written are the same
+     * as the bytes of a {@link PackedArray} of the same length and elements
+     * (the padding between elements straddling segments is written as
+     * zeros), so they can be read back by arrays with different segment
+     * lengths.
+     *
+     * @param channel the channel to write to
+     * @throws IOException if an I/O error occurs
+     * @see Packed#writeTo(WritableByteChannel)
+     */
+    public final void writeTo(WritableByteChannel channel) throws IOException {
+        ChannelBytes.write(channel, chunks());
+    }
+
+    /**
+     * Reads the bytes of this packed big array from given {@code channel}
+     * into the storage of its segments, with scattering reads into off-heap
+     * segments if the channel supports them. This is the inverse of
+     * {@link #writeTo(WritableByteChannel)}.
+     *
+     * @param channel the channel to read from
+     * @throws java.io.EOFException if the channel reaches end-of-stream
+     *                              before all bytes are read
+     * @throws IOException          if an I/O error occurs
+     * @see Packed#readFrom(ReadableByteChannel)
+     */
+    public final void readFrom(ReadableByteChannel channel) throws IOException {
+        ChannelBytes.read(channel, chunks());
+    }
+
+    /**
+     * Writes the bytes of this packed big array to given {@code channel} at
+     * given file {@code position} in chunks which are written concurrently.
+     *
+     * @see #writeTo(WritableByteChannel)
+     */
+    public final void writeTo(AsynchronousFileChannel channel, long position) throws IOException {
+        ChannelBytes.transfer(channel, position, chunks(), true);
+    }
+
+    /**
+     * Reads the bytes of this packed big array from given {@code channel} at
+     * given file {@code position} in chunks which are read concurrently.
+     *
+     * @see #readFrom(ReadableByteChannel)
+     */
+    public final void readFrom(AsynchronousFileChannel channel, long position) throws IOException {
+        ChannelBytes.transfer(channel, position, chunks(), false);
+    }
+
+    /**
+     * @return chunks of the storage of segments with padding buffers between them
+     */
+    private List<ByteBuffer> chunks() {
+        PackedClass<?> componentType = segmentType.getComponentType();
+        int padding = componentType.getIndexScale() - componentType.getSize();
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (int i = 0, n = segmentCount(); i < n; i++) {
+            if (i > 0 && padding > 0) {
+                chunks.add(ByteBuffer.allocate(padding));
+            }
+            ChannelBytes.chunk(segment(i).byteBufferU(), chunks);
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns a {@code String} representation of the contents of the array.
+     * The format is equivalent to what is returned by
+     * {@link PackedArray#toString()}.
+     *
+     * @return a {@code String} representation of the array
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (long i = 0; i < length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(get(i));
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    static int segmentLength(PackedClass<?> segmentType) {
+        return Integer.highestOneBit(MAX_SEGMENT_SIZE / Math.max(1, segmentType.getComponentType().getIndexScale()));
+    }
+
+    /**
+     * @return the index of the element in segments
+     */
+    final long checkIndex(long index) {
+        if (index < 0 || index >= length) {
+            throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        }
+        return start + index;
+    }
+
+    final void checkRangeIndexes(long from, long to) {
+        if (from < 0 || from > length) {
+            throw new ArrayIndexOutOfBoundsException("'from' index out of range: " + from);
+        }
+        if (to < 0 || to > length) {
+            throw new ArrayIndexOutOfBoundsException("'to' index out of range: " + to);
+        }
+        if (from > to) {
+            throw new IllegalArgumentException("'from' index: " + from + " > 'to' index: " + to);
+        }
+    }
+
+    /**
+     * @return the segment containing element with given index in segments
+     */
+    final PA segmentOf(long i) {
+        return segments[(int) (i >>> shift)];
+    }
+
+    /**
+     * @return the offset of element with given index in segments within its segment
+     * for given {@code indexShift} (log2 of index scale)
+     */
+    final long offsetOf(long i, int indexShift) {
+        return (i & mask) << indexShift;
+    }
+
+    public static final class OfBoolean extends PackedBigArray<Boolean, PackedArray.OfBoolean> {
+
+        public OfBoolean(long length) {
+            this(length, segmentLength(PackedArray.OfBoolean.TYPE), false);
+        }
+
+        public OfBoolean(long length, int segmentLength, boolean direct) {
+            super(PackedArray.OfBoolean.TYPE, length, segmentLength, direct);
+        }
+
+        private OfBoolean(OfBoolean array, long from, long to) {
+            super(array, from, to);
+        }
+
+        /**
+         * Allocates a "zero" packed big array of given {@code length} in off-heap memory.
+         */
+        public static OfBoolean allocateDirect(long length) {
+            return new OfBoolean(length, segmentLength(PackedArray.OfBoolean.TYPE), true);
+        }
+
+        public boolean getBoolean(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getBooleanU(offsetOf(i, 0));
+        }
+
+        public boolean setBoolean(long index, boolean value) {
+            long i = checkIndex(index);
+            segmentOf(i).putBooleanU(offsetOf(i, 0), value);
+            return value;
+        }
+
+        @Override
+        public Boolean get(long index) {
+            return getBoolean(index);
+        }
+
+        @Override
+        public void set(long index, Boolean value) {
+            setBoolean(index, value);
+        }
+
+        @Override
+        public OfBoolean viewOfRange(long from, long to) {
+            return new OfBoolean(this, from, to);
+        }
+    }
+
+    public static final class OfByte extends PackedBigArray<Byte, PackedArray.OfByte> {
+
+        public OfByte(long length) {
+            this(length, segmentLength(PackedArray.OfByte.TYPE), false);
+        }
+
+        public OfByte(long length, int segmentLength, boolean direct) {
+            super(PackedArray.OfByte.TYPE, length, segmentLength, direct);
+        }
+
+        private OfByte(OfByte array, long from, long to) {
+            super(array, from, to);
+        }
+
+        /**
+         * Allocates a "zero" packed big array of given {@code length} in off-heap memory.
+         */
+        public static OfByte allocateDirect(long length) {
+            return new OfByte(length, segmentLength(PackedArray.OfByte.TYPE), true);
+        }
+
+        public byte getByte(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getByteU(offsetOf(i, 0));
+        }
+
+        public byte setByte(long index, byte value) {
+            long i = checkIndex(index);
+            segmentOf(i).putByteU(offsetOf(i, 0), value);
+            return value;
+        }
+
+        @Override
+        public Byte get(long index) {
+            return getByte(index);
+        }
+
+        @Override
+        public void set(long index, Byte value) {
+            setByte(index, value);
+        }
+
+        @Override
+        public OfByte viewOfRange(long from, long to) {
+            return new OfByte(this, from, to);
+        }
+    }
+
+    public static final class OfChar extends PackedBigArray<Character, PackedArray.OfChar> {
+
+        public OfChar(long length) {
+            this(length, segmentLength(PackedArray.OfChar.TYPE), false);
+        }
+
+        public OfChar(long length, int segmentLength, boolean direct) {
+            super(PackedArray.OfChar.TYPE, length, segmentLength, direct);
+        }
+
+        private OfChar(OfChar array, long from, long to) {
+            super(array, from, to);
+        }
+
+        /**
+         * Allocates a "zero" packed big array of given {@code length} in off-heap memory.
+         */
+        public static OfChar allocateDirect(long length) {
+            return new OfChar(length, segmentLength(PackedArray.OfChar.TYPE), true);
+        }
+
+        public char getChar(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getCharU(offsetOf(i, 1));
+        }
+
+        public char setChar(long index, char value) {
+            long i = checkIndex(index);
+            segmentOf(i).putCharU(offsetOf(i, 1), value);
+            return value;
+        }
+
+        @Override
+        public Character get(long index) {
+            return getChar(index);
+        }
+
+        @Override
+        public void set(long index, Character value) {
+            setChar(index, value);
+        }
+
+        @Override
+        public OfChar viewOfRange(long from, long to) {
+            return new OfChar(this, from, to);
+        }
+    }
+
+    public static final class OfShort extends PackedBigArray<Short, PackedArray.OfShort> {
+
+        public OfShort(long length) {
+            this(length, segmentLength(PackedArray.OfShort.TYPE), false);
+        }
+
+        public OfShort(long length, int segmentLength, boolean direct) {
+            super(PackedArray.OfShort.TYPE, length, segmentLength, direct);
+        }
+
+        private OfShort(OfShort array, long from, long to) {
+            super(array, from, to);
+        }
+
+        /**
+         * Allocates a "zero" packed big array of given {@code length} in off-heap memory.
+         */
+        public static OfShort allocateDirect(long length) {
+            return new OfShort(length, segmentLength(PackedArray.OfShort.TYPE), true);
+        }
+
+        public short getShort(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getShortU(offsetOf(i, 1));
+        }
+
+        public short setShort(long index, short value) {
+            long i = checkIndex(index);
+            segmentOf(i).putShortU(offsetOf(i, 1), value);
+            return value;
+        }
+
+        @Override
+        public Short get(long index) {
+            return getShort(index);
+        }
+
+        @Override
+        public void set(long index, Short value) {
+            setShort(index, value);
+        }
+
+        @Override
+        public OfShort viewOfRange(long from, long to) {
+            return new OfShort(this, from, to);
+        }
+    }
+
+    public static final class OfInt extends PackedBigArray<Integer, PackedArray.OfInt> {
+
+        public OfInt(long length) {
+            this(length, segmentLength(PackedArray.OfInt.TYPE), false);
+        }
+
+        public OfInt(long length, int segmentLength, boolean direct) {
+            super(PackedArray.OfInt.TYPE, length, segmentLength, direct);
+        }
+
+        private OfInt(OfInt array, long from, long to) {
+            super(array, from, to);
+        }
+
+        /**
+         * Allocates a "zero" packed big array of given {@code length} in off-heap memory.
+         */
+        public static OfInt allocateDirect(long length) {
+            return new OfInt(length, segmentLength(PackedArray.OfInt.TYPE), true);
+        }
+
+        public int getInt(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getIntU(offsetOf(i, 2));
+        }
+
+        public int setInt(long index, int value) {
+            long i = checkIndex(index);
+            segmentOf(i).putIntU(offsetOf(i, 2), value);
+            return value;
+        }
+
+        @Override
+        public Integer get(long index) {
+            return getInt(index);
+        }
+
+        @Override
+        public void set(long index, Integer value) {
+            setInt(index, value);
+        }
+
+        @Override
+        public OfInt viewOfRange(long from, long to) {
+            return new OfInt(this, from, to);
+        }
+    }
+
+    public static final class OfLong extends PackedBigArray<Long, PackedArray.OfLong> {
+
+        public OfLong(long length) {
+            this(length, segmentLength(PackedArray.OfLong.TYPE), false);
+        }
+
+        public OfLong(long length, int segmentLength, boolean direct) {
+            super(PackedArray.OfLong.TYPE, length, segmentLength, direct);
+        }
+
+        private OfLong(OfLong array, long from, long to) {
+            super(array, from, to);
+        }
+
+        /**
+         * Allocates a "zero" packed big array of given {@code length} in off-heap memory.
+         */
+        public static OfLong allocateDirect(long length) {
+            return new OfLong(length, segmentLength(PackedArray.OfLong.TYPE), true);
+        }
+
+        public long getLong(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getLongU(offsetOf(i, 3));
+        }
+
+        public long setLong(long index, long value) {
+            long i = checkIndex(index);
+            segmentOf(i).putLongU(offsetOf(i, 3), value);
+            return value;
+        }
+
+        @Override
+        public Long get(long index) {
+            return getLong(index);
+        }
+
+        @Override
+        public void set(long index, Long value) {
+            setLong(index, value);
+        }
+
+        @Override
+        public OfLong viewOfRange(long from, long to) {
+            return new OfLong(this, from, to);
+        }
+    }
+
+    public static final class OfFloat extends PackedBigArray<Float, PackedArray.OfFloat> {
+
+        public OfFloat(long length) {
+            this(length, segmentLength(PackedArray.OfFloat.TYPE), false);
+        }
+
+        public OfFloat(long length, int segmentLength, boolean direct) {
+            super(PackedArray.OfFloat.TYPE, length, segmentLength, direct);
+        }
+
+        private OfFloat(OfFloat array, long from, long to) {
+            super(array, from, to);
+        }
+
+        /**
+         * Allocates a "zero" packed big array of given {@code length} in off-heap memory.
+         */
+        public static OfFloat allocateDirect(long length) {
+            return new OfFloat(length, segmentLength(PackedArray.OfFloat.TYPE), true);
+        }
+
+        public float getFloat(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getFloatU(offsetOf(i, 2));
+        }
+
+        public float setFloat(long index, float value) {
+            long i = checkIndex(index);
+            segmentOf(i).putFloatU(offsetOf(i, 2), value);
+            return value;
+        }
+
+        @Override
+        public Float get(long index) {
+            return getFloat(index);
+        }
+
+        @Override
+        public void set(long index, Float value) {
+            setFloat(index, value);
+        }
+
+        @Override
+        public OfFloat viewOfRange(long from, long to) {
+            return new OfFloat(this, from, to);
+        }
+    }
+
+    public static final class OfDouble extends PackedBigArray<Double, PackedArray.OfDouble> {
+
+        public OfDouble(long length) {
+            this(length, segmentLength(PackedArray.OfDouble.TYPE), false);
+        }
+
+        public OfDouble(long length, int segmentLength, boolean direct) {
+            super(PackedArray.OfDouble.TYPE, length, segmentLength, direct);
+        }
+
+        private OfDouble(OfDouble array, long from, long to) {
+            super(array, from, to);
+        }
+
+        /**
+         * Allocates a "zero" packed big array of given {@code length} in off-heap memory.
+         */
+        public static OfDouble allocateDirect(long length) {
+            return new OfDouble(length, segmentLength(PackedArray.OfDouble.TYPE), true);
+        }
+
+        public double getDouble(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getDoubleU(offsetOf(i, 3));
+        }
+
+        public double setDouble(long index, double value) {
+            long i = checkIndex(index);
+            segmentOf(i).putDoubleU(offsetOf(i, 3), value);
+            return value;
+        }
+
+        @Override
+        public Double get(long index) {
+            return getDouble(index);
+        }
+
+        @Override
+        public void set(long index, Double value) {
+            setDouble(index, value);
+        }
+
+        @Override
+        public OfDouble viewOfRange(long from, long to) {
+            return new OfDouble(this, from, to);
+        }
+    }
+
+    public static final class OfObject<CT extends PackedObject> extends PackedBigArray<CT, PackedArray.OfObject<CT>> {
+
+        private final PackedClass<CT> componentType;
+        private final int indexScale;
+
+        public OfObject(Class<CT> componentClass, long length) {
+            this(PackedArray.OfObject.typeWithComponent(componentClass), length, false);
+        }
+
+        public OfObject(Class<CT> componentClass, long length, int segmentLength, boolean direct) {
+            this(PackedArray.OfObject.typeWithComponent(componentClass), length, segmentLength, direct);
+        }
+
+        private OfObject(PackedClass<PackedArray.OfObject<CT>> segmentType, long length, boolean direct) {
+            this(segmentType, length, segmentLength(segmentType), direct);
+        }
+
+        @SuppressWarnings("unchecked")
+        private OfObject(PackedClass<PackedArray.OfObject<CT>> segmentType, long length, int segmentLength, boolean direct) {
+            super(segmentType, length, segmentLength, direct);
+            this.componentType = (PackedClass<CT>) segmentType.getComponentType();
+            this.indexScale = componentType.getIndexScale();
+        }
+
+        private OfObject(OfObject<CT> array, long from, long to) {
+            super(array, from, to);
+            this.componentType = array.componentType;
+            this.indexScale = array.indexScale;
+        }
+
+        /**
+         * Allocates a "zero" packed big array of given {@code length} with elements
+         * of given {@code componentClass} in off-heap memory.
+         */
+        public static <CT2 extends PackedObject> OfObject<CT2> allocateDirect(Class<CT2> componentClass, long length) {
+            return new OfObject<>(PackedArray.OfObject.typeWithComponent(componentClass), length, true);
+        }
+
+        public CT getView(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getViewU(componentType, (i & mask) * indexScale, componentType.getSize());
+        }
+
+        public CT getCopy(long index) {
+            long i = checkIndex(index);
+            return segmentOf(i).getCopyU(componentType, (i & mask) * indexScale, componentType.getSize());
+        }
+
+        public CT copyFrom(long index, CT source) {
+            long i = checkIndex(index);
+            segmentOf(i).copyFromU(componentType.asClass().cast(source), (i & mask) * indexScale, componentType.getSize());
+            return source;
+        }
+
+        @Override
+        public CT get(long index) {
+            return getView(index);
+        }
+
+        @Override
+        public void set(long index, CT value) {
+            copyFrom(index, value);
+        }
+
+        @Override
+        public OfObject<CT> viewOfRange(long from, long to) {
+            return new OfObject<>(this, from, to);
+        }
+    }
+}
@@ -8,6 +8,7 @@ package pele.packed;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -80,6 +81,71 @@ public final class PackedClass<T> {
         return (PackedClass) WITH_COMPONENT.get(componentClass);
     }
 
+    /**
+     * Declares the layout of packed fields of given packed object {@code clazz}
+     * so that it need not be discovered by reflection. This is meant to be
+     * called by code generated at compile time (see {@link PackedType}) from
+     * the static initializer of {@code clazz} after all its packed fields are
+     * constructed at precomputed offsets and assigned to
+     * {@code public static final} fields with given {@code names}:
+     * <pre>
+     *   public static final pfInt&lt;PackedPoint&gt; x = new pfInt&lt;&gt;(PackedPoint.class, 0);
+     *   public static final pfInt&lt;PackedPoint&gt; y = new pfInt&lt;&gt;(PackedPoint.class, 4);
+     *
+     *   static {
+     *       PackedClass.declare(PackedPoint.class, new String[]{"x", "y"}, x, y);
+     *   }
+     * </pre>
+     *
+     * @param clazz  the packed object class declaring the fields
+     * @param names  the names of static fields the packed fields are assigned to
+     * @param fields the packed fields of given {@code clazz}
+     * @throws IllegalArgumentException if the number of names and fields differ
+     * @throws IllegalStateException    if the layout of given {@code clazz}
+     *                                  has already been declared
+     * @throws ClassFormatError         if any of the fields has a home class
+     *                                  different from given {@code clazz}
+     */
+    public static void declare(Class<? extends PackedObject> clazz, String[] names, PackedField<?, ?>... fields) {
+        if (names.length != fields.length) {
+            throw new IllegalArgumentException(
+                "Number of names: " + names.length +
+                    " differs from number of fields: " + fields.length);
+        }
+        for (PackedField<?, ?> pf : fields) {
+            if (pf.homeClass != clazz) {
+                throw new ClassFormatError(
+                    "PackedField declared by: " + clazz.getName() +
+                        " has invalid home class: " + pf.homeClass.getName());
+            }
+        }
+        Declaration declaration = DECLARATION.get(clazz);
+        synchronized (declaration) {
+            if (declaration.fields != null) {
+                throw new IllegalStateException("Layout already declared for: " + clazz);
+            }
+            declaration.names = names.clone();
+            declaration.fields = fields.clone();
+        }
+    }
+
+    /**
+     * Holder of packed fields declared by {@link #declare}.
+     */
+    private static final class Declaration {
+        String[] names;
+        PackedField<?, ?>[] fields;
+        // the laid out and blessed fields of the class
+        List<PackedField<?, ?>> blessed;
+    }
+
+    private static final ClassValue<Declaration> DECLARATION = new ClassValue<Declaration>() {
+        @Override
+        protected Declaration computeValue(Class<?> clazz) {
+            return new Declaration();
+        }
+    };
+
     private static final ClassValue<PackedClass<?>> FOR_CLASS = new ClassValue<PackedClass<?>>() {
         @Override
         protected PackedClass<?> computeValue(Class<?> clazz) {
@@ -98,6 +164,12 @@ public final class PackedClass<T> {
     private final PackedClass<?> componentType;
     private final List<PackedField<?, ?>> fields;
     private final int size, alignment, indexScale;
+    // the offset of the hidden version stamp of versioned classes or -1
+    private final int versionOffset;
+    // lazily computed layout of leaf fields of packed object types
+    private volatile int[] leaves;
+    // lazily computed hasVersionStamps(): 0 - not yet, 1 - false, 2 - true
+    private volatile int versionStamps;
 
     /**
      * Constructor for 1st level of PackedClasses (representing primitive types,
@@ -111,7 +183,8 @@ public final class PackedClass<T> {
                     Packed.class.getName() + " or subclass");
         }
         classRef = new WeakReference<>(clazz);
-        fields = computeAndBlessFields(clazz);
+        versionOffset = computeVersionOffset(clazz);
+        fields = computeAndBlessFields(clazz, versionOffset);
         componentType = null;
         size = computeSize(this);
         alignment = computeAlignment(this);
@@ -148,6 +221,7 @@ public final class PackedClass<T> {
         classRef = arrayType.classRef;
         fields = arrayType.fields;
         size = arrayType.size;
+        versionOffset = arrayType.versionOffset;
         componentType = forClass(componentClass);
         alignment = computeAlignment(this);
         indexScale = computeIndexScale(size, alignment);
@@ -191,6 +265,163 @@ public final class PackedClass<T> {
         return fields;
     }
 
+    /**
+     * Returns a view of given {@code buf} starting at given {@code offset} as
+     * a packed object of this type without copying. Changes to the bytes are
+     * visible through the view and vice versa. Primitive fields are accessed
+     * in native byte order. Atomic accessors additionally require the fields
+     * to be aligned in memory.
+     *
+     * @param buf    the bytes to view
+     * @param offset the index of the 1st byte of the packed object in {@code buf}
+     * @return a packed object view of given bytes
+     * @throws IllegalArgumentException  if this is not a non-abstract packed object type
+     * @throws IndexOutOfBoundsException if the range of {@link #getSize()} bytes at
+     *                                   {@code offset} is out of bounds of {@code buf}
+     */
+    public T wrap(byte[] buf, int offset) {
+        checkInstantiable(false);
+        checkBounds(offset, size, buf.length);
+        return asWrapped(Packed.wrapU(packedClass(), buf, offset, size));
+    }
+
+    /**
+     * Returns a view of given {@code buf} starting at given {@code offset} as
+     * a packed array of this type and given {@code length} without copying.
+     *
+     * @param buf    the bytes to view
+     * @param offset the index of the 1st byte of the packed array in {@code buf}
+     * @param length the length of the packed array
+     * @return a packed array view of given bytes
+     * @throws IllegalArgumentException  if this is not a packed array type with
+     *                                   a component type or {@code length} is negative
+     * @throws IndexOutOfBoundsException if the range of {@link #arraySize(int)} bytes
+     *                                   at {@code offset} is out of bounds of {@code buf}
+     * @see #wrap(byte[], int)
+     */
+    public T wrap(byte[] buf, int offset, int length) {
+        checkInstantiable(true);
+        int size = arraySize(PackedArray.checkLength(length));
+        checkBounds(offset, size, buf.length);
+        return initArray(Packed.wrapU(packedClass(), buf, offset, size), length);
+    }
+
+    /**
+     * Returns a view of given heap or direct {@code buffer} starting at given
+     * absolute {@code index} (regardless of the buffer's position) as a packed
+     * object of this type without copying. A view of a direct buffer keeps the
+     * buffer reachable.
+     *
+     * @param buffer the buffer to view
+     * @param index  the index of the 1st byte of the packed object in {@code buffer}
+     * @return a packed object view of given buffer
+     * @throws IllegalArgumentException  if this is not a non-abstract packed object
+     *                                   type or {@code buffer} is read-only
+     * @throws IndexOutOfBoundsException if the range of {@link #getSize()} bytes at
+     *                                   {@code index} is out of bounds of the buffer's limit
+     * @see #wrap(byte[], int)
+     */
+    public T wrap(ByteBuffer buffer, int index) {
+        checkInstantiable(false);
+        checkBuffer(buffer, index, size);
+        return asWrapped(Packed.wrapU(packedClass(), buffer, index, size));
+    }
+
+    /**
+     * Returns a view of given heap or direct {@code buffer} starting at given
+     * absolute {@code index} as a packed array of this type and given
+     * {@code length} without copying.
+     *
+     * @param buffer the buffer to view
+     * @param index  the index of the 1st byte of the packed array in {@code buffer}
+     * @param length the length of the packed array
+     * @return a packed array view of given buffer
+     * @throws IllegalArgumentException  if this is not a packed array type with a
+     *                                   component type, {@code length} is negative
+     *                                   or {@code buffer} is read-only
+     * @throws IndexOutOfBoundsException if the range of {@link #arraySize(int)} bytes
+     *                                   at {@code index} is out of bounds of the buffer's limit
+     * @see #wrap(ByteBuffer, int)
+     */
+    public T wrap(ByteBuffer buffer, int index, int length) {
+        checkInstantiable(true);
+        int size = arraySize(PackedArray.checkLength(length));
+        checkBuffer(buffer, index, size);
+        return initArray(Packed.wrapU(packedClass(), buffer, index, size), length);
+    }
+
+    /**
+     * Checks that instances of this type can be laid over raw bytes, which
+     * are non-abstract packed objects or packed arrays with known component
+     * type.
+     */
+    void checkInstantiable(boolean array) {
+        if (array ? (!isArray() || componentType == null)
+                  : (!isObject() || Modifier.isAbstract(asClass().getModifiers()))) {
+            throw new IllegalArgumentException(
+                "Not a " + (array ? "packed array type with component type" : "non-abstract packed object type") +
+                    ": " + this);
+        }
+    }
+
+    private static void checkBuffer(ByteBuffer buffer, int index, int size) {
+        if (buffer.isReadOnly()) {
+            throw new IllegalArgumentException("Can't wrap a read-only buffer");
+        }
+        checkBounds(index, size, buffer.limit());
+    }
+
+    private static void checkBounds(int offset, int size, int length) {
+        if (offset < 0 || offset > length - size) {
+            throw new IndexOutOfBoundsException(
+                "Range [" + offset + ", " + offset + " + " + size + ") out of bounds for length " + length);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Class<? extends Packed> packedClass() {
+        return (Class<? extends Packed>) asClass();
+    }
+
+    private T initArray(Packed array, int length) {
+        ((PackedArray<?>) array).initLengthAndType(length, this);
+        return asWrapped(array);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T asWrapped(Packed packed) {
+        return (T) packed;
+    }
+
+    /**
+     * @return true if this is a packed object type with a hidden version
+     * stamp (see {@link PackedVersioned})
+     */
+    public boolean isVersioned() {
+        return versionOffset >= 0;
+    }
+
+    /**
+     * @return the offset of the hidden version stamp or -1 if this type is
+     * not versioned
+     */
+    int versionOffset() {
+        return versionOffset;
+    }
+
+    /**
+     * @return true if values of this type contain hidden version stamps of
+     * their own, of embedded objects or of elements, which are not part of
+     * the value and must be skipped when comparing or hashing it
+     */
+    boolean hasVersionStamps() {
+        int stamps = versionStamps;
+        if (stamps == 0) {
+            versionStamps = stamps = computeVersionStamps(this) ? 2 : 1;
+        }
+        return stamps == 2;
+    }
+
     public PackedClass<?> getComponentType() {
         return componentType;
     }
@@ -199,9 +430,15 @@ public final class PackedClass<T> {
         if (componentType == null) {
             throw new IllegalArgumentException("Component type not known for: " + this);
         }
-        return (length == 0)
+        long size = (length == 0)
             ? 0
-            : (length - 1) * componentType.getIndexScale() + componentType.getSize();
+            : (long) (length - 1) * componentType.getIndexScale() + componentType.getSize();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "Array of length " + length + " is too large (" + size + " bytes), " +
+                    "consider using " + PackedBigArray.class.getSimpleName());
+        }
+        return (int) size;
     }
 
     public int getSize() {
@@ -222,6 +459,34 @@ public final class PackedClass<T> {
         return indexScale;
     }
 
+    /**
+     * Returns the layout of primitive leaf fields of a packed object or array of
+     * this type and given {@code size} as pairs of {@code (offset, size)} ordered
+     * by offset. Nested packed objects and arrays are flattened. This is how
+     * values of the type are copied field by field when they are not stored
+     * in a contiguous range of bytes (as elements of {@link PackedColumnArray}).
+     */
+    int[] leaves(long size) {
+        if (isPrimitive()) {
+            return new int[]{0, this.size};
+        } else if (isObject()) {
+            int[] leaves = this.leaves;
+            if (leaves == null) {
+                this.leaves = leaves = computeLeaves(this);
+            }
+            return leaves;
+        } else {
+            PackedClass<?> componentType = getComponentType();
+            if (componentType == null) {
+                throw new IllegalArgumentException("Component type not known for: " + this);
+            }
+            int length = (size == 0)
+                ? 0
+                : (int) ((size - componentType.getSize()) / componentType.getIndexScale()) + 1;
+            return repeatLeaves(componentType.leaves(componentType.getSize()), length, componentType.getIndexScale());
+        }
+    }
+
     @Override
     public String toString() {
         Class<T> clazz = asClass();
@@ -248,47 +513,350 @@ public final class PackedClass<T> {
         PRIMITIVE_SIZES.put(double.class, 8);
     }
 
-    private static List<PackedField<?, ?>> computeAndBlessFields(Class<?> clazz) {
+    /**
+     * @return the offset of the version stamp inherited from the superclass or
+     * laid out in front of the fields declared by given {@code clazz} if it
+     * is annotated with {@link PackedVersioned}, or -1
+     */
+    private static int computeVersionOffset(Class<?> clazz) {
+        if (!PackedObject.class.isAssignableFrom(clazz) || clazz == PackedObject.class) {
+            return -1;
+        }
+        PackedClass<?> superclass = forClass(clazz.getSuperclass());
+        if (superclass.isVersioned()) {
+            return superclass.versionOffset;
+        }
+        if (!clazz.isAnnotationPresent(PackedVersioned.class)) {
+            return -1;
+        }
+        PackedLayout layout = clazz.getAnnotation(PackedLayout.class);
+        if (layout != null && layout.value() == PackedLayout.Policy.UNALIGNED) {
+            throw new ClassFormatError(
+                "Versioned class: " + clazz.getName() + " can't have " + layout.value() + " layout");
+        }
+        return PackedField.align(superclass.getSize(), 8);
+    }
+
+    private static List<PackedField<?, ?>> computeAndBlessFields(Class<?> clazz, int versionOffset) {
         if (PackedObject.class.isAssignableFrom(clazz)) {
-            List<PackedField<?, ?>> fields = new ArrayList<>();
-            for (Field f : clazz.getDeclaredFields()) {
-                if (Modifier.isStatic(f.getModifiers()) && PackedField.class.isAssignableFrom(f.getType())) {
-                    if (!Modifier.isFinal(f.getModifiers())) {
-                        throw new ClassFormatError("Field: " + f + " should be final.");
-                    }
-                    f.setAccessible(true);
-                    try {
-                        PackedField<?, ?> pf = (PackedField<?, ?>) f.get(null);
-                        // validate that home class is the same as the declaring class of static field
-                        // (don't use getter for homeClass since it's public and protected by checkBlessed())
-                        if (pf.homeClass != clazz) {
-                            throw new ClassFormatError(
-                                "PackedField assigned to: " + f +
-                                    " has invalid home class: " + pf.getHomeClass().getName());
-                        }
-                        // while we are iterating all fields, bless them at the same time...
-                        pf.bless(f.getName(), f.getModifiers());
-                        fields.add(pf);
-                    } catch (IllegalAccessException e) {
-                        throw new InternalError(e);
+            // initializes the class, so it must not be called holding the lock below
+            List<Member> members = declaredMembers(clazz);
+            if (members == null) {
+                members = reflectedMembers(clazz);
+            }
+            // PackedClass(es) of the same class may be constructed concurrently,
+            // but the shared fields are laid out and blessed only once
+            Declaration declaration = DECLARATION.get(clazz);
+            synchronized (declaration) {
+                if (declaration.blessed == null) {
+                    // lay out and validate the members before writing them to the fields
+                    layOut(clazz, members, versionOffset);
+                    List<PackedField<?, ?>> fields = new ArrayList<>(members.size());
+                    for (Member m : members) {
+                        m.apply();
+                        m.field.bless(m.name, m.modifiers);
+                        fields.add(m.field);
                     }
+                    // sort them by offset
+                    fields.sort(Comparator.comparingInt(PackedField::getOffset));
+                    declaration.blessed = Collections.unmodifiableList(fields);
                 }
+                return declaration.blessed;
             }
-            // sort them by offset
-            fields.sort(Comparator.comparingInt(PackedField::getOffset));
-            return Collections.unmodifiableList(fields);
         } else {
             return Collections.emptyList();
         }
     }
 
+    /**
+     * A packed field together with the name and modifiers it is blessed with
+     * and its layout, which is computed here and then written to the field
+     * by {@link #apply()}.
+     */
+    private static final class Member {
+        final PackedField<?, ?> field;
+        final String name;
+        final int modifiers;
+        int offset, size, alignment, shift;
+
+        Member(PackedField<?, ?> field, String name, int modifiers) {
+            this.field = field;
+            this.name = name;
+            this.modifiers = modifiers;
+            this.offset = field.offset;
+            this.size = field.size;
+            this.alignment = field.alignment;
+            this.shift = isBitField() ? ((PackedField.BitField<?, ?>) field).shift : 0;
+        }
+
+        boolean isBitField() {
+            return field instanceof PackedField.BitField;
+        }
+
+        void apply() {
+            field.offset = offset;
+            field.size = size;
+            field.alignment = alignment;
+            if (isBitField()) {
+                ((PackedField.BitField<?, ?>) field).shift = shift;
+            }
+        }
+    }
+
+    /**
+     * @return members declared by {@link #declare} or null if the
+     * layout of given {@code clazz} has not been declared
+     */
+    private static List<Member> declaredMembers(Class<?> clazz) {
+        // the layout is declared by the static initializer
+        try {
+            Class.forName(clazz.getName(), true, clazz.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new InternalError(e);
+        }
+        Declaration declaration = DECLARATION.get(clazz);
+        synchronized (declaration) {
+            if (declaration.fields == null) {
+                return null;
+            }
+            List<Member> members = new ArrayList<>(declaration.fields.length);
+            for (int i = 0; i < declaration.fields.length; i++) {
+                members.add(new Member(declaration.fields[i], declaration.names[i],
+                    Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL));
+            }
+            return members;
+        }
+    }
+
+    private static List<Member> reflectedMembers(Class<?> clazz) {
+        List<Member> members = new ArrayList<>();
+        for (Field f : clazz.getDeclaredFields()) {
+            if (Modifier.isStatic(f.getModifiers()) && PackedField.class.isAssignableFrom(f.getType())) {
+                if (!Modifier.isFinal(f.getModifiers())) {
+                    throw new ClassFormatError("Field: " + f + " should be final.");
+                }
+                f.setAccessible(true);
+                try {
+                    PackedField<?, ?> pf = (PackedField<?, ?>) f.get(null);
+                    if (pf == null) {
+                        throw new IllegalStateException("PackedField is not assigned yet: " + f);
+                    }
+                    // validate that home class is the same as the declaring class of static field
+                    // (don't use getter for homeClass since it's public and protected by checkBlessed())
+                    if (pf.homeClass != clazz) {
+                        throw new ClassFormatError(
+                            "PackedField assigned to: " + f +
+                                " has invalid home class: " + pf.homeClass.getName());
+                    }
+                    members.add(new Member(pf, f.getName(), f.getModifiers()));
+                } catch (IllegalAccessException e) {
+                    throw new InternalError(e);
+                }
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Assigns offsets to given members of given {@code clazz} by the
+     * {@link PackedLayout layout policy} of the class, unless they are all
+     * constructed at precomputed offsets, and validates the layout. The fields
+     * follow the version stamp at {@code versionOffset} if it is declared by
+     * the class itself.
+     */
+    private static void layOut(Class<?> clazz, List<Member> members, int versionOffset) {
+        PackedLayout layout = clazz.getAnnotation(PackedLayout.class);
+        PackedLayout.Policy policy = (layout == null) ? PackedLayout.Policy.DECLARED : layout.value();
+        // declaration order
+        members.sort(Comparator.comparingLong(m -> m.field.order));
+        if (policy == PackedLayout.Policy.UNALIGNED) {
+            for (Member m : members) {
+                if (!m.isBitField() && m.field.type.hasVersionStamps()) {
+                    // the stamps are accessed atomically, so they must stay aligned
+                    throw new ClassFormatError(
+                        "PackedField: " + m.name + " of " + clazz.getName() +
+                            " embeds version stamps and can't have " + policy + " layout");
+                }
+            }
+        }
+        int precomputed = 0;
+        for (Member m : members) {
+            if (m.offset >= 0) {
+                precomputed++;
+            }
+        }
+        int start = superclassSize(clazz);
+        if (versionOffset >= start) {
+            start = versionOffset + 8;
+        }
+        if (precomputed == 0) {
+            List<Unit> units = units(members, policy);
+            if (policy == PackedLayout.Policy.COMPACT) {
+                layOutCompact(units, start);
+            } else {
+                int end = start;
+                for (Unit u : units) {
+                    u.offset = PackedField.align(end, u.alignment);
+                    end = u.offset + u.size;
+                }
+            }
+            for (Unit u : units) {
+                for (Member m : u.members) {
+                    m.offset = u.offset;
+                }
+            }
+        } else if (precomputed < members.size()) {
+            throw new ClassFormatError(
+                "PackedField(s) of " + clazz.getName() +
+                    " are either all constructed at precomputed offsets or none");
+        } else if (policy == PackedLayout.Policy.UNALIGNED) {
+            for (Member m : members) {
+                m.alignment = 1;
+            }
+        }
+        validateLayout(clazz, members, start);
+    }
+
+    /**
+     * A unit of layout: a single field or bit fields sharing a word.
+     */
+    private static final class Unit {
+        final List<Member> members = new ArrayList<>(1);
+        int size, alignment, offset, bits;
+    }
+
+    /**
+     * @return units of given members in declaration order. Adjacent bit fields
+     * (or all bit fields of a class with COMPACT policy) share units of up
+     * to 64 bits.
+     */
+    private static List<Unit> units(List<Member> members, PackedLayout.Policy policy) {
+        List<Unit> units = new ArrayList<>(members.size());
+        Unit word = null;
+        for (Member m : members) {
+            if (m.isBitField()) {
+                int bits = ((PackedField.BitField<?, ?>) m.field).bits;
+                if (word == null || word.bits + bits > 64) {
+                    word = new Unit();
+                    units.add(word);
+                }
+                m.shift = word.bits;
+                word.bits += bits;
+                word.members.add(m);
+            } else {
+                if (policy != PackedLayout.Policy.COMPACT) {
+                    word = null;
+                }
+                Unit u = new Unit();
+                u.members.add(m);
+                u.size = m.size;
+                u.alignment = m.alignment;
+                units.add(u);
+            }
+        }
+        for (Unit u : units) {
+            if (u.bits > 0) {
+                u.size = u.alignment = (u.bits > 32) ? 8 : 4;
+            }
+            if (policy == PackedLayout.Policy.UNALIGNED) {
+                u.alignment = 1;
+            }
+            for (Member m : u.members) {
+                m.size = u.size;
+                m.alignment = u.alignment;
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Lays out units in order of descending alignment, each at the lowest
+     * aligned offset not overlapping already placed units (which fills the
+     * gaps left by padding if any).
+     */
+    private static void layOutCompact(List<Unit> units, int start) {
+        units = new ArrayList<>(units);
+        // stable sort keeps declaration order of units with same alignment
+        units.sort(Comparator.comparingInt((Unit u) -> u.alignment).reversed());
+        // the free gaps [from, to) between placed units
+        List<int[]> gaps = new ArrayList<>();
+        int end = start;
+        for (Unit u : units) {
+            u.offset = -1;
+            for (int i = 0; i < gaps.size(); i++) {
+                int[] gap = gaps.get(i);
+                int offset = PackedField.align(gap[0], u.alignment);
+                if (offset + u.size <= gap[1]) {
+                    gaps.remove(i);
+                    if (offset + u.size < gap[1]) {
+                        gaps.add(i, new int[]{offset + u.size, gap[1]});
+                    }
+                    if (gap[0] < offset) {
+                        gaps.add(i, new int[]{gap[0], offset});
+                    }
+                    u.offset = offset;
+                    break;
+                }
+            }
+            if (u.offset < 0) {
+                u.offset = PackedField.align(end, u.alignment);
+                if (end < u.offset) {
+                    gaps.add(new int[]{end, u.offset});
+                }
+                end = u.offset + u.size;
+            }
+        }
+    }
+
+    /**
+     * Validates that given fields are aligned and don't overlap each other
+     * (except bit fields sharing a word) or the fields of the superclass
+     * ending at {@code start} (fields at precomputed offsets are not laid
+     * out by us).
+     */
+    private static void validateLayout(Class<?> clazz, List<Member> members, int start) {
+        List<Member> byOffset = new ArrayList<>(members);
+        byOffset.sort(Comparator.comparingInt(m -> m.offset));
+        int end = start;
+        Member word = null;
+        for (Member m : byOffset) {
+            if (m.offset != PackedField.align(m.offset, m.alignment)) {
+                throw new ClassFormatError(
+                    "PackedField: " + m.name + " of " + clazz.getName() +
+                        " at offset: " + m.offset + " is not aligned to: " + m.alignment);
+            }
+            if (word != null && m.isBitField() && m.offset == word.offset) {
+                // shares the word with preceding bit field(s)
+                continue;
+            }
+            if (m.offset < end) {
+                throw new ClassFormatError(
+                    "PackedField: " + m.name + " of " + clazz.getName() +
+                        " at offset: " + m.offset + " overlaps preceding field(s) ending at: " + end);
+            }
+            end = m.offset + m.size;
+            word = m.isBitField() ? m : null;
+        }
+    }
+
+    private static int superclassSize(Class<?> clazz) {
+        Class<?> superclass = clazz.getSuperclass();
+        return PackedObject.class.isAssignableFrom(superclass)
+            ? forClass(superclass).getSize() : 0;
+    }
+
     private static int computeSize(PackedClass<?> type) {
         if (type.isPrimitive()) {
             return PRIMITIVE_SIZES.get(type.asClass());
         } else if (type.isObject()) {
-            List<PackedField<?, ?>> fields = type.fields;
-            PackedField<?, ?> lastField = fields.isEmpty() ? null : fields.get(fields.size() - 1);
-            return (lastField == null) ? 0 : lastField.offset + lastField.size;
+            // a packed object without fields of its own is as large as its superclass
+            // (or its version stamp)
+            int size = Math.max(superclassSize(type.asClass()),
+                type.isVersioned() ? type.versionOffset + 8 : 0);
+            for (PackedField<?, ?> pf : type.fields) {
+                size = Math.max(size, pf.offset + pf.size);
+            }
+            return size;
         } else {
             assert type.isArray();
             // no size for arrays since they are of different lengths
@@ -301,8 +869,8 @@ public final class PackedClass<T> {
             // primitives have same alignment as size
             return computeSize(type);
         } else if (type.isObject()) {
-            // packed object alignment is max(alignments of all fields)
-            int alignment = 1;
+            // packed object alignment is max(alignments of all fields and the version stamp)
+            int alignment = type.isVersioned() ? 8 : 1;
             for (PackedClass<?> c = type; c != null; c = c.getSuperclass()) {
                 for (PackedField<?, ?> pf : c.fields) {
                     if (pf.alignment > alignment) {
@@ -323,6 +891,64 @@ public final class PackedClass<T> {
         }
     }
 
+    private static boolean computeVersionStamps(PackedClass<?> type) {
+        if (type.isVersioned()) {
+            return true;
+        } else if (type.isArray()) {
+            return type.getComponentType() != null && type.getComponentType().hasVersionStamps();
+        } else if (type.isObject()) {
+            PackedClass<?> superclass = type.getSuperclass();
+            if (superclass != null && superclass.isObject() && superclass.hasVersionStamps()) {
+                return true;
+            }
+            for (PackedField<?, ?> pf : type.fields) {
+                if (!(pf instanceof PackedField.BitField) && pf.type.hasVersionStamps()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int[] computeLeaves(PackedClass<?> type) {
+        int[] leaves = new int[0];
+        PackedClass<?> superclass = type.getSuperclass();
+        if (superclass != null && superclass.isObject()) {
+            leaves = superclass.leaves(superclass.getSize());
+        }
+        PackedField<?, ?> word = null;
+        for (PackedField<?, ?> pf : type.fields) {
+            if (pf instanceof PackedField.BitField) {
+                if (word != null && word.offset == pf.offset) {
+                    // the shared word is already a leaf
+                    continue;
+                }
+                word = pf;
+            }
+            int[] fieldLeaves = (pf instanceof PackedField.BitField)
+                ? new int[]{0, pf.size}
+                : pf.type.leaves(pf.size);
+            int n = leaves.length;
+            leaves = Arrays.copyOf(leaves, n + fieldLeaves.length);
+            for (int i = 0; i < fieldLeaves.length; i += 2) {
+                leaves[n + i] = pf.offset + fieldLeaves[i];
+                leaves[n + i + 1] = fieldLeaves[i + 1];
+            }
+        }
+        return leaves;
+    }
+
+    private static int[] repeatLeaves(int[] leaves, int count, int scale) {
+        int[] repeated = new int[leaves.length * count];
+        for (int j = 0, k = 0; j < count; j++) {
+            for (int i = 0; i < leaves.length; i += 2) {
+                repeated[k++] = j * scale + leaves[i];
+                repeated[k++] = leaves[i + 1];
+            }
+        }
+        return repeated;
+    }
+
     private static int computeIndexScale(int componentSize, int alignment) {
         if (componentSize >= 0 && alignment > 0) {
             return PackedField.align(componentSize, alignment);
@@ -0,0 +1,306 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import pele.packed.PackedField.pfBoolean;
+import pele.packed.PackedField.pfByte;
+import pele.packed.PackedField.pfChar;
+import pele.packed.PackedField.pfDouble;
+import pele.packed.PackedField.pfFloat;
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedField.pfLong;
+import pele.packed.PackedField.pfShort;
+
+import java.util.function.Consumer;
+
+/**
+ * PackedColumnArray is an array of PackedObject(s) with columnar
+ * (structure-of-arrays) layout. Where {@link PackedArray.OfObject} stores
+ * elements one after another, PackedColumnArray stores each primitive field
+ * of the component type (including fields of embedded packed objects and
+ * elements of embedded packed arrays) in its own contiguous column. Scans
+ * that read only a few fields of many elements then stream through just the
+ * columns of those fields.
+ * <p>
+ * Elements are accessed through views just like elements of
+ * {@link PackedArray.OfObject}, so the same {@link PackedField} accessors work
+ * with them. Values of elements can be copied to and from ordinary packed
+ * objects, compared and hashed, but bulk operations of packed arrays embedded
+ * in elements throw {@link UnsupportedOperationException} as they are not
+ * stored contiguously. The columns of primitive fields can also be obtained
+ * as {@link PackedArray.OfPrimitive primitive packed arrays} with
+ * {@link #column(pfInt)} and similar methods.
+ *
+ * @param <CT> the component type
+ */
+public final class PackedColumnArray<CT extends PackedObject> {
+
+    private final PackedClass<CT> componentType;
+    private final int length;
+    // the column of a field at offset off in the component type starts at
+    // off * length in storage
+    private final PackedArray.OfByte storage;
+
+    public PackedColumnArray(Class<CT> componentClass, int length) {
+        this(componentClass, length, false);
+    }
+
+    private PackedColumnArray(Class<CT> componentClass, int length, boolean direct) {
+        // validates the component class the same way as for PackedArray.OfObject
+        @SuppressWarnings("unchecked")
+        PackedClass<CT> componentType = (PackedClass) PackedArray.OfObject.typeWithComponent(componentClass).getComponentType();
+        this.componentType = componentType;
+        this.length = PackedArray.checkLength(length);
+        long size = (long) componentType.getSize() * length;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "Columnar array of length " + length + " is too large (" + size + " bytes)");
+        }
+        this.storage = Packed.newArrayU(PackedArray.OfByte.TYPE, (int) size, direct);
+    }
+
+    /**
+     * Allocates a "zero" columnar array of given {@code length} with elements
+     * of given {@code componentClass} in off-heap memory.
+     *
+     * @see #isDirect()
+     */
+    public static <CT2 extends PackedObject> PackedColumnArray<CT2> allocateDirect(Class<CT2> componentClass, int length) {
+        return new PackedColumnArray<>(componentClass, length, true);
+    }
+
+    /**
+     * @return the length of the columnar array.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the component type of the columnar array.
+     */
+    public PackedClass<CT> componentType() {
+        return componentType;
+    }
+
+    /**
+     * @return {@code true} if this columnar array is stored off-heap
+     * @see Packed#isDirect()
+     */
+    public boolean isDirect() {
+        return storage.isDirect();
+    }
+
+    public CT getView(int index) {
+        return storage.getColumnarViewU(componentType.asClass(), componentType.getSize(), length, checkIndex(index));
+    }
+
+    public CT getCopy(int index) {
+        return getView(index).copyAs(componentType.asClass());
+    }
+
+    public CT copyFrom(int index, CT source) {
+        getView(index).copyFromU(componentType.asClass().cast(source), 0, componentType.getSize());
+        return source;
+    }
+
+    /**
+     * Returns a view of the element at given {@code index}.
+     *
+     * @see #getView(int)
+     */
+    public CT get(int index) {
+        return getView(index);
+    }
+
+    /**
+     * Copies given {@code value} to the element at given {@code index}.
+     *
+     * @see #copyFrom(int, PackedObject)
+     */
+    public void set(int index, CT value) {
+        copyFrom(index, value);
+    }
+
+    /**
+     * @return a view of the column of given {@code field} of elements as a
+     * packed array of the field's values
+     * @throws ClassCastException if given field is not a field of the
+     *                            component type
+     */
+    public PackedArray.OfBoolean column(pfBoolean<? super CT> field) {
+        return columnView(PackedArray.OfBoolean.TYPE, field);
+    }
+
+    /**
+     * @see #column(pfBoolean)
+     */
+    public PackedArray.OfByte column(pfByte<? super CT> field) {
+        return columnView(PackedArray.OfByte.TYPE, field);
+    }
+
+    /**
+     * @see #column(pfBoolean)
+     */
+    public PackedArray.OfChar column(pfChar<? super CT> field) {
+        return columnView(PackedArray.OfChar.TYPE, field);
+    }
+
+    /**
+     * @see #column(pfBoolean)
+     */
+    public PackedArray.OfShort column(pfShort<? super CT> field) {
+        return columnView(PackedArray.OfShort.TYPE, field);
+    }
+
+    /**
+     * @see #column(pfBoolean)
+     */
+    public PackedArray.OfInt column(pfInt<? super CT> field) {
+        return columnView(PackedArray.OfInt.TYPE, field);
+    }
+
+    /**
+     * @see #column(pfBoolean)
+     */
+    public PackedArray.OfLong column(pfLong<? super CT> field) {
+        return columnView(PackedArray.OfLong.TYPE, field);
+    }
+
+    /**
+     * @see #column(pfBoolean)
+     */
+    public PackedArray.OfFloat column(pfFloat<? super CT> field) {
+        return columnView(PackedArray.OfFloat.TYPE, field);
+    }
+
+    /**
+     * @see #column(pfBoolean)
+     */
+    public PackedArray.OfDouble column(pfDouble<? super CT> field) {
+        return columnView(PackedArray.OfDouble.TYPE, field);
+    }
+
+    /**
+     * Performs given {@code action} for each element of this array, passing
+     * it a single reusable view which is re-bound to each element in turn.
+     * The view must not be retained by the action.
+     *
+     * @param action the action to perform for each element
+     */
+    public void forEachFlyweight(Consumer<? super CT> action) {
+        CT view = storage.getColumnarViewU(componentType.asClass(), componentType.getSize(), length, 0);
+        for (int i = 0; i < length; i++) {
+            view.rebindColumnarU(storage, length, i);
+            action.accept(view);
+        }
+    }
+
+    /**
+     * Returns a new cursor over the elements of this array positioned before
+     * the 1st element. The cursor re-binds a single reusable view to
+     * elements as it moves, so iteration is allocation-free.
+     *
+     * @return a new cursor over the elements of this array
+     * @see PackedCursor
+     */
+    public Cursor<CT> cursor() {
+        return new Cursor<>(this,
+            storage.getColumnarViewU(componentType.asClass(), componentType.getSize(), length, 0));
+    }
+
+    /**
+     * Returns a {@code String} representation of the contents of the array
+     * in the same format as {@link PackedArray#toString()}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getView(i));
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    private <PA extends PackedArray<?>> PA columnView(PackedClass<PA> columnType, PackedField<?, ? super CT> field) {
+        return storage.getArrayViewU(columnType, (long) field.offsetIn(componentType) * length, length);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return index;
+    }
+
+    /**
+     * A {@link PackedCursor} over the elements of a columnar array.
+     *
+     * @see #cursor()
+     */
+    public static final class Cursor<CT extends PackedObject> extends PackedCursor<CT> {
+        private final PackedColumnArray<CT> array;
+        private int index = -1;
+
+        Cursor(PackedColumnArray<CT> array, CT view) {
+            super(view);
+            this.array = array;
+        }
+
+        /**
+         * @return the index of the element the cursor is positioned at,
+         * {@code -1} if it is positioned before the 1st element or
+         * {@link #length()} if it moved past the last element.
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * Moves the cursor to the element at given {@code index}.
+         *
+         * @param index the index of the element to move to
+         * @return the reusable view of the element at given {@code index}
+         * @throws ArrayIndexOutOfBoundsException if given {@code index} is not:
+         *                                        {@code 0 <= index < }{@link #length()}
+         */
+        public CT moveTo(int index) {
+            view.rebindColumnarU(array.storage, array.length, array.checkIndex(index));
+            this.index = index;
+            return view;
+        }
+
+        /**
+         * Moves the cursor to the next element if there is one.
+         *
+         * @return {@code true} if the cursor moved to the next element or
+         * {@code false} if it moved past the last element.
+         */
+        public boolean next() {
+            int next = index + 1;
+            if (next < array.length) {
+                view.rebindColumnarU(array.storage, array.length, next);
+                index = next;
+                return true;
+            } else {
+                index = array.length;
+                return false;
+            }
+        }
+
+        @Override
+        public CT get() {
+            if (index < 0 || index >= array.length) {
+                throw new IllegalStateException("Cursor is not positioned at an element: " + index);
+            }
+            return view;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import pele.packed.PackedField.pfObject;
+
+/**
+ * PackedCursor is a reusable flyweight view of packed objects. Instead of
+ * creating a new view for each element of an array or each embedded field,
+ * a cursor re-binds a single view which is returned by {@link #get()}. This
+ * makes tight loops over packed arrays allocation-free:
+ * <pre>
+ *   PackedArray.OfObject.Cursor&lt;Segment&gt; c = segments.cursor();
+ *   PackedCursor&lt;Point&gt; to = Segment.to.cursor(c);
+ *   while (c.next()) {
+ *       sum += to.get().getX();
+ *   }
+ * </pre>
+ * The view returned by {@link #get()} is only valid until the cursor (or its
+ * parent cursor) moves and must not be retained. Use
+ * {@link PackedObject#copyAs(Class)} to keep the element's value. Cursors are
+ * not thread-safe.
+ *
+ * @param <T> the type of packed objects viewed by this cursor
+ */
+public abstract class PackedCursor<T extends PackedObject> {
+
+    final T view;
+
+    PackedCursor(T view) {
+        this.view = view;
+    }
+
+    /**
+     * @return the reusable view of the packed object at the cursor's current
+     * position.
+     * @throws IllegalStateException if the cursor is not positioned at an object
+     */
+    public abstract T get();
+
+    /**
+     * A cursor over a packed object field of packed objects viewed by a
+     * parent cursor. It follows the parent as it moves.
+     *
+     * @see pfObject#cursor(PackedCursor)
+     */
+    static final class OfField<T extends PackedObject, H extends PackedObject> extends PackedCursor<T> {
+        private final PackedCursor<? extends H> parent;
+        private final Class<H> homeClass;
+        private final long offset;
+
+        OfField(PackedCursor<? extends H> parent, Class<H> homeClass, T view, long offset) {
+            super(view);
+            this.parent = parent;
+            this.homeClass = homeClass;
+            this.offset = offset;
+        }
+
+        @Override
+        public T get() {
+            view.rebindU(homeClass.cast(parent.get()), offset);
+            return view;
+        }
+    }
+}
@@ -6,8 +6,11 @@ package pele.packed;
 
 import sun.misc.Unsafe;
 
-import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A PackedField allows to access an individual field and to lay out the
@@ -21,30 +24,29 @@ public abstract class PackedField<T, H extends PackedObject> {
 
     final PackedClass<T> type;
     final Class<H> homeClass;
-    final int offset, size, alignment;
+    // the offset and alignment are assigned by PackedClass constructor when it
+    // lays out the home class (the alignment is reduced to 1 by UNALIGNED layout
+    // policy) unless the field is constructed at a precomputed offset. The size
+    // (of the shared word) is also assigned then for bit fields
+    int offset, size, alignment;
+    // PackedField(s) are assigned to static fields of PackedObject subclasses.
+    // The order of class initialization and static field assignment is defined
+    // by Java language, so the order of construction is the order of declaration
+    // by which PackedClass lays out the packed fields
+    final long order = ORDER.getAndIncrement();
     // the name injected by PackedClass constructor which blesses the field at the same time
     private String name;
     // the modifiers injected by PackedClass constructor
     private int modifiers;
 
-    private PackedField(PackedClass<T> type, Class<H> homeClass, int size, int alignment) {
+    private PackedField(PackedClass<T> type, Class<H> homeClass, int size, int alignment, int offset) {
         this.type = type;
         // validate homeClass at field construction time
         homeClass.asSubclass(PackedObject.class);
         this.homeClass = homeClass;
-        // PackedField(s) are assigned to static fields of PackedObject subclasses.
-        // The order of class initialization and static field assignment is defined
-        // by Java language. We exploit this fact to lay out the packed fields
-        // one by one as they get instantiated and assigned to static fields...
-        PackedField lastAssigned = findLastAssignedField(homeClass);
-        if (lastAssigned != null) {
-            offset = align(lastAssigned.offset + lastAssigned.size, alignment);
-        } else {
-            // 1st field
-            offset = 0;
-        }
         this.size = size;
         this.alignment = alignment;
+        this.offset = offset;
     }
 
     /**
@@ -52,14 +54,29 @@ public abstract class PackedField<T, H extends PackedObject> {
      */
     PackedField(PackedClass<T> primitiveOrObjectType, Class<H> homeClass) {
         this(primitiveOrObjectType, homeClass,
-            primitiveOrObjectType.getSize(), primitiveOrObjectType.getAlignment());
+            primitiveOrObjectType.getSize(), primitiveOrObjectType.getAlignment(), -1);
     }
 
     /**
      * Constructor for packed array type fields
      */
     PackedField(PackedClass<T> arrayType, int length, Class<H> homeClass) {
-        this(arrayType, homeClass, arrayType.arraySize(length), arrayType.getAlignment());
+        this(arrayType, homeClass, arrayType.arraySize(length), arrayType.getAlignment(), -1);
+    }
+
+    /**
+     * Constructor for primitive and packed object type fields at precomputed offset
+     */
+    PackedField(PackedClass<T> primitiveOrObjectType, Class<H> homeClass, int offset) {
+        this(primitiveOrObjectType, homeClass,
+            primitiveOrObjectType.getSize(), primitiveOrObjectType.getAlignment(), checkOffset(offset));
+    }
+
+    /**
+     * Constructor for packed array type fields at precomputed offset
+     */
+    PackedField(PackedClass<T> arrayType, int length, Class<H> homeClass, int offset) {
+        this(arrayType, homeClass, arrayType.arraySize(length), arrayType.getAlignment(), checkOffset(offset));
     }
 
     public String getName() {
@@ -101,6 +118,95 @@ public abstract class PackedField<T, H extends PackedObject> {
 
     public abstract void set(H object, T value);
 
+    /**
+     * Returns a method handle that gets the value of this field in given packed
+     * object without checks. The field's offset (and for embedded packed objects
+     * and arrays also their type and size) are bound into the handle as
+     * constants. The field is checked to be blessed once, by this method, and the
+     * handle's parameter type is the field's home class so that no cast is
+     * performed when it is invoked either. When the handle is assigned to a
+     * {@code static final} field and invoked with {@link MethodHandle#invokeExact},
+     * JIT inlines the access with the offset as a constant. Such static field
+     * must be declared after all packed fields of the home class, since
+     * obtaining the handle lays out (blesses) the home class:
+     * <pre>
+     *   private static final pfInt&lt;Point&gt; x = new pfInt&lt;&gt;(Point.class);
+     *   private static final MethodHandle X = x.getter(); // (Point)int
+     *
+     *   public int getX() {
+     *       try {
+     *           return (int) X.invokeExact(this);
+     *       } catch (Throwable t) {
+     *           throw new InternalError(t);
+     *       }
+     *   }
+     * </pre>
+     * The type of the handle is {@code (H)t} where {@code t} is the primitive
+     * type for primitive fields, the packed object class for packed object
+     * fields (returning a view) and the packed array class for packed array
+     * fields (returning a view).
+     *
+     * @return a method handle getting the value of this field
+     * @throws IllegalStateException if called from the static initializer of
+     *                               the home class before all its packed fields
+     *                               are assigned
+     * @see #setter()
+     */
+    public final MethodHandle getter() {
+        blessHomeClass();
+        try {
+            return getterU();
+        } catch (ReflectiveOperationException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    /**
+     * Returns a method handle that sets the value of this field in given packed
+     * object without checks in the same way as {@link #getter()} returns a
+     * handle that gets it. The type of the handle is {@code (H, t)void}.
+     * Setters of packed object and array fields copy the given value. Setters
+     * of packed array fields check the type and length of the given array on
+     * each invocation.
+     *
+     * @return a method handle setting the value of this field
+     * @throws IllegalStateException if called from the static initializer of
+     *                               the home class before all its packed fields
+     *                               are assigned
+     * @see #getter()
+     */
+    public final MethodHandle setter() {
+        blessHomeClass();
+        try {
+            return setterU();
+        } catch (ReflectiveOperationException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    private void blessHomeClass() {
+        if (name == null) {
+            // lays out the home class and blesses its fields
+            PackedClass.forClass(homeClass);
+        }
+        checkBlessed();
+    }
+
+    abstract MethodHandle getterU() throws ReflectiveOperationException;
+
+    abstract MethodHandle setterU() throws ReflectiveOperationException;
+
+    /**
+     * @return a handle of given {@link Packed} low-level method with given
+     * {@code values} bound to consecutive parameters starting at {@code pos}
+     * (the receiver is at position 0) and then adapted to given {@code type}
+     */
+    static MethodHandle packedMethodU(String name, MethodType methodType, int pos, MethodType type, Object... values)
+        throws ReflectiveOperationException {
+        MethodHandle mh = LOOKUP.findVirtual(Packed.class, name, methodType);
+        return MethodHandles.insertArguments(mh, pos, values).asType(type);
+    }
+
     /**
      * PackedField is blessed with name and modifiers given in homeClass by PackedClass constructor
      */
@@ -118,30 +224,34 @@ public abstract class PackedField<T, H extends PackedObject> {
         }
     }
 
+    /**
+     * @return the offset of this field in packed objects of given {@code type}
+     * @throws ClassCastException if given {@code type} is not this field's
+     *                            home class or subclass
+     */
+    int offsetIn(PackedClass<?> type) {
+        checkBlessed();
+        if (!homeClass.isAssignableFrom(type.asClass())) {
+            throw new ClassCastException(
+                "Field: " + name + " of " + homeClass.getName() +
+                    " is not a field of " + type.asClass().getName());
+        }
+        return offset;
+    }
+
     static int align(int offset, int alignment) {
         return (offset + alignment - 1) & ~(alignment - 1);
     }
 
-    static PackedField<?, ?> findLastAssignedField(Class<? extends PackedObject> homeClass) {
-        PackedField<?, ?> lastAssignedField = null;
-        for (Class<?> c = homeClass; lastAssignedField == null && c != PackedObject.class; c = c.getSuperclass()) {
-            for (Field f : c.getDeclaredFields()) {
-                if (Modifier.isStatic(f.getModifiers()) && PackedField.class.isAssignableFrom(f.getType())) {
-                    f.setAccessible(true);
-                    try {
-                        PackedField<?, ?> pf = (PackedField<?, ?>) f.get(null);
-                        if (pf != null) {
-                            if (lastAssignedField == null || pf.offset > lastAssignedField.offset) {
-                                lastAssignedField = pf;
-                            }
-                        }
-                    } catch (IllegalAccessException e) {
-                        throw new InternalError(e);
-                    }
-                }
-            }
+    /**
+     * Validates a precomputed offset (alignment is validated by PackedClass
+     * constructor since it depends on the layout policy of the home class)
+     */
+    static int checkOffset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset: " + offset);
         }
-        return lastAssignedField;
+        return offset;
     }
 
     public static final class pfBoolean<H extends PackedObject> extends PackedField<Boolean, H> {
@@ -149,6 +259,13 @@ public abstract class PackedField<T, H extends PackedObject> {
             super(PackedClass.forClass(boolean.class), homeClass);
         }
 
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfBoolean(Class<H> homeClass, int offset) {
+            super(PackedClass.forClass(boolean.class), homeClass, offset);
+        }
+
         public boolean getBoolean(H object) {
             checkBlessed();
             return homeClass.cast(object).getBooleanU(this.offset);
@@ -169,6 +286,18 @@ public abstract class PackedField<T, H extends PackedObject> {
         public void set(H object, Boolean value) {
             setBoolean(object, value);
         }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getBooleanU", MethodType.methodType(boolean.class, long.class), 1,
+                MethodType.methodType(boolean.class, homeClass), (long) offset);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return packedMethodU("putBooleanU", MethodType.methodType(void.class, long.class, boolean.class), 1,
+                MethodType.methodType(void.class, homeClass, boolean.class), (long) offset);
+        }
     }
 
     public static final class pfByte<H extends PackedObject> extends PackedField<Byte, H> {
@@ -176,6 +305,13 @@ public abstract class PackedField<T, H extends PackedObject> {
             super(PackedClass.forClass(byte.class), homeClass);
         }
 
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfByte(Class<H> homeClass, int offset) {
+            super(PackedClass.forClass(byte.class), homeClass, offset);
+        }
+
         public byte getByte(H object) {
             checkBlessed();
             return homeClass.cast(object).getByteU(this.offset);
@@ -196,6 +332,18 @@ public abstract class PackedField<T, H extends PackedObject> {
         public void set(H object, Byte value) {
             setByte(object, value);
         }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getByteU", MethodType.methodType(byte.class, long.class), 1,
+                MethodType.methodType(byte.class, homeClass), (long) offset);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return packedMethodU("putByteU", MethodType.methodType(void.class, long.class, byte.class), 1,
+                MethodType.methodType(void.class, homeClass, byte.class), (long) offset);
+        }
     }
 
     public static final class pfChar<H extends PackedObject> extends PackedField<Character, H> {
@@ -203,6 +351,13 @@ public abstract class PackedField<T, H extends PackedObject> {
             super(PackedClass.forClass(char.class), homeClass);
         }
 
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfChar(Class<H> homeClass, int offset) {
+            super(PackedClass.forClass(char.class), homeClass, offset);
+        }
+
         public char getChar(H object) {
             checkBlessed();
             return homeClass.cast(object).getCharU(this.offset);
@@ -223,6 +378,18 @@ public abstract class PackedField<T, H extends PackedObject> {
         public void set(H object, Character value) {
             setChar(object, value);
         }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getCharU", MethodType.methodType(char.class, long.class), 1,
+                MethodType.methodType(char.class, homeClass), (long) offset);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return packedMethodU("putCharU", MethodType.methodType(void.class, long.class, char.class), 1,
+                MethodType.methodType(void.class, homeClass, char.class), (long) offset);
+        }
     }
 
     public static final class pfShort<H extends PackedObject> extends PackedField<Short, H> {
@@ -230,6 +397,13 @@ public abstract class PackedField<T, H extends PackedObject> {
             super(PackedClass.forClass(short.class), homeClass);
         }
 
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfShort(Class<H> homeClass, int offset) {
+            super(PackedClass.forClass(short.class), homeClass, offset);
+        }
+
         public short getShort(H object) {
             checkBlessed();
             return homeClass.cast(object).getShortU(this.offset);
@@ -250,6 +424,18 @@ public abstract class PackedField<T, H extends PackedObject> {
         public void set(H object, Short value) {
             setShort(object, value);
         }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getShortU", MethodType.methodType(short.class, long.class), 1,
+                MethodType.methodType(short.class, homeClass), (long) offset);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return packedMethodU("putShortU", MethodType.methodType(void.class, long.class, short.class), 1,
+                MethodType.methodType(void.class, homeClass, short.class), (long) offset);
+        }
     }
 
     public static final class pfInt<H extends PackedObject> extends PackedField<Integer, H> {
@@ -257,6 +443,13 @@ public abstract class PackedField<T, H extends PackedObject> {
             super(PackedClass.forClass(int.class), homeClass);
         }
 
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfInt(Class<H> homeClass, int offset) {
+            super(PackedClass.forClass(int.class), homeClass, offset);
+        }
+
         public int getInt(H object) {
             checkBlessed();
             return homeClass.cast(object).getIntU(this.offset);
@@ -268,6 +461,63 @@ public abstract class PackedField<T, H extends PackedObject> {
             return value;
         }
 
+        /**
+         * Reads the value of this field with volatile semantics.
+         *
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public int getIntVolatile(H object) {
+            checkBlessed();
+            return homeClass.cast(object).getIntVolatileU(this.offset);
+        }
+
+        /**
+         * Sets the value of this field with release semantics, so writes that
+         * precede it are visible to threads reading it with
+         * {@link #getIntVolatile}.
+         *
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public int setIntRelease(H object, int value) {
+            checkBlessed();
+            homeClass.cast(object).putIntReleaseU(this.offset, value);
+            return value;
+        }
+
+        /**
+         * Atomically sets the value of this field to {@code value} if it is
+         * {@code expected}.
+         *
+         * @return {@code true} if successful
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public boolean compareAndSetInt(H object, int expected, int value) {
+            checkBlessed();
+            return homeClass.cast(object).compareAndSwapIntU(this.offset, expected, value);
+        }
+
+        /**
+         * Atomically adds {@code delta} to the value of this field.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public int getAndAddInt(H object, int delta) {
+            checkBlessed();
+            return homeClass.cast(object).getAndAddIntU(this.offset, delta);
+        }
+
+        /**
+         * Atomically sets the value of this field to {@code value}.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public int getAndSetInt(H object, int value) {
+            checkBlessed();
+            return homeClass.cast(object).getAndSetIntU(this.offset, value);
+        }
+
         @Override
         public Integer get(H object) {
             return getInt(object);
@@ -277,6 +527,18 @@ public abstract class PackedField<T, H extends PackedObject> {
         public void set(H object, Integer value) {
             setInt(object, value);
         }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getIntU", MethodType.methodType(int.class, long.class), 1,
+                MethodType.methodType(int.class, homeClass), (long) offset);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return packedMethodU("putIntU", MethodType.methodType(void.class, long.class, int.class), 1,
+                MethodType.methodType(void.class, homeClass, int.class), (long) offset);
+        }
     }
 
     public static final class pfLong<H extends PackedObject> extends PackedField<Long, H> {
@@ -284,6 +546,13 @@ public abstract class PackedField<T, H extends PackedObject> {
             super(PackedClass.forClass(long.class), homeClass);
         }
 
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfLong(Class<H> homeClass, int offset) {
+            super(PackedClass.forClass(long.class), homeClass, offset);
+        }
+
         public long getLong(H object) {
             checkBlessed();
             return homeClass.cast(object).getLongU(this.offset);
@@ -295,6 +564,63 @@ public abstract class PackedField<T, H extends PackedObject> {
             return value;
         }
 
+        /**
+         * Reads the value of this field with volatile semantics.
+         *
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public long getLongVolatile(H object) {
+            checkBlessed();
+            return homeClass.cast(object).getLongVolatileU(this.offset);
+        }
+
+        /**
+         * Sets the value of this field with release semantics, so writes that
+         * precede it are visible to threads reading it with
+         * {@link #getLongVolatile}.
+         *
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public long setLongRelease(H object, long value) {
+            checkBlessed();
+            homeClass.cast(object).putLongReleaseU(this.offset, value);
+            return value;
+        }
+
+        /**
+         * Atomically sets the value of this field to {@code value} if it is
+         * {@code expected}.
+         *
+         * @return {@code true} if successful
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public boolean compareAndSetLong(H object, long expected, long value) {
+            checkBlessed();
+            return homeClass.cast(object).compareAndSwapLongU(this.offset, expected, value);
+        }
+
+        /**
+         * Atomically adds {@code delta} to the value of this field.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public long getAndAddLong(H object, long delta) {
+            checkBlessed();
+            return homeClass.cast(object).getAndAddLongU(this.offset, delta);
+        }
+
+        /**
+         * Atomically sets the value of this field to {@code value}.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the field is not aligned
+         */
+        public long getAndSetLong(H object, long value) {
+            checkBlessed();
+            return homeClass.cast(object).getAndSetLongU(this.offset, value);
+        }
+
         @Override
         public Long get(H object) {
             return getLong(object);
@@ -304,6 +630,18 @@ public abstract class PackedField<T, H extends PackedObject> {
         public void set(H object, Long value) {
             setLong(object, value);
         }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getLongU", MethodType.methodType(long.class, long.class), 1,
+                MethodType.methodType(long.class, homeClass), (long) offset);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return packedMethodU("putLongU", MethodType.methodType(void.class, long.class, long.class), 1,
+                MethodType.methodType(void.class, homeClass, long.class), (long) offset);
+        }
     }
 
     public static final class pfFloat<H extends PackedObject> extends PackedField<Float, H> {
@@ -311,6 +649,13 @@ public abstract class PackedField<T, H extends PackedObject> {
             super(PackedClass.forClass(float.class), homeClass);
         }
 
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfFloat(Class<H> homeClass, int offset) {
+            super(PackedClass.forClass(float.class), homeClass, offset);
+        }
+
         public float getFloat(H object) {
             checkBlessed();
             return homeClass.cast(object).getFloatU(this.offset);
@@ -331,6 +676,18 @@ public abstract class PackedField<T, H extends PackedObject> {
         public void set(H object, Float value) {
             setFloat(object, value);
         }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getFloatU", MethodType.methodType(float.class, long.class), 1,
+                MethodType.methodType(float.class, homeClass), (long) offset);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return packedMethodU("putFloatU", MethodType.methodType(void.class, long.class, float.class), 1,
+                MethodType.methodType(void.class, homeClass, float.class), (long) offset);
+        }
     }
 
     public static final class pfDouble<H extends PackedObject> extends PackedField<Double, H> {
@@ -338,6 +695,13 @@ public abstract class PackedField<T, H extends PackedObject> {
             super(PackedClass.forClass(double.class), homeClass);
         }
 
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfDouble(Class<H> homeClass, int offset) {
+            super(PackedClass.forClass(double.class), homeClass, offset);
+        }
+
         public double getDouble(H object) {
             checkBlessed();
             return homeClass.cast(object).getDoubleU(this.offset);
@@ -358,89 +722,484 @@ public abstract class PackedField<T, H extends PackedObject> {
         public void set(H object, Double value) {
             setDouble(object, value);
         }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getDoubleU", MethodType.methodType(double.class, long.class), 1,
+                MethodType.methodType(double.class, homeClass), (long) offset);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return packedMethodU("putDoubleU", MethodType.methodType(void.class, long.class, double.class), 1,
+                MethodType.methodType(void.class, homeClass, double.class), (long) offset);
+        }
     }
 
-    public static final class pfObject<T extends PackedObject, H extends PackedObject> extends PackedField<T, H> {
+    /**
+     * Base of bit fields. Adjacent bit fields (or all bit fields of a class
+     * with {@link PackedLayout.Policy#COMPACT COMPACT} layout) are packed
+     * together, in declaration order starting with the least significant bits,
+     * into shared {@code int} words, or {@code long} words when they need more
+     * than 32 bits. Setting a bit field reads and writes the whole word, so
+     * concurrent updates of bit fields sharing a word must use the atomic
+     * variants of accessors. Those require the word to be aligned which is not
+     * the case with {@link PackedLayout.Policy#UNALIGNED UNALIGNED} layout.
+     */
+    static abstract class BitField<T, H extends PackedObject> extends PackedField<T, H> {
+        final int bits;
+        final long mask;
+        // the position of the least significant bit in the shared word assigned by PackedClass
+        int shift;
+
+        BitField(PackedClass<T> type, int bits, Class<H> homeClass) {
+            super(type, homeClass, 0, 1, -1);
+            this.bits = bits;
+            this.mask = -1L >>> (64 - bits);
+        }
 
-        private final Class<T> clazz; // cached and validated to have it handy
-        private final int size; // cached to have it handy
+        /**
+         * @return the number of bits of this field
+         */
+        public final int bits() {
+            return bits;
+        }
 
-        public pfObject(Class<T> fieldType, Class<H> homeClass) {
-            super(PackedClass.forClass(fieldType), homeClass);
-            // validate passed-in field type at field construction time
-            if (Modifier.isAbstract(fieldType.asSubclass(PackedObject.class).getModifiers())) {
-                throw new IllegalArgumentException("Can't have a field of an abstract packed object class");
+        final long getWordU(Packed object) {
+            return (size == 4) ? object.getIntU(offset) & 0xFFFFFFFFL : object.getLongU(offset);
+        }
+
+        final void putWordU(Packed object, long word) {
+            if (size == 4) {
+                object.putIntU(offset, (int) word);
+            } else {
+                object.putLongU(offset, word);
             }
-            this.clazz = fieldType;
-            this.size = type.getSize();
         }
 
-        public T getView(H object) {
-            checkBlessed();
-            return homeClass.cast(object).getViewU(clazz, offset, size);
+        final boolean compareAndSwapWordU(Packed object, long expected, long word) {
+            return (size == 4)
+                ? object.compareAndSwapIntU(offset, (int) expected, (int) word)
+                : object.compareAndSwapLongU(offset, expected, word);
         }
 
-        public T getCopy(H object) {
-            checkBlessed();
-            return homeClass.cast(object).getCopyU(clazz, offset, size);
+        /**
+         * @return the unsigned value of this field in given {@code word}
+         */
+        final long bitsOf(long word) {
+            return (word >>> shift) & mask;
         }
 
-        public T copyFrom(H object, T source) {
-            checkBlessed();
-            homeClass.cast(object).copyFromU(clazz.cast(source), offset, size);
-            return source;
+        /**
+         * @return given {@code word} with the value of this field replaced by
+         * lower bits of given {@code value}
+         */
+        final long withBits(long word, long value) {
+            return (word & ~(mask << shift)) | ((value & mask) << shift);
         }
 
-        @Override
-        public T get(H object) {
-            return getView(object);
+        final long getBitsU(Packed object) {
+            return bitsOf(getWordU(object));
         }
 
-        @Override
-        public void set(H object, T value) {
-            copyFrom(object, value);
+        final void putBitsU(Packed object, long value) {
+            putWordU(object, withBits(getWordU(object), value));
         }
-    }
 
-    public static final class pfArray<AT extends PackedArray<?>, H extends PackedObject> extends PackedField<AT, H> {
-        final int length;
+        /**
+         * Atomically replaces the value of this field in the shared word with
+         * {@code value} if it is {@code expected}.
+         */
+        final boolean compareAndSetBitsU(Packed object, long expected, long value) {
+            expected &= mask;
+            long word;
+            do {
+                word = getWordU(object);
+                if (bitsOf(word) != expected) {
+                    return false;
+                }
+            } while (!compareAndSwapWordU(object, word, withBits(word, value)));
+            return true;
+        }
 
-        public pfArray(PackedClass<AT> arrayType, int length, Class<H> homeClass) {
-            super(arrayType, PackedArray.checkLength(length), homeClass);
-            // arrayType is already validate when constructed via PackedClass/PackedArray factory methods
-            this.length = length;
+        /**
+         * Atomically replaces the value of this field in the shared word with
+         * {@code value} and returns the previous value.
+         */
+        final long getAndSetBitsU(Packed object, long value) {
+            long word;
+            do {
+                word = getWordU(object);
+            } while (!compareAndSwapWordU(object, word, withBits(word, value)));
+            return bitsOf(word);
         }
 
         /**
-         * @return the length of the packed array embedded as a field.
+         * Atomically adds {@code delta} to the value of this field in the
+         * shared word (wrapping around within its bits) and returns the
+         * previous value.
          */
-        public final int length() {
-            return length;
+        final long getAndAddBitsU(Packed object, long delta) {
+            long word;
+            do {
+                word = getWordU(object);
+            } while (!compareAndSwapWordU(object, word, withBits(word, bitsOf(word) + delta)));
+            return bitsOf(word);
         }
+    }
 
+    /**
+     * A single bit boolean field (see {@link BitField}).
+     */
+    public static final class pfFlag<H extends PackedObject> extends BitField<Boolean, H> {
+        public pfFlag(Class<H> homeClass) {
+            super(PackedClass.forClass(boolean.class), 1, homeClass);
+        }
 
-        public AT getView(H object) {
+        public boolean getBoolean(H object) {
             checkBlessed();
-            return homeClass.cast(object).getArrayViewU(type, offset, size, length);
+            return getBitsU(homeClass.cast(object)) != 0;
         }
 
-        public AT getCopy(H object) {
+        public boolean setBoolean(H object, boolean value) {
             checkBlessed();
-            return homeClass.cast(object).getArrayCopyU(type, offset, size, length);
+            putBitsU(homeClass.cast(object), value ? 1 : 0);
+            return value;
         }
 
-        public AT copyFrom(H object, AT source) {
+        /**
+         * Atomically sets the value of this field to {@code value} if it is
+         * {@code expected}.
+         *
+         * @return {@code true} if successful
+         * @throws IllegalStateException if the shared word is not aligned
+         */
+        public boolean compareAndSetBoolean(H object, boolean expected, boolean value) {
             checkBlessed();
-            if (type != source.type()) {
-                throw new ClassCastException(
-                    "Can't copy from array of different type - target type: " +
-                        type + ", source type: " + source.type());
-            }
-            if (length != source.length()) {
-                throw new IllegalArgumentException(
-                    "Can't copy from array of different length - target length: " +
-                        length + ", source length: " + source.length());
-            }
+            return compareAndSetBitsU(homeClass.cast(object), expected ? 1 : 0, value ? 1 : 0);
+        }
+
+        /**
+         * Atomically sets the value of this field to {@code value}.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the shared word is not aligned
+         */
+        public boolean getAndSetBoolean(H object, boolean value) {
+            checkBlessed();
+            return getAndSetBitsU(homeClass.cast(object), value ? 1 : 0) != 0;
+        }
+
+        @Override
+        public Boolean get(H object) {
+            return getBoolean(object);
+        }
+
+        @Override
+        public void set(H object, Boolean value) {
+            setBoolean(object, value);
+        }
+
+        boolean getBooleanU(PackedObject object) {
+            return getBitsU(object) != 0;
+        }
+
+        void putBooleanU(PackedObject object, boolean value) {
+            putBitsU(object, value ? 1 : 0);
+        }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return LOOKUP.findVirtual(pfFlag.class, "getBooleanU",
+                MethodType.methodType(boolean.class, PackedObject.class))
+                .bindTo(this)
+                .asType(MethodType.methodType(boolean.class, homeClass));
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return LOOKUP.findVirtual(pfFlag.class, "putBooleanU",
+                MethodType.methodType(void.class, PackedObject.class, boolean.class))
+                .bindTo(this)
+                .asType(MethodType.methodType(void.class, homeClass, boolean.class));
+        }
+    }
+
+    /**
+     * A signed or unsigned integer field of 1 to 32 bits (see {@link BitField}).
+     */
+    public static final class pfBits<H extends PackedObject> extends BitField<Integer, H> {
+        final boolean signed;
+        private final int min, max;
+
+        /**
+         * Constructs an unsigned field of given number of {@code bits}
+         * with values in range {@code [0, 2^bits)} (or all int values when
+         * {@code bits} is 32).
+         */
+        public pfBits(int bits, Class<H> homeClass) {
+            this(bits, false, homeClass);
+        }
+
+        /**
+         * Constructs a signed or unsigned field of given number of {@code bits}.
+         * Signed fields have values in range {@code [-2^(bits-1), 2^(bits-1))}.
+         *
+         * @throws IllegalArgumentException if {@code bits} is not in range [1, 32]
+         */
+        public pfBits(int bits, boolean signed, Class<H> homeClass) {
+            super(PackedClass.forClass(int.class), checkBits(bits), homeClass);
+            this.signed = signed;
+            if (bits == 32) {
+                this.min = Integer.MIN_VALUE;
+                this.max = Integer.MAX_VALUE;
+            } else if (signed) {
+                this.min = -(1 << (bits - 1));
+                this.max = (1 << (bits - 1)) - 1;
+            } else {
+                this.min = 0;
+                this.max = (1 << bits) - 1;
+            }
+        }
+
+        private static int checkBits(int bits) {
+            if (bits < 1 || bits > 32) {
+                throw new IllegalArgumentException("Number of bits not in range [1, 32]: " + bits);
+            }
+            return bits;
+        }
+
+        public boolean isSigned() {
+            return signed;
+        }
+
+        public int getInt(H object) {
+            checkBlessed();
+            return getIntU(homeClass.cast(object));
+        }
+
+        /**
+         * @throws IllegalArgumentException if given {@code value} is out of range
+         */
+        public int setInt(H object, int value) {
+            checkBlessed();
+            putBitsU(homeClass.cast(object), checkValue(value));
+            return value;
+        }
+
+        /**
+         * Atomically sets the value of this field to {@code value} if it is
+         * {@code expected}.
+         *
+         * @return {@code true} if successful
+         * @throws IllegalArgumentException if given {@code value} is out of range
+         * @throws IllegalStateException    if the shared word is not aligned
+         */
+        public boolean compareAndSetInt(H object, int expected, int value) {
+            checkBlessed();
+            return compareAndSetBitsU(homeClass.cast(object), expected, checkValue(value));
+        }
+
+        /**
+         * Atomically sets the value of this field to {@code value}.
+         *
+         * @return the previous value
+         * @throws IllegalArgumentException if given {@code value} is out of range
+         * @throws IllegalStateException    if the shared word is not aligned
+         */
+        public int getAndSetInt(H object, int value) {
+            checkBlessed();
+            return toInt(getAndSetBitsU(homeClass.cast(object), checkValue(value)));
+        }
+
+        /**
+         * Atomically adds {@code delta} to the value of this field. The value
+         * wraps around on overflow within the field's bits.
+         *
+         * @return the previous value
+         * @throws IllegalStateException if the shared word is not aligned
+         */
+        public int getAndAddInt(H object, int delta) {
+            checkBlessed();
+            return toInt(getAndAddBitsU(homeClass.cast(object), delta));
+        }
+
+        @Override
+        public Integer get(H object) {
+            return getInt(object);
+        }
+
+        @Override
+        public void set(H object, Integer value) {
+            setInt(object, value);
+        }
+
+        private int checkValue(int value) {
+            if (value < min || value > max) {
+                throw new IllegalArgumentException(
+                    "Value: " + value + " out of range [" + min + ", " + max + "] of field: " + getName());
+            }
+            return value;
+        }
+
+        private int toInt(long bits) {
+            // sign-extend signed values
+            return signed ? (int) (bits << (64 - this.bits) >> (64 - this.bits)) : (int) bits;
+        }
+
+        int getIntU(PackedObject object) {
+            return toInt(getBitsU(object));
+        }
+
+        void putIntU(PackedObject object, int value) {
+            putBitsU(object, value);
+        }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return LOOKUP.findVirtual(pfBits.class, "getIntU",
+                MethodType.methodType(int.class, PackedObject.class))
+                .bindTo(this)
+                .asType(MethodType.methodType(int.class, homeClass));
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            // values are truncated to the field's bits
+            return LOOKUP.findVirtual(pfBits.class, "putIntU",
+                MethodType.methodType(void.class, PackedObject.class, int.class))
+                .bindTo(this)
+                .asType(MethodType.methodType(void.class, homeClass, int.class));
+        }
+    }
+
+    public static final class pfObject<T extends PackedObject, H extends PackedObject> extends PackedField<T, H> {
+
+        private final Class<T> clazz; // cached and validated to have it handy
+        private final int size; // cached to have it handy
+
+        public pfObject(Class<T> fieldType, Class<H> homeClass) {
+            super(PackedClass.forClass(fieldType), homeClass);
+            // validate passed-in field type at field construction time
+            if (Modifier.isAbstract(fieldType.asSubclass(PackedObject.class).getModifiers())) {
+                throw new IllegalArgumentException("Can't have a field of an abstract packed object class");
+            }
+            this.clazz = fieldType;
+            this.size = type.getSize();
+        }
+
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfObject(Class<T> fieldType, Class<H> homeClass, int offset) {
+            super(PackedClass.forClass(fieldType), homeClass, offset);
+            if (Modifier.isAbstract(fieldType.asSubclass(PackedObject.class).getModifiers())) {
+                throw new IllegalArgumentException("Can't have a field of an abstract packed object class");
+            }
+            this.clazz = fieldType;
+            this.size = type.getSize();
+        }
+
+        public T getView(H object) {
+            checkBlessed();
+            return homeClass.cast(object).getViewU(clazz, offset, size);
+        }
+
+        public T getCopy(H object) {
+            checkBlessed();
+            return homeClass.cast(object).getCopyU(clazz, offset, size);
+        }
+
+        public T copyFrom(H object, T source) {
+            checkBlessed();
+            homeClass.cast(object).copyFromU(clazz.cast(source), offset, size);
+            return source;
+        }
+
+        /**
+         * Returns a new cursor over this field of packed objects viewed by given
+         * {@code parent} cursor. The returned cursor follows the parent as it moves
+         * and re-binds a single reusable view, so nested access is allocation-free.
+         *
+         * @param parent the cursor viewing objects containing this field
+         * @return a cursor over this field
+         */
+        public PackedCursor<T> cursor(PackedCursor<? extends H> parent) {
+            checkBlessed();
+            return new PackedCursor.OfField<>(parent, homeClass,
+                Packed.newViewU(clazz, null, 0L, size, null), offset);
+        }
+
+        @Override
+        public T get(H object) {
+            return getView(object);
+        }
+
+        @Override
+        public void set(H object, T value) {
+            copyFrom(object, value);
+        }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getViewU", MethodType.methodType(Packed.class, Class.class, long.class, long.class), 1,
+                MethodType.methodType(clazz, homeClass), clazz, (long) offset, (long) size);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return packedMethodU("copyFromU", MethodType.methodType(void.class, Packed.class, long.class, long.class), 2,
+                MethodType.methodType(void.class, homeClass, clazz), (long) offset, (long) size);
+        }
+    }
+
+    public static final class pfArray<AT extends PackedArray<?>, H extends PackedObject> extends PackedField<AT, H> {
+        final int length;
+
+        public pfArray(PackedClass<AT> arrayType, int length, Class<H> homeClass) {
+            super(arrayType, PackedArray.checkLength(length), homeClass);
+            // arrayType is already validate when constructed via PackedClass/PackedArray factory methods
+            this.length = length;
+        }
+
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfArray(PackedClass<AT> arrayType, int length, Class<H> homeClass, int offset) {
+            super(arrayType, PackedArray.checkLength(length), homeClass, offset);
+            this.length = length;
+        }
+
+        /**
+         * @return the length of the packed array embedded as a field.
+         */
+        public final int length() {
+            return length;
+        }
+
+
+        public AT getView(H object) {
+            checkBlessed();
+            return homeClass.cast(object).getArrayViewU(type, offset, size, length);
+        }
+
+        public AT getCopy(H object) {
+            checkBlessed();
+            return homeClass.cast(object).getArrayCopyU(type, offset, size, length);
+        }
+
+        public AT copyFrom(H object, AT source) {
+            checkBlessed();
+            if (type != source.type()) {
+                throw new ClassCastException(
+                    "Can't copy from array of different type - target type: " +
+                        type + ", source type: " + source.type());
+            }
+            if (length != source.length()) {
+                throw new IllegalArgumentException(
+                    "Can't copy from array of different length - target length: " +
+                        length + ", source length: " + source.length());
+            }
             homeClass.cast(object).copyFromU(source, offset, size);
             return source;
         }
@@ -454,8 +1213,589 @@ public abstract class PackedField<T, H extends PackedObject> {
         public void set(H object, AT value) {
             copyFrom(object, value);
         }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return packedMethodU("getArrayViewU",
+                MethodType.methodType(PackedArray.class, PackedClass.class, long.class, long.class, int.class), 1,
+                MethodType.methodType(type.asClass(), homeClass), type, (long) offset, (long) size, length);
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            // type and length of source arrays are checked by copyFrom
+            return LOOKUP.findVirtual(pfArray.class, "copyFrom",
+                MethodType.methodType(PackedArray.class, PackedObject.class, PackedArray.class))
+                .bindTo(this)
+                .asType(MethodType.methodType(void.class, homeClass, type.asClass()));
+        }
     }
 
+    /**
+     * A text field of fixed capacity stored inline as a 2-byte length followed
+     * by the encoded characters. The capacity is given in code units of the
+     * encoding: characters for {@link Encoding#LATIN_1} and
+     * {@link Encoding#UTF_16}, bytes for {@link Encoding#UTF_8}. Comparison,
+     * equality and hashing operate on the stored bytes without allocating and
+     * are consistent with {@link String} ({@link #hashCode(PackedObject)} of a
+     * field equals {@code hashCode()} of its {@link #getString(PackedObject) String}).
+     * Allocation-free reading is possible through a reusable {@link View}.
+     */
+    public static final class pfString<H extends PackedObject> extends PackedField<String, H> {
+
+        /**
+         * The encoding of characters stored in a {@link pfString} field.
+         */
+        public enum Encoding {
+            /**
+             * One byte per character. Only characters up to U+00FF can be stored.
+             */
+            LATIN_1,
+            /**
+             * One to four bytes per code point. Unpaired surrogates are stored
+             * as 3-byte sequences so that any {@link CharSequence} round-trips.
+             */
+            UTF_8,
+            /**
+             * Two bytes per character.
+             */
+            UTF_16
+        }
+
+        /**
+         * What {@link #setString(PackedObject, CharSequence, Truncation)} does
+         * with a value that doesn't fit the capacity of the field.
+         */
+        public enum Truncation {
+            /**
+             * Throw {@link IllegalArgumentException} leaving the field unchanged.
+             */
+            FAIL,
+            /**
+             * Store the longest prefix that fits without splitting a code point.
+             */
+            TRUNCATE
+        }
+
+        // max. number of bytes representable by the 2-byte length
+        private static final int MAX_BYTES = 0xFFFF;
+
+        final Encoding encoding;
+        final int capacity;
+
+        public pfString(int capacity, Encoding encoding, Class<H> homeClass) {
+            super(byteArrayType(), homeClass, 2 + capacityBytes(capacity, encoding), 1, -1);
+            this.encoding = encoding;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Constructs a field at given precomputed {@code offset} (see {@link PackedClass#declare}).
+         */
+        public pfString(int capacity, Encoding encoding, Class<H> homeClass, int offset) {
+            super(byteArrayType(), homeClass, 2 + capacityBytes(capacity, encoding), 1, checkOffset(offset));
+            this.encoding = encoding;
+            this.capacity = capacity;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static PackedClass<String> byteArrayType() {
+            // length and characters are stored and accessed byte by byte, so
+            // they can be stored in byte columns of PackedColumnArray. This is
+            // only the internal storage type, exposed by getStorageType()
+            return (PackedClass) PackedArray.OfByte.TYPE;
+        }
+
+        /**
+         * Strings are not packed objects, so string fields have no packed
+         * type.
+         *
+         * @return always {@code null}
+         * @see #getStorageType()
+         */
+        @Override
+        public PackedClass<String> getType() {
+            checkBlessed();
+            return null;
+        }
+
+        /**
+         * Returns the type in which the string is stored: bytes holding a
+         * 2-byte length followed by the encoded characters.
+         */
+        public PackedClass<PackedArray.OfByte> getStorageType() {
+            checkBlessed();
+            return PackedArray.OfByte.TYPE;
+        }
+
+        private static int capacityBytes(int capacity, Encoding encoding) {
+            int bytes = (encoding == Encoding.UTF_16) ? capacity * 2 : capacity;
+            if (capacity < 0 || bytes > MAX_BYTES) {
+                throw new IllegalArgumentException("Invalid capacity: " + capacity + " of " + encoding + " string");
+            }
+            return bytes;
+        }
+
+        /**
+         * @return the capacity of this field in code units of its {@link #encoding()}.
+         */
+        public int capacity() {
+            return capacity;
+        }
+
+        public Encoding encoding() {
+            return encoding;
+        }
+
+        /**
+         * @return a new String decoded from this field of given {@code object}
+         */
+        public String getString(H object) {
+            checkBlessed();
+            Packed p = homeClass.cast(object);
+            int end = byteLengthU(p);
+            StringBuilder sb = new StringBuilder(end);
+            for (int pos = 0; pos < end; pos += sizeU(p, pos)) {
+                sb.appendCodePoint(codePointU(p, pos));
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Sets this field of given {@code object} to given {@code value} which
+         * must fit the capacity of the field.
+         *
+         * @throws IllegalArgumentException if {@code value} doesn't fit the capacity
+         *                                  or can't be encoded
+         */
+        public CharSequence setString(H object, CharSequence value) {
+            return setString(object, value, Truncation.FAIL);
+        }
+
+        /**
+         * Sets this field of given {@code object} to given {@code value}
+         * (or its prefix as specified by {@code truncation}).
+         *
+         * @throws IllegalArgumentException if {@code value} doesn't fit the capacity
+         *                                  and {@code truncation} is {@link Truncation#FAIL}
+         *                                  or if it can't be encoded
+         */
+        public CharSequence setString(H object, CharSequence value, Truncation truncation) {
+            checkBlessed();
+            Packed p = homeClass.cast(object);
+            int max = size - 2, bytes = 0, end = 0;
+            // measure 1st so that the field is left unchanged on failure
+            for (int i = 0, n = value.length(); i < n; ) {
+                int cp = Character.codePointAt(value, i);
+                int cpBytes = encodedSize(cp);
+                if (bytes + cpBytes > max) {
+                    if (truncation == Truncation.FAIL) {
+                        throw new IllegalArgumentException(
+                            "Value of length: " + n + " exceeds capacity: " + capacity + " of field: " + getName());
+                    }
+                    break;
+                }
+                bytes += cpBytes;
+                i = end = i + Character.charCount(cp);
+            }
+            for (int i = 0, pos = 2; i < end; ) {
+                int cp = Character.codePointAt(value, i);
+                pos = putCodePointU(p, pos, cp);
+                i += Character.charCount(cp);
+            }
+            // clear the rest of a previous longer value, so that objects with
+            // equal strings are also equal by Packed.equals and hash equally
+            for (int pos = 2 + bytes; pos < size; pos++) {
+                p.putByteU(offset + pos, (byte) 0);
+            }
+            p.putByteU(offset, (byte) bytes);
+            p.putByteU(offset + 1, (byte) (bytes >>> 8));
+            return value;
+        }
+
+        /**
+         * @return the length of this field of given {@code object} in characters
+         * (UTF-16 code units) as would be returned by {@code getString(object).length()}
+         */
+        public int length(H object) {
+            checkBlessed();
+            return lengthU(homeClass.cast(object));
+        }
+
+        /**
+         * @return {@code getString(object).hashCode()} computed without decoding
+         * the string to a new String
+         */
+        public int hashCode(H object) {
+            checkBlessed();
+            Packed p = homeClass.cast(object);
+            int h = 0;
+            for (int pos = 0, end = byteLengthU(p); pos < end; pos += sizeU(p, pos)) {
+                int cp = codePointU(p, pos);
+                if (Character.isSupplementaryCodePoint(cp)) {
+                    h = 31 * h + Character.highSurrogate(cp);
+                    h = 31 * h + Character.lowSurrogate(cp);
+                } else {
+                    h = 31 * h + cp;
+                }
+            }
+            return h;
+        }
+
+        /**
+         * @return true if this field of given objects holds equal strings
+         */
+        public boolean equals(H object1, H object2) {
+            checkBlessed();
+            Packed p1 = homeClass.cast(object1), p2 = homeClass.cast(object2);
+            int end = byteLengthU(p1);
+            if (end != byteLengthU(p2)) {
+                return false;
+            }
+            // the encoding of a string is unique
+            for (int pos = 2; pos < end + 2; pos++) {
+                if (p1.getByteU(offset + pos) != p2.getByteU(offset + pos)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return true if this field of given {@code object} holds the same
+         * sequence of characters as given {@code chars}
+         */
+        public boolean contentEquals(H object, CharSequence chars) {
+            return compareTo(object, chars) == 0;
+        }
+
+        /**
+         * Compares this field of given objects lexicographically as
+         * {@link String#compareTo(String)} does.
+         */
+        public int compareTo(H object1, H object2) {
+            checkBlessed();
+            Packed p1 = homeClass.cast(object1), p2 = homeClass.cast(object2);
+            int end1 = byteLengthU(p1), end2 = byteLengthU(p2);
+            int pos1 = 0, pos2 = 0;
+            for (; pos1 < end1 && pos2 < end2; pos1 += sizeU(p1, pos1), pos2 += sizeU(p2, pos2)) {
+                int cmp = compareCodePoints(codePointU(p1, pos1), codePointU(p2, pos2));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return (pos1 < end1) ? 1 : (pos2 < end2) ? -1 : 0;
+        }
+
+        /**
+         * Compares this field of given {@code object} lexicographically with
+         * given {@code chars} as {@link String#compareTo(String)} does.
+         */
+        public int compareTo(H object, CharSequence chars) {
+            checkBlessed();
+            return compareToU(homeClass.cast(object), chars);
+        }
+
+        /**
+         * @return a new reusable view which is not bound to any object yet
+         */
+        public View newView() {
+            checkBlessed();
+            return new View();
+        }
+
+        @Override
+        public String get(H object) {
+            return getString(object);
+        }
+
+        @Override
+        public void set(H object, String value) {
+            setString(object, value);
+        }
+
+        @Override
+        MethodHandle getterU() throws ReflectiveOperationException {
+            return LOOKUP.findVirtual(pfString.class, "getString",
+                MethodType.methodType(String.class, PackedObject.class))
+                .bindTo(this)
+                .asType(MethodType.methodType(String.class, homeClass));
+        }
+
+        @Override
+        MethodHandle setterU() throws ReflectiveOperationException {
+            return LOOKUP.findVirtual(pfString.class, "setString",
+                MethodType.methodType(CharSequence.class, PackedObject.class, CharSequence.class))
+                .bindTo(this)
+                .asType(MethodType.methodType(void.class, homeClass, String.class));
+        }
+
+        /**
+         * A {@link CharSequence} view of a {@link pfString} field of a packed
+         * object that decodes characters on access. A single view can be
+         * re-bound to fields of different objects, so reading strings in a loop
+         * doesn't allocate. For {@link Encoding#UTF_8} fields, {@link #length()}
+         * and {@link #charAt(int)} scan the bytes from the start.
+         */
+        public final class View implements CharSequence, Comparable<CharSequence> {
+            private Packed object;
+
+            private View() {}
+
+            /**
+             * Binds this view to the field of given {@code object}.
+             *
+             * @return this view
+             */
+            public View bind(H object) {
+                this.object = homeClass.cast(object);
+                return this;
+            }
+
+            @Override
+            public int length() {
+                return lengthU(object());
+            }
+
+            @Override
+            public char charAt(int index) {
+                Packed p = object();
+                int end = byteLengthU(p);
+                if (index >= 0) {
+                    if (encoding == Encoding.LATIN_1) {
+                        if (index < end) {
+                            return (char) (p.getByteU(offset + 2 + index) & 0xFF);
+                        }
+                    } else if (encoding == Encoding.UTF_16) {
+                        if (index < end / 2) {
+                            return (char) codePointU(p, index * 2);
+                        }
+                    } else {
+                        for (int pos = 0, i = 0; pos < end; pos += sizeU(p, pos)) {
+                            int cp = codePointU(p, pos);
+                            if (Character.isSupplementaryCodePoint(cp)) {
+                                if (i == index) {
+                                    return Character.highSurrogate(cp);
+                                } else if (i + 1 == index) {
+                                    return Character.lowSurrogate(cp);
+                                }
+                                i += 2;
+                            } else if (i++ == index) {
+                                return (char) cp;
+                            }
+                        }
+                    }
+                }
+                throw new StringIndexOutOfBoundsException(index);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return toString().substring(start, end);
+            }
+
+            @Override
+            public int compareTo(CharSequence chars) {
+                return compareToU(object(), chars);
+            }
+
+            /**
+             * @return the same as {@link pfString#hashCode(PackedObject)}
+             * for the bound object
+             */
+            public int contentHashCode() {
+                return pfString.this.hashCode(homeClass.cast(object()));
+            }
+
+            /**
+             * @return a new String decoded from the field of the bound object
+             */
+            @Override
+            public String toString() {
+                return getString(homeClass.cast(object()));
+            }
+
+            private Packed object() {
+                Packed object = this.object;
+                if (object == null) {
+                    throw new IllegalStateException("View is not bound to an object.");
+                }
+                return object;
+            }
+        }
+
+        // decoding & encoding (positions are relative to the 1st character byte)
+
+        private int byteLengthU(Packed p) {
+            return (p.getByteU(offset) & 0xFF) | (p.getByteU(offset + 1) & 0xFF) << 8;
+        }
+
+        private int lengthU(Packed p) {
+            int end = byteLengthU(p);
+            switch (encoding) {
+                case LATIN_1:
+                    return end;
+                case UTF_16:
+                    return end / 2;
+                default:
+                    int length = 0;
+                    for (int pos = 0; pos < end; pos += sizeU(p, pos)) {
+                        length += Character.charCount(codePointU(p, pos));
+                    }
+                    return length;
+            }
+        }
+
+        private int byteU(Packed p, int pos) {
+            return p.getByteU(offset + 2 + pos) & 0xFF;
+        }
+
+        /**
+         * @return the number of bytes taken by the code point at given {@code pos}
+         */
+        private int sizeU(Packed p, int pos) {
+            switch (encoding) {
+                case LATIN_1:
+                    return 1;
+                case UTF_16:
+                    return (Character.isHighSurrogate((char) codePointU16(p, pos)) &&
+                        pos + 2 < byteLengthU(p) &&
+                        Character.isLowSurrogate((char) codePointU16(p, pos + 2))) ? 4 : 2;
+                default:
+                    int b = byteU(p, pos);
+                    return (b < 0x80) ? 1 : (b < 0xE0) ? 2 : (b < 0xF0) ? 3 : 4;
+            }
+        }
+
+        private int codePointU16(Packed p, int pos) {
+            return byteU(p, pos) | byteU(p, pos + 1) << 8;
+        }
+
+        /**
+         * @return the code point (or unpaired surrogate) at given {@code pos}
+         */
+        private int codePointU(Packed p, int pos) {
+            switch (encoding) {
+                case LATIN_1:
+                    return byteU(p, pos);
+                case UTF_16:
+                    int c = codePointU16(p, pos);
+                    return (sizeU(p, pos) == 4)
+                        ? Character.toCodePoint((char) c, (char) codePointU16(p, pos + 2))
+                        : c;
+                default:
+                    int b = byteU(p, pos);
+                    if (b < 0x80) {
+                        return b;
+                    } else if (b < 0xE0) {
+                        return (b & 0x1F) << 6 | byteU(p, pos + 1) & 0x3F;
+                    } else if (b < 0xF0) {
+                        return (b & 0x0F) << 12 | (byteU(p, pos + 1) & 0x3F) << 6 | byteU(p, pos + 2) & 0x3F;
+                    } else {
+                        return (b & 0x07) << 18 | (byteU(p, pos + 1) & 0x3F) << 12 |
+                            (byteU(p, pos + 2) & 0x3F) << 6 | byteU(p, pos + 3) & 0x3F;
+                    }
+            }
+        }
+
+        private int encodedSize(int cp) {
+            switch (encoding) {
+                case LATIN_1:
+                    if (cp > 0xFF) {
+                        throw new IllegalArgumentException(
+                            "Character: \\u" + Integer.toHexString(cp) + " can't be encoded in " + encoding);
+                    }
+                    return 1;
+                case UTF_16:
+                    return Character.charCount(cp) * 2;
+                default:
+                    return (cp < 0x80) ? 1 : (cp < 0x800) ? 2 : (cp < 0x10000) ? 3 : 4;
+            }
+        }
+
+        /**
+         * Stores given code point at given offset relative to the field.
+         *
+         * @return the offset following the stored code point
+         */
+        private int putCodePointU(Packed p, int pos, int cp) {
+            long o = offset + pos;
+            switch (encoding) {
+                case LATIN_1:
+                    p.putByteU(o, (byte) cp);
+                    return pos + 1;
+                case UTF_16:
+                    if (Character.isSupplementaryCodePoint(cp)) {
+                        putCodePointU(p, pos, Character.highSurrogate(cp));
+                        return putCodePointU(p, pos + 2, Character.lowSurrogate(cp));
+                    }
+                    p.putByteU(o, (byte) cp);
+                    p.putByteU(o + 1, (byte) (cp >>> 8));
+                    return pos + 2;
+                default:
+                    if (cp < 0x80) {
+                        p.putByteU(o, (byte) cp);
+                        return pos + 1;
+                    } else if (cp < 0x800) {
+                        p.putByteU(o, (byte) (0xC0 | cp >>> 6));
+                        p.putByteU(o + 1, (byte) (0x80 | cp & 0x3F));
+                        return pos + 2;
+                    } else if (cp < 0x10000) {
+                        p.putByteU(o, (byte) (0xE0 | cp >>> 12));
+                        p.putByteU(o + 1, (byte) (0x80 | cp >>> 6 & 0x3F));
+                        p.putByteU(o + 2, (byte) (0x80 | cp & 0x3F));
+                        return pos + 3;
+                    } else {
+                        p.putByteU(o, (byte) (0xF0 | cp >>> 18));
+                        p.putByteU(o + 1, (byte) (0x80 | cp >>> 12 & 0x3F));
+                        p.putByteU(o + 2, (byte) (0x80 | cp >>> 6 & 0x3F));
+                        p.putByteU(o + 3, (byte) (0x80 | cp & 0x3F));
+                        return pos + 4;
+                    }
+            }
+        }
+
+        private int compareToU(Packed p, CharSequence chars) {
+            int end = byteLengthU(p), n = chars.length();
+            int pos = 0, i = 0;
+            for (; pos < end && i < n; pos += sizeU(p, pos)) {
+                int cp = Character.codePointAt(chars, i);
+                int cmp = compareCodePoints(codePointU(p, pos), cp);
+                if (cmp != 0) {
+                    return cmp;
+                }
+                i += Character.charCount(cp);
+            }
+            return (pos < end) ? 1 : (i < n) ? -1 : 0;
+        }
+
+        /**
+         * Compares code points by their UTF-16 code units as String does
+         */
+        private static int compareCodePoints(int cp1, int cp2) {
+            if (cp1 == cp2) {
+                return 0;
+            }
+            char c1 = Character.isSupplementaryCodePoint(cp1) ? Character.highSurrogate(cp1) : (char) cp1;
+            char c2 = Character.isSupplementaryCodePoint(cp2) ? Character.highSurrogate(cp2) : (char) cp2;
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+            if (!Character.isSupplementaryCodePoint(cp1)) {
+                // a lone high surrogate sorts before the pair it starts
+                return -1;
+            }
+            if (!Character.isSupplementaryCodePoint(cp2)) {
+                return 1;
+            }
+            return Character.lowSurrogate(cp1) - Character.lowSurrogate(cp2);
+        }
+    }
+
+    // the sequence of field construction order
+    private static final AtomicLong ORDER = new AtomicLong();
+
     // Unsafe
     private static final Unsafe U = Packed.U;
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
 }
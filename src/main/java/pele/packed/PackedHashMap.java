@@ -0,0 +1,877 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+/**
+ * PackedHashMap is a hash map with PackedObject values whose entries are
+ * stored inline in a single packed table of slots. Each slot holds the hash,
+ * the key and the value of an entry, so neither keys nor values are boxed
+ * into objects of their own. Keys are either packed objects of a single
+ * class, which are compared bit by bit like {@link Packed#equals(Object)}
+ * ({@link OfObject}), or {@code int} ({@link OfInt}) or {@code long}
+ * ({@link OfLong}) primitives.
+ * <p>
+ * Collisions are resolved by linear probing. Removals shift the following
+ * entries of the probe sequence back, so the table doesn't accumulate
+ * deleted slots. When the table is 3/4 full, a table of double capacity is
+ * allocated and entries are migrated to it incrementally, a few slots per
+ * insertion, so no single insertion pays for rehashing the whole map.
+ * <p>
+ * Each map provides a {@link Cursor} whose lookups, insertions, removals and
+ * iteration don't allocate. Values are accessed in place through the
+ * cursor's reusable view, which is only valid until the map is structurally
+ * modified (an entry is inserted or removed). Maps and their cursors are
+ * not thread-safe.
+ *
+ * @param <V> the type of values
+ */
+public abstract class PackedHashMap<V extends PackedObject> {
+
+    /**
+     * The minimal number of slots of the table.
+     */
+    static final int MIN_CAPACITY = 8;
+
+    /**
+     * The number of slots migrated from the old table on each insertion
+     * while the map is being resized. As the new table has twice the slots
+     * of the old one, migration completes long before the new table fills.
+     */
+    static final int MIGRATION_STEP = 8;
+
+    // tags of slots: an empty slot, a slot of the old table that was
+    // migrated or removed, or the hash of the entry with the sign bit set
+    static final int EMPTY = 0;
+    static final int TOMBSTONE = 1;
+
+    final PackedClass<V> valueType;
+    final int keyOffset;
+    final int valueOffset;
+    final int valueSize;
+    final int slotSize;
+    // the table entries are inserted into
+    Table table;
+    // the table being migrated from while resizing or null
+    Table old;
+    // the number of slots of the old table migrated so far
+    int migrated;
+    int size;
+
+    /**
+     * Constructor for empty PackedHashMap(s)
+     */
+    PackedHashMap(int keySize, int keyAlignment, Class<V> valueClass, int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Negative expected size.");
+        }
+        valueType = PackedClass.forClass(valueClass);
+        valueType.checkInstantiable(false);
+        keyOffset = PackedField.align(4, keyAlignment);
+        valueOffset = PackedField.align(keyOffset + keySize, valueType.getAlignment());
+        valueSize = valueType.getSize();
+        slotSize = PackedField.align(valueOffset + valueSize,
+            Math.max(4, Math.max(keyAlignment, valueType.getAlignment())));
+        long capacity = MIN_CAPACITY;
+        while (maxCount(capacity) < expectedSize) {
+            capacity <<= 1;
+        }
+        table = newTable(capacity);
+    }
+
+    /**
+     * @return the number of entries in this map.
+     */
+    public final int size() {
+        return size;
+    }
+
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of slots of the table entries are inserted into.
+     */
+    public final int capacity() {
+        return table.capacity;
+    }
+
+    /**
+     * @return the type of values
+     */
+    public final PackedClass<V> valueType() {
+        return valueType;
+    }
+
+    /**
+     * Removes all entries from this map, keeping its capacity.
+     */
+    public void clear() {
+        table.slots.setMemoryU(0, (long) table.capacity * slotSize, (byte) 0);
+        table.count = 0;
+        old = null;
+        size = 0;
+    }
+
+    /**
+     * @return a new cursor over the entries of this map, positioned before
+     * the 1st entry.
+     */
+    public abstract Cursor<V> cursor();
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        Cursor<V> c = cursor();
+        while (c.next()) {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(c.keyString()).append('=').append(c.get());
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * @return the tag of an entry with given 64-bit hash
+     */
+    static int tag(long hash) {
+        return (int) (hash ^ (hash >>> 32)) | Integer.MIN_VALUE;
+    }
+
+    private static int maxCount(long capacity) {
+        return (int) (capacity - (capacity >>> 2));
+    }
+
+    private Table newTable(long capacity) {
+        if (capacity > (1 << 30) || capacity * slotSize > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Map too large: " + capacity + " slots of " + slotSize + " bytes");
+        }
+        return new Table(Packed.newArrayU(PackedArray.OfByte.TYPE, (int) (capacity * slotSize), false),
+            (int) capacity);
+    }
+
+    /**
+     * Returns the offset of the slot holding the key pending in given cursor
+     * in given table or, if there is none, the complement of the offset of
+     * the empty slot that ends the probe sequence.
+     */
+    private long probe(Table t, Cursor<V> c, int tag) {
+        int mask = t.capacity - 1;
+        for (int i = t.home(tag); ; i = (i + 1) & mask) {
+            long slot = (long) i * slotSize;
+            int stored = t.slots.getIntU(slot);
+            if (stored == EMPTY) {
+                return ~slot;
+            }
+            if (stored == tag && c.keyEqualsU(t.slots, slot + keyOffset)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Positions given cursor at the entry with the key pending in it.
+     */
+    final boolean find(Cursor<V> c, int tag) {
+        long slot = probe(table, c, tag);
+        if (slot >= 0) {
+            c.positionAt(table, slot);
+            return true;
+        }
+        if (old != null && (slot = probe(old, c, tag)) >= 0) {
+            c.positionAt(old, slot);
+            return true;
+        }
+        c.positionAt(null, -1);
+        return false;
+    }
+
+    /**
+     * Positions given cursor at the entry with the key pending in it,
+     * inserting an entry with zero value if there is none.
+     */
+    final boolean insert(Cursor<V> c, int tag) {
+        if (old != null) {
+            migrate(MIGRATION_STEP);
+        }
+        long slot = probe(table, c, tag);
+        if (slot >= 0) {
+            c.positionAt(table, slot);
+            return false;
+        }
+        long oldSlot;
+        if (old != null && (oldSlot = probe(old, c, tag)) >= 0) {
+            c.positionAt(old, oldSlot);
+            return false;
+        }
+        if (table.count >= maxCount(table.capacity)) {
+            grow();
+            slot = probe(table, c, tag);
+        }
+        slot = ~slot;
+        table.slots.putIntU(slot, tag);
+        c.putKeyU(table.slots, slot + keyOffset);
+        table.count++;
+        size++;
+        c.positionAt(table, slot);
+        return true;
+    }
+
+    /**
+     * Removes the entry given cursor is positioned at.
+     */
+    final void remove(Cursor<V> c) {
+        if (c.table == old) {
+            // the old table is only read, so removed entries are just skipped
+            old.slots.putIntU(c.slot, TOMBSTONE);
+        } else {
+            shiftBack(table, c.slot);
+            table.count--;
+        }
+        size--;
+    }
+
+    private void grow() {
+        if (old != null) {
+            migrate(old.capacity);
+        }
+        old = table;
+        migrated = 0;
+        table = newTable(2L * old.capacity);
+        migrate(MIGRATION_STEP);
+    }
+
+    private void migrate(int count) {
+        Table from = old;
+        int end = (int) Math.min(from.capacity, (long) migrated + count);
+        for (int i = migrated; i < end; i++) {
+            long slot = (long) i * slotSize;
+            int tag = from.slots.getIntU(slot);
+            if (tag < 0) {
+                table.slots.copyFromU(from.slots, slot, emptySlot(table, tag), slotSize);
+                table.count++;
+                from.slots.putIntU(slot, TOMBSTONE);
+            }
+        }
+        migrated = end;
+        if (end == from.capacity) {
+            old = null;
+        }
+    }
+
+    /**
+     * @return the offset of the empty slot for an entry with given tag, which
+     * is known not to be present in given table
+     */
+    private long emptySlot(Table t, int tag) {
+        int mask = t.capacity - 1;
+        for (int i = t.home(tag); ; i = (i + 1) & mask) {
+            long slot = (long) i * slotSize;
+            if (t.slots.getIntU(slot) == EMPTY) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Empties the slot at given offset, moving the following entries of the
+     * probe sequence that can't be found past an empty slot back into it.
+     */
+    private void shiftBack(Table t, long slot) {
+        int mask = t.capacity - 1;
+        int hole = (int) (slot / slotSize);
+        for (int i = (hole + 1) & mask; ; i = (i + 1) & mask) {
+            long from = (long) i * slotSize;
+            int tag = t.slots.getIntU(from);
+            if (tag == EMPTY) {
+                break;
+            }
+            // the entry can move to the hole unless its home lies after the hole
+            if (((i - t.home(tag)) & mask) >= ((i - hole) & mask)) {
+                t.slots.copyFromU(t.slots, from, (long) hole * slotSize, slotSize);
+                hole = i;
+            }
+        }
+        t.slots.setMemoryU((long) hole * slotSize, slotSize, (byte) 0);
+    }
+
+    /**
+     * @return the index of the slot following an empty slot of given table,
+     * where no probe sequence crosses into
+     */
+    private int iterationStart(Table t) {
+        int i = 0;
+        while (t.slots.getIntU((long) i * slotSize) != EMPTY) {
+            i++;
+        }
+        return (i + 1) & (t.capacity - 1);
+    }
+
+    /**
+     * A table of slots, which have a power of two count.
+     */
+    static final class Table {
+        final PackedArray.OfByte slots;
+        final int capacity;
+        final int shift;
+        // the number of entries in the table
+        int count;
+
+        Table(PackedArray.OfByte slots, int capacity) {
+            this.slots = slots;
+            this.capacity = capacity;
+            this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        }
+
+        /**
+         * @return the index of the 1st slot of the probe sequence for given
+         * tag (Fibonacci hashing)
+         */
+        int home(int tag) {
+            return (tag * 0x9E3779B9) >>> shift;
+        }
+    }
+
+    /**
+     * A {@link PackedCursor} over the entries of a PackedHashMap. A cursor is
+     * positioned at an entry by looking up or inserting a key or by iterating
+     * with {@link #next()}. Its {@link #get() view} of the value is only valid
+     * until the map is structurally modified, with the exception that the
+     * entry a cursor is positioned at can be {@link #remove() removed} while
+     * iterating. Entries inserted while iterating may or may not be visited.
+     *
+     * @param <V> the type of values
+     */
+    public static abstract class Cursor<V extends PackedObject> extends PackedCursor<V> {
+        final PackedHashMap<V> map;
+        // the table and the offset of the slot of the entry at the position
+        Table table;
+        long slot = -1;
+        // the iteration state: the table being iterated, the index of the
+        // 1st slot visited in it and the number of slots visited so far
+        private Table iterated;
+        private int start;
+        private int visited;
+        private boolean done;
+        // whether the position was reached by iteration
+        private boolean iterating;
+
+        Cursor(PackedHashMap<V> map) {
+            super(map.table.slots.getViewU(map.valueType, map.valueOffset, map.valueSize));
+            this.map = map;
+        }
+
+        /**
+         * @return the reusable view of the value of the entry at the cursor's
+         * current position.
+         * @throws IllegalStateException if the cursor is not positioned at an entry
+         */
+        @Override
+        public V get() {
+            checkPositioned();
+            return view;
+        }
+
+        /**
+         * Moves the cursor to the next entry if there is one. Entries are
+         * visited in no particular order.
+         *
+         * @return {@code true} if the cursor moved to the next entry or
+         * {@code false} if there are no more entries.
+         */
+        public boolean next() {
+            if (done) {
+                return false;
+            }
+            if (iterated == null) {
+                iterated = map.table;
+                start = map.iterationStart(iterated);
+                visited = 0;
+            }
+            while (true) {
+                Table t = iterated;
+                while (visited < t.capacity) {
+                    long s = (long) ((start + visited++) & (t.capacity - 1)) * map.slotSize;
+                    if (t.slots.getIntU(s) < 0) {
+                        positionAt(t, s);
+                        iterating = true;
+                        return true;
+                    }
+                }
+                if (t == map.table && map.old != null) {
+                    iterated = map.old;
+                    start = 0;
+                    visited = 0;
+                } else {
+                    done = true;
+                    positionAt(null, -1);
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Removes the entry at the cursor's current position, after which the
+         * cursor is no longer positioned at an entry. Iteration can continue
+         * with {@link #next()}.
+         *
+         * @throws IllegalStateException if the cursor is not positioned at an entry
+         */
+        public void remove() {
+            checkPositioned();
+            if (table != map.table && table != map.old) {
+                throw new IllegalStateException("Map was resized after the cursor was positioned");
+            }
+            map.remove(this);
+            if (iterating && table == iterated) {
+                // the slot may now hold an entry shifted back from a slot not visited yet
+                visited--;
+            }
+            positionAt(null, -1);
+        }
+
+        /**
+         * @return a new view of the value of the entry at the position
+         */
+        final V valueView() {
+            return table.slots.getViewU(map.valueType, slot + map.valueOffset, map.valueSize);
+        }
+
+        final void copyValueFrom(V value) {
+            table.slots.copyFromU(value, slot + map.valueOffset, map.valueSize);
+        }
+
+        void positionAt(Table t, long s) {
+            table = t;
+            slot = s;
+            iterating = false;
+            if (t != null) {
+                view.rebindU(t.slots, s + map.valueOffset);
+            }
+        }
+
+        final void checkPositioned() {
+            if (table == null) {
+                throw new IllegalStateException("Cursor is not positioned at an entry");
+            }
+        }
+
+        /**
+         * @return true if the key pending in this cursor is equal to the key
+         * in given slots at given offset
+         */
+        abstract boolean keyEqualsU(Packed slots, long offset);
+
+        /**
+         * Writes the key pending in this cursor to given slots at given offset.
+         */
+        abstract void putKeyU(Packed slots, long offset);
+
+        abstract String keyString();
+    }
+
+    /**
+     * A PackedHashMap with packed object keys of a single class.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    public static final class OfObject<K extends PackedObject, V extends PackedObject> extends PackedHashMap<V> {
+        private final PackedClass<K> keyType;
+        private final Cursor<K, V> probe;
+
+        public OfObject(Class<K> keyClass, Class<V> valueClass) {
+            this(keyClass, valueClass, 0);
+        }
+
+        /**
+         * @param expectedSize the number of entries the map can hold without resizing
+         */
+        public OfObject(Class<K> keyClass, Class<V> valueClass, int expectedSize) {
+            this(PackedClass.forClass(keyClass), valueClass, expectedSize);
+        }
+
+        private OfObject(PackedClass<K> keyType, Class<V> valueClass, int expectedSize) {
+            super(keyType.getSize(), keyType.getAlignment(), valueClass, expectedSize);
+            keyType.checkInstantiable(false);
+            this.keyType = keyType;
+            this.probe = cursor();
+        }
+
+        /**
+         * @return the type of keys
+         */
+        public PackedClass<K> keyType() {
+            return keyType;
+        }
+
+        public boolean containsKey(K key) {
+            return probe.find(key);
+        }
+
+        /**
+         * @return a view of the value mapped to given key or null if there is none
+         */
+        public V get(K key) {
+            return probe.find(key) ? probe.valueView() : null;
+        }
+
+        /**
+         * Maps given key to a copy of given value.
+         *
+         * @return {@code true} if there was no mapping for the key
+         * @throws ClassCastException if the key is not of the key class of this map
+         */
+        public boolean put(K key, V value) {
+            boolean absent = probe.insert(key);
+            probe.copyValueFrom(value);
+            return absent;
+        }
+
+        /**
+         * @return {@code true} if there was a mapping for the key, which was removed
+         */
+        public boolean remove(K key) {
+            if (probe.find(key)) {
+                probe.remove();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Cursor<K, V> cursor() {
+            return new Cursor<>(this);
+        }
+
+        /**
+         * A cursor over the entries of a PackedHashMap with packed object keys.
+         */
+        public static final class Cursor<K extends PackedObject, V extends PackedObject>
+            extends PackedHashMap.Cursor<V> {
+            private final K keyView;
+            // the key being looked up or inserted
+            private K key;
+
+            Cursor(OfObject<K, V> map) {
+                super(map);
+                this.keyView = map.table.slots.getViewU(map.keyType, map.keyOffset, map.keyType.getSize());
+            }
+
+            /**
+             * Positions the cursor at the entry with given key.
+             *
+             * @return {@code true} if found or {@code false} if there is no such entry,
+             * in which case the cursor is not positioned at an entry
+             */
+            public boolean find(K key) {
+                OfObject<K, V> map = map();
+                if (key.getClass() != map.keyType.asClass()) {
+                    positionAt(null, -1);
+                    return false;
+                }
+                this.key = key;
+                try {
+                    return map.find(this, tag(key.hash64()));
+                } finally {
+                    this.key = null;
+                }
+            }
+
+            /**
+             * Positions the cursor at the entry with given key, inserting an
+             * entry with a zero value if there is none.
+             *
+             * @return {@code true} if the entry was inserted
+             * @throws ClassCastException if the key is not of the key class of the map
+             */
+            public boolean insert(K key) {
+                OfObject<K, V> map = map();
+                if (key.getClass() != map.keyType.asClass()) {
+                    throw new ClassCastException(
+                        "Key of " + key.getClass() + " is not of the map's key " + map.keyType.asClass());
+                }
+                this.key = key;
+                try {
+                    return map.insert(this, tag(key.hash64()));
+                } finally {
+                    this.key = null;
+                }
+            }
+
+            /**
+             * @return the reusable view of the key of the entry at the cursor's
+             * current position, which must not be modified.
+             * @throws IllegalStateException if the cursor is not positioned at an entry
+             */
+            public K key() {
+                checkPositioned();
+                keyView.rebindU(table.slots, slot + map.keyOffset);
+                return keyView;
+            }
+
+            @SuppressWarnings("unchecked")
+            private OfObject<K, V> map() {
+                return (OfObject<K, V>) map;
+            }
+
+            @Override
+            boolean keyEqualsU(Packed slots, long offset) {
+                return key.equalsAtU(slots, offset);
+            }
+
+            @Override
+            void putKeyU(Packed slots, long offset) {
+                slots.copyFromU(key, offset, map().keyType.getSize());
+            }
+
+            @Override
+            String keyString() {
+                return key().toString();
+            }
+        }
+    }
+
+    /**
+     * A PackedHashMap with {@code int} keys.
+     *
+     * @param <V> the type of values
+     */
+    public static final class OfInt<V extends PackedObject> extends PackedHashMap<V> {
+        private final Cursor<V> probe;
+
+        public OfInt(Class<V> valueClass) {
+            this(valueClass, 0);
+        }
+
+        /**
+         * @param expectedSize the number of entries the map can hold without resizing
+         */
+        public OfInt(Class<V> valueClass, int expectedSize) {
+            super(4, 4, valueClass, expectedSize);
+            this.probe = cursor();
+        }
+
+        public boolean containsKey(int key) {
+            return probe.find(key);
+        }
+
+        /**
+         * @return a view of the value mapped to given key or null if there is none
+         */
+        public V get(int key) {
+            return probe.find(key) ? probe.valueView() : null;
+        }
+
+        /**
+         * Maps given key to a copy of given value.
+         *
+         * @return {@code true} if there was no mapping for the key
+         */
+        public boolean put(int key, V value) {
+            boolean absent = probe.insert(key);
+            probe.copyValueFrom(value);
+            return absent;
+        }
+
+        /**
+         * @return {@code true} if there was a mapping for the key, which was removed
+         */
+        public boolean remove(int key) {
+            if (probe.find(key)) {
+                probe.remove();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Cursor<V> cursor() {
+            return new Cursor<>(this);
+        }
+
+        static int tag(int key) {
+            return PackedHashMap.tag(key * 0x9E3779B97F4A7C15L);
+        }
+
+        /**
+         * A cursor over the entries of a PackedHashMap with {@code int} keys.
+         */
+        public static final class Cursor<V extends PackedObject> extends PackedHashMap.Cursor<V> {
+            // the key being looked up or inserted
+            private int key;
+
+            Cursor(OfInt<V> map) {
+                super(map);
+            }
+
+            /**
+             * Positions the cursor at the entry with given key.
+             *
+             * @return {@code true} if found or {@code false} if there is no such entry,
+             * in which case the cursor is not positioned at an entry
+             */
+            public boolean find(int key) {
+                this.key = key;
+                return map.find(this, tag(key));
+            }
+
+            /**
+             * Positions the cursor at the entry with given key, inserting an
+             * entry with a zero value if there is none.
+             *
+             * @return {@code true} if the entry was inserted
+             */
+            public boolean insert(int key) {
+                this.key = key;
+                return map.insert(this, tag(key));
+            }
+
+            /**
+             * @return the key of the entry at the cursor's current position.
+             * @throws IllegalStateException if the cursor is not positioned at an entry
+             */
+            public int getKeyInt() {
+                checkPositioned();
+                return table.slots.getIntU(slot + map.keyOffset);
+            }
+
+            @Override
+            boolean keyEqualsU(Packed slots, long offset) {
+                return slots.getIntU(offset) == key;
+            }
+
+            @Override
+            void putKeyU(Packed slots, long offset) {
+                slots.putIntU(offset, key);
+            }
+
+            @Override
+            String keyString() {
+                return String.valueOf(getKeyInt());
+            }
+        }
+    }
+
+    /**
+     * A PackedHashMap with {@code long} keys.
+     *
+     * @param <V> the type of values
+     */
+    public static final class OfLong<V extends PackedObject> extends PackedHashMap<V> {
+        private final Cursor<V> probe;
+
+        public OfLong(Class<V> valueClass) {
+            this(valueClass, 0);
+        }
+
+        /**
+         * @param expectedSize the number of entries the map can hold without resizing
+         */
+        public OfLong(Class<V> valueClass, int expectedSize) {
+            super(8, 8, valueClass, expectedSize);
+            this.probe = cursor();
+        }
+
+        public boolean containsKey(long key) {
+            return probe.find(key);
+        }
+
+        /**
+         * @return a view of the value mapped to given key or null if there is none
+         */
+        public V get(long key) {
+            return probe.find(key) ? probe.valueView() : null;
+        }
+
+        /**
+         * Maps given key to a copy of given value.
+         *
+         * @return {@code true} if there was no mapping for the key
+         */
+        public boolean put(long key, V value) {
+            boolean absent = probe.insert(key);
+            probe.copyValueFrom(value);
+            return absent;
+        }
+
+        /**
+         * @return {@code true} if there was a mapping for the key, which was removed
+         */
+        public boolean remove(long key) {
+            if (probe.find(key)) {
+                probe.remove();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Cursor<V> cursor() {
+            return new Cursor<>(this);
+        }
+
+        static int tag(long key) {
+            return PackedHashMap.tag(key * 0x9E3779B97F4A7C15L);
+        }
+
+        /**
+         * A cursor over the entries of a PackedHashMap with {@code long} keys.
+         */
+        public static final class Cursor<V extends PackedObject> extends PackedHashMap.Cursor<V> {
+            // the key being looked up or inserted
+            private long key;
+
+            Cursor(OfLong<V> map) {
+                super(map);
+            }
+
+            /**
+             * Positions the cursor at the entry with given key.
+             *
+             * @return {@code true} if found or {@code false} if there is no such entry,
+             * in which case the cursor is not positioned at an entry
+             */
+            public boolean find(long key) {
+                this.key = key;
+                return map.find(this, tag(key));
+            }
+
+            /**
+             * Positions the cursor at the entry with given key, inserting an
+             * entry with a zero value if there is none.
+             *
+             * @return {@code true} if the entry was inserted
+             */
+            public boolean insert(long key) {
+                this.key = key;
+                return map.insert(this, tag(key));
+            }
+
+            /**
+             * @return the key of the entry at the cursor's current position.
+             * @throws IllegalStateException if the cursor is not positioned at an entry
+             */
+            public long getKeyLong() {
+                checkPositioned();
+                return table.slots.getLongU(slot + map.keyOffset);
+            }
+
+            @Override
+            boolean keyEqualsU(Packed slots, long offset) {
+                return slots.getLongU(offset) == key;
+            }
+
+            @Override
+            void putKeyU(Packed slots, long offset) {
+                slots.putLongU(offset, key);
+            }
+
+            @Override
+            String keyString() {
+                return String.valueOf(getKeyLong());
+            }
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedField.pfLong;
+import sun.misc.Unsafe;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * PackedIndex is a secondary hash index of the elements of a
+ * {@link PackedArray.OfObject} by the value of an int or long key field,
+ * which finds the indexes of elements with a given key without scanning the
+ * array. Keys and element indexes are stored in primitive arrays of an open
+ * addressing table with linear probing, so neither building the index nor
+ * lookups box. Large arrays are indexed in parallel using fork/join.
+ * <p>
+ * Keys need not be unique. Each distinct key takes one slot of the table,
+ * which holds the number of elements with the key, the lowest of their
+ * indexes and the head of a chain linking all of them, so duplicate keys
+ * cost no more to index or look up than unique ones.
+ * <p>
+ * The index is kept up to date when elements are replaced through
+ * {@link #set(int, PackedObject)}. Modifying the key field of an element by
+ * other means (including through another index of the same array) makes the
+ * index stale until it is {@link #rebuild() rebuilt}.
+ * Lookups may be performed concurrently, but not concurrently with updates.
+ *
+ * @param <T> the type of elements of the indexed array
+ */
+public final class PackedIndex<T extends PackedObject> {
+
+    private static final int PARALLEL_BUILD_THRESHOLD = 1 << 13;
+    // the head of a slot that is being claimed by an inserting thread
+    private static final int CLAIMED = -1;
+
+    private final PackedArray.OfObject<T> array;
+    private final long indexScale;
+    private final long keyOffset;
+    // true for long key fields, false for int key fields
+    private final boolean longKey;
+    // the table: distinct keys, the index + 1 of the 1st element of the chain
+    // of elements with the key (0 marks an empty slot), the number and the
+    // lowest index of elements with the key
+    private final long[] keys;
+    private final int[] heads;
+    private final int[] counts;
+    private final int[] lowest;
+    // the chains: the index + 1 of the next element with the same key (0 ends the chain)
+    private final int[] next;
+    private final int shift;
+
+    private PackedIndex(PackedArray.OfObject<T> array, int keyOffset, boolean longKey) {
+        this.array = array;
+        PackedClass<?> componentType = array.type().getComponentType();
+        this.indexScale = componentType.getIndexScale();
+        this.keyOffset = keyOffset;
+        this.longKey = longKey;
+        // keep the table at most half full
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(2L * array.length() - 1, 7L));
+        if (bits > 30) {
+            throw new IllegalArgumentException("Array too large to index: " + array.length());
+        }
+        this.keys = new long[1 << bits];
+        this.heads = new int[1 << bits];
+        this.counts = new int[1 << bits];
+        this.lowest = new int[1 << bits];
+        this.next = new int[array.length()];
+        this.shift = 64 - bits;
+        build();
+    }
+
+    /**
+     * Builds an index of elements of given array by given int key field.
+     *
+     * @param array the array to index
+     * @param key   the field of the component type (or its superclass) to
+     *              index by
+     * @return a new index
+     */
+    public static <T extends PackedObject> PackedIndex<T> build(PackedArray.OfObject<T> array, pfInt<? super T> key) {
+        return new PackedIndex<>(array, key.offsetIn(array.type().getComponentType()), false);
+    }
+
+    /**
+     * Builds an index of elements of given array by given long key field.
+     *
+     * @param array the array to index
+     * @param key   the field of the component type (or its superclass) to
+     *              index by
+     * @return a new index
+     */
+    public static <T extends PackedObject> PackedIndex<T> build(PackedArray.OfObject<T> array, pfLong<? super T> key) {
+        return new PackedIndex<>(array, key.offsetIn(array.type().getComponentType()), true);
+    }
+
+    /**
+     * @return the indexed array
+     */
+    public PackedArray.OfObject<T> array() {
+        return array;
+    }
+
+    /**
+     * Finds the lowest index of an element with given key.
+     *
+     * @param key the key to look up
+     * @return the lowest index of an element with given key or {@code -1}
+     * if there is none
+     */
+    public int indexOf(long key) {
+        int slot = slotOf(key);
+        return (slot < 0) ? -1 : lowest[slot];
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the number of elements with given key
+     */
+    public int count(long key) {
+        int slot = slotOf(key);
+        return (slot < 0) ? 0 : counts[slot];
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the indexes of elements with given key in ascending order
+     */
+    public int[] indexesOf(long key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return new int[0];
+        }
+        int[] indexes = new int[counts[slot]];
+        int n = 0;
+        for (int p = heads[slot]; p != 0; p = next[p - 1]) {
+            indexes[n++] = p - 1;
+        }
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    /**
+     * Returns a view of the element with given key with the lowest index.
+     *
+     * @param key the key to look up
+     * @return a view of the element or null if there is none
+     */
+    public T get(long key) {
+        int index = indexOf(key);
+        return (index < 0) ? null : array.getView(index);
+    }
+
+    /**
+     * Sets the element of the indexed array at given {@code index} to a copy
+     * of given {@code value} and updates the index. Changing the key of an
+     * element takes time proportional to the number of elements with its old
+     * key.
+     *
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds
+     */
+    public void set(int index, T value) {
+        long oldKey = keyAt(array.checkIndex(index));
+        array.set(index, value);
+        long newKey = keyAt(index);
+        if (newKey != oldKey) {
+            remove(oldKey, index);
+            insert(newKey, index);
+        }
+    }
+
+    /**
+     * Rebuilds the index from the current keys of elements.
+     */
+    public void rebuild() {
+        Arrays.fill(heads, 0);
+        build();
+    }
+
+    private void build() {
+        int length = array.length();
+        if (length <= PARALLEL_BUILD_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            for (int index = 0; index < length; index++) {
+                insert(keyAt(index), index);
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(new BuildTask(this, 0, length));
+        }
+    }
+
+    private long keyAt(long index) {
+        long offset = index * indexScale + keyOffset;
+        return longKey ? array.getLongU(offset) : array.getIntU(offset);
+    }
+
+    private int home(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * @return the slot of given key or -1 if there is none
+     */
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        for (int i = home(key); heads[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long key, int index) {
+        int mask = keys.length - 1;
+        int i = home(key);
+        while (heads[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (heads[i] == 0) {
+            keys[i] = key;
+            next[index] = 0;
+            counts[i] = 1;
+            lowest[i] = index;
+        } else {
+            next[index] = heads[i];
+            counts[i]++;
+            lowest[i] = Math.min(lowest[i], index);
+        }
+        heads[i] = index + 1;
+    }
+
+    /**
+     * Inserts an element so that elements can be inserted by multiple
+     * threads. A thread claims an empty slot for a new key with CAS and
+     * publishes the key before the head of the chain; threads with the same
+     * key wait for that and then link their elements into the chain with CAS.
+     */
+    private void insertConcurrently(long key, int index) {
+        int mask = keys.length - 1;
+        for (int i = home(key); ; ) {
+            long headOffset = Unsafe.ARRAY_INT_BASE_OFFSET + ((long) i << 2);
+            int head = U.getIntVolatile(heads, headOffset);
+            if (head == 0) {
+                if (U.compareAndSwapInt(heads, headOffset, 0, CLAIMED)) {
+                    keys[i] = key;
+                    next[index] = 0;
+                    counts[i] = 1;
+                    lowest[i] = index;
+                    U.putIntVolatile(heads, headOffset, index + 1);
+                    return;
+                }
+                // claimed by another thread, look at the slot again
+            } else if (head == CLAIMED) {
+                Thread.yield();
+            } else if (keys[i] == key) {
+                next[index] = head;
+                while (!U.compareAndSwapInt(heads, headOffset, head, index + 1)) {
+                    next[index] = head = U.getIntVolatile(heads, headOffset);
+                }
+                U.getAndAddInt(counts, headOffset, 1);
+                int low;
+                while (index < (low = U.getIntVolatile(lowest, headOffset)) &&
+                       !U.compareAndSwapInt(lowest, headOffset, low, index)) {
+                    // retry
+                }
+                return;
+            } else {
+                i = (i + 1) & mask;
+            }
+        }
+    }
+
+    /**
+     * Removes the element with given key and index from the chain of its
+     * slot. The slot of the last element with the key is emptied, moving the
+     * following slots of the probe sequence that can't be found past an
+     * empty slot back into it.
+     */
+    private void remove(long key, int index) {
+        int slot = slotOf(key);
+        int prev = 0;
+        for (int p = heads[slot]; p != index + 1; p = next[p - 1]) {
+            prev = p;
+        }
+        if (prev == 0) {
+            heads[slot] = next[index];
+        } else {
+            next[prev - 1] = next[index];
+        }
+        if (--counts[slot] > 0) {
+            if (lowest[slot] == index) {
+                int low = Integer.MAX_VALUE;
+                for (int p = heads[slot]; p != 0; p = next[p - 1]) {
+                    low = Math.min(low, p - 1);
+                }
+                lowest[slot] = low;
+            }
+            return;
+        }
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; heads[i] != 0; i = (i + 1) & mask) {
+            // the slot can move to the hole unless its home lies after the hole
+            if (((i - home(keys[i])) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                heads[hole] = heads[i];
+                counts[hole] = counts[i];
+                lowest[hole] = lowest[i];
+                hole = i;
+            }
+        }
+        heads[hole] = 0;
+    }
+
+    @SuppressWarnings("serial")
+    private static final class BuildTask extends RecursiveAction {
+        private final PackedIndex<?> index;
+        private final int from, to;
+
+        BuildTask(PackedIndex<?> index, int from, int to) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_BUILD_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    index.insertConcurrently(index.keyAt(i), i);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BuildTask(index, from, mid), new BuildTask(index, mid, to));
+            }
+        }
+    }
+
+    private static final Unsafe U = Packed.U;
+}
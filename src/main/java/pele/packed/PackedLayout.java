@@ -0,0 +1,55 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Specifies the policy by which packed fields declared by the annotated
+ * {@link PackedObject} subclass are laid out. The policy applies to the
+ * fields declared by the annotated class only. Fields of the superclass are
+ * laid out by the superclass' policy and precede the fields of the subclass.
+ * Classes that are not annotated use the {@link Policy#DECLARED} policy.
+ * <p>
+ * When placed on a {@link PackedType} specification, the annotation processor
+ * lays out the generated class with given policy at compile time.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PackedLayout {
+
+    /**
+     * @return the layout policy of fields declared by the annotated class
+     */
+    Policy value();
+
+    enum Policy {
+        /**
+         * Fields are laid out in declaration order, each aligned to its
+         * alignment.
+         */
+        DECLARED,
+        /**
+         * Fields are laid out in order of descending alignment (and
+         * declaration order for fields with same alignment), each at the
+         * lowest aligned offset that doesn't overlap preceding fields, which
+         * minimizes padding.
+         */
+        COMPACT,
+        /**
+         * Fields are laid out in declaration order without any padding. The
+         * alignment of such class is 1, so there is no padding between
+         * elements of arrays either. Accessing unaligned fields may be slower
+         * and is only supported on platforms that allow unaligned access
+         * (such as x86 and aarch64).
+         */
+        UNALIGNED
+    }
+}
@@ -0,0 +1,791 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * PackedList is a growable list of primitives or PackedObject(s) backed by a
+ * {@link PackedArray}. Appending elements grows the backing array by half
+ * of its length when it is full, so the amortized cost of appending is
+ * constant. Inserting and removing elements moves the following elements
+ * with a bulk memory move. The backing array beyond the {@link #size()} of
+ * the list is kept zeroed.
+ *
+ * @param <CT> the component type
+ * @param <PA> the type of the backing packed array
+ */
+public abstract class PackedList<CT, PA extends PackedArray<CT>> implements Iterable<CT> {
+
+    /**
+     * The initial capacity of lists when it is not explicitly specified.
+     */
+    static final int DEFAULT_CAPACITY = 10;
+
+    final PackedClass<PA> arrayType;
+    PA elements;
+    int size;
+
+    /**
+     * Constructor for empty PackedList(s)
+     */
+    PackedList(PackedClass<PA> arrayType, int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Negative initial capacity.");
+        }
+        this.arrayType = arrayType;
+        this.elements = Packed.newArrayU(arrayType, initialCapacity, false);
+    }
+
+    /**
+     * @return the number of elements in this list.
+     */
+    public final int size() {
+        return size;
+    }
+
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of elements this list can hold without growing.
+     */
+    public final int capacity() {
+        return elements.length();
+    }
+
+    /**
+     * @return the type of packed arrays backing this list.
+     */
+    public final PackedClass<PA> arrayType() {
+        return arrayType;
+    }
+
+    /**
+     * Grabs and returns the element at given {@code index}.
+     *
+     * @throws IndexOutOfBoundsException if given {@code index} is not:
+     *                                   {@code 0 <= index < }{@link #size()}
+     * @see PackedArray#get(int)
+     */
+    public abstract CT get(int index);
+
+    /**
+     * Sets the element at given {@code index} to given {@code value}.
+     *
+     * @throws IndexOutOfBoundsException if given {@code index} is not:
+     *                                   {@code 0 <= index < }{@link #size()}
+     * @see PackedArray#set(int, Object)
+     */
+    public abstract void set(int index, CT value);
+
+    /**
+     * Appends given {@code value} to the end of this list.
+     */
+    public abstract void add(CT value);
+
+    /**
+     * Inserts given {@code value} at given {@code index} moving the element
+     * at that index (if any) and following elements up by one.
+     *
+     * @throws IndexOutOfBoundsException if given {@code index} is not:
+     *                                   {@code 0 <= index <= }{@link #size()}
+     */
+    public abstract void insert(int index, CT value);
+
+    /**
+     * Appends all elements of given packed array of the same type as the
+     * backing array to the end of this list with a bulk memory copy.
+     *
+     * @throws ClassCastException if {@code src} is not of the backing array type
+     */
+    public void addAll(PackedArray<CT> src) {
+        insertAll(size, src, 0, src.length());
+    }
+
+    /**
+     * Appends all elements of given packed list to the end of this list with
+     * a bulk memory copy.
+     *
+     * @throws ClassCastException if {@code src} is not of the same type as this list
+     */
+    public void addAll(PackedList<CT, PA> src) {
+        addAll(src.asArrayView());
+    }
+
+    /**
+     * Inserts the elements of given {@code src} packed array in range
+     * {@code [from, to)} at given {@code index} of this list with a bulk
+     * memory move of following elements and a bulk memory copy of inserted
+     * elements.
+     *
+     * @throws ClassCastException             if {@code src} is not of the backing array type
+     * @throws IndexOutOfBoundsException      if given {@code index} is not:
+     *                                        {@code 0 <= index <= }{@link #size()}
+     * @throws ArrayIndexOutOfBoundsException if given range is out of bounds of {@code src}
+     * @throws IllegalArgumentException       if {@code from > to}
+     */
+    public void insertAll(int index, PackedArray<CT> src, int from, int to) {
+        if (src.type() != arrayType) {
+            throw new ClassCastException(
+                "Can't insert from array of different type - list array type: " +
+                    arrayType + ", source type: " + src.type());
+        }
+        src.checkRangeIndexes(from, to);
+        if (src.sameStorage(elements)) {
+            // src is a view of the backing array which is about to be moved
+            src = src.copyOfRange(from, to);
+            to -= from;
+            from = 0;
+        }
+        openGap(index, to - from);
+        elements.copyFrom(src, from, index, to - from);
+    }
+
+    /**
+     * Removes the element at given {@code index} moving the following
+     * elements down by one.
+     *
+     * @throws IndexOutOfBoundsException if given {@code index} is not:
+     *                                   {@code 0 <= index < }{@link #size()}
+     */
+    public void remove(int index) {
+        checkIndex(index);
+        removeRange(index, index + 1);
+    }
+
+    /**
+     * Removes the elements in range {@code [from, to)} moving the following
+     * elements down.
+     *
+     * @throws IndexOutOfBoundsException if {@code from} or {@code to} is not
+     *                                   between 0 and {@link #size()}
+     * @throws IllegalArgumentException  if {@code from > to}
+     */
+    public void removeRange(int from, int to) {
+        checkRangeIndexes(from, to);
+        elements.copyWithin(to, from, size - to);
+        zero(size - (to - from), size);
+        size -= to - from;
+    }
+
+    /**
+     * Removes all elements from this list keeping its capacity.
+     */
+    public void clear() {
+        zero(0, size);
+        size = 0;
+    }
+
+    /**
+     * Grows the capacity of this list, if necessary, so that it can hold
+     * at least given number of elements without growing.
+     *
+     * @throws IllegalArgumentException if the backing array would be too large
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > elements.length()) {
+            grow(minCapacity);
+        }
+    }
+
+    /**
+     * Shrinks the capacity of this list to its size.
+     */
+    public void trimToSize() {
+        if (size < elements.length()) {
+            resize(size);
+        }
+    }
+
+    /**
+     * Returns a view of the elements of this list as a packed array of
+     * {@link #size()} length without copying them. Changes to the elements
+     * of the list are visible through the view and vice versa until the
+     * list replaces its backing array when it grows or is trimmed. Changes of
+     * the size of the list are not visible through the view.
+     *
+     * @return a packed array view of the elements of this list
+     */
+    public PA asArrayView() {
+        @SuppressWarnings("unchecked")
+        PA view = (PA) elements.viewOfRange(0, size);
+        return view;
+    }
+
+    /**
+     * Returns an iterator over elements of this list as returned by
+     * {@link #get(int)} which doesn't see changes of the size of the list
+     * after the iterator is created.
+     *
+     * @return an iterator over elements of this list
+     */
+    @Override
+    public Iterator<CT> iterator() {
+        return asArrayView().iterator();
+    }
+
+    /**
+     * @return a sequential stream of elements of this list as returned by
+     * {@link #get(int)}.
+     * @see PackedArray#stream()
+     */
+    public Stream<CT> stream() {
+        return asArrayView().stream();
+    }
+
+    /**
+     * Returns a {@code String} representation of the contents of the list.
+     * The format is equivalent to what is returned by
+     * {@link PackedArray#toString()}.
+     *
+     * @return a {@code String} representation of the list
+     */
+    @Override
+    public String toString() {
+        return asArrayView().toString();
+    }
+
+    final int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+
+    final void checkRangeIndexes(int from, int to) {
+        if (from < 0 || from > size) {
+            throw new IndexOutOfBoundsException("'from' index out of range: " + from);
+        }
+        if (to < 0 || to > size) {
+            throw new IndexOutOfBoundsException("'to' index out of range: " + to);
+        }
+        if (from > to) {
+            throw new IllegalArgumentException("'from' index: " + from + " > 'to' index: " + to);
+        }
+    }
+
+    /**
+     * Makes room for an element at the end of this list. As this may replace
+     * the backing array, it must be called before {@link #elements} is read.
+     *
+     * @return the index of the (zero) element at the end
+     */
+    final int append() {
+        if (size == elements.length()) {
+            grow(size + 1);
+        }
+        return size++;
+    }
+
+    /**
+     * Makes room for {@code count} elements at given {@code index} moving the
+     * following elements up.
+     *
+     * @return given {@code index}
+     */
+    final int openGap(int index, int count) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        if (count > elements.length() - size) {
+            if (size + count < 0) {
+                throw new IllegalArgumentException("List too large: " + size + " + " + count);
+            }
+            grow(size + count);
+        }
+        elements.copyWithin(index, index + count, size - index);
+        size += count;
+        return index;
+    }
+
+    private void grow(int minCapacity) {
+        PackedClass<?> componentType = arrayType.getComponentType();
+        int maxCapacity = (Integer.MAX_VALUE - componentType.getSize()) /
+            Math.max(1, componentType.getIndexScale()) + 1;
+        int capacity = elements.length();
+        int newCapacity = Math.min(maxCapacity, Math.max(DEFAULT_CAPACITY, capacity + (capacity >> 1)));
+        resize(Math.max(minCapacity, newCapacity));
+    }
+
+    private void resize(int capacity) {
+        PA array = Packed.newArrayU(arrayType, capacity, false);
+        array.copyFrom(elements, 0, 0, size);
+        elements = array;
+    }
+
+    /**
+     * Zeroes elements of the backing array in range {@code [from, to)}.
+     */
+    private void zero(int from, int to) {
+        if (from < to) {
+            long offset = (long) from * arrayType.getComponentType().getIndexScale();
+            elements.setMemoryU(offset, arrayType.arraySize(to) - offset, (byte) 0);
+        }
+    }
+
+    public static final class OfBoolean extends PackedList<Boolean, PackedArray.OfBoolean> {
+
+        public OfBoolean() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public OfBoolean(int initialCapacity) {
+            super(PackedArray.OfBoolean.TYPE, initialCapacity);
+        }
+
+        public boolean getBoolean(int index) {
+            return elements.getBooleanU(checkIndex(index));
+        }
+
+        public boolean setBoolean(int index, boolean value) {
+            elements.putBooleanU(checkIndex(index), value);
+            return value;
+        }
+
+        public void addBoolean(boolean value) {
+            int i = append();
+            elements.putBooleanU(i, value);
+        }
+
+        public void insertBoolean(int index, boolean value) {
+            int i = openGap(index, 1);
+            elements.putBooleanU(i, value);
+        }
+
+        @Override
+        public Boolean get(int index) {
+            return getBoolean(index);
+        }
+
+        @Override
+        public void set(int index, Boolean value) {
+            setBoolean(index, value);
+        }
+
+        @Override
+        public void add(Boolean value) {
+            addBoolean(value);
+        }
+
+        @Override
+        public void insert(int index, Boolean value) {
+            insertBoolean(index, value);
+        }
+    }
+
+    public static final class OfByte extends PackedList<Byte, PackedArray.OfByte> {
+
+        public OfByte() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public OfByte(int initialCapacity) {
+            super(PackedArray.OfByte.TYPE, initialCapacity);
+        }
+
+        public byte getByte(int index) {
+            return elements.getByteU(checkIndex(index));
+        }
+
+        public byte setByte(int index, byte value) {
+            elements.putByteU(checkIndex(index), value);
+            return value;
+        }
+
+        public void addByte(byte value) {
+            int i = append();
+            elements.putByteU(i, value);
+        }
+
+        public void insertByte(int index, byte value) {
+            int i = openGap(index, 1);
+            elements.putByteU(i, value);
+        }
+
+        @Override
+        public Byte get(int index) {
+            return getByte(index);
+        }
+
+        @Override
+        public void set(int index, Byte value) {
+            setByte(index, value);
+        }
+
+        @Override
+        public void add(Byte value) {
+            addByte(value);
+        }
+
+        @Override
+        public void insert(int index, Byte value) {
+            insertByte(index, value);
+        }
+    }
+
+    public static final class OfChar extends PackedList<Character, PackedArray.OfChar> {
+
+        public OfChar() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public OfChar(int initialCapacity) {
+            super(PackedArray.OfChar.TYPE, initialCapacity);
+        }
+
+        public char getChar(int index) {
+            return elements.getCharU(checkIndex(index) << 1);
+        }
+
+        public char setChar(int index, char value) {
+            elements.putCharU(checkIndex(index) << 1, value);
+            return value;
+        }
+
+        public void addChar(char value) {
+            int i = append();
+            elements.putCharU(i << 1, value);
+        }
+
+        public void insertChar(int index, char value) {
+            int i = openGap(index, 1);
+            elements.putCharU(i << 1, value);
+        }
+
+        @Override
+        public Character get(int index) {
+            return getChar(index);
+        }
+
+        @Override
+        public void set(int index, Character value) {
+            setChar(index, value);
+        }
+
+        @Override
+        public void add(Character value) {
+            addChar(value);
+        }
+
+        @Override
+        public void insert(int index, Character value) {
+            insertChar(index, value);
+        }
+    }
+
+    public static final class OfShort extends PackedList<Short, PackedArray.OfShort> {
+
+        public OfShort() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public OfShort(int initialCapacity) {
+            super(PackedArray.OfShort.TYPE, initialCapacity);
+        }
+
+        public short getShort(int index) {
+            return elements.getShortU(checkIndex(index) << 1);
+        }
+
+        public short setShort(int index, short value) {
+            elements.putShortU(checkIndex(index) << 1, value);
+            return value;
+        }
+
+        public void addShort(short value) {
+            int i = append();
+            elements.putShortU(i << 1, value);
+        }
+
+        public void insertShort(int index, short value) {
+            int i = openGap(index, 1);
+            elements.putShortU(i << 1, value);
+        }
+
+        @Override
+        public Short get(int index) {
+            return getShort(index);
+        }
+
+        @Override
+        public void set(int index, Short value) {
+            setShort(index, value);
+        }
+
+        @Override
+        public void add(Short value) {
+            addShort(value);
+        }
+
+        @Override
+        public void insert(int index, Short value) {
+            insertShort(index, value);
+        }
+    }
+
+    public static final class OfInt extends PackedList<Integer, PackedArray.OfInt> {
+
+        public OfInt() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public OfInt(int initialCapacity) {
+            super(PackedArray.OfInt.TYPE, initialCapacity);
+        }
+
+        public int getInt(int index) {
+            return elements.getIntU(checkIndex(index) << 2);
+        }
+
+        public int setInt(int index, int value) {
+            elements.putIntU(checkIndex(index) << 2, value);
+            return value;
+        }
+
+        public void addInt(int value) {
+            int i = append();
+            elements.putIntU(i << 2, value);
+        }
+
+        public void insertInt(int index, int value) {
+            int i = openGap(index, 1);
+            elements.putIntU(i << 2, value);
+        }
+
+        @Override
+        public Integer get(int index) {
+            return getInt(index);
+        }
+
+        @Override
+        public void set(int index, Integer value) {
+            setInt(index, value);
+        }
+
+        @Override
+        public void add(Integer value) {
+            addInt(value);
+        }
+
+        @Override
+        public void insert(int index, Integer value) {
+            insertInt(index, value);
+        }
+    }
+
+    public static final class OfLong extends PackedList<Long, PackedArray.OfLong> {
+
+        public OfLong() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public OfLong(int initialCapacity) {
+            super(PackedArray.OfLong.TYPE, initialCapacity);
+        }
+
+        public long getLong(int index) {
+            return elements.getLongU(checkIndex(index) << 3);
+        }
+
+        public long setLong(int index, long value) {
+            elements.putLongU(checkIndex(index) << 3, value);
+            return value;
+        }
+
+        public void addLong(long value) {
+            int i = append();
+            elements.putLongU(i << 3, value);
+        }
+
+        public void insertLong(int index, long value) {
+            int i = openGap(index, 1);
+            elements.putLongU(i << 3, value);
+        }
+
+        @Override
+        public Long get(int index) {
+            return getLong(index);
+        }
+
+        @Override
+        public void set(int index, Long value) {
+            setLong(index, value);
+        }
+
+        @Override
+        public void add(Long value) {
+            addLong(value);
+        }
+
+        @Override
+        public void insert(int index, Long value) {
+            insertLong(index, value);
+        }
+    }
+
+    public static final class OfFloat extends PackedList<Float, PackedArray.OfFloat> {
+
+        public OfFloat() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public OfFloat(int initialCapacity) {
+            super(PackedArray.OfFloat.TYPE, initialCapacity);
+        }
+
+        public float getFloat(int index) {
+            return elements.getFloatU(checkIndex(index) << 2);
+        }
+
+        public float setFloat(int index, float value) {
+            elements.putFloatU(checkIndex(index) << 2, value);
+            return value;
+        }
+
+        public void addFloat(float value) {
+            int i = append();
+            elements.putFloatU(i << 2, value);
+        }
+
+        public void insertFloat(int index, float value) {
+            int i = openGap(index, 1);
+            elements.putFloatU(i << 2, value);
+        }
+
+        @Override
+        public Float get(int index) {
+            return getFloat(index);
+        }
+
+        @Override
+        public void set(int index, Float value) {
+            setFloat(index, value);
+        }
+
+        @Override
+        public void add(Float value) {
+            addFloat(value);
+        }
+
+        @Override
+        public void insert(int index, Float value) {
+            insertFloat(index, value);
+        }
+    }
+
+    public static final class OfDouble extends PackedList<Double, PackedArray.OfDouble> {
+
+        public OfDouble() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public OfDouble(int initialCapacity) {
+            super(PackedArray.OfDouble.TYPE, initialCapacity);
+        }
+
+        public double getDouble(int index) {
+            return elements.getDoubleU(checkIndex(index) << 3);
+        }
+
+        public double setDouble(int index, double value) {
+            elements.putDoubleU(checkIndex(index) << 3, value);
+            return value;
+        }
+
+        public void addDouble(double value) {
+            int i = append();
+            elements.putDoubleU(i << 3, value);
+        }
+
+        public void insertDouble(int index, double value) {
+            int i = openGap(index, 1);
+            elements.putDoubleU(i << 3, value);
+        }
+
+        @Override
+        public Double get(int index) {
+            return getDouble(index);
+        }
+
+        @Override
+        public void set(int index, Double value) {
+            setDouble(index, value);
+        }
+
+        @Override
+        public void add(Double value) {
+            addDouble(value);
+        }
+
+        @Override
+        public void insert(int index, Double value) {
+            insertDouble(index, value);
+        }
+    }
+
+    public static final class OfObject<CT extends PackedObject> extends PackedList<CT, PackedArray.OfObject<CT>> {
+
+        public OfObject(Class<CT> componentClass) {
+            this(componentClass, DEFAULT_CAPACITY);
+        }
+
+        public OfObject(Class<CT> componentClass, int initialCapacity) {
+            super(PackedArray.OfObject.typeWithComponent(componentClass), initialCapacity);
+        }
+
+        public CT getView(int index) {
+            return elements.getView(checkIndex(index));
+        }
+
+        public CT getCopy(int index) {
+            return elements.getCopy(checkIndex(index));
+        }
+
+        public CT copyFrom(int index, CT source) {
+            return elements.copyFrom(checkIndex(index), source);
+        }
+
+        /**
+         * Appends a "zero" element to the end of this list.
+         *
+         * @return a view of the appended element which is valid until the
+         * list replaces its backing array
+         */
+        public CT add() {
+            int i = append();
+            return elements.getView(i);
+        }
+
+        @Override
+        public CT get(int index) {
+            return getView(index);
+        }
+
+        @Override
+        public void set(int index, CT value) {
+            copyFrom(index, value);
+        }
+
+        @Override
+        public void add(CT value) {
+            int i = append();
+            elements.copyFrom(i, value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void insert(int index, CT value) {
+            if (value.sameStorage(elements)) {
+                // value is a view of an element of this list which is about to be moved
+                value = (CT) value.copyAs(value.getClass());
+            }
+            int i = openGap(index, 1);
+            elements.copyFrom(i, value);
+        }
+    }
+}
@@ -59,6 +59,138 @@ public class PackedObject extends Packed {
         return getCopyU(clazz, 0, PackedClass.forClass(clazz).getSize());
     }
 
+    /**
+     * Waits until no writer is updating this versioned packed object and
+     * returns its version stamp. Fields read after this call are consistent
+     * if {@link #validate(long)} succeeds with the returned stamp:
+     * <pre>
+     *   long stamp;
+     *   do {
+     *       stamp = line.optimisticRead();
+     *       ... read fields of line ...
+     *   } while (!line.validate(stamp));
+     * </pre>
+     *
+     * @return the (even) version stamp of this packed object
+     * @throws UnsupportedOperationException if this packed object is not {@link PackedVersioned versioned}
+     */
+    public final long optimisticRead() {
+        long offset = versionOffset();
+        long stamp;
+        while (((stamp = getLongVolatileU(offset)) & 1L) != 0L) {
+            Thread.yield();
+        }
+        return stamp;
+    }
+
+    /**
+     * @return true if this versioned packed object has not been written since
+     * given {@code stamp} was obtained by {@link #optimisticRead()}
+     * @throws UnsupportedOperationException if this packed object is not {@link PackedVersioned versioned}
+     */
+    public final boolean validate(long stamp) {
+        long offset = versionOffset();
+        // field reads preceding validation must not be reordered after it
+        U.loadFence();
+        return getLongVolatileU(offset) == stamp;
+    }
+
+    /**
+     * Waits until no other writer is updating this versioned packed object
+     * and marks it as being written. Must be followed by
+     * {@link #endWrite(long)} with the returned stamp:
+     * <pre>
+     *   long stamp = line.beginWrite();
+     *   try {
+     *       ... update fields of line ...
+     *   } finally {
+     *       line.endWrite(stamp);
+     *   }
+     * </pre>
+     *
+     * @return the (odd) write stamp
+     * @throws UnsupportedOperationException if this packed object is not {@link PackedVersioned versioned}
+     */
+    public final long beginWrite() {
+        long offset = versionOffset();
+        for (; ; ) {
+            long stamp = getLongVolatileU(offset);
+            if ((stamp & 1L) == 0L && compareAndSwapLongU(offset, stamp, stamp + 1L)) {
+                return stamp + 1L;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Ends writing of this versioned packed object started by {@link #beginWrite()}.
+     *
+     * @param stamp the stamp returned by {@link #beginWrite()}
+     * @throws IllegalMonitorStateException  if given {@code stamp} is not the current write stamp
+     * @throws UnsupportedOperationException if this packed object is not {@link PackedVersioned versioned}
+     */
+    public final void endWrite(long stamp) {
+        long offset = versionOffset();
+        if ((stamp & 1L) == 0L || getLongU(offset) != stamp) {
+            throw new IllegalMonitorStateException("Not written with stamp: " + stamp);
+        }
+        putLongReleaseU(offset, stamp + 1L);
+    }
+
+    /**
+     * Copies the fields of given {@code source} (of the same class or a
+     * subclass) to this versioned packed object as a single write, so
+     * readers never see a mix of old and new fields. The version stamp of
+     * {@code source} is not copied.
+     *
+     * @throws ClassCastException            if {@code source} is not of this object's class or subclass
+     * @throws UnsupportedOperationException if this packed object is not {@link PackedVersioned versioned}
+     */
+    public final void writeFrom(PackedObject source) {
+        PackedClass<?> type = type();
+        type.asClass().cast(source);
+        long stamp = beginWrite();
+        try {
+            // the hidden version stamp is not a leaf field
+            copyLeavesU(source, 0, 0, type.leaves(type.getSize()), type.getSize());
+        } finally {
+            endWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns a consistent copy of this versioned packed object as a packed
+     * object of the same class or a superclass, retrying while writers update
+     * it. The version stamp of the copy is reset.
+     *
+     * @throws ClassCastException            if given {@code clazz} does not represent the
+     *                                       same class as this object's class or it's superclass
+     * @throws UnsupportedOperationException if given {@code clazz} is not {@link PackedVersioned versioned}
+     * @see #copyAs(Class)
+     */
+    public final <T extends PackedObject> T copyConsistent(Class<T> clazz) {
+        PackedClass<T> type = PackedClass.forClass(clazz);
+        if (!type.isVersioned()) {
+            throw new UnsupportedOperationException("Not a versioned packed object class: " + clazz.getName());
+        }
+        long stamp = optimisticRead();
+        T copy = copyAs(clazz);
+        while (!validate(stamp)) {
+            stamp = optimisticRead();
+            copy.copyFromU(this, 0, type.getSize());
+        }
+        copy.putLongU(type.versionOffset(), 0L);
+        return copy;
+    }
+
+    private long versionOffset() {
+        PackedClass<?> type = type();
+        if (!type.isVersioned()) {
+            throw new UnsupportedOperationException("Not a versioned packed object class: " + type.asClass().getName());
+        }
+        return type.versionOffset();
+    }
+
     /**
      * @return a string representation of the packed object in the format:
      * <p>
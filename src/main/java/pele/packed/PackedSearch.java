@@ -0,0 +1,70 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+/**
+ * Binary search over int, long or double keys of sorted packed arrays. Keys
+ * are read directly from the array's storage at {@code keyOffset} of each
+ * element and compared as signed-comparable longs, with doubles ordered the
+ * same way as {@link Double#compare} orders them (and as they are sorted by
+ * {@link PackedSort}).
+ */
+final class PackedSearch {
+    private PackedSearch() {}
+
+    // kinds of keys
+    static final int INT = 0;
+    static final int LONG = 1;
+    static final int DOUBLE = 2;
+
+    /**
+     * @return a long ordered the same way as {@link Double#compare} orders
+     * given double
+     */
+    static long sortable(double d) {
+        long bits = Double.doubleToLongBits(d);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    static long key(Packed array, long offset, int kind) {
+        switch (kind) {
+            case INT:
+                return array.getIntU(offset);
+            case LONG:
+                return array.getLongU(offset);
+            default:
+                return sortable(array.getDoubleU(offset));
+        }
+    }
+
+    /**
+     * @return the index of the 1st of {@code length} elements whose key is
+     * not less than (or greater than, if {@code upper}) given {@code key} or
+     * {@code length} if there is none
+     */
+    static int bound(Packed array, int length, long indexScale, long keyOffset, int kind,
+                     long key, boolean upper) {
+        int from = 0, to = length;
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            long k = key(array, mid * indexScale + keyOffset, kind);
+            if (k < key || (upper && k == key)) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @return the index of the 1st element with given {@code key} or
+     * {@code (-(insertion point) - 1)} if there is none
+     */
+    static int binarySearch(Packed array, int length, long indexScale, long keyOffset, int kind, long key) {
+        int i = bound(array, length, indexScale, keyOffset, kind, key, false);
+        return (i < length && key(array, i * indexScale + keyOffset, kind) == key) ? i : -(i + 1);
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import sun.misc.Unsafe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PackedSnapshot reads and writes arrays of PackedObject(s) in a
+ * self-describing binary format, so snapshots remain readable after the
+ * layout of the component class changes.
+ * <p>
+ * The snapshot starts with a header recording the array length, the native
+ * byte order and the layout of the component type: its size, alignment and
+ * index scale and a list of its leaf fields. Fields of embedded packed
+ * objects are listed as leaf fields named by paths ({@code p1.x}). Each
+ * leaf field is described by its name, a type descriptor, offset and size
+ * (and position for bit fields). The raw bytes of the array follow the
+ * header.
+ * <p>
+ * When the layout recorded in the snapshot matches the layout of the
+ * component class, {@link #read} reads the bytes with a single bulk
+ * transfer. Otherwise it compiles a remapping plan that copies the leaf
+ * fields with equal names and type descriptors to their new offsets and
+ * leaves the fields missing from the snapshot zero. Fields that changed
+ * type and fields that no longer exist are dropped. Strings and packed
+ * arrays are copied when they didn't shrink (arrays of primitives are
+ * truncated when they did).
+ */
+public final class PackedSnapshot {
+    private PackedSnapshot() {}
+
+    private static final long MAGIC = 0x504b534e41505348L; // "PKSNAPSH"
+    private static final int VERSION = 1;
+    // magic, version, headerSize
+    private static final int PREFIX_SIZE = 8 + 4 + 4;
+
+    /**
+     * Writes a snapshot of given {@code array} to given {@code file},
+     * creating or truncating it.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(Path file, PackedArray.OfObject<?> array) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(channel, array);
+        }
+    }
+
+    /**
+     * Writes a snapshot of given {@code array} to given {@code channel}.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(WritableByteChannel channel, PackedArray.OfObject<?> array) throws IOException {
+        Layout layout = Layout.of(array.type().getComponentType());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(0); // header size is patched below
+        out.writeInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 0 : 1);
+        out.writeInt(array.length());
+        layout.writeTo(out);
+        out.flush();
+        ByteBuffer header = ByteBuffer.wrap(bytes.toByteArray());
+        header.putInt(8 + 4, header.capacity());
+        ChannelBytes.write(channel, Collections.singletonList(header));
+        array.writeTo(channel);
+    }
+
+    /**
+     * Reads a snapshot from given {@code file} as a new packed array with
+     * given {@code componentClass}.
+     *
+     * @throws IOException if an I/O error occurs or the file is not a valid snapshot
+     * @see #read(ReadableByteChannel, Class)
+     */
+    public static <T extends PackedObject> PackedArray.OfObject<T> read(Path file, Class<T> componentClass)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel, componentClass);
+        }
+    }
+
+    /**
+     * Reads a snapshot from given {@code channel} as a new packed array with
+     * given {@code componentClass}, remapping the fields if the layout of
+     * the snapshot differs from the layout of the component class.
+     *
+     * @throws IOException if an I/O error occurs, the snapshot is not valid or
+     *                     it was written on a platform with different byte order
+     */
+    public static <T extends PackedObject> PackedArray.OfObject<T> read(ReadableByteChannel channel, Class<T> componentClass)
+        throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(PREFIX_SIZE);
+        ChannelBytes.read(channel, Collections.singletonList(prefix));
+        prefix.flip();
+        if (prefix.getLong() != MAGIC) {
+            throw new IOException("Not a packed snapshot");
+        }
+        int version = prefix.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported packed snapshot version: " + version);
+        }
+        int headerSize = prefix.getInt();
+        if (headerSize < PREFIX_SIZE) {
+            throw new IOException("Invalid packed snapshot header size: " + headerSize);
+        }
+        ByteBuffer rest = ByteBuffer.allocate(headerSize - PREFIX_SIZE);
+        ChannelBytes.read(channel, Collections.singletonList(rest));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(rest.array()));
+        boolean bigEndian = in.readInt() == 0;
+        if (bigEndian != (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN)) {
+            throw new IOException("Packed snapshot byte order differs from native byte order");
+        }
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid packed snapshot length: " + length);
+        }
+        Layout source = Layout.readFrom(in);
+
+        PackedArray.OfObject<T> array = new PackedArray.OfObject<>(componentClass, length);
+        Layout target = Layout.of(array.type().getComponentType());
+        if (source.equals(target)) {
+            array.readFrom(channel);
+        } else {
+            remap(channel, source, target, array);
+        }
+        return array;
+    }
+
+    /**
+     * Reads the elements of {@code source} layout from given {@code channel}
+     * in batches and copies their fields to given {@code array} by the
+     * remapping plan from {@code source} to {@code target} layout.
+     */
+    private static void remap(ReadableByteChannel channel, Layout source, Layout target, PackedArray<?> array)
+        throws IOException {
+        List<Op> plan = Op.plan(source, target);
+        int length = array.length();
+        int batchLength = Math.max(1, ChannelBytes.CHUNK_SIZE / Math.max(1, source.indexScale));
+        byte[] batch = new byte[(int) ((length <= batchLength)
+            ? source.arraySize(length)
+            : (long) batchLength * source.indexScale)];
+        for (int from = 0; from < length; from += batchLength) {
+            int to = Math.min(length, from + batchLength);
+            ByteBuffer buffer = ByteBuffer.wrap(batch, 0, (int) (source.arraySize(to) - source.arraySize(from)));
+            ChannelBytes.read(channel, Collections.singletonList(buffer));
+            // batches but the 1st start with the padding following the last element of previous batch
+            long padding = (from == 0) ? 0 : source.indexScale - source.size;
+            for (int i = from; i < to; i++) {
+                long srcOffset = padding + (long) (i - from) * source.indexScale;
+                long dstOffset = (long) i * target.indexScale;
+                for (Op op : plan) {
+                    op.apply(batch, srcOffset, array, dstOffset);
+                }
+            }
+        }
+    }
+
+    /**
+     * The layout of a packed object type as recorded in snapshots.
+     */
+    private static final class Layout {
+        final int size, alignment, indexScale;
+        final List<Leaf> leaves;
+
+        Layout(int size, int alignment, int indexScale, List<Leaf> leaves) {
+            this.size = size;
+            this.alignment = alignment;
+            this.indexScale = indexScale;
+            this.leaves = leaves;
+        }
+
+        static Layout of(PackedClass<?> type) {
+            List<Leaf> leaves = new ArrayList<>();
+            addLeaves(type, "", 0, leaves);
+            return new Layout(type.getSize(), type.getAlignment(), type.getIndexScale(), leaves);
+        }
+
+        private static void addLeaves(PackedClass<?> type, String prefix, int offset, List<Leaf> leaves) {
+            PackedClass<?> superclass = type.getSuperclass();
+            if (superclass != null) {
+                addLeaves(superclass, prefix, offset, leaves);
+            }
+            for (PackedField<?, ?> pf : type.getFields()) {
+                String name = prefix + pf.getName();
+                if (pf instanceof PackedField.pfObject) {
+                    addLeaves(pf.type, name + ".", offset + pf.offset, leaves);
+                } else if (pf instanceof PackedField.BitField) {
+                    PackedField.BitField<?, ?> bf = (PackedField.BitField<?, ?>) pf;
+                    String descriptor = (bf instanceof PackedField.pfFlag)
+                        ? "flag"
+                        : (((PackedField.pfBits<?>) bf).signed ? "sbits" : "bits") + "(" + bf.bits + ")";
+                    leaves.add(new Leaf(name, descriptor, offset + pf.offset, pf.size, bf.shift, bf.bits));
+                } else if (pf instanceof PackedField.pfString) {
+                    PackedField.pfString<?> sf = (PackedField.pfString<?>) pf;
+                    leaves.add(new Leaf(name, "string<" + sf.encoding + ">", offset + pf.offset, pf.size, 0, 0));
+                } else if (pf instanceof PackedField.pfArray) {
+                    PackedClass<?> componentType = pf.type.getComponentType();
+                    String descriptor = "array<" + componentType.asClass().getName() +
+                        (componentType.isPrimitive() ? "" : "/" + componentType.getIndexScale()) + ">";
+                    leaves.add(new Leaf(name, descriptor, offset + pf.offset, pf.size, 0, 0));
+                } else {
+                    leaves.add(new Leaf(name, pf.type.asClass().getName(), offset + pf.offset, pf.size, 0, 0));
+                }
+            }
+        }
+
+        long arraySize(int length) {
+            return (length == 0) ? 0 : (long) (length - 1) * indexScale + size;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            out.writeInt(alignment);
+            out.writeInt(indexScale);
+            out.writeInt(leaves.size());
+            for (Leaf leaf : leaves) {
+                out.writeUTF(leaf.name);
+                out.writeUTF(leaf.descriptor);
+                out.writeInt(leaf.offset);
+                out.writeInt(leaf.size);
+                out.writeInt(leaf.shift);
+                out.writeInt(leaf.bits);
+            }
+        }
+
+        static Layout readFrom(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            int alignment = in.readInt();
+            int indexScale = in.readInt();
+            int count = in.readInt();
+            if (size < 0 || indexScale < size || count < 0) {
+                throw new IOException("Invalid packed snapshot layout");
+            }
+            List<Leaf> leaves = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Leaf leaf = new Leaf(in.readUTF(), in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                if (leaf.offset < 0 || leaf.size < 0 || (long) leaf.offset + leaf.size > size ||
+                    leaf.bits < 0 || (leaf.isBitField() && !isValidBitField(leaf))) {
+                    throw new IOException("Invalid packed snapshot field: " + leaf.name);
+                }
+                leaves.add(leaf);
+            }
+            return new Layout(size, alignment, indexScale, leaves);
+        }
+
+        /**
+         * @return true if the bits of given bit field fit its 4 or 8 byte word
+         */
+        private static boolean isValidBitField(Leaf leaf) {
+            return (leaf.size == 4 || leaf.size == 8) &&
+                leaf.shift >= 0 && leaf.bits <= leaf.size * 8 - leaf.shift;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Layout)) return false;
+            Layout that = (Layout) o;
+            return size == that.size &&
+                alignment == that.alignment &&
+                indexScale == that.indexScale &&
+                leaves.equals(that.leaves);
+        }
+
+        @Override
+        public int hashCode() {
+            return (size * 31 + indexScale) * 31 + leaves.hashCode();
+        }
+    }
+
+    /**
+     * A leaf field of a layout.
+     */
+    private static final class Leaf {
+        final String name, descriptor;
+        final int offset, size, shift, bits;
+
+        Leaf(String name, String descriptor, int offset, int size, int shift, int bits) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.offset = offset;
+            this.size = size;
+            this.shift = shift;
+            this.bits = bits;
+        }
+
+        boolean isBitField() {
+            return bits > 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Leaf)) return false;
+            Leaf that = (Leaf) o;
+            return name.equals(that.name) &&
+                descriptor.equals(that.descriptor) &&
+                offset == that.offset &&
+                size == that.size &&
+                shift == that.shift &&
+                bits == that.bits;
+        }
+
+        @Override
+        public int hashCode() {
+            return (name.hashCode() * 31 + descriptor.hashCode()) * 31 + offset;
+        }
+    }
+
+    /**
+     * An operation of a remapping plan: a copy of a range of bytes or of
+     * the bits of a bit field.
+     */
+    private static final class Op {
+        // the size of the copied range or of the source word of a bit field
+        final int srcOffset, dstOffset, size;
+        // for bit fields: the size of the target word, shifts and mask (0 for range copies)
+        final int dstSize, srcShift, dstShift;
+        final long mask;
+
+        private Op(int srcOffset, int dstOffset, int size) {
+            this(srcOffset, dstOffset, size, 0, 0, 0, 0L);
+        }
+
+        private Op(int srcOffset, int dstOffset, int size, int dstSize, int srcShift, int dstShift, long mask) {
+            this.srcOffset = srcOffset;
+            this.dstOffset = dstOffset;
+            this.size = size;
+            this.dstSize = dstSize;
+            this.srcShift = srcShift;
+            this.dstShift = dstShift;
+            this.mask = mask;
+        }
+
+        /**
+         * @return the operations copying leaf fields of {@code source} layout
+         * to matching leaf fields of {@code target} layout with adjacent byte
+         * range copies merged
+         */
+        static List<Op> plan(Layout source, Layout target) {
+            Map<String, Leaf> sourceLeaves = new HashMap<>();
+            for (Leaf leaf : source.leaves) {
+                sourceLeaves.put(leaf.name, leaf);
+            }
+            List<Op> copies = new ArrayList<>();
+            List<Op> bitCopies = new ArrayList<>();
+            for (Leaf dst : target.leaves) {
+                Leaf src = sourceLeaves.get(dst.name);
+                if (src == null || !src.descriptor.equals(dst.descriptor)) {
+                    // added or changed type - stays zero
+                    continue;
+                }
+                if (dst.isBitField()) {
+                    bitCopies.add(new Op(src.offset, dst.offset, src.size, dst.size, src.shift, dst.shift,
+                        -1L >>> (64 - dst.bits)));
+                } else if (src.size <= dst.size) {
+                    copies.add(new Op(src.offset, dst.offset, src.size));
+                } else if (dst.descriptor.startsWith("array<") && dst.descriptor.indexOf('/') < 0) {
+                    // truncated array of primitives
+                    copies.add(new Op(src.offset, dst.offset, dst.size));
+                }
+            }
+            copies.sort((op1, op2) -> Integer.compare(op1.srcOffset, op2.srcOffset));
+            List<Op> plan = new ArrayList<>(copies.size() + bitCopies.size());
+            for (Op op : copies) {
+                Op last = plan.isEmpty() ? null : plan.get(plan.size() - 1);
+                if (last != null &&
+                    last.srcOffset + last.size == op.srcOffset &&
+                    last.dstOffset + last.size == op.dstOffset) {
+                    plan.set(plan.size() - 1, new Op(last.srcOffset, last.dstOffset, last.size + op.size));
+                } else {
+                    plan.add(op);
+                }
+            }
+            plan.addAll(bitCopies);
+            return plan;
+        }
+
+        void apply(byte[] batch, long srcBase, PackedArray<?> array, long dstBase) {
+            long src = Unsafe.ARRAY_BYTE_BASE_OFFSET + srcBase + srcOffset;
+            long dst = dstBase + dstOffset;
+            if (mask == 0L) {
+                array.copyFromArrayU(batch, src, dst, size);
+            } else {
+                long word = (size == 4) ? U.getInt(batch, src) & 0xFFFFFFFFL : U.getLong(batch, src);
+                long bits = word >>> srcShift & mask;
+                if (dstSize == 4) {
+                    int dstWord = array.getIntU(dst);
+                    array.putIntU(dst, (int) (dstWord & ~(mask << dstShift) | bits << dstShift));
+                } else {
+                    long dstWord = array.getLongU(dst);
+                    array.putLongU(dst, dstWord & ~(mask << dstShift) | bits << dstShift);
+                }
+            }
+        }
+    }
+
+    private static final Unsafe U = Packed.U;
+}
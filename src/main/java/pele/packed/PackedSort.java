@@ -0,0 +1,376 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import sun.misc.Unsafe;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * In-place sorting algorithms for packed arrays. Elements (records) are
+ * swapped directly in the array's storage, so sorting allocates just a few
+ * scratch objects per sort (or per fork/join task), not per element.
+ * <ul>
+ * <li>{@link #radixSort} is a stable LSD radix sort over 8-bit digits of
+ * int/long keys (it needs an auxiliary array of the same size, which is
+ * allocated off-heap for arrays stored off-heap)</li>
+ * <li>{@link #quickSort} is an introsort (quicksort with median-of-3 pivot,
+ * heapsort fallback and insertion sort of small ranges)</li>
+ * <li>{@link #parallelQuickSort} partitions and sorts the partitions in
+ * parallel using fork/join</li>
+ * </ul>
+ */
+final class PackedSort {
+    private PackedSort() {}
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+
+    /**
+     * Records of a packed array to be sorted. Each instance holds its own
+     * scratch state and must only be used by one thread.
+     */
+    static abstract class Records {
+        final PackedArray<?> array;
+        final long indexScale;
+        final int size, alignment;
+        private final byte[] tmp;
+
+        Records(PackedArray<?> array) {
+            PackedClass<?> componentType = array.type().getComponentType();
+            this.array = array;
+            this.indexScale = componentType.getIndexScale();
+            this.size = componentType.getSize();
+            this.alignment = componentType.getAlignment();
+            this.tmp = new byte[size];
+        }
+
+        /**
+         * @return an instance with new scratch state for use by another thread
+         */
+        abstract Records fork();
+
+        abstract int compare(int i, int j);
+
+        abstract void setPivot(int i);
+
+        abstract int compareWithPivot(int i);
+
+        final void swap(int i, int j) {
+            if (size == 4 && alignment == 4) {
+                int t = array.getIntU(i * indexScale);
+                array.putIntU(i * indexScale, array.getIntU(j * indexScale));
+                array.putIntU(j * indexScale, t);
+            } else if (size == 8 && alignment == 8) {
+                long t = array.getLongU(i * indexScale);
+                array.putLongU(i * indexScale, array.getLongU(j * indexScale));
+                array.putLongU(j * indexScale, t);
+            } else {
+                array.copyToArrayU(i * indexScale, tmp, Unsafe.ARRAY_BYTE_BASE_OFFSET, size);
+                array.copyFromU(array, j * indexScale, i * indexScale, size);
+                array.copyFromArrayU(tmp, Unsafe.ARRAY_BYTE_BASE_OFFSET, j * indexScale, size);
+            }
+        }
+
+        /**
+         * Moves the record at {@code srcOffset} in {@code src} to {@code dstOffset}
+         * in {@code dst}.
+         */
+        final void move(Packed src, long srcOffset, Packed dst, long dstOffset) {
+            if (size == 4 && alignment == 4) {
+                dst.putIntU(dstOffset, src.getIntU(srcOffset));
+            } else if (size == 8 && alignment == 8) {
+                dst.putLongU(dstOffset, src.getLongU(srcOffset));
+            } else {
+                dst.copyFromU(src, srcOffset, dstOffset, size);
+            }
+        }
+    }
+
+    /**
+     * Records ordered by a numeric key mapped to a signed-comparable long.
+     */
+    static abstract class KeyRecords extends Records {
+        /**
+         * The number of low-order bytes of the key that are significant.
+         */
+        final int keyBytes;
+        private long pivot;
+
+        KeyRecords(PackedArray<?> array, int keyBytes) {
+            super(array);
+            this.keyBytes = keyBytes;
+        }
+
+        /**
+         * @return the key of the record at given {@code offset} in given {@code storage}
+         */
+        abstract long key(Packed storage, long offset);
+
+        final long key(int i) {
+            return key(array, i * indexScale);
+        }
+
+        @Override
+        final int compare(int i, int j) {
+            return Long.compare(key(i), key(j));
+        }
+
+        @Override
+        final void setPivot(int i) {
+            pivot = key(i);
+        }
+
+        @Override
+        final int compareWithPivot(int i) {
+            return Long.compare(key(i), pivot);
+        }
+    }
+
+    static KeyRecords intKeys(PackedArray<?> array, long keyOffset) {
+        return new KeyRecords(array, 4) {
+            @Override
+            long key(Packed storage, long offset) {
+                return storage.getIntU(offset + keyOffset);
+            }
+
+            @Override
+            Records fork() {
+                return intKeys(array, keyOffset);
+            }
+        };
+    }
+
+    static KeyRecords longKeys(PackedArray<?> array, long keyOffset) {
+        return new KeyRecords(array, 8) {
+            @Override
+            long key(Packed storage, long offset) {
+                return storage.getLongU(offset + keyOffset);
+            }
+
+            @Override
+            Records fork() {
+                return longKeys(array, keyOffset);
+            }
+        };
+    }
+
+    static KeyRecords doubleKeys(PackedArray<?> array, long keyOffset) {
+        return new KeyRecords(array, 8) {
+            @Override
+            long key(Packed storage, long offset) {
+                return PackedSearch.sortable(storage.getDoubleU(offset + keyOffset));
+            }
+
+            @Override
+            Records fork() {
+                return doubleKeys(array, keyOffset);
+            }
+        };
+    }
+
+    /**
+     * Records of a packed array of PackedObject(s) ordered by a comparator
+     * over reusable views.
+     */
+    static <CT extends PackedObject> Records comparing(PackedArray.OfObject<CT> objects, Comparator<? super CT> comparator) {
+        return new Records(objects) {
+            @SuppressWarnings("unchecked")
+            private final PackedClass<CT> componentType = (PackedClass) objects.type().getComponentType();
+            private final CT a = array.getViewU(componentType, 0, size);
+            private final CT b = array.getViewU(componentType, 0, size);
+            private final CT pivot = Packed.newViewU(componentType.asClass(),
+                Packed.newHeapStorage(size), Packed.HEAP_BASE_OFFSET, size, null);
+
+            @Override
+            int compare(int i, int j) {
+                a.rebindU(array, i * indexScale);
+                b.rebindU(array, j * indexScale);
+                return comparator.compare(a, b);
+            }
+
+            @Override
+            void setPivot(int i) {
+                pivot.copyFromU(array, i * indexScale, 0, size);
+            }
+
+            @Override
+            int compareWithPivot(int i) {
+                a.rebindU(array, i * indexScale);
+                return comparator.compare(a, pivot);
+            }
+
+            @Override
+            Records fork() {
+                return comparing(objects, comparator);
+            }
+        };
+    }
+
+    // radix sort
+
+    static void radixSort(KeyRecords records, int length) {
+        if (length < 2) {
+            return;
+        }
+        PackedArray<?> array = records.array;
+        // off-heap arrays (possibly larger than the heap) get an off-heap aux buffer
+        PackedArray<?> aux = Packed.newArrayU(array.type(), length, array.isDirect());
+        long signFlip = 1L << (records.keyBytes * 8 - 1);
+        long indexScale = records.indexScale;
+        int[] counts = new int[256];
+        Packed src = array, dst = aux;
+        for (int shift = 0; shift < records.keyBytes * 8; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < length; i++) {
+                counts[(int) ((records.key(src, i * indexScale) ^ signFlip) >>> shift) & 0xFF]++;
+            }
+            if (counts[(int) ((records.key(src, 0) ^ signFlip) >>> shift) & 0xFF] == length) {
+                // all keys have the same digit - skip this pass
+                continue;
+            }
+            for (int d = 0, pos = 0; d < 256; d++) {
+                int c = counts[d];
+                counts[d] = pos;
+                pos += c;
+            }
+            for (int i = 0; i < length; i++) {
+                long offset = i * indexScale;
+                int pos = counts[(int) ((records.key(src, offset) ^ signFlip) >>> shift) & 0xFF]++;
+                records.move(src, offset, dst, pos * indexScale);
+            }
+            Packed t = src;
+            src = dst;
+            dst = t;
+        }
+        if (src != array) {
+            array.copyFromU(src, 0, 0, array.type().arraySize(length));
+        }
+    }
+
+    // introsort
+
+    static void quickSort(Records records, int from, int to) {
+        quickSort(records, from, to, 2 * (32 - Integer.numberOfLeadingZeros(to - from)));
+    }
+
+    private static void quickSort(Records records, int from, int to, int depth) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            if (depth-- == 0) {
+                heapSort(records, from, to);
+                return;
+            }
+            int split = partition(records, from, to);
+            // recurse into the smaller partition, loop over the larger one
+            if (split + 1 - from < to - split - 1) {
+                quickSort(records, from, split + 1, depth);
+                from = split + 1;
+            } else {
+                quickSort(records, split + 1, to, depth);
+                to = split + 1;
+            }
+        }
+        insertionSort(records, from, to);
+    }
+
+    /**
+     * Hoare partition of range {@code [from, to)} around median-of-3 pivot.
+     *
+     * @return the index {@code split} such that elements in {@code [from, split]}
+     * are not greater and elements in {@code [split + 1, to)} are not less than
+     * the pivot
+     */
+    private static int partition(Records records, int from, int to) {
+        int last = to - 1;
+        int mid = from + ((last - from) >>> 1);
+        if (records.compare(mid, from) < 0) records.swap(mid, from);
+        if (records.compare(last, mid) < 0) {
+            records.swap(last, mid);
+            if (records.compare(mid, from) < 0) records.swap(mid, from);
+        }
+        records.setPivot(mid);
+        int i = from - 1, j = to;
+        while (true) {
+            do i++; while (records.compareWithPivot(i) < 0);
+            do j--; while (records.compareWithPivot(j) > 0);
+            if (i >= j) {
+                return j;
+            }
+            records.swap(i, j);
+        }
+    }
+
+    private static void insertionSort(Records records, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && records.compare(j - 1, j) > 0; j--) {
+                records.swap(j - 1, j);
+            }
+        }
+    }
+
+    private static void heapSort(Records records, int from, int to) {
+        int n = to - from;
+        for (int i = (n >>> 1) - 1; i >= 0; i--) {
+            siftDown(records, from, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            records.swap(from, from + end);
+            siftDown(records, from, 0, end);
+        }
+    }
+
+    private static void siftDown(Records records, int base, int i, int n) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                return;
+            }
+            if (child + 1 < n && records.compare(base + child, base + child + 1) < 0) {
+                child++;
+            }
+            if (records.compare(base + i, base + child) >= 0) {
+                return;
+            }
+            records.swap(base + i, base + child);
+            i = child;
+        }
+    }
+
+    // parallel quicksort
+
+    static void parallelQuickSort(Records records, int from, int to) {
+        if (to - from <= PARALLEL_SORT_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            quickSort(records, from, to);
+        } else {
+            ForkJoinPool.commonPool().invoke(new SortTask(records, from, to));
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class SortTask extends RecursiveAction {
+        private final Records records;
+        private final int from, to;
+
+        SortTask(Records records, int from, int to) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_SORT_THRESHOLD) {
+                quickSort(records, from, to);
+            } else {
+                int split = partition(records, from, to);
+                invokeAll(new SortTask(records, from, split + 1),
+                    new SortTask(records.fork(), split + 1, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import pele.packed.PackedField.pfDouble;
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedField.pfLong;
+
+/**
+ * PackedSortedIndex is a sorted secondary index of the elements of a
+ * {@link PackedArray.OfObject} by the value of an int, long or double key
+ * field. It answers range queries over arrays that are not physically sorted
+ * by the key with the indexes of elements in ascending order of keys (and of
+ * indexes for equal keys). For arrays that are sorted by the key, use
+ * {@link PackedArray.OfObject#viewOfKeyRange(pfLong, long, long)} and
+ * friends, which return views of ranges instead.
+ * <p>
+ * The index is a packed array of (key, index) entries sorted by stable radix
+ * sort and searched with binary search. It is a snapshot of the keys at the
+ * time it was built and must be {@link #rebuild() rebuilt} after keys of
+ * elements change. Double keys are ordered as by {@link Double#compare}.
+ *
+ * @param <T> the type of elements of the indexed array
+ */
+public final class PackedSortedIndex<T extends PackedObject> {
+
+    private final PackedArray.OfObject<T> array;
+    private final long keyOffset;
+    private final int kind;
+    private final PackedArray.OfObject<Entry> entries;
+    private final long entryScale;
+    private final long entryKeyOffset;
+    private final long entryIndexOffset;
+
+    private PackedSortedIndex(PackedArray.OfObject<T> array, int keyOffset, int kind) {
+        this.array = array;
+        this.keyOffset = keyOffset;
+        this.kind = kind;
+        this.entries = new PackedArray.OfObject<>(Entry.class, array.length());
+        PackedClass<Entry> entryType = PackedClass.forClass(Entry.class);
+        this.entryScale = entryType.getIndexScale();
+        this.entryKeyOffset = Entry.key.offsetIn(entryType);
+        this.entryIndexOffset = Entry.index.offsetIn(entryType);
+        rebuild();
+    }
+
+    /**
+     * Builds a sorted index of elements of given array by given int key field.
+     *
+     * @param array the array to index
+     * @param key   the field of the component type (or its superclass) to
+     *              index by
+     * @return a new index
+     */
+    public static <T extends PackedObject> PackedSortedIndex<T> build(PackedArray.OfObject<T> array,
+                                                                     pfInt<? super T> key) {
+        return new PackedSortedIndex<>(array, key.offsetIn(array.type().getComponentType()), PackedSearch.INT);
+    }
+
+    /**
+     * Builds a sorted index of elements of given array by given long key field.
+     *
+     * @see #build(PackedArray.OfObject, pfInt)
+     */
+    public static <T extends PackedObject> PackedSortedIndex<T> build(PackedArray.OfObject<T> array,
+                                                                     pfLong<? super T> key) {
+        return new PackedSortedIndex<>(array, key.offsetIn(array.type().getComponentType()), PackedSearch.LONG);
+    }
+
+    /**
+     * Builds a sorted index of elements of given array by given double key field.
+     *
+     * @see #build(PackedArray.OfObject, pfInt)
+     */
+    public static <T extends PackedObject> PackedSortedIndex<T> build(PackedArray.OfObject<T> array,
+                                                                     pfDouble<? super T> key) {
+        return new PackedSortedIndex<>(array, key.offsetIn(array.type().getComponentType()), PackedSearch.DOUBLE);
+    }
+
+    /**
+     * @return the indexed array
+     */
+    public PackedArray.OfObject<T> array() {
+        return array;
+    }
+
+    /**
+     * @return the number of elements in the index
+     */
+    public int size() {
+        return entries.length();
+    }
+
+    /**
+     * @param rank the position of an element in the order of keys
+     * @return the index of the element at given {@code rank} in the order of keys
+     * @throws ArrayIndexOutOfBoundsException if the rank is out of bounds
+     */
+    public int indexAt(int rank) {
+        return entries.getIntU(entries.checkIndex(rank) * entryScale + entryIndexOffset);
+    }
+
+    /**
+     * @return the rank of the 1st element whose key is not less than given
+     * {@code key} or {@link #size()} if there is none
+     */
+    public int lowerBound(long key) {
+        return bound(encode(key), false);
+    }
+
+    /**
+     * @return the rank of the 1st element whose key is greater than given
+     * {@code key} or {@link #size()} if there is none
+     */
+    public int upperBound(long key) {
+        return bound(encode(key), true);
+    }
+
+    /**
+     * @throws IllegalArgumentException if this is not an index on a double field
+     * @see #lowerBound(long)
+     */
+    public int lowerBound(double key) {
+        return bound(sortable(key), false);
+    }
+
+    /**
+     * @throws IllegalArgumentException if this is not an index on a double field
+     * @see #upperBound(long)
+     */
+    public int upperBound(double key) {
+        return bound(sortable(key), true);
+    }
+
+    /**
+     * Returns the indexes of elements whose keys are not less than
+     * {@code fromKey} and less than {@code toKey}, in ascending order of keys.
+     *
+     * @param fromKey the lowest key of the range, inclusive
+     * @param toKey   the highest key of the range, exclusive
+     * @return the indexes of elements in the range, which is empty if
+     * {@code toKey <= fromKey}
+     */
+    public int[] indexesOfRange(long fromKey, long toKey) {
+        int from = lowerBound(fromKey);
+        return indexesOfRanks(from, Math.max(from, lowerBound(toKey)));
+    }
+
+    /**
+     * @throws IllegalArgumentException if this is not an index on a double field
+     * @see #indexesOfRange(long, long)
+     */
+    public int[] indexesOfRange(double fromKey, double toKey) {
+        int from = lowerBound(fromKey);
+        return indexesOfRanks(from, Math.max(from, lowerBound(toKey)));
+    }
+
+    /**
+     * Re-reads the keys of all elements and sorts the index again.
+     */
+    public void rebuild() {
+        long indexScale = array.type().getComponentType().getIndexScale();
+        for (int i = 0; i < array.length(); i++) {
+            long offset = i * entryScale;
+            entries.putLongU(offset + entryKeyOffset, PackedSearch.key(array, i * indexScale + keyOffset, kind));
+            entries.putIntU(offset + entryIndexOffset, i);
+        }
+        entries.sort(Entry.key);
+    }
+
+    private int bound(long key, boolean upper) {
+        return PackedSearch.bound(entries, entries.length(), entryScale, entryKeyOffset, PackedSearch.LONG,
+            key, upper);
+    }
+
+    /**
+     * @return the sortable form of given integral key
+     */
+    private long encode(long key) {
+        return (kind == PackedSearch.DOUBLE) ? PackedSearch.sortable(key) : key;
+    }
+
+    /**
+     * @return the sortable form of given double key for an index on a double
+     * field
+     * @throws IllegalArgumentException if this is not an index on a double field
+     */
+    private long sortable(double key) {
+        if (kind != PackedSearch.DOUBLE) {
+            throw new IllegalArgumentException("Not an index on a double field");
+        }
+        return PackedSearch.sortable(key);
+    }
+
+    private int[] indexesOfRanks(int from, int to) {
+        int[] indexes = new int[to - from];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = entries.getIntU((from + i) * entryScale + entryIndexOffset);
+        }
+        return indexes;
+    }
+
+    /**
+     * An entry of the index: the key in sortable form and the element index.
+     */
+    static final class Entry extends PackedObject {
+        static final pfLong<Entry> key = new pfLong<>(Entry.class);
+        static final pfInt<Entry> index = new pfInt<>(Entry.class);
+    }
+}
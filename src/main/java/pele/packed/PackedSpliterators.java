@@ -0,0 +1,221 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Spliterators over ranges of packed array elements. They split the range
+ * of indexes in halves the same way {@link PackedArray#viewOfRange} would,
+ * and report {@code SIZED | SUBSIZED} characteristics so fork/join can
+ * balance the splits.
+ */
+final class PackedSpliterators {
+    private PackedSpliterators() {}
+
+    static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED |
+        Spliterator.NONNULL | Spliterator.IMMUTABLE;
+
+    /**
+     * Base for spliterators over a range {@code [index, to)} of array elements.
+     */
+    static abstract class OfRange<A extends PackedArray<?>> {
+        final A array;
+        int index;
+        final int to;
+
+        OfRange(A array, int from, int to) {
+            this.array = array;
+            this.index = from;
+            this.to = to;
+        }
+
+        /**
+         * @return the start of the split-off prefix range or -1 if the range
+         * is too small to be split (the prefix range ends at new {@link #index})
+         */
+        final int splitIndex() {
+            int from = index, mid = (from + to) >>> 1;
+            if (from >= mid) {
+                return -1;
+            }
+            index = mid;
+            return from;
+        }
+
+        public final long estimateSize() {
+            return to - index;
+        }
+
+        public final int characteristics() {
+            return CHARACTERISTICS;
+        }
+    }
+
+    /**
+     * Spliterator over elements as returned by {@link PackedArray#get(int)}.
+     */
+    static final class OfElements<CT> extends OfRange<PackedArray<CT>> implements Spliterator<CT> {
+        OfElements(PackedArray<CT> array, int from, int to) {
+            super(array, from, to);
+        }
+
+        @Override
+        public Spliterator<CT> trySplit() {
+            int from = splitIndex();
+            return (from < 0) ? null : new OfElements<>(array, from, index);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super CT> action) {
+            if (index < to) {
+                action.accept(array.get(index++));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super CT> action) {
+            for (int i = index; i < to; i++) {
+                action.accept(array.get(i));
+            }
+            index = to;
+        }
+    }
+
+    /**
+     * Spliterator over reusable views of PackedObject elements. Each split
+     * has its own view which is re-bound to elements as they are traversed.
+     */
+    static final class OfViews<CT extends PackedObject> extends OfRange<PackedArray.OfObject<CT>> implements Spliterator<CT> {
+        private final CT view;
+        private final long indexScale;
+
+        OfViews(PackedArray.OfObject<CT> array, int from, int to) {
+            super(array, from, to);
+            @SuppressWarnings("unchecked")
+            PackedClass<CT> componentType = (PackedClass) array.type().getComponentType();
+            this.view = array.getViewU(componentType, 0, componentType.getSize());
+            this.indexScale = componentType.getIndexScale();
+        }
+
+        @Override
+        public Spliterator<CT> trySplit() {
+            int from = splitIndex();
+            return (from < 0) ? null : new OfViews<>(array, from, index);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super CT> action) {
+            if (index < to) {
+                view.rebindU(array, index++ * indexScale);
+                action.accept(view);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super CT> action) {
+            for (int i = index; i < to; i++) {
+                view.rebindU(array, i * indexScale);
+                action.accept(view);
+            }
+            index = to;
+        }
+    }
+
+    static final class OfInts extends OfRange<PackedArray.OfInt> implements Spliterator.OfInt {
+        OfInts(PackedArray.OfInt array, int from, int to) {
+            super(array, from, to);
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int from = splitIndex();
+            return (from < 0) ? null : new OfInts(array, from, index);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (index < to) {
+                action.accept(array.getIntU((long) index++ << 2));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            for (int i = index; i < to; i++) {
+                action.accept(array.getIntU((long) i << 2));
+            }
+            index = to;
+        }
+    }
+
+    static final class OfLongs extends OfRange<PackedArray.OfLong> implements Spliterator.OfLong {
+        OfLongs(PackedArray.OfLong array, int from, int to) {
+            super(array, from, to);
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            int from = splitIndex();
+            return (from < 0) ? null : new OfLongs(array, from, index);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (index < to) {
+                action.accept(array.getLongU((long) index++ << 3));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            for (int i = index; i < to; i++) {
+                action.accept(array.getLongU((long) i << 3));
+            }
+            index = to;
+        }
+    }
+
+    static final class OfDoubles extends OfRange<PackedArray.OfDouble> implements Spliterator.OfDouble {
+        OfDoubles(PackedArray.OfDouble array, int from, int to) {
+            super(array, from, to);
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            int from = splitIndex();
+            return (from < 0) ? null : new OfDoubles(array, from, index);
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (index < to) {
+                action.accept(array.getDoubleU((long) index++ << 3));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            for (int i = index; i < to; i++) {
+                action.accept(array.getDoubleU((long) i << 3));
+            }
+            index = to;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface or an abstract {@link PackedObject} subclass as a
+ * specification of a packed object type for which the annotation processor
+ * in the {@code PackedObjects-processor} module generates a concrete
+ * {@link PackedObject} subclass at compile time. The generated class
+ * declares its packed fields at precomputed offsets and their layout via
+ * {@link PackedClass#declare}, so no reflection is needed to lay it out
+ * at class initialization time.
+ * <p>
+ * Each abstract method of the annotated type declares a property by a
+ * JavaBean style getter ({@code getXxx()} or {@code isXxx()}) and/or setter
+ * ({@code setXxx(value)}). Properties are laid out in the order of their
+ * first declaration. The property type must be one of:
+ * <ul>
+ * <li>a primitive type,</li>
+ * <li>a primitive packed array type ({@link PackedArray.OfInt}, ...) in
+ * which case the getter or setter must be annotated with {@link Length}, or</li>
+ * <li>another type annotated with {@link PackedType} in which case the
+ * generated class of that type is embedded.</li>
+ * </ul>
+ * For example:
+ * <pre>
+ *   &#64;PackedType
+ *   public interface Point {
+ *       int getX();
+ *       void setX(int x);
+ *       int getY();
+ *       void setY(int y);
+ *   }
+ * </pre>
+ * generates {@code public final class PackedPoint extends PackedObject implements Point}.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface PackedType {
+
+    /**
+     * @return the simple name of the generated class which defaults to the
+     * simple name of the annotated type prefixed with {@code Packed}.
+     */
+    String name() default "";
+
+    /**
+     * Specifies the length of a packed array property.
+     */
+    @Documented
+    @Retention(RetentionPolicy.CLASS)
+    @Target(ElementType.METHOD)
+    @interface Length {
+        /**
+         * @return the length of the packed array
+         */
+        int value();
+    }
+}
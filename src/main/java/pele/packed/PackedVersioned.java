@@ -0,0 +1,40 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Opts the annotated {@link PackedObject} subclass into a hidden version
+ * stamp (a sequence lock) which is laid out in front of the fields declared
+ * by the class. The stamp is not a packed field: it is not listed by
+ * {@link PackedClass#getFields()} and is not printed by
+ * {@link PackedObject#toString()}. Subclasses share the stamp of the
+ * annotated class.
+ * <p>
+ * Writers bracket updates of a record with {@link PackedObject#beginWrite()}
+ * and {@link PackedObject#endWrite(long)} (or use
+ * {@link PackedObject#writeFrom(PackedObject)}) while readers take consistent
+ * snapshots without blocking writers using
+ * {@link PackedObject#optimisticRead()} and {@link PackedObject#validate(long)}
+ * or {@link PackedObject#copyConsistent(Class)}. Updates of a versioned
+ * record made by other means are not seen as writes by readers. Copying a
+ * whole record over it (for example with {@link PackedArray.OfObject#set})
+ * also overwrites its stamp, so writers should use
+ * {@link PackedObject#writeFrom(PackedObject)} instead.
+ * <p>
+ * Versioned classes can't use the {@link PackedLayout.Policy#UNALIGNED}
+ * layout policy since the stamp is accessed atomically. For the same reason,
+ * classes with that policy can't embed versioned objects (or arrays of them).
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PackedVersioned {
+}
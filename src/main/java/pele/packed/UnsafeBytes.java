@@ -0,0 +1,179 @@
+/*
+ * Written by Peter.Levart@gmail.com and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pele.packed;
+
+import sun.misc.Unsafe;
+
+import java.nio.ByteOrder;
+
+/**
+ * Value comparison and hashing engine for ranges of bytes addressed the
+ * Unsafe way (a base object, or null for absolute addresses, and an offset).
+ * Ranges are processed 8 bytes at a time, with the tail processed 4, 2
+ * and 1 byte(s) at a time. On platforms that don't support unaligned
+ * access, ranges are processed 1 byte at a time.
+ */
+final class UnsafeBytes {
+    private UnsafeBytes() {}
+
+    private static final Unsafe U = Packed.U;
+    private static final boolean BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+    private static final boolean UNALIGNED;
+
+    static {
+        String arch = System.getProperty("os.arch", "");
+        UNALIGNED = arch.equals("i386") || arch.equals("x86") || arch.equals("amd64") ||
+            arch.equals("x86_64") || arch.equals("aarch64") || arch.equals("ppc64le");
+    }
+
+    /**
+     * @return {@code true} if given ranges of {@code size} bytes are equal
+     */
+    static boolean equals(Object aBase, long aOffset, Object bBase, long bOffset, long size) {
+        return mismatch(aBase, aOffset, bBase, bOffset, size) < 0;
+    }
+
+    /**
+     * @return the index of the 1st byte that differs in given ranges of
+     * {@code size} bytes or {@code -1} if there is no mismatch
+     */
+    static long mismatch(Object aBase, long aOffset, Object bBase, long bOffset, long size) {
+        long i = 0;
+        if (UNALIGNED) {
+            for (; i <= size - 8; i += 8) {
+                long x = U.getLong(aBase, aOffset + i) ^ U.getLong(bBase, bOffset + i);
+                if (x != 0) {
+                    return i + (BIG_ENDIAN
+                        ? Long.numberOfLeadingZeros(x)
+                        : Long.numberOfTrailingZeros(x)) / 8;
+                }
+            }
+            if (i <= size - 4) {
+                int x = U.getInt(aBase, aOffset + i) ^ U.getInt(bBase, bOffset + i);
+                if (x != 0) {
+                    return i + (BIG_ENDIAN
+                        ? Integer.numberOfLeadingZeros(x)
+                        : Integer.numberOfTrailingZeros(x)) / 8;
+                }
+                i += 4;
+            }
+            if (i <= size - 2) {
+                if (U.getShort(aBase, aOffset + i) != U.getShort(bBase, bOffset + i)) {
+                    return (U.getByte(aBase, aOffset + i) != U.getByte(bBase, bOffset + i))
+                        ? i : i + 1;
+                }
+                i += 2;
+            }
+        }
+        for (; i < size; i++) {
+            if (U.getByte(aBase, aOffset + i) != U.getByte(bBase, bOffset + i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares given ranges lexicographically, treating bytes as unsigned.
+     * A range that is a proper prefix of the other range is considered smaller.
+     *
+     * @return a negative number, zero or a positive number if range {@code a}
+     * is less than, equal to or greater than range {@code b}
+     */
+    static int compare(Object aBase, long aOffset, long aSize, Object bBase, long bOffset, long bSize) {
+        long size = Math.min(aSize, bSize);
+        long i = mismatch(aBase, aOffset, bBase, bOffset, size);
+        if (i >= 0) {
+            return Integer.compare(U.getByte(aBase, aOffset + i) & 0xFF, U.getByte(bBase, bOffset + i) & 0xFF);
+        }
+        return Long.compare(aSize, bSize);
+    }
+
+    // xxHash64 (https://github.com/Cyan4973/xxHash) with input read as little-endian
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * @return the xxHash64 of given range of {@code size} bytes with given {@code seed}
+     */
+    static long hash64(Object base, long offset, long size, long seed) {
+        long i = 0;
+        long h;
+        if (size >= 32) {
+            long v1 = seed + P1 + P2;
+            long v2 = seed + P2;
+            long v3 = seed;
+            long v4 = seed - P1;
+            for (; i <= size - 32; i += 32) {
+                v1 = round(v1, getLongLE(base, offset + i));
+                v2 = round(v2, getLongLE(base, offset + i + 8));
+                v3 = round(v3, getLongLE(base, offset + i + 16));
+                v4 = round(v4, getLongLE(base, offset + i + 24));
+            }
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) +
+                Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += size;
+        for (; i <= size - 8; i += 8) {
+            h ^= round(0, getLongLE(base, offset + i));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (i <= size - 4) {
+            h ^= (getIntLE(base, offset + i) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < size; i++) {
+            h ^= (U.getByte(base, offset + i) & 0xFFL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * P1 + P4;
+    }
+
+    private static long getLongLE(Object base, long offset) {
+        if (UNALIGNED) {
+            long l = U.getLong(base, offset);
+            return BIG_ENDIAN ? Long.reverseBytes(l) : l;
+        }
+        return (getIntLE(base, offset) & 0xFFFFFFFFL) | ((long) getIntLE(base, offset + 4) << 32);
+    }
+
+    private static int getIntLE(Object base, long offset) {
+        if (UNALIGNED) {
+            int i = U.getInt(base, offset);
+            return BIG_ENDIAN ? Integer.reverseBytes(i) : i;
+        }
+        return (U.getByte(base, offset) & 0xFF) |
+            (U.getByte(base, offset + 1) & 0xFF) << 8 |
+            (U.getByte(base, offset + 2) & 0xFF) << 16 |
+            (U.getByte(base, offset + 3) & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,22 @@
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedField.pfString;
+import pele.packed.PackedObject;
+
+import static pele.packed.PackedField.pfString.Encoding.*;
+
+/**
+ * Example of a packed object with inline string fields
+ */
+public class Account extends PackedObject {
+    public static final pfInt<Account> id = new pfInt<>(Account.class);
+    public static final pfString<Account> code = new pfString<>(8, LATIN_1, Account.class);
+    public static final pfString<Account> owner = new pfString<>(12, UTF_8, Account.class);
+    public static final pfString<Account> note = new pfString<>(4, UTF_16, Account.class);
+
+    public Account(int _id, String _code, String _owner, String _note) {
+        id.setInt(this, _id);
+        code.setString(this, _code);
+        owner.setString(this, _owner, pfString.Truncation.TRUNCATE);
+        note.setString(this, _note, pfString.Truncation.TRUNCATE);
+    }
+}
@@ -0,0 +1,22 @@
+import pele.packed.PackedField.pfByte;
+import pele.packed.PackedField.pfLong;
+import pele.packed.PackedLayout;
+import pele.packed.PackedObject;
+
+/**
+ * Example of a packed object reordering fields to minimize padding
+ */
+@PackedLayout(PackedLayout.Policy.COMPACT)
+public class CompactTick extends PackedObject {
+    public static final pfByte<CompactTick> side = new pfByte<>(CompactTick.class);
+    public static final pfLong<CompactTick> time = new pfLong<>(CompactTick.class);
+    public static final pfByte<CompactTick> venue = new pfByte<>(CompactTick.class);
+    public static final pfLong<CompactTick> price = new pfLong<>(CompactTick.class);
+
+    public CompactTick(byte _side, long _time, byte _venue, long _price) {
+        side.setByte(this, _side);
+        time.setLong(this, _time);
+        venue.setByte(this, _venue);
+        price.setLong(this, _price);
+    }
+}
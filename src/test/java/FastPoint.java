@@ -0,0 +1,54 @@
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedObject;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Example of a packed object accessing its fields through method handles
+ * that are compiled to plain memory accesses
+ */
+public class FastPoint extends PackedObject {
+    private static final pfInt<FastPoint> x = new pfInt<>(FastPoint.class);
+    private static final pfInt<FastPoint> y = new pfInt<>(FastPoint.class);
+
+    // must be declared after all packed fields
+    private static final MethodHandle X = x.getter(), SET_X = x.setter();
+    private static final MethodHandle Y = y.getter(), SET_Y = y.setter();
+
+    public FastPoint(int _x, int _y) {
+        setX(_x);
+        setY(_y);
+    }
+
+    public int getX() {
+        try {
+            return (int) X.invokeExact(this);
+        } catch (Throwable t) {
+            throw new InternalError(t);
+        }
+    }
+
+    public void setX(int _x) {
+        try {
+            SET_X.invokeExact(this, _x);
+        } catch (Throwable t) {
+            throw new InternalError(t);
+        }
+    }
+
+    public int getY() {
+        try {
+            return (int) Y.invokeExact(this);
+        } catch (Throwable t) {
+            throw new InternalError(t);
+        }
+    }
+
+    public void setY(int _y) {
+        try {
+            SET_Y.invokeExact(this, _y);
+        } catch (Throwable t) {
+            throw new InternalError(t);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+import pele.packed.PackedField.pfBits;
+import pele.packed.PackedField.pfFlag;
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedField.pfLong;
+import pele.packed.PackedObject;
+
+/**
+ * Example of a packed object with bit fields sharing a word
+ */
+public class Order extends PackedObject {
+    public static final pfLong<Order> id = new pfLong<>(Order.class);
+    public static final pfFlag<Order> buy = new pfFlag<>(Order.class);
+    public static final pfFlag<Order> urgent = new pfFlag<>(Order.class);
+    public static final pfBits<Order> venue = new pfBits<>(3, Order.class);
+    public static final pfBits<Order> skew = new pfBits<>(5, true, Order.class);
+    public static final pfInt<Order> quantity = new pfInt<>(Order.class);
+
+    public Order(long _id, boolean _buy, int _venue, int _skew, int _quantity) {
+        id.setLong(this, _id);
+        buy.setBoolean(this, _buy);
+        venue.setInt(this, _venue);
+        skew.setInt(this, _skew);
+        quantity.setInt(this, _quantity);
+    }
+}
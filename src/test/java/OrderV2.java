@@ -0,0 +1,18 @@
+import pele.packed.PackedField.pfBits;
+import pele.packed.PackedField.pfFlag;
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedField.pfLong;
+import pele.packed.PackedObject;
+
+/**
+ * Example of an evolved {@link Order} with reordered and added fields
+ */
+public class OrderV2 extends PackedObject {
+    public static final pfInt<OrderV2> quantity = new pfInt<>(OrderV2.class);
+    public static final pfInt<OrderV2> account = new pfInt<>(OrderV2.class);
+    public static final pfBits<OrderV2> skew = new pfBits<>(5, true, OrderV2.class);
+    public static final pfFlag<OrderV2> urgent = new pfFlag<>(OrderV2.class);
+    public static final pfBits<OrderV2> venue = new pfBits<>(3, OrderV2.class);
+    public static final pfFlag<OrderV2> buy = new pfFlag<>(OrderV2.class);
+    public static final pfLong<OrderV2> id = new pfLong<>(OrderV2.class);
+}
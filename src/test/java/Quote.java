@@ -0,0 +1,18 @@
+import pele.packed.PackedField.pfLong;
+import pele.packed.PackedObject;
+import pele.packed.PackedVersioned;
+
+/**
+ * Example of a versioned packed object which can be read consistently
+ * while it is written
+ */
+@PackedVersioned
+public class Quote extends PackedObject {
+    public static final pfLong<Quote> bid = new pfLong<>(Quote.class);
+    public static final pfLong<Quote> ask = new pfLong<>(Quote.class);
+
+    public Quote(long _bid, long _ask) {
+        bid.setLong(this, _bid);
+        ask.setLong(this, _ask);
+    }
+}
@@ -0,0 +1,26 @@
+import pele.packed.PackedField.pfObject;
+import pele.packed.PackedObject;
+
+/**
+ * Example of a packed object exposing its embedded packed object fields to
+ * be used with cursors and method handles
+ */
+public class Segment extends PackedObject {
+    public static final pfObject<Point, Segment> from =
+        new pfObject<>(Point.class, Segment.class);
+    public static final pfObject<Point, Segment> to =
+        new pfObject<>(Point.class, Segment.class);
+
+    public Segment(Point _from, Point _to) {
+        from.copyFrom(this, _from);
+        to.copyFrom(this, _to);
+    }
+
+    public Point getFromView() {
+        return from.getView(this);
+    }
+
+    public Point getToView() {
+        return to.getView(this);
+    }
+}
@@ -1,4 +1,32 @@
+import pele.packed.MappedPackedArray;
+import pele.packed.PackedArena;
 import pele.packed.PackedArray;
+import pele.packed.PackedBigArray;
+import pele.packed.PackedClass;
+import pele.packed.PackedColumnArray;
+import pele.packed.PackedCursor;
+import pele.packed.PackedField;
+import pele.packed.PackedHashMap;
+import pele.packed.PackedIndex;
+import pele.packed.PackedList;
+import pele.packed.PackedSnapshot;
+import pele.packed.PackedSortedIndex;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static java.lang.Math.*;
 
@@ -7,7 +35,7 @@ import static java.lang.Math.*;
  */
 public class Test {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 
         boolean ok = true;
 
@@ -66,6 +94,748 @@ public class Test {
         ok &= testEquals(8, c.getPointsView().toString(),
             "[Point{x=100, y=0}, Point{x=70, y=70}, Point{x=0, y=100}, Point{x=-70, y=70}, Point{x=-100, y=0}, Point{x=-70, y=-70}, Point{x=0, y=-100}, Point{x=70, y=-70}]");
 
+        PackedArray.OfObject<Line> directLines = PackedArray.OfObject.allocateDirect(Line.class, 3);
+        for (int i = 0; i < directLines.length(); i++) {
+            directLines.set(i, lines.getView(i));
+        }
+        directLines.getView(2).getP2View().setY(-1);
+        ok &= testEquals(9, String.format("{direct=%s, viewDirect=%s, copyDirect=%s, equal=%s}",
+            directLines.isDirect(), directLines.getView(1).isDirect(),
+            directLines.getCopy(1).isDirect(), directLines.getView(1).equals(lines.getCopy(1))),
+            "{direct=true, viewDirect=true, copyDirect=false, equal=true}");
+
+        ok &= testEquals(10, directLines.viewOfRange(1, 3).toString(),
+            "[Line{p1=Point{x=-3, y=-4}, p2=Point{x=3, y=4}}, Line{p1=Point{x=-6, y=-8}, p2=Point{x=6, y=-1}}]");
+
+        Path file = Files.createTempFile("lines", ".packed");
+        try {
+            MappedPackedArray<PackedArray.OfObject<Line>> mapped =
+                MappedPackedArray.create(file, PackedArray.OfObject.typeWithComponent(Line.class), 3);
+            for (int i = 0; i < mapped.array().length(); i++) {
+                mapped.array().set(i, directLines.getView(i));
+            }
+            mapped.force();
+            MappedPackedArray<PackedArray.OfObject<Line>> remapped =
+                MappedPackedArray.open(file, PackedArray.OfObject.typeWithComponent(Line.class),
+                    FileChannel.MapMode.READ_WRITE);
+            ok &= testEquals(11, String.format("{direct=%s, equal=%s}",
+                remapped.array().isDirect(), remapped.array().equals(directLines)),
+                "{direct=true, equal=true}");
+
+            String mismatch;
+            try {
+                MappedPackedArray.open(file, PackedArray.OfObject.typeWithComponent(Point3D.class),
+                    FileChannel.MapMode.READ_WRITE);
+                mismatch = "not detected";
+            } catch (IOException e) {
+                mismatch = e.getMessage().contains("Layout mismatch") ? "detected" : e.getMessage();
+            }
+            ok &= testEquals(12, mismatch, "detected");
+        } finally {
+            Files.delete(file);
+        }
+
+        PackedBigArray.OfLong bigLongs = new PackedBigArray.OfLong(10, 4, false);
+        for (long i = 0; i < bigLongs.length(); i++) {
+            bigLongs.setLong(i, i * i);
+        }
+        PackedBigArray.OfLong bigRange = bigLongs.viewOfRange(3, 9);
+        ok &= testEquals(13, String.format("{range=%s, segments=%d, segment1=%s}",
+            bigRange, bigRange.segmentCount(), bigRange.segment(1)),
+            "{range=[9, 16, 25, 36, 49, 64], segments=3, segment1=[16, 25, 36, 49]}");
+
+        PackedBigArray.OfObject<Point> bigPoints = PackedBigArray.OfObject.allocateDirect(Point.class, 5);
+        bigPoints.set(4, new Point(4, -4));
+        bigPoints.viewOfRange(2, 5).getView(2).setX(44);
+        ok &= testEquals(14, bigPoints.viewOfRange(3, 5).toString(),
+            "[Point{x=0, y=0}, Point{x=44, y=-4}]");
+
+        PackedArray.OfObject<Segment> segments = new PackedArray.OfObject<>(Segment.class, lines.length());
+        for (int i = 0; i < lines.length(); i++) {
+            segments.set(i, new Segment(lines.getView(i).getP1View(), lines.getView(i).getP2View()));
+        }
+        PackedArray.OfObject.Cursor<Segment> sc = segments.cursor();
+        PackedCursor<Point> toc = Segment.to.cursor(sc);
+        StringBuilder xs = new StringBuilder();
+        while (sc.next()) {
+            xs.append(sc.index()).append(':').append(sc.get().getFromView().getX())
+                .append('/').append(toc.get().getX()).append(' ');
+        }
+        ok &= testEquals(15, xs.append(sc.moveTo(1).getToView()).toString(),
+            "0:0/0 1:-3/3 2:-6/6 Point{x=3, y=4}");
+
+        PackedArray.OfInt bulkInts = PackedArray.OfInt.allocateDirect(10);
+        bulkInts.setAll(i -> i * 10);
+        bulkInts.copyFrom(new int[]{-1, -2, -3}, 1, 7, 2);
+        bulkInts.copyWithin(0, 1, 5);
+        int[] exported = new int[5];
+        bulkInts.copyTo(5, exported, 0, 5);
+        PackedArray.OfObject<Point> filledPoints = new PackedArray.OfObject<>(Point.class, 5);
+        filledPoints.fill(1, 4, new Point(7, 8));
+        ok &= testEquals(16, String.format("{ints=%s, exported=%s, points=%s}", bulkInts, Arrays.toString(exported),
+            filledPoints.viewOfRange(0, 2)),
+            "{ints=[0, 0, 10, 20, 30, 40, 60, -2, -3, 90], exported=[40, 60, -2, -3, 90], points=[Point{x=0, y=0}, Point{x=7, y=8}]}");
+
+        PackedArray.OfLong filledLongs = new PackedArray.OfLong(7);
+        filledLongs.fill(1, 6, -1L);
+        ok &= testEquals(17, filledLongs.toString(), "[0, -1, -1, -1, -1, -1, 0]");
+
+        PackedArray.OfByte bytes1 = new PackedArray.OfByte(21);
+        bytes1.fill(0, 21, (byte) 0x7F);
+        PackedArray.OfByte bytes2 = bytes1.copyOfRange(0, 21);
+        boolean equalBefore = bytes1.equals(bytes2) && bytes1.hash64() == bytes2.hash64();
+        bytes2.setByte(19, (byte) 0x80);
+        ok &= testEquals(18, String.format("{equalBefore=%s, equalAfter=%s, mismatch=%d, compare=%d, prefix=%d/%d}",
+            equalBefore, bytes1.equals(bytes2), bytes1.mismatch(bytes2), Integer.signum(bytes1.compareBytes(bytes2)),
+            bytes1.mismatch(bytes1.viewOfRange(0, 10)), Integer.signum(bytes1.compareBytes(bytes1.viewOfRange(0, 10)))),
+            "{equalBefore=true, equalAfter=false, mismatch=19, compare=-1, prefix=10/1}");
+
+        PackedArray.OfObject<Trade> trades = new PackedArray.OfObject<>(Trade.class, 5);
+        trades.set(0, new Trade(3, 300L, 1.5));
+        trades.set(1, new Trade(-1, 100L, -0.5));
+        trades.set(2, new Trade(2, 500L, 1.5));
+        trades.set(3, new Trade(5, -200L, 0.25));
+        trades.set(4, new Trade(0, 400L, -3.0));
+        StringBuilder sorted = new StringBuilder();
+        trades.sort(Trade.id);
+        for (int i = 0; i < trades.length(); i++) sorted.append(trades.getView(i).getId()).append(' ');
+        trades.sort(Trade.timestamp);
+        for (int i = 0; i < trades.length(); i++) sorted.append(trades.getView(i).getTimestamp()).append(' ');
+        trades.sort(Trade.price);
+        for (int i = 0; i < trades.length(); i++) sorted.append(trades.getView(i).getId()).append(' ');
+        trades.sort(Comparator.comparingLong(Trade::getTimestamp).reversed());
+        for (int i = 0; i < trades.length(); i++) sorted.append(trades.getView(i).getId()).append(' ');
+        ok &= testEquals(19, sorted.toString().trim(),
+            "-1 0 2 3 5 -200 100 300 400 500 0 -1 5 3 2 2 0 3 -1 5");
+
+        Random rnd = new Random(19);
+        int n = 100_000;
+        PackedArray.OfObject<Trade> manyTrades = new PackedArray.OfObject<>(Trade.class, n);
+        PackedArray.OfInt manyInts = new PackedArray.OfInt(n);
+        int[] plainInts = new int[n];
+        for (int i = 0; i < n; i++) {
+            manyTrades.set(i, new Trade(i, rnd.nextLong(), rnd.nextDouble()));
+            plainInts[i] = rnd.nextInt();
+        }
+        manyInts.copyFrom(plainInts, 0, 0, n);
+        PackedArray.OfInt manyInts2 = manyInts.copyOfRange(0, n);
+        manyInts.sort();
+        manyInts2.parallelSort();
+        Arrays.sort(plainInts);
+        int[] sortedInts = new int[n];
+        manyInts.copyTo(0, sortedInts, 0, n);
+        boolean sortedOk = Arrays.equals(sortedInts, plainInts) && manyInts.equals(manyInts2);
+        manyTrades.parallelSort(Trade.price);
+        for (int i = 1; i < n; i++) {
+            sortedOk &= manyTrades.getView(i - 1).getPrice() <= manyTrades.getView(i).getPrice();
+        }
+        manyTrades.parallelSort(Comparator.comparingLong(Trade::getTimestamp));
+        for (int i = 1; i < n; i++) {
+            sortedOk &= manyTrades.getView(i - 1).getTimestamp() <= manyTrades.getView(i).getTimestamp();
+        }
+        ok &= testEquals(20, String.valueOf(sortedOk), "true");
+
+        // streams
+        PackedArray.OfInt streamInts = new PackedArray.OfInt(10000);
+        streamInts.setAll(i -> i);
+        PackedArray.OfObject<Point> streamPoints = new PackedArray.OfObject<>(Point.class, 10000);
+        for (int i = 0; i < streamPoints.length(); i++) {
+            streamPoints.set(i, new Point(i, -i));
+        }
+        StringBuilder iterated = new StringBuilder();
+        for (Point p : streamPoints.viewOfRange(0, 2)) {
+            iterated.append(p);
+        }
+        ok &= testEquals(21, String.format("{sum=%d, parallelSum=%d, flyweightSum=%d, iterated=%s, streamed=%s}",
+            streamInts.intStream().asLongStream().sum(),
+            streamInts.intStream().parallel().asLongStream().sum(),
+            streamPoints.flyweightStream().parallel().mapToLong(Point::getX).sum(),
+            iterated,
+            streamPoints.viewOfRange(2, 4).stream().map(Point::getY).collect(Collectors.toList())),
+            "{sum=49995000, parallelSum=49995000, flyweightSum=49995000, iterated=Point{x=0, y=0}Point{x=1, y=-1}, streamed=[-2, -3]}");
+
+        // columnar layout
+        PackedColumnArray<Line> columnLines = new PackedColumnArray<>(Line.class, 3);
+        for (int i = 0; i < columnLines.length(); i++) {
+            columnLines.set(i, lines.get(i));
+        }
+        columnLines.get(2).getP2View().setY(42);
+        lines.get(2).getP2View().setY(42);
+        ok &= testEquals(22, String.format("{lines=%s, equal=%s, hashEqual=%s, copyEqual=%s}",
+            columnLines, columnLines.get(1).equals(lines.get(1)),
+            columnLines.get(2).hashCode() == lines.get(2).hashCode(),
+            columnLines.getCopy(2).equals(lines.get(2))),
+            "{lines=" + lines + ", equal=true, hashEqual=true, copyEqual=true}");
+
+        PackedColumnArray<Trade> columnTrades = PackedColumnArray.allocateDirect(Trade.class, 1000);
+        for (int i = 0; i < columnTrades.length(); i++) {
+            columnTrades.set(i, new Trade(i, 1000L + i, i * 0.5));
+        }
+        double cursorSum = 0;
+        for (PackedColumnArray.Cursor<Trade> tc = columnTrades.cursor(); tc.next(); ) {
+            cursorSum += tc.get().getPrice();
+        }
+        ok &= testEquals(23, String.format("{priceSum=%.1f, cursorSum=%.1f, maxTimestamp=%d, ids=%s}",
+            columnTrades.column(Trade.price).doubleStream().sum(), cursorSum,
+            columnTrades.column(Trade.timestamp).longStream().max().getAsLong(),
+            columnTrades.column(Trade.id).viewOfRange(0, 3)),
+            "{priceSum=249750.0, cursorSum=249750.0, maxTimestamp=1999, ids=[0, 1, 2]}");
+
+        // method handle accessors
+        FastPoint fp = new FastPoint(3, 4);
+        fp.setX(fp.getX() + fp.getY());
+        String handles;
+        try {
+            MethodHandle tradeId = Trade.id.getter();
+            MethodHandle setTradePrice = Trade.price.setter();
+            MethodHandle fromView = Segment.from.getter();
+            MethodHandle setFrom = Segment.from.setter();
+            Trade trade = new Trade(7, 8L, 9.5);
+            setTradePrice.invokeExact(trade, 10.5);
+            Segment segment = new Segment(new Point(1, 2), new Point(3, 4));
+            setFrom.invokeExact(segment, new Point(5, 6));
+            ((Point) fromView.invokeExact(segment)).setY(7);
+            handles = String.format("{fastPoint=%s, id=%d, price=%s, segment=%s}",
+                fp, (int) tradeId.invokeExact(trade), trade.getPrice(), segment);
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+        ok &= testEquals(24, handles,
+            "{fastPoint=FastPoint{x=7, y=4}, id=7, price=10.5, segment=Segment{from=Point{x=5, y=7}, to=Point{x=3, y=4}}}");
+
+        // layout policies
+        PackedArray.OfObject<CompactTick> compactTicks = new PackedArray.OfObject<>(CompactTick.class, 2);
+        compactTicks.set(1, new CompactTick((byte) 1, 2L, (byte) 3, 4L));
+        PackedArray.OfObject<UnalignedTick> unalignedTicks = new PackedArray.OfObject<>(UnalignedTick.class, 2);
+        unalignedTicks.set(1, new UnalignedTick((byte) 1, 2L, (byte) 3, 4L));
+        ok &= testEquals(25, String.format("{compact=%s %s, unaligned=%s %s}",
+            compactTicks.type().getComponentType(), compactTicks.getView(1),
+            unalignedTicks.type().getComponentType(), unalignedTicks.getView(1)),
+            "{compact=PackedClass<CompactTick, ?>{size=18, alignment=8, indexScale=24} CompactTick{time=2, price=4, side=1, venue=3}, " +
+                "unaligned=PackedClass<UnalignedTick, ?>{size=18, alignment=1, indexScale=18} UnalignedTick{side=1, time=2, venue=3, price=4}}");
+
+        // bit fields
+        Order order = new Order(1L, true, 5, -3, 100);
+        Order.urgent.compareAndSetBoolean(order, false, true);
+        Order.skew.getAndAddInt(order, -14); // wraps around to 15
+        String outOfRange;
+        try {
+            Order.venue.setInt(order, 8);
+            outOfRange = "none";
+        } catch (IllegalArgumentException e) {
+            outOfRange = e.getMessage();
+        }
+        // concurrent atomic updates of bit fields sharing a word
+        PackedArray.OfObject<Order> orders = new PackedArray.OfObject<>(Order.class, 2);
+        Order o1 = orders.getView(1);
+        Thread[] updaters = {
+            new Thread(() -> {
+                for (int i = 0; i < 10_001; i++) {
+                    Order.buy.getAndSetBoolean(o1, !Order.buy.getBoolean(o1));
+                }
+            }),
+            new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    Order.venue.getAndAddInt(o1, 1);
+                }
+            })
+        };
+        for (Thread t : updaters) {
+            t.start();
+        }
+        for (Thread t : updaters) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+        ok &= testEquals(26, String.format("{order=%s, size=%d, outOfRange=%s, concurrent=%s}",
+            order, order.type().getSize(), outOfRange, orders.getView(1)),
+            "{order=Order{id=1, buy=true, urgent=true, venue=5, skew=15, quantity=100}, size=16, " +
+                "outOfRange=Value: 8 out of range [0, 7] of field: venue, " +
+                "concurrent=Order{id=0, buy=true, urgent=false, venue=0, skew=0, quantity=0}}");
+
+        // growable lists
+        PackedList.OfInt intList = new PackedList.OfInt(2);
+        for (int i = 0; i < 10; i++) {
+            intList.addInt(i);
+        }
+        intList.insertInt(0, -1);
+        intList.remove(5);
+        intList.removeRange(7, 9);
+        PackedArray.OfInt intListView = intList.asArrayView();
+        intList.addAll(intListView.viewOfRange(0, 2));
+        intList.insertAll(1, intList.asArrayView(), 3, 5);
+        intList.trimToSize();
+        PackedList.OfObject<Point> pointList = new PackedList.OfObject<>(Point.class);
+        pointList.add(new Point(1, 2));
+        pointList.add().setX(3);
+        pointList.insert(0, pointList.getView(1));
+        pointList.remove(2);
+        ok &= testEquals(27, String.format("{ints=%s, size=%d, capacity=%d, view=%s, points=%s}",
+            intList, intList.size(), intList.capacity(), intListView, pointList),
+            "{ints=[-1, 2, 3, 0, 1, 2, 3, 5, 6, 9, -1, 0], size=12, capacity=12, " +
+                "view=[-1, 2, 3, 0, 1, 2, 3, 5], points=[Point{x=3, y=0}, Point{x=1, y=2}]}");
+
+        // inline string fields
+        PackedArray.OfObject<Account> accounts = new PackedArray.OfObject<>(Account.class, 2);
+        accounts.set(0, new Account(1, "ACME", "\u017Diga \u010Ceba\u0161ek \u26A1", "a\uD83D\uDE00bcd"));
+        accounts.set(1, new Account(2, "ACMF", "\u017Diga", "a\uFFFF"));
+        PackedField.pfString<Account>.View ownerView = Account.owner.newView();
+        String tooLong;
+        try {
+            Account.code.setString(accounts.getView(1), "TOO LONG CODE");
+            tooLong = "no exception";
+        } catch (IllegalArgumentException e) {
+            tooLong = e.getMessage();
+        }
+        Account a0 = accounts.getView(0), a1 = accounts.getView(1);
+        ok &= testEquals(28, String.format(
+            "{account=%s, size=%d, owner=%s/%d/%c, hash=%b, cmp=%d/%d/%d, eq=%b/%b, tooLong=%s}",
+            a0, a0.type().getSize(), ownerView.bind(a0).toString(), ownerView.length(), ownerView.charAt(5),
+            Account.owner.hashCode(a0) == Account.owner.getString(a0).hashCode() &&
+                Account.note.hashCode(a0) == Account.note.getString(a0).hashCode(),
+            Integer.signum(Account.code.compareTo(a0, a1)),
+            Integer.signum(Account.note.compareTo(a0, a1)),
+            Integer.signum(ownerView.bind(a1).compareTo("\u017Diga")),
+            Account.code.contentEquals(a0, "ACME"), Account.owner.equals(a0, a1), tooLong),
+            "{account=Account{id=1, code=ACME, owner=\u017Diga \u010Ceba, note=a\uD83D\uDE00b}, size=38, " +
+                "owner=\u017Diga \u010Ceba/9/\u010C, hash=true, cmp=-1/-1/0, eq=true/false, " +
+                "tooLong=Value of length: 13 exceeds capacity: 8 of field: code}");
+
+        // atomic and volatile access to fields and array elements
+        PackedArray.OfLong heapCounters = new PackedArray.OfLong(4);
+        PackedArray.OfLong directCounters = PackedArray.OfLong.allocateDirect(4);
+        PackedArray.OfObject<Trade> sharedTrades = new PackedArray.OfObject<>(Trade.class, 2);
+        Trade t1 = sharedTrades.getView(1);
+        Thread[] incrementers = new Thread[4];
+        for (int j = 0; j < incrementers.length; j++) {
+            incrementers[j] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    heapCounters.getAndAddLong(i & 3, 1L);
+                    directCounters.getAndAddLong(i & 3, 2L);
+                    int id;
+                    do {
+                        id = Trade.id.getIntVolatile(t1);
+                    } while (!Trade.id.compareAndSetInt(t1, id, id + 1));
+                }
+            });
+            incrementers[j].start();
+        }
+        for (Thread t : incrementers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+        Trade.timestamp.setLongRelease(t1, Trade.timestamp.getAndSetLong(t1, 7L) + 1L);
+        String unaligned;
+        try {
+            UnalignedTick.time.getLongVolatile(new UnalignedTick((byte) 1, 2L, (byte) 3, 4L));
+            unaligned = "none";
+        } catch (IllegalStateException e) {
+            unaligned = e.getMessage();
+        }
+        ok &= testEquals(29, String.format("{heap=%s, direct=%s, id=%d, timestamp=%d, unaligned=%s}",
+            heapCounters, directCounters, Trade.id.getInt(t1), Trade.timestamp.getLongVolatile(t1), unaligned),
+            "{heap=[10000, 10000, 10000, 10000], direct=[20000, 20000, 20000, 20000], id=40000, timestamp=1, " +
+                "unaligned=Atomic access to unaligned memory}");
+
+        // consistent snapshots of versioned records
+        PackedArray.OfObject<Quote> quotes = new PackedArray.OfObject<>(Quote.class, 2);
+        Quote q1 = quotes.getView(1);
+        q1.writeFrom(new Quote(0, 1));
+        int[] torn = new int[2];
+        Thread writer = new Thread(() -> {
+            for (long i = 1; i <= 100_000; i++) {
+                if ((i & 1) == 0) {
+                    q1.writeFrom(new Quote(i, i + 1));
+                } else {
+                    long stamp = q1.beginWrite();
+                    try {
+                        Quote.bid.setLong(q1, i);
+                        Quote.ask.setLong(q1, i + 1);
+                    } finally {
+                        q1.endWrite(stamp);
+                    }
+                }
+            }
+        });
+        Thread reader = new Thread(() -> {
+            long bid;
+            do {
+                Quote copy = q1.copyConsistent(Quote.class);
+                bid = Quote.bid.getLong(copy);
+                if (Quote.ask.getLong(copy) != bid + 1) {
+                    torn[0]++;
+                }
+                long stamp, ask;
+                do {
+                    stamp = q1.optimisticRead();
+                    bid = Quote.bid.getLong(q1);
+                    ask = Quote.ask.getLong(q1);
+                } while (!q1.validate(stamp));
+                if (ask != bid + 1) {
+                    torn[1]++;
+                }
+            } while (bid < 100_000);
+        });
+        writer.start();
+        reader.start();
+        try {
+            writer.join();
+            reader.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        String notVersioned;
+        try {
+            new Point(1, 2).optimisticRead();
+            notVersioned = "none";
+        } catch (UnsupportedOperationException e) {
+            notVersioned = e.getMessage();
+        }
+        ok &= testEquals(30, String.format("{quote=%s, type=%s, torn=%s, stamp=%d, notVersioned=%s}",
+            q1, q1.type(), Arrays.toString(torn), q1.optimisticRead(), notVersioned),
+            "{quote=Quote{bid=100000, ask=100001}, " +
+                "type=PackedClass<Quote, ?>{size=24, alignment=8, indexScale=24}, torn=[0, 0], stamp=200002, " +
+                "notVersioned=Not a versioned packed object class: Point}");
+
+        // channel I/O of packed storage
+        PackedBigArray.OfObject<CompactTick> bigTicks = new PackedBigArray.OfObject<>(CompactTick.class, 5, 2, false);
+        for (int i = 0; i < bigTicks.length(); i++) {
+            bigTicks.set(i, new CompactTick((byte) i, 100L * i, (byte) -i, -100L * i));
+        }
+        PackedArray.OfObject<CompactTick> directTicks = PackedArray.OfObject.allocateDirect(CompactTick.class, 5);
+        PackedBigArray.OfObject<CompactTick> bigTicks2 = new PackedBigArray.OfObject<>(CompactTick.class, 5, 4, true);
+        Path ticksFile = Files.createTempFile("ticks", ".packed");
+        String eof;
+        try {
+            try (FileChannel channel = FileChannel.open(ticksFile, StandardOpenOption.WRITE)) {
+                bigTicks.writeTo(channel);
+            }
+            try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(ticksFile,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                directTicks.readFrom(channel, 0);
+                directTicks.viewOfRange(1, 3).writeTo(channel, 0);
+            }
+            try (FileChannel channel = FileChannel.open(ticksFile, StandardOpenOption.READ)) {
+                bigTicks2.readFrom(channel);
+                eof = "none";
+                directTicks.getView(0).readFrom(channel);
+            } catch (EOFException e) {
+                eof = e.getMessage();
+            }
+        } finally {
+            Files.delete(ticksFile);
+        }
+        ok &= testEquals(31, String.format("{size=%d, direct=%s, big=%s, eof=%s}",
+            directTicks.type().arraySize(5), directTicks.toString().equals(bigTicks.toString()), bigTicks2, eof),
+            "{size=114, direct=true, big=[" +
+                "CompactTick{time=100, price=-100, side=1, venue=-1}, " +
+                "CompactTick{time=200, price=-200, side=2, venue=-2}, " +
+                "CompactTick{time=200, price=-200, side=2, venue=-2}, " +
+                "CompactTick{time=300, price=-300, side=3, venue=-3}, " +
+                "CompactTick{time=400, price=-400, side=4, venue=-4}], " +
+                "eof=Channel reached end-of-stream before packed data was read}");
+
+        // self-describing snapshots with schema evolution
+        Path snapshotFile = Files.createTempFile("snapshot", ".packed");
+        String snapshots;
+        try {
+            PackedSnapshot.write(snapshotFile, lines);
+            PackedArray.OfObject<Line> linesRead = PackedSnapshot.read(snapshotFile, Line.class);
+            PackedArray.OfObject<Point> points = new PackedArray.OfObject<>(Point.class, 2);
+            points.set(1, new Point(3, 4));
+            PackedSnapshot.write(snapshotFile, points);
+            PackedArray.OfObject<Point3D> points3D = PackedSnapshot.read(snapshotFile, Point3D.class);
+            PackedArray.OfObject<CompactTick> ticksV1 = new PackedArray.OfObject<>(CompactTick.class, 2);
+            ticksV1.set(1, new CompactTick((byte) 1, 2L, (byte) 3, 4L));
+            PackedSnapshot.write(snapshotFile, ticksV1);
+            PackedArray.OfObject<UnalignedTick> ticksV2 = PackedSnapshot.read(snapshotFile, UnalignedTick.class);
+            PackedArray.OfObject<Order> orderArray = new PackedArray.OfObject<>(Order.class, 1);
+            orderArray.set(0, new Order(7L, true, 5, -3, 100));
+            Order.urgent.setBoolean(orderArray.getView(0), true);
+            PackedSnapshot.write(snapshotFile, orderArray);
+            PackedArray.OfObject<OrderV2> ordersV2 = PackedSnapshot.read(snapshotFile, OrderV2.class);
+            snapshots = String.format("{lines=%s, points3D=%s, ticks=%s, orders=%s}",
+                linesRead.equals(lines), points3D, ticksV2.getView(1), ordersV2);
+        } finally {
+            Files.delete(snapshotFile);
+        }
+        ok &= testEquals(32, snapshots,
+            "{lines=true, points3D=[Point3D{x=0, y=0, z=0}, Point3D{x=3, y=4, z=0}], " +
+                "ticks=UnalignedTick{side=1, time=2, venue=3, price=4}, " +
+                "orders=[OrderV2{quantity=100, account=0, skew=-3, urgent=true, venue=5, buy=true, id=7}]}");
+
+        // zero-copy wrapping of external bytes
+        PackedClass<Point> pointType = PackedClass.forClass(Point.class);
+        byte[] pointBytes = new byte[4 + pointType.getSize()];
+        Point wrappedPoint = pointType.wrap(pointBytes, 4);
+        wrappedPoint.setX(7);
+        wrappedPoint.setY(-1);
+        ByteBuffer wrappedPointBytes = wrappedPoint.asByteBuffer();
+        wrappedPointBytes.putInt(0, 8);
+        ByteBuffer directBytes = ByteBuffer.allocateDirect(64).order(ByteOrder.nativeOrder());
+        directBytes.putInt(12, 42);
+        PackedArray.OfInt wrappedInts = PackedArray.OfInt.TYPE.wrap(directBytes, 8, 3);
+        PackedArray.OfObject<Point> wrappedPoints =
+            PackedArray.OfObject.typeWithComponent(Point.class).wrap(directBytes, 24, 2);
+        wrappedPoints.set(1, wrappedPoint);
+        String outOfBounds;
+        try {
+            pointType.wrap(pointBytes, 5);
+            outOfBounds = "none";
+        } catch (IndexOutOfBoundsException e) {
+            outOfBounds = e.getMessage();
+        }
+        ok &= testEquals(33, String.format("{point=%s, x=%d, ints=%s, points=%s, y=%d, oob=%s}",
+            wrappedPoint, ByteBuffer.wrap(pointBytes).order(ByteOrder.nativeOrder()).getInt(4),
+            wrappedInts, wrappedPoints, directBytes.getInt(36), outOfBounds),
+            "{point=Point{x=8, y=-1}, x=8, ints=[0, 42, 0], " +
+                "points=[Point{x=0, y=0}, Point{x=8, y=-1}], y=-1, " +
+                "oob=Range [5, 5 + 8) out of bounds for length 12}");
+
+        // arena allocation with scoped reset
+        PackedArena arena = new PackedArena(64);
+        Point kept = arena.allocate(Point.class);
+        kept.setX(1);
+        Point scoped;
+        String inScope;
+        PackedArena.Scope outerScope = arena.openScope();
+        PackedArena.Scope innerScope = arena.openScope();
+        try {
+            scoped = arena.allocateCopy(new Point(5, 6));
+            PackedArray.OfObject<Point> arenaPoints = arena.allocateArray(Point.class, 10);
+            arenaPoints.set(9, scoped);
+            inScope = scoped + " " + arenaPoints.getView(9);
+        } finally {
+            innerScope.close();
+        }
+        Point reused = arena.allocate(Point.class);
+        String reusedZero = reused.toString();
+        reused.setY(9);
+        outerScope.close();
+        PackedArena.Scope staleScope = arena.openScope();
+        arena.reset();
+        String stale;
+        try {
+            staleScope.close();
+            stale = "none";
+        } catch (IllegalStateException e) {
+            stale = e.getMessage();
+        }
+        ok &= testEquals(34, String.format("{kept=%s, inScope=%s, reused=%s, aliased=%s, scratch=%s, stale=%s}",
+            kept, inScope, reusedZero, scoped, PackedArena.scratch() == PackedArena.scratch(), stale),
+            "{kept=Point{x=1, y=0}, inScope=Point{x=5, y=6} Point{x=5, y=6}, reused=Point{x=0, y=0}, " +
+                "aliased=Point{x=0, y=9}, scratch=true, stale=Scope closed after the arena was rewound past it}");
+
+        // hash map with inline packed keys and values
+        PackedHashMap.OfInt<Point> pointMap = new PackedHashMap.OfInt<>(Point.class);
+        PackedHashMap.OfObject<Point, Line> lineMap = new PackedHashMap.OfObject<>(Point.class, Line.class);
+        HashMap<Integer, Integer> expectedMap = new HashMap<>();
+        Random mapRnd = new Random(42);
+        boolean mapsAgree = true;
+        for (int i = 0; i < 20_000; i++) {
+            int key = mapRnd.nextInt(2_000);
+            if (mapRnd.nextInt(3) == 0) {
+                boolean removed = expectedMap.remove(key) != null;
+                mapsAgree &= pointMap.remove(key) == removed;
+                mapsAgree &= lineMap.remove(new Point(key, -key)) == removed;
+            } else {
+                boolean added = expectedMap.put(key, i) == null;
+                mapsAgree &= pointMap.put(key, new Point(i, key)) == added;
+                mapsAgree &= lineMap.put(new Point(key, -key), new Line(new Point(key, i), new Point(i, key))) == added;
+            }
+            Point foundPoint = pointMap.get(key);
+            Line foundLine = lineMap.get(new Point(key, -key));
+            Integer expectedValue = expectedMap.get(key);
+            mapsAgree &= (foundPoint == null)
+                ? expectedValue == null && foundLine == null
+                : foundPoint.getX() == expectedValue && foundLine.getP1View().getY() == expectedValue;
+        }
+        mapsAgree &= pointMap.size() == expectedMap.size() && lineMap.size() == expectedMap.size();
+        PackedHashMap.OfInt.Cursor<Point> mapCursor = pointMap.cursor();
+        while (mapCursor.next()) {
+            int key = mapCursor.getKeyInt();
+            mapsAgree &= mapCursor.get().getX() == expectedMap.get(key);
+            if ((key & 1) != 0) {
+                mapCursor.remove();
+                expectedMap.remove(key);
+            }
+        }
+        mapsAgree &= pointMap.size() == expectedMap.size();
+        for (Integer key : expectedMap.keySet()) {
+            mapsAgree &= pointMap.get(key).getX() == expectedMap.get(key);
+        }
+        PackedHashMap.OfLong<Point> smallMap = new PackedHashMap.OfLong<>(Point.class);
+        PackedHashMap.OfLong.Cursor<Point> smallCursor = smallMap.cursor();
+        smallCursor.insert(1L << 40);
+        smallCursor.get().setY(7);
+        smallMap.put(-1L, new Point(1, 2));
+        ok &= testEquals(35, String.format("{agree=%s, odd=%s, small=%s, missing=%s}",
+            mapsAgree, expectedMap.keySet().stream().anyMatch(k -> (k & 1) != 0), smallMap, smallMap.get(0L)),
+            "{agree=true, odd=false, small={1099511627776=Point{x=0, y=7}, -1=Point{x=1, y=2}}, missing=null}");
+
+        // secondary hash index on a key field
+        PackedArray.OfObject<Order> indexedOrders = new PackedArray.OfObject<>(Order.class, 100_000);
+        for (int i = 0; i < indexedOrders.length(); i++) {
+            indexedOrders.set(i, new Order(1_000_000L + i, (i & 1) == 0, i % 7, 0, i % 1000));
+        }
+        PackedIndex<Order> ordersById = PackedIndex.build(indexedOrders, Order.id);
+        PackedIndex<Order> ordersByQuantity = PackedIndex.build(indexedOrders, Order.quantity);
+        boolean indexAgrees = true;
+        for (int i = 0; i < indexedOrders.length(); i += 997) {
+            indexAgrees &= ordersById.indexOf(1_000_000L + i) == i;
+        }
+        ordersById.set(5, new Order(42L, true, 1, 2, 3));
+        ordersByQuantity.rebuild();
+        ok &= testEquals(36, String.format("{agree=%s, id42=%s, old=%d, count=%d, first=%d, qty3=%s}",
+            indexAgrees, ordersById.get(42L), ordersById.indexOf(1_000_005L),
+            ordersByQuantity.count(5), ordersByQuantity.indexOf(5),
+            Arrays.toString(Arrays.copyOf(ordersByQuantity.indexesOf(3), 3))),
+            "{agree=true, id42=Order{id=42, buy=true, urgent=false, venue=1, skew=2, quantity=3}, old=-1, count=99, first=1005, " +
+                "qty3=[3, 5, 1003]}");
+
+        // binary search and sorted range index
+        PackedArray.OfObject<Trade> timedTrades = new PackedArray.OfObject<>(Trade.class, 8);
+        for (int i = 0; i < timedTrades.length(); i++) {
+            timedTrades.set(i, new Trade(i, 100L * (i / 2), 4.0 - (i % 4)));
+        }
+        PackedArray.OfLong sortedLongs = new PackedArray.OfLong(5);
+        sortedLongs.copyFrom(new long[]{-5, 1, 1, 3, 8}, 0, 0, 5);
+        PackedArray.OfDouble sortedDoubles = new PackedArray.OfDouble(4);
+        sortedDoubles.copyFrom(new double[]{-0.0, 0.0, 2.5, Double.NaN}, 0, 0, 4);
+        PackedSortedIndex<Trade> tradesByPrice = PackedSortedIndex.build(timedTrades, Trade.price);
+        PackedSortedIndex<Trade> tradesById = PackedSortedIndex.build(timedTrades, Trade.id);
+        ok &= testEquals(37, String.format("{search=%d %d %d %d, window=%s, longs=%d %d %d %s, doubles=%d %d, " +
+                "prices=%s, ids=%s}",
+            timedTrades.binarySearch(Trade.timestamp, 200L), timedTrades.binarySearch(Trade.timestamp, 150L),
+            timedTrades.lowerBound(Trade.timestamp, 100L), timedTrades.upperBound(Trade.timestamp, 100L),
+            timedTrades.viewOfKeyRange(Trade.timestamp, 100L, 300L).stream().map(Trade::getId).collect(Collectors.toList()),
+            sortedLongs.binarySearch(1), sortedLongs.binarySearch(2), sortedLongs.upperBound(1),
+            sortedLongs.viewOfKeyRange(0, 10), sortedDoubles.lowerBound(0.0), sortedDoubles.binarySearch(Double.NaN),
+            Arrays.toString(tradesByPrice.indexesOfRange(1.5, 3.5)), Arrays.toString(tradesById.indexesOfRange(6, 100))),
+            "{search=4 -5 2 4, window=[2, 3, 4, 5], longs=1 -4 3 [1, 1, 3, 8], doubles=1 3, " +
+                "prices=[2, 6, 1, 5], ids=[6, 7]}");
+
+        // inline string fields are cleared past a shorter value
+        Account shrunk = new Account(3, "ABCDEFG", "", "");
+        Account.code.setString(shrunk, "AB");
+        Account fresh = new Account(3, "AB", "", "");
+        ok &= testEquals(38, String.format("{fieldEq=%b, eq=%b, hash=%b, type=%s}",
+            Account.code.equals(shrunk, fresh), shrunk.equals(fresh), shrunk.hash64() == fresh.hash64(),
+            Account.code.getType() + " " + (Account.code.getStorageType() == PackedArray.OfByte.TYPE)),
+            "{fieldEq=true, eq=true, hash=true, type=null true}");
+
+        // version stamps are not part of the value of versioned objects
+        Quote written = new Quote(1, 2);
+        long stamp = written.beginWrite();
+        written.endWrite(stamp);
+        Quote fresh2 = new Quote(1, 2);
+        PackedArray.OfObject<Quote> writtenQuotes = new PackedArray.OfObject<>(Quote.class, 1);
+        writtenQuotes.getView(0).writeFrom(written);
+        PackedArray.OfObject<Quote> freshQuotes = new PackedArray.OfObject<>(Quote.class, 1);
+        freshQuotes.set(0, fresh2);
+        ok &= testEquals(39, String.format("{eq=%b, hash=%b, arrayEq=%b, arrayHash=%b, ne=%b}",
+            written.equals(fresh2), written.hash64() == fresh2.hash64(),
+            writtenQuotes.equals(freshQuotes), writtenQuotes.hash64() == freshQuotes.hash64(),
+            written.equals(new Quote(1, 3))),
+            "{eq=true, hash=true, arrayEq=true, arrayHash=true, ne=false}");
+
+        // an index on a key with few distinct values
+        PackedArray.OfObject<Order> lowCardinality = new PackedArray.OfObject<>(Order.class, 80_000);
+        for (int i = 0; i < lowCardinality.length(); i++) {
+            lowCardinality.set(i, new Order(i, true, 1, 0, i % 3));
+        }
+        PackedIndex<Order> byQuantity = PackedIndex.build(lowCardinality, Order.quantity);
+        int[] twos = byQuantity.indexesOf(2);
+        boolean twosAscending = true;
+        for (int i = 0; i < twos.length; i++) {
+            twosAscending &= twos[i] == 3 * i + 2;
+        }
+        byQuantity.set(0, new Order(0, true, 1, 0, 3));
+        byQuantity.set(1, new Order(1, true, 1, 0, 3));
+        ok &= testEquals(40, String.format("{count=%d, twos=%b, first0=%d, first1=%d, count3=%d, first3=%d, count4=%d}",
+            byQuantity.count(2), twosAscending, byQuantity.indexOf(0), byQuantity.indexOf(1),
+            byQuantity.count(3), byQuantity.indexOf(3), byQuantity.count(4)),
+            "{count=26666, twos=true, first0=3, first1=4, count3=2, first3=0, count4=0}");
+
+        // corrupt snapshot headers are rejected
+        Path corruptFile = Files.createTempFile("snapshot", ".packed");
+        String corruptLength, corruptBits;
+        try {
+            PackedArray.OfObject<Order> corruptOrders = new PackedArray.OfObject<>(Order.class, 1);
+            PackedSnapshot.write(corruptFile, corruptOrders);
+            byte[] snapshotBytes = Files.readAllBytes(corruptFile);
+            byte[] negativeLength = snapshotBytes.clone();
+            // the length follows the prefix and the byte order
+            ByteBuffer.wrap(negativeLength).putInt(16 + 4, -1);
+            corruptLength = readSnapshotError(corruptFile, negativeLength);
+            byte[] shiftedBits = snapshotBytes.clone();
+            // the shift of the skew bit field follows its descriptor, offset and size
+            byte[] skewDescriptor = "sbits(5)".getBytes("US-ASCII");
+            int at = 0;
+            while (!Arrays.equals(Arrays.copyOfRange(shiftedBits, at, at + skewDescriptor.length), skewDescriptor)) {
+                at++;
+            }
+            ByteBuffer.wrap(shiftedBits).putInt(at + skewDescriptor.length + 8, 60);
+            corruptBits = readSnapshotError(corruptFile, shiftedBits);
+        } finally {
+            Files.delete(corruptFile);
+        }
+        ok &= testEquals(41, String.format("{length=%s, bits=%s}", corruptLength, corruptBits),
+            "{length=Invalid packed snapshot length: -1, bits=Invalid packed snapshot field: skew}");
+
+        // radix sort of an off-heap array
+        PackedArray.OfInt directInts = PackedArray.OfInt.allocateDirect(1000);
+        int[] expectedInts = new int[directInts.length()];
+        Random intRandom = new Random(42);
+        for (int i = 0; i < expectedInts.length; i++) {
+            directInts.setInt(i, expectedInts[i] = intRandom.nextInt());
+        }
+        directInts.sort();
+        Arrays.sort(expectedInts);
+        boolean directSorted = true;
+        for (int i = 0; i < expectedInts.length; i++) {
+            directSorted &= directInts.getInt(i) == expectedInts[i];
+        }
+        ok &= testEquals(42, String.format("{sorted=%b, direct=%b}", directSorted, directInts.isDirect()),
+            "{sorted=true, direct=true}");
+
+        // versioned objects can't be embedded without padding
+        String unalignedQuote;
+        try {
+            unalignedQuote = PackedClass.forClass(UnalignedQuoteHolder.class).toString();
+        } catch (ClassFormatError e) {
+            unalignedQuote = e.getMessage();
+        }
+        ok &= testEquals(43, unalignedQuote,
+            "PackedField: quote of UnalignedQuoteHolder embeds version stamps and can't have UNALIGNED layout");
+
+        // a lone high surrogate sorts before the surrogate pair it starts
+        Account lone = new Account(4, "", "", "\uD83Dz"), pair = new Account(5, "", "", "\uD83D\uDC00");
+        ok &= testEquals(44, String.format("{fields=%d/%d, chars=%d/%d}",
+            Integer.signum(Account.note.compareTo(lone, pair)), Integer.signum(Account.note.compareTo(pair, lone)),
+            Integer.signum(Account.note.compareTo(lone, "\uD83D\uDC00")), Integer.signum(Account.note.compareTo(pair, "\uD83Dz"))),
+            String.format("{fields=%d/%d, chars=%d/%d}",
+                Integer.signum("\uD83Dz".compareTo("\uD83D\uDC00")), Integer.signum("\uD83D\uDC00".compareTo("\uD83Dz")),
+                Integer.signum("\uD83Dz".compareTo("\uD83D\uDC00")), Integer.signum("\uD83D\uDC00".compareTo("\uD83Dz"))));
+
+        // corrupted headers of mapped files are reported as IOException
+        Path corrupted = Files.createTempFile("points", ".packed");
+        try {
+            ok &= testEquals(45, String.format("{length=%s, headerSize=%s/%s/%s}",
+                openMappedError(corrupted, 20, Integer.MAX_VALUE), openMappedError(corrupted, 12, 65),
+                openMappedError(corrupted, 12, 1 << 20), openMappedError(corrupted, 12, -64)).replace(corrupted.toString(), "file"),
+                "{length=Corrupted header in: file, headerSize=Corrupted header in: file/" +
+                    "Corrupted header in: file/Corrupted header in: file}");
+        } finally {
+            Files.delete(corrupted);
+        }
+
         if (ok) {
             System.out.println("All tests OK.");
         } else {
@@ -73,6 +843,28 @@ public class Test {
         }
     }
 
+    static String openMappedError(Path file, int position, int value) throws IOException {
+        MappedPackedArray.create(file, PackedArray.OfObject.typeWithComponent(Point.class), 4);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, value), position);
+        }
+        try {
+            return "opened " + MappedPackedArray.open(file, PackedArray.OfObject.typeWithComponent(Point.class),
+                FileChannel.MapMode.PRIVATE).array();
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    static String readSnapshotError(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes);
+        try {
+            return "read " + PackedSnapshot.read(file, Order.class);
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
     static boolean testEquals(int testIndex, String result, String expected) {
         if (result.equals(expected)) {
             System.out.println("test#" + testIndex + " OK");
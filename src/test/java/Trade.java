@@ -0,0 +1,32 @@
+import pele.packed.PackedField.pfDouble;
+import pele.packed.PackedField.pfInt;
+import pele.packed.PackedField.pfLong;
+import pele.packed.PackedObject;
+
+/**
+ * Example of a packed object exposing its fields to be used as sort or
+ * search keys
+ */
+public class Trade extends PackedObject {
+    public static final pfInt<Trade> id = new pfInt<>(Trade.class);
+    public static final pfLong<Trade> timestamp = new pfLong<>(Trade.class);
+    public static final pfDouble<Trade> price = new pfDouble<>(Trade.class);
+
+    public Trade(int _id, long _timestamp, double _price) {
+        id.setInt(this, _id);
+        timestamp.setLong(this, _timestamp);
+        price.setDouble(this, _price);
+    }
+
+    public int getId() {
+        return id.getInt(this);
+    }
+
+    public long getTimestamp() {
+        return timestamp.getLong(this);
+    }
+
+    public double getPrice() {
+        return price.getDouble(this);
+    }
+}
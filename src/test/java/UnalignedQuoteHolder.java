@@ -0,0 +1,15 @@
+import pele.packed.PackedField.pfByte;
+import pele.packed.PackedField.pfObject;
+import pele.packed.PackedLayout;
+import pele.packed.PackedObject;
+
+/**
+ * Example of an invalid packed object embedding a versioned packed object
+ * without padding, which would leave its version stamp unaligned
+ */
+@PackedLayout(PackedLayout.Policy.UNALIGNED)
+public class UnalignedQuoteHolder extends PackedObject {
+    public static final pfByte<UnalignedQuoteHolder> tag = new pfByte<>(UnalignedQuoteHolder.class);
+    public static final pfObject<Quote, UnalignedQuoteHolder> quote =
+        new pfObject<>(Quote.class, UnalignedQuoteHolder.class);
+}
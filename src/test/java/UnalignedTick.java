@@ -0,0 +1,22 @@
+import pele.packed.PackedField.pfByte;
+import pele.packed.PackedField.pfLong;
+import pele.packed.PackedLayout;
+import pele.packed.PackedObject;
+
+/**
+ * Example of a packed object laying out fields without padding
+ */
+@PackedLayout(PackedLayout.Policy.UNALIGNED)
+public class UnalignedTick extends PackedObject {
+    public static final pfByte<UnalignedTick> side = new pfByte<>(UnalignedTick.class);
+    public static final pfLong<UnalignedTick> time = new pfLong<>(UnalignedTick.class);
+    public static final pfByte<UnalignedTick> venue = new pfByte<>(UnalignedTick.class);
+    public static final pfLong<UnalignedTick> price = new pfLong<>(UnalignedTick.class);
+
+    public UnalignedTick(byte _side, long _time, byte _venue, long _price) {
+        side.setByte(this, _side);
+        time.setLong(this, _time);
+        venue.setByte(this, _venue);
+        price.setLong(this, _price);
+    }
+}